@@ -52,6 +52,11 @@ public class ComponentContainerBenchmark {
     bh.consume(componentContainer.getNodeComponents(1, smallerNode));
   }
 
+  @Benchmark
+  public void testMatchingNode(Blackhole bh) {
+    bh.consume(componentContainer.matches(1, node));
+  }
+
   @Benchmark
   public void testGettingComponentsOneByOne(Blackhole bh) {
     node.getComponentClasses().forEach(clazz -> bh.consume(componentContainer.getComponent(1, clazz)));
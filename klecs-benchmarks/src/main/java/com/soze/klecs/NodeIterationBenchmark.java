@@ -0,0 +1,65 @@
+package com.soze.klecs;
+
+import com.soze.klecs.engine.Engine;
+import com.soze.klecs.engine.NodeView;
+import com.soze.klecs.entity.Entity;
+import com.soze.klecs.node.Node;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+
+/**
+ * Compares iterating over a node's entities through {@link Engine#getEntitiesByNode(Node)}
+ * with the allocation-free {@link NodeView}. Run with -prof gc to see allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Fork(value = 1, warmups = 1)
+@Measurement(iterations = 5, time = 5)
+@Warmup(iterations = 5, time = 1)
+public class NodeIterationBenchmark {
+
+  @Param({"1000", "50000"})
+  private int entities;
+
+  private Engine engine;
+  private Node node;
+  private NodeView view;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    engine = new Engine();
+    for (int i = 0; i < entities; i++) {
+      final Entity entity = engine.getEntityFactory().createEntity();
+      entity.addComponent("String");
+      entity.addComponent(i);
+      entity.addComponent(new ArrayList<>());
+      engine.addEntity(entity);
+    }
+
+    node = Node.of(String.class, Integer.class);
+    view = engine.getNodeView(node);
+  }
+
+  @Benchmark
+  public void testGetEntitiesByNode(Blackhole bh) {
+    for (final Entity entity : engine.getEntitiesByNode(node)) {
+      bh.consume(entity.getComponent(Integer.class));
+    }
+  }
+
+  @Benchmark
+  public void testNodeViewCursor(Blackhole bh) {
+    view.reset();
+    while (view.next()) {
+      bh.consume(view.getComponent(Integer.class));
+    }
+  }
+
+  @Benchmark
+  public void testEngineForEach(Blackhole bh) {
+    engine.forEach(node, Integer.class, (entity, integer) -> bh.consume(integer));
+  }
+
+}
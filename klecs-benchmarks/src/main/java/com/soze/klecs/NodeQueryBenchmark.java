@@ -0,0 +1,64 @@
+package com.soze.klecs;
+
+import com.soze.klecs.engine.ComponentContainer;
+import com.soze.klecs.node.Node;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.*;
+
+/**
+ * Compares the indexed node query of {@link ComponentContainer#getEntitiesByNode(Node)}
+ * with a scan over all entities, which is how node queries used to be answered.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Fork(value = 1, warmups = 1)
+@Measurement(iterations = 5, time = 5)
+@Warmup(iterations = 5, time = 1)
+public class NodeQueryBenchmark {
+
+  @Param({"1000", "50000"})
+  private int entities;
+
+  /**
+   * Every n-th entity matches the queried node.
+   */
+  @Param({"1", "10"})
+  private int matchEvery;
+
+  private ComponentContainer componentContainer;
+  private Node node;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    componentContainer = new ComponentContainer();
+    for (long id = 0; id < entities; id++) {
+      componentContainer.addComponent(id, "String");
+      componentContainer.addComponent(id, new ArrayList<>());
+      if (id % matchEvery == 0) {
+        componentContainer.addComponent(id, 5);
+      }
+    }
+
+    node = Node.of(String.class, Integer.class);
+    componentContainer.registerNode(node);
+  }
+
+  @Benchmark
+  public void testIndexedQuery(Blackhole bh) {
+    bh.consume(componentContainer.getEntitiesByNode(node));
+  }
+
+  @Benchmark
+  public void testScanQuery(Blackhole bh) {
+    final List<Object> ids = new ArrayList<>();
+    for (long id = 0; id < entities; id++) {
+      if (!componentContainer.getNodeComponents(id, node).isEmpty()) {
+        ids.add(id);
+      }
+    }
+    bh.consume(ids);
+  }
+
+}
@@ -0,0 +1,71 @@
+package com.soze.klecs;
+
+import com.soze.klecs.engine.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Compares a movement update over heap primitive columns with the same update over off-heap columns.
+ * Run with -prof gc to compare heap usage.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Fork(value = 1, warmups = 1)
+@Measurement(iterations = 5, time = 5)
+@Warmup(iterations = 5, time = 1)
+public class OffHeapColumnsBenchmark {
+
+  private static final PrimitiveLayout HEAP = new PrimitiveLayout("Movable");
+  private static final PrimitiveField HEAP_X = HEAP.addFloat("x");
+  private static final PrimitiveField HEAP_DX = HEAP.addFloat("dx");
+
+  private static final PrimitiveLayout OFF_HEAP = PrimitiveLayout.offHeap("OffHeapMovable");
+  private static final PrimitiveField OFF_HEAP_X = OFF_HEAP.addFloat("x");
+  private static final PrimitiveField OFF_HEAP_DX = OFF_HEAP.addFloat("dx");
+
+  @Param({"1000", "1000000"})
+  private int entities;
+
+  private ComponentContainer componentContainer;
+  private PrimitiveColumns heapColumns;
+  private OffHeapColumns offHeapColumns;
+  private OffHeapColumns.Record record;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    componentContainer = new ComponentContainer();
+    for (int i = 0; i < entities; i++) {
+      componentContainer.addLayout(i, HEAP);
+      componentContainer.setFloat(i, HEAP_DX, 1);
+      componentContainer.addLayout(i, OFF_HEAP);
+      componentContainer.setFloat(i, OFF_HEAP_DX, 1);
+    }
+    heapColumns = componentContainer.getColumns(HEAP);
+    offHeapColumns = componentContainer.getOffHeapColumns(OFF_HEAP);
+    record = offHeapColumns.createRecord();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    componentContainer.dispose();
+  }
+
+  @Benchmark
+  public void testHeapColumns() {
+    final float[] x = heapColumns.getFloatColumn(HEAP_X);
+    final float[] dx = heapColumns.getFloatColumn(HEAP_DX);
+    final int size = heapColumns.size();
+    for (int row = 0; row < size; row++) {
+      x[row] += dx[row] * 0.016f;
+    }
+  }
+
+  @Benchmark
+  public void testOffHeapRecord() {
+    final int size = offHeapColumns.size();
+    for (int row = 0; row < size; row++) {
+      record.moveTo(row);
+      record.setFloat(OFF_HEAP_X, record.getFloat(OFF_HEAP_X) + record.getFloat(OFF_HEAP_DX) * 0.016f);
+    }
+  }
+
+}
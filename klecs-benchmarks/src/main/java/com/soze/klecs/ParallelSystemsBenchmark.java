@@ -0,0 +1,136 @@
+package com.soze.klecs;
+
+import com.soze.klecs.engine.Engine;
+import com.soze.klecs.entity.Entity;
+import com.soze.klecs.node.Node;
+import com.soze.klecs.system.ComponentAccess;
+import com.soze.klecs.system.EntitySystem;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures latency of one engine tick with systems which do not conflict with each other,
+ * depending on the number of threads systems are updated on.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, warmups = 1)
+@Measurement(iterations = 5, time = 5)
+@Warmup(iterations = 5, time = 1)
+public class ParallelSystemsBenchmark {
+
+  /**
+   * 0 means systems are updated sequentially on the calling thread.
+   */
+  @Param({"0", "1", "2", "4", "8"})
+  private int threads;
+
+  @Param({"8"})
+  private int systems;
+
+  @Param({"10000"})
+  private int entities;
+
+  private Engine engine;
+  private ForkJoinPool pool;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    engine = new Engine();
+    for (int i = 0; i < entities; i++) {
+      final Entity entity = engine.getEntityFactory().createEntity();
+      for (int component = 0; component < systems; component++) {
+        entity.addComponent(createComponent(component));
+      }
+      engine.addEntity(entity);
+    }
+
+    for (int i = 0; i < systems; i++) {
+      engine.addSystem(new CounterSystem(engine, createComponent(i).getClass()));
+    }
+
+    if (threads > 0) {
+      pool = new ForkJoinPool(threads);
+      engine.setSystemPool(pool);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    if (pool != null) {
+      pool.shutdown();
+    }
+  }
+
+  @Benchmark
+  public void testUpdate() {
+    engine.update(0.016f);
+  }
+
+  /**
+   * Each system gets its own component class, so that no two systems conflict.
+   */
+  private static Object createComponent(final int index) {
+    switch (index % 8) {
+      case 0: return new Counter0();
+      case 1: return new Counter1();
+      case 2: return new Counter2();
+      case 3: return new Counter3();
+      case 4: return new Counter4();
+      case 5: return new Counter5();
+      case 6: return new Counter6();
+      default: return new Counter7();
+    }
+  }
+
+  public static class Counter {
+    long value;
+  }
+
+  public static class Counter0 extends Counter {}
+  public static class Counter1 extends Counter {}
+  public static class Counter2 extends Counter {}
+  public static class Counter3 extends Counter {}
+  public static class Counter4 extends Counter {}
+  public static class Counter5 extends Counter {}
+  public static class Counter6 extends Counter {}
+  public static class Counter7 extends Counter {}
+
+  private static class CounterSystem implements EntitySystem {
+
+    private final Engine engine;
+    private final Class<?> counterClass;
+    private final Node node;
+
+    private CounterSystem(final Engine engine, final Class<?> counterClass) {
+      this.engine = engine;
+      this.counterClass = counterClass;
+      this.node = Node.of(counterClass);
+    }
+
+    @Override
+    public void update(final float delta) {
+      engine.forEach(node, counterClass, (entity, counter) -> {
+        final Counter c = (Counter) counter;
+        for (int i = 0; i < 50; i++) {
+          c.value = c.value * 31 + i;
+        }
+      });
+    }
+
+    @Override
+    public Engine getEngine() {
+      return engine;
+    }
+
+    @Override
+    public ComponentAccess getComponentAccess() {
+      return ComponentAccess.writes(counterClass);
+    }
+
+  }
+
+}
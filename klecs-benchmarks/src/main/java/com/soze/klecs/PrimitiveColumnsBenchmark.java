@@ -0,0 +1,98 @@
+package com.soze.klecs;
+
+import com.soze.klecs.engine.Engine;
+import com.soze.klecs.engine.PrimitiveColumns;
+import com.soze.klecs.engine.PrimitiveField;
+import com.soze.klecs.engine.PrimitiveLayout;
+import com.soze.klecs.entity.Entity;
+import com.soze.klecs.node.Node;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Compares a movement update over position and velocity components stored as objects
+ * with the same update over primitive columns.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Fork(value = 1, warmups = 1)
+@Measurement(iterations = 5, time = 5)
+@Warmup(iterations = 5, time = 1)
+public class PrimitiveColumnsBenchmark {
+
+  private static final PrimitiveLayout MOVABLE = new PrimitiveLayout("Movable");
+  private static final PrimitiveField X = MOVABLE.addFloat("x");
+  private static final PrimitiveField Y = MOVABLE.addFloat("y");
+  private static final PrimitiveField DX = MOVABLE.addFloat("dx");
+  private static final PrimitiveField DY = MOVABLE.addFloat("dy");
+
+  @Param({"1000", "100000"})
+  private int entities;
+
+  private Engine objectEngine;
+  private Engine primitiveEngine;
+  private Node node;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    objectEngine = new Engine();
+    primitiveEngine = new Engine();
+    for (int i = 0; i < entities; i++) {
+      final Entity entity = objectEngine.getEntityFactory().createEntity();
+      entity.addComponent(new Position(i, i));
+      entity.addComponent(new Velocity(1, 1));
+      objectEngine.addEntity(entity);
+
+      final Entity primitiveEntity = primitiveEngine.getEntityFactory().createEntity();
+      primitiveEntity.addLayout(MOVABLE);
+      primitiveEntity.setFloat(X, i);
+      primitiveEntity.setFloat(Y, i);
+      primitiveEntity.setFloat(DX, 1);
+      primitiveEntity.setFloat(DY, 1);
+      primitiveEngine.addEntity(primitiveEntity);
+    }
+    node = Node.of(Position.class, Velocity.class);
+  }
+
+  @Benchmark
+  public void testObjectComponents() {
+    objectEngine.forEach(node, Position.class, Velocity.class, (entity, position, velocity) -> {
+      position.x += velocity.dx * 0.016f;
+      position.y += velocity.dy * 0.016f;
+    });
+  }
+
+  @Benchmark
+  public void testPrimitiveColumns() {
+    final PrimitiveColumns columns = primitiveEngine.getComponentContainer().getColumns(MOVABLE);
+    final float[] x = columns.getFloatColumn(X);
+    final float[] y = columns.getFloatColumn(Y);
+    final float[] dx = columns.getFloatColumn(DX);
+    final float[] dy = columns.getFloatColumn(DY);
+    final int size = columns.size();
+    for (int row = 0; row < size; row++) {
+      x[row] += dx[row] * 0.016f;
+      y[row] += dy[row] * 0.016f;
+    }
+  }
+
+  public static class Position {
+    float x;
+    float y;
+
+    Position(final float x, final float y) {
+      this.x = x;
+      this.y = y;
+    }
+  }
+
+  public static class Velocity {
+    final float dx;
+    final float dy;
+
+    Velocity(final float dx, final float dy) {
+      this.dx = dx;
+      this.dy = dy;
+    }
+  }
+
+}
@@ -0,0 +1,82 @@
+package com.soze.klecs;
+
+import com.soze.klecs.engine.Engine;
+import com.soze.klecs.entity.IntIdAllocator;
+import com.soze.klecs.snapshot.ComponentCodec;
+import com.soze.klecs.snapshot.SnapshotFormat;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long it takes to write a snapshot of an engine and to restore an engine from it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, warmups = 1)
+@Measurement(iterations = 5, time = 5)
+@Warmup(iterations = 5, time = 1)
+public class SnapshotBenchmark {
+
+  @Param({"100000"})
+  private int entities;
+
+  private SnapshotFormat format;
+  private Engine engine;
+  private ByteBuffer buffer;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    format = new SnapshotFormat();
+    format.register(1, Position.class, new PositionCodec());
+    format.register(2, Integer.class, ComponentCodec.INTEGER);
+    engine = new Engine(new IntIdAllocator());
+    engine.spawn(entities, i -> new Position(i, i), i -> i);
+    buffer = ByteBuffer.allocateDirect(entities * 32 + 64);
+  }
+
+  @Benchmark
+  public ByteBuffer testWrite() {
+    buffer.clear();
+    format.write(engine, buffer);
+    return buffer;
+  }
+
+  @Benchmark
+  public Engine testRead() {
+    buffer.clear();
+    format.write(engine, buffer);
+    buffer.flip();
+    final Engine restored = new Engine(new IntIdAllocator());
+    format.read(buffer, restored);
+    return restored;
+  }
+
+  public static class Position {
+    final float x;
+    final float y;
+
+    Position(final float x, final float y) {
+      this.x = x;
+      this.y = y;
+    }
+  }
+
+  private static class PositionCodec implements ComponentCodec<Position> {
+
+    @Override
+    public void write(final Position component, final ByteBuffer buffer) {
+      buffer.putFloat(component.x);
+      buffer.putFloat(component.y);
+    }
+
+    @Override
+    public Position read(final ByteBuffer buffer) {
+      return new Position(buffer.getFloat(), buffer.getFloat());
+    }
+
+  }
+
+}
@@ -0,0 +1,106 @@
+package com.soze.klecs;
+
+import com.soze.klecs.engine.Engine;
+import com.soze.klecs.entity.Entity;
+import com.soze.klecs.node.Node;
+import com.soze.klecs.spatial.SpatialIndex;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares finding entities within a radius with a {@link SpatialIndex} against filtering all entities of a node,
+ * for increasing numbers of entities in a world of the same size, and measures nearest neighbour queries
+ * and refreshing the index after all entities moved.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Fork(value = 1, warmups = 1)
+@Measurement(iterations = 5, time = 5)
+@Warmup(iterations = 5, time = 1)
+public class SpatialIndexBenchmark {
+
+  private static final float WORLD_SIZE = 1000;
+  private static final float RADIUS = 20;
+  private static final int QUERIES = 1024;
+
+  private static final Node NODE = Node.of(Position.class);
+
+  @Param({"1000", "10000", "100000"})
+  private int entities;
+
+  private Engine engine;
+  private SpatialIndex<Position> index;
+  private float[] queryX;
+  private float[] queryY;
+  private int query = 0;
+
+  @Setup
+  public void setup() {
+    final Random random = new Random(7);
+    engine = new Engine();
+    for (int i = 0; i < entities; i++) {
+      final Entity entity = engine.getEntityFactory().createEntity();
+      entity.addComponent(new Position(random.nextFloat() * WORLD_SIZE, random.nextFloat() * WORLD_SIZE));
+      engine.addEntity(entity);
+    }
+    index = new SpatialIndex<>(engine, Position.class, position -> position.x, position -> position.y, RADIUS);
+    queryX = new float[QUERIES];
+    queryY = new float[QUERIES];
+    for (int i = 0; i < QUERIES; i++) {
+      queryX[i] = random.nextFloat() * WORLD_SIZE;
+      queryY[i] = random.nextFloat() * WORLD_SIZE;
+    }
+  }
+
+  @Benchmark
+  public void testRangeQuery(final Blackhole blackhole) {
+    final int i = nextQuery();
+    index.forEachInRange(queryX[i], queryY[i], RADIUS, null, blackhole::consume);
+  }
+
+  @Benchmark
+  public void testLinearScan(final Blackhole blackhole) {
+    final int i = nextQuery();
+    final float x = queryX[i];
+    final float y = queryY[i];
+    engine.forEach(NODE, Position.class, (entity, position) -> {
+      final float dx = position.x - x;
+      final float dy = position.y - y;
+      if (dx * dx + dy * dy <= RADIUS * RADIUS) {
+        blackhole.consume(position);
+      }
+    });
+  }
+
+  @Benchmark
+  public List<Entity> testNearest() {
+    final int i = nextQuery();
+    return index.getNearest(queryX[i], queryY[i], 8, null);
+  }
+
+  @Benchmark
+  public void testMoveAndRefresh() {
+    engine.forEach(NODE, Position.class, (entity, position) -> {
+      position.x = (position.x + 0.5f) % WORLD_SIZE;
+    });
+    index.refresh();
+  }
+
+  private int nextQuery() {
+    return query++ & (QUERIES - 1);
+  }
+
+  public static class Position {
+    float x;
+    float y;
+
+    Position(final float x, final float y) {
+      this.x = x;
+      this.y = y;
+    }
+  }
+
+}
@@ -0,0 +1,73 @@
+package com.soze.klecs;
+
+import com.soze.klecs.engine.Engine;
+import com.soze.klecs.entity.Entity;
+import com.soze.klecs.entity.EntityTemplate;
+import com.soze.klecs.entity.IntIdAllocator;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Compares spawning entities one at a time with spawning them in bulk, with and without a template.
+ * Each invocation spawns a wave of entities into a fresh engine.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Fork(value = 1, warmups = 1)
+@Measurement(iterations = 5, time = 5)
+@Warmup(iterations = 5, time = 1)
+public class SpawnBenchmark {
+
+  private static final EntityTemplate TEMPLATE = EntityTemplate.empty()
+    .with(new Position(0, 0), position -> new Position(position.x, position.y))
+    .withShared(new Velocity(1, 1));
+
+  @Param({"1000", "20000"})
+  private int entities;
+
+  @Benchmark
+  public Engine testAddEntities() {
+    final Engine engine = new Engine(new IntIdAllocator());
+    for (int i = 0; i < entities; i++) {
+      final Entity entity = engine.getEntityFactory().createEntity();
+      entity.addComponent(new Position(i, i));
+      entity.addComponent(new Velocity(1, 1));
+      engine.addEntity(entity);
+    }
+    return engine;
+  }
+
+  @Benchmark
+  public Engine testSpawn() {
+    final Engine engine = new Engine(new IntIdAllocator());
+    engine.spawn(entities, i -> new Position(i, i), i -> new Velocity(1, 1));
+    return engine;
+  }
+
+  @Benchmark
+  public Engine testSpawnTemplate() {
+    final Engine engine = new Engine(new IntIdAllocator());
+    engine.spawn(entities, TEMPLATE);
+    return engine;
+  }
+
+  public static class Position {
+    float x;
+    float y;
+
+    Position(final float x, final float y) {
+      this.x = x;
+      this.y = y;
+    }
+  }
+
+  public static class Velocity {
+    final float dx;
+    final float dy;
+
+    Velocity(final float dx, final float dy) {
+      this.dx = dx;
+      this.dy = dy;
+    }
+  }
+
+}
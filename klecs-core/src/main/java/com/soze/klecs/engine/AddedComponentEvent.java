@@ -0,0 +1,14 @@
+package com.soze.klecs.engine;
+
+import com.soze.klecs.entity.Entity;
+
+/**
+ * A component was added to an entity, possibly replacing a component of the same class.
+ */
+public class AddedComponentEvent extends ComponentEvent {
+
+  public AddedComponentEvent(final Entity entity, final Object component) {
+    super(entity, component);
+  }
+
+}
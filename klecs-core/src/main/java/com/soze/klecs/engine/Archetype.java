@@ -0,0 +1,151 @@
+package com.soze.klecs.engine;
+
+import com.soze.klecs.node.Node;
+
+import java.util.*;
+
+/**
+ * A table of all entities which have exactly the same set of component classes.
+ * Each component class has its own column, each entity has one row.
+ * Rows are kept dense, removing a row moves the last row in its place.
+ */
+final class Archetype {
+
+  private final Set<Class<?>> componentClasses;
+  private final ComponentMask mask;
+
+  /**
+   * Column of each component class, indexed by type id, -1 for classes this archetype does not have.
+   */
+  private final int[] columnsByTypeId;
+  private final Class<?>[] columnClasses;
+  private final Object[][] columns;
+  private int[] slots = new int[16];
+  private int size = 0;
+
+  /**
+   * Archetypes which an entity of this archetype moves to when a component with given class is added/removed.
+   */
+  private final Map<Class<?>, Archetype> addTransitions = new HashMap<>();
+  private final Map<Class<?>, Archetype> removeTransitions = new HashMap<>();
+
+  Archetype(final Set<Class<?>> componentClasses) {
+    this.componentClasses = Collections.unmodifiableSet(new HashSet<>(componentClasses));
+    this.columnClasses = this.componentClasses.toArray(new Class<?>[0]);
+    this.mask = ComponentMask.of(this.componentClasses);
+    int maxTypeId = -1;
+    for (final Class<?> clazz : columnClasses) {
+      maxTypeId = Math.max(maxTypeId, ComponentTypeRegistry.getTypeId(clazz));
+    }
+    this.columnsByTypeId = new int[maxTypeId + 1];
+    Arrays.fill(columnsByTypeId, -1);
+    this.columns = new Object[columnClasses.length][];
+    for (int column = 0; column < columnClasses.length; column++) {
+      columnsByTypeId[ComponentTypeRegistry.getTypeId(columnClasses[column])] = column;
+      columns[column] = new Object[slots.length];
+    }
+  }
+
+  Set<Class<?>> getComponentClasses() {
+    return componentClasses;
+  }
+
+  boolean matches(final Node node) {
+    return node.matches(mask);
+  }
+
+  int size() {
+    return size;
+  }
+
+  int getSlot(final int row) {
+    return slots[row];
+  }
+
+  int columnCount() {
+    return columns.length;
+  }
+
+  Class<?> getColumnClass(final int column) {
+    return columnClasses[column];
+  }
+
+  /**
+   * @return column of given class, -1 if this archetype does not have it
+   */
+  int getColumn(final Class<?> clazz) {
+    final int typeId = ComponentTypeRegistry.getTypeId(clazz);
+    return typeId < columnsByTypeId.length ? columnsByTypeId[typeId] : -1;
+  }
+
+  /**
+   * @return column of a class assignable to given class, -1 if this archetype does not have one
+   */
+  int getColumnByParent(final Class<?> clazz) {
+    final int typeId = mask.firstCommon(ComponentTypeRegistry.getSubtypeMask(clazz));
+    return typeId == -1 ? -1 : columnsByTypeId[typeId];
+  }
+
+  Object get(final int row, final int column) {
+    return columns[column][row];
+  }
+
+  void set(final int row, final int column, final Object component) {
+    columns[column][row] = component;
+  }
+
+  /**
+   * Adds a row with empty columns for given slot.
+   *
+   * @return the new row
+   */
+  int addRow(final int slot) {
+    if (size == slots.length) {
+      final int capacity = size * 2;
+      slots = Arrays.copyOf(slots, capacity);
+      for (int column = 0; column < columns.length; column++) {
+        columns[column] = Arrays.copyOf(columns[column], capacity);
+      }
+    }
+    slots[size] = slot;
+    return size++;
+  }
+
+  /**
+   * Removes a row, by moving the last row in its place.
+   *
+   * @return slot of the entity which was moved to given row, -1 if the removed row was the last one
+   */
+  int removeRow(final int row) {
+    final int last = --size;
+    int movedSlot = -1;
+    if (row != last) {
+      movedSlot = slots[last];
+      slots[row] = movedSlot;
+      for (int column = 0; column < columns.length; column++) {
+        columns[column][row] = columns[column][last];
+      }
+    }
+    for (int column = 0; column < columns.length; column++) {
+      columns[column][last] = null;
+    }
+    return movedSlot;
+  }
+
+  Archetype getAddTransition(final Class<?> clazz) {
+    return addTransitions.get(clazz);
+  }
+
+  void setAddTransition(final Class<?> clazz, final Archetype archetype) {
+    addTransitions.put(clazz, archetype);
+  }
+
+  Archetype getRemoveTransition(final Class<?> clazz) {
+    return removeTransitions.get(clazz);
+  }
+
+  void setRemoveTransition(final Class<?> clazz, final Archetype archetype) {
+    removeTransitions.put(clazz, archetype);
+  }
+
+}
@@ -0,0 +1,283 @@
+package com.soze.klecs.engine;
+
+import com.soze.klecs.node.Node;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntConsumer;
+
+/**
+ * Storage which groups entities with the same set of component classes into {@link Archetype} tables,
+ * with one column array per component class.
+ * <p>
+ * A node query walks the tables of all archetypes matching the node, which is linear in memory,
+ * so iterating over entities of a node is much more cache-friendly than with {@link HashComponentStorage}.
+ * The price is paid when components are added or removed, because the entity moves to another archetype
+ * and all of its components are copied.
+ */
+public class ArchetypeComponentStorage implements ComponentStorage {
+
+  private final Map<Set<Class<?>>, Archetype> archetypes = new LinkedHashMap<>();
+
+  /**
+   * Archetypes matching each registered node.
+   * Nodes can be registered while other threads query archetypes of other nodes.
+   */
+  private final Map<Node, List<Archetype>> nodeArchetypes = new ConcurrentHashMap<>();
+
+  /**
+   * Archetype of entities without components.
+   */
+  private final Archetype emptyArchetype;
+
+  private Archetype[] archetypesBySlot = new Archetype[16];
+  private int[] rowsBySlot = new int[16];
+
+  public ArchetypeComponentStorage() {
+    this.emptyArchetype = getOrCreateArchetype(Collections.emptySet());
+  }
+
+  @Override
+  public void addEntity(final int slot) {
+    if (slot >= archetypesBySlot.length) {
+      final int capacity = Math.max(slot + 1, archetypesBySlot.length * 2);
+      archetypesBySlot = Arrays.copyOf(archetypesBySlot, capacity);
+      rowsBySlot = Arrays.copyOf(rowsBySlot, capacity);
+    }
+    archetypesBySlot[slot] = emptyArchetype;
+    rowsBySlot[slot] = emptyArchetype.addRow(slot);
+  }
+
+  @Override
+  public void removeEntity(final int slot) {
+    final Archetype archetype = archetypesBySlot[slot];
+    if (archetype != null) {
+      removeRow(archetype, rowsBySlot[slot]);
+      archetypesBySlot[slot] = null;
+    }
+  }
+
+  @Override
+  public Object addComponent(final int slot, final Object component) {
+    Objects.requireNonNull(component);
+    final Class<?> clazz = component.getClass();
+    final Archetype archetype = archetypesBySlot[slot];
+    final int column = archetype.getColumn(clazz);
+    if (column != -1) {
+      final Object previous = archetype.get(rowsBySlot[slot], column);
+      archetype.set(rowsBySlot[slot], column, component);
+      return previous;
+    }
+
+    Archetype target = archetype.getAddTransition(clazz);
+    if (target == null) {
+      final Set<Class<?>> classes = new HashSet<>(archetype.getComponentClasses());
+      classes.add(clazz);
+      target = getOrCreateArchetype(classes);
+      archetype.setAddTransition(clazz, target);
+    }
+    final int row = move(slot, archetype, target);
+    target.set(row, target.getColumn(clazz), component);
+    return null;
+  }
+
+  @Override
+  public Object removeComponent(final int slot, final Class<?> clazz) {
+    final Archetype archetype = archetypesBySlot[slot];
+    final int column = archetype.getColumn(clazz);
+    if (column == -1) {
+      return null;
+    }
+    final Object removed = archetype.get(rowsBySlot[slot], column);
+
+    Archetype target = archetype.getRemoveTransition(clazz);
+    if (target == null) {
+      final Set<Class<?>> classes = new HashSet<>(archetype.getComponentClasses());
+      classes.remove(clazz);
+      target = getOrCreateArchetype(classes);
+      archetype.setRemoveTransition(clazz, target);
+    }
+    move(slot, archetype, target);
+    return removed;
+  }
+
+  @Override
+  public void changeComponents(final int slot, final Collection<Object> added, final Collection<Class<?>> removed) {
+    final Archetype archetype = archetypesBySlot[slot];
+    final Set<Class<?>> classes = new HashSet<>(archetype.getComponentClasses());
+    classes.removeAll(removed);
+    for (final Object component : added) {
+      classes.add(component.getClass());
+    }
+
+    final Archetype target = classes.equals(archetype.getComponentClasses()) ? archetype : getOrCreateArchetype(classes);
+    final int row = target == archetype ? rowsBySlot[slot] : move(slot, archetype, target);
+    for (final Object component : added) {
+      target.set(row, target.getColumn(component.getClass()), component);
+    }
+  }
+
+  @Override
+  public Object getComponent(final int slot, final Class<?> clazz) {
+    final Archetype archetype = archetypesBySlot[slot];
+    final int column = archetype.getColumn(clazz);
+    return column == -1 ? null : archetype.get(rowsBySlot[slot], column);
+  }
+
+  @Override
+  public <T> T getComponentByParent(final int slot, final Class<T> clazz) {
+    Objects.requireNonNull(clazz);
+    final Archetype archetype = archetypesBySlot[slot];
+    final int column = archetype.getColumnByParent(clazz);
+    return column == -1 ? null : (T) archetype.get(rowsBySlot[slot], column);
+  }
+
+  @Override
+  public boolean hasComponent(final int slot, final Class<?> clazz) {
+    return archetypesBySlot[slot].getColumn(clazz) != -1;
+  }
+
+  @Override
+  public Collection<Object> getAllComponents(final int slot) {
+    final Archetype archetype = archetypesBySlot[slot];
+    final List<Object> components = new ArrayList<>(archetype.columnCount());
+    for (int column = 0; column < archetype.columnCount(); column++) {
+      components.add(archetype.get(rowsBySlot[slot], column));
+    }
+    return components;
+  }
+
+  @Override
+  public void registerNode(final Node node) {
+    Objects.requireNonNull(node);
+    if (nodeArchetypes.containsKey(node)) {
+      return;
+    }
+
+    final List<Archetype> matching = new ArrayList<>();
+    for (final Archetype archetype : archetypes.values()) {
+      if (archetype.matches(node)) {
+        matching.add(archetype);
+      }
+    }
+    nodeArchetypes.put(node, matching);
+  }
+
+  @Override
+  public void unregisterNode(final Node node) {
+    nodeArchetypes.remove(Objects.requireNonNull(node));
+  }
+
+  @Override
+  public void forEachEntity(final Node node, final IntConsumer consumer) {
+    final List<Archetype> matching = nodeArchetypes.get(node);
+    for (int i = 0; i < matching.size(); i++) {
+      final Archetype archetype = matching.get(i);
+      for (int row = 0; row < archetype.size(); row++) {
+        consumer.accept(archetype.getSlot(row));
+      }
+    }
+  }
+
+  @Override
+  public NodeCursor createCursor(final Node node) {
+    return new ArchetypeNodeCursor(nodeArchetypes.get(node));
+  }
+
+  /**
+   * Returns the number of distinct sets of component classes seen so far.
+   */
+  public int getArchetypeCount() {
+    return archetypes.size();
+  }
+
+  private Archetype getOrCreateArchetype(final Set<Class<?>> componentClasses) {
+    Archetype archetype = archetypes.get(componentClasses);
+    if (archetype == null) {
+      archetype = new Archetype(componentClasses);
+      archetypes.put(archetype.getComponentClasses(), archetype);
+      for (final Map.Entry<Node, List<Archetype>> entry : nodeArchetypes.entrySet()) {
+        if (archetype.matches(entry.getKey())) {
+          entry.getValue().add(archetype);
+        }
+      }
+    }
+    return archetype;
+  }
+
+  /**
+   * Moves an entity with all its components, which the target archetype has columns for.
+   *
+   * @return row of the entity in target archetype
+   */
+  private int move(final int slot, final Archetype source, final Archetype target) {
+    final int sourceRow = rowsBySlot[slot];
+    final int targetRow = target.addRow(slot);
+    for (int column = 0; column < source.columnCount(); column++) {
+      final int targetColumn = target.getColumn(source.getColumnClass(column));
+      if (targetColumn != -1) {
+        target.set(targetRow, targetColumn, source.get(sourceRow, column));
+      }
+    }
+    removeRow(source, sourceRow);
+    archetypesBySlot[slot] = target;
+    rowsBySlot[slot] = targetRow;
+    return targetRow;
+  }
+
+  private void removeRow(final Archetype archetype, final int row) {
+    final int movedSlot = archetype.removeRow(row);
+    if (movedSlot != -1) {
+      rowsBySlot[movedSlot] = row;
+    }
+  }
+
+  /**
+   * Walks rows of matching archetypes one after another.
+   */
+  private static final class ArchetypeNodeCursor implements NodeCursor {
+
+    private final List<Archetype> archetypes;
+    private int archetypeIndex = 0;
+    private Archetype current = null;
+    private int row = -1;
+
+    private ArchetypeNodeCursor(final List<Archetype> archetypes) {
+      this.archetypes = Objects.requireNonNull(archetypes);
+    }
+
+    @Override
+    public void reset() {
+      archetypeIndex = 0;
+      current = null;
+      row = -1;
+    }
+
+    @Override
+    public boolean next() {
+      row++;
+      while (current == null || row >= current.size()) {
+        if (archetypeIndex >= archetypes.size()) {
+          current = null;
+          return false;
+        }
+        current = archetypes.get(archetypeIndex++);
+        row = 0;
+      }
+      return true;
+    }
+
+    @Override
+    public int getSlot() {
+      return current.getSlot(row);
+    }
+
+    @Override
+    public Object getComponent(final Class<?> clazz) {
+      final int column = current.getColumn(clazz);
+      return column == -1 ? null : current.get(row, column);
+    }
+
+  }
+
+}
@@ -0,0 +1,147 @@
+package com.soze.klecs.engine;
+
+import java.util.*;
+
+/**
+ * Remembers in which tick entities were added and removed, and components were added, written or removed,
+ * so that only changes made since a given tick can be sent over the network.
+ * <p>
+ * Changes are stamped with the current tick. {@link #closeTick()} ends the current tick, changes made afterwards
+ * belong to the next one. Writes to components are not noticed by the engine and have to be marked with
+ * {@link ComponentContainer#markDirty(Object, Class)}.
+ * <p>
+ * Records of removed entities and components are kept until {@link #discardRemovalsUpTo(long)} is called,
+ * usually with the oldest tick acknowledged by all clients.
+ * Methods of this class are synchronized, because components can be marked dirty by systems updated in parallel.
+ *
+ * @see Engine#enableChangeTracking()
+ */
+public final class ChangeTracker {
+
+  private long tick = 1;
+
+  /**
+   * Changes of each entity which has components or was added to the engine, in the order entities were first seen.
+   */
+  private final Map<Object, EntityChanges> entities = new LinkedHashMap<>();
+
+  ChangeTracker() {
+
+  }
+
+  /**
+   * Returns the tick in which changes are currently made.
+   */
+  public synchronized long getTick() {
+    return tick;
+  }
+
+  /**
+   * Ends the current tick and returns it. Changes made from now on belong to the next tick.
+   */
+  public synchronized long closeTick() {
+    return tick++;
+  }
+
+  synchronized void entityAdded(final Object entityId) {
+    final EntityChanges changes = getChanges(entityId);
+    changes.addedTick = tick;
+    changes.removedTick = 0;
+  }
+
+  synchronized void entityRemoved(final Object entityId) {
+    final EntityChanges changes = getChanges(entityId);
+    changes.removedTick = tick;
+    changes.componentTicks.clear();
+  }
+
+  synchronized void componentChanged(final Object entityId, final Class<?> clazz) {
+    getChanges(entityId).componentTicks.put(clazz, tick);
+  }
+
+  synchronized void componentRemoved(final Object entityId, final Class<?> clazz) {
+    //removals are stored as negative ticks
+    getChanges(entityId).componentTicks.put(clazz, -tick);
+  }
+
+  private EntityChanges getChanges(final Object entityId) {
+    return entities.computeIfAbsent(entityId, (key) -> new EntityChanges());
+  }
+
+  /**
+   * Passes changes made after tick since, up to and including tick until, to the visitor.
+   * An entity added in that range is passed as added, without its component changes.
+   * An entity removed in that range is passed as removed, even if it was also added in that range,
+   * because a receiver may have applied an earlier list of changes, which added it.
+   */
+  public synchronized void forEachChange(final long since, final long until, final ChangeVisitor visitor) {
+    for (final Map.Entry<Object, EntityChanges> entry : entities.entrySet()) {
+      final Object entityId = entry.getKey();
+      final EntityChanges changes = entry.getValue();
+      final boolean added = changes.addedTick > since && changes.addedTick <= until;
+      final boolean removed = changes.removedTick > since && changes.removedTick <= until;
+      if (removed) {
+        visitor.entityRemoved(entityId);
+        continue;
+      }
+      if (changes.removedTick != 0 || changes.addedTick == 0 || changes.addedTick > until) {
+        //removed before since, or not in the engine within the range
+        continue;
+      }
+      if (added) {
+        visitor.entityAdded(entityId);
+        continue;
+      }
+      for (final Map.Entry<Class<?>, Long> component : changes.componentTicks.entrySet()) {
+        final long componentTick = Math.abs(component.getValue());
+        if (componentTick > since && componentTick <= until) {
+          if (component.getValue() < 0) {
+            visitor.componentRemoved(entityId, component.getKey());
+          } else {
+            visitor.componentChanged(entityId, component.getKey());
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Forgets removed entities and components which were removed in given tick or earlier.
+   * Changes since a tick older than that can no longer be listed.
+   */
+  public synchronized void discardRemovalsUpTo(final long tick) {
+    final Iterator<EntityChanges> iterator = entities.values().iterator();
+    while (iterator.hasNext()) {
+      final EntityChanges changes = iterator.next();
+      if (changes.removedTick != 0 && changes.removedTick <= tick) {
+        iterator.remove();
+        continue;
+      }
+      changes.componentTicks.values().removeIf(componentTick -> componentTick < 0 && -componentTick <= tick);
+    }
+  }
+
+  /**
+   * Receives changes listed by {@link #forEachChange}.
+   */
+  public interface ChangeVisitor {
+
+    void entityAdded(Object entityId);
+
+    void entityRemoved(Object entityId);
+
+    void componentChanged(Object entityId, Class<?> clazz);
+
+    void componentRemoved(Object entityId, Class<?> clazz);
+
+  }
+
+  private static final class EntityChanges {
+
+    private long addedTick = 0;
+    private long removedTick = 0;
+    private final Map<Class<?>, Long> componentTicks = new HashMap<>();
+
+  }
+
+}
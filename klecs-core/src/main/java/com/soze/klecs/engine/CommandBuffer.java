@@ -0,0 +1,122 @@
+package com.soze.klecs.engine;
+
+import com.soze.klecs.entity.Entity;
+
+import java.util.*;
+
+/**
+ * Records structural changes (added and removed entities, components and primitive layouts) to be played back
+ * later, at once. While the engine is updating, all such changes made through the engine and entities are recorded
+ * into a command buffer and played back when all systems are finished, so node members and rows of primitive columns
+ * do not change in the middle of a tick.
+ * <p>
+ * Component changes are grouped by entity, and for each component class (or layout) only the last change is kept,
+ * so each entity is updated once per playback, no matter how many changes were made to it.
+ * Component changes are played back first, then entities are added and finally removed.
+ * <p>
+ * A command buffer can also be filled manually, for example on another thread,
+ * and played back with {@link Engine#playback(CommandBuffer)}. This class is not thread-safe.
+ */
+public final class CommandBuffer {
+
+  /**
+   * Marks a component class which was removed.
+   */
+  static final Object REMOVED = new Object();
+
+  final Map<Object, Entity> addedEntities = new LinkedHashMap<>();
+  final Set<Object> removedEntityIds = new LinkedHashSet<>();
+
+  /**
+   * For each changed entity, the last change of each component class: added component or {@link #REMOVED}.
+   */
+  final Map<Object, Map<Class<?>, Object>> componentChanges = new LinkedHashMap<>();
+
+  /**
+   * For each changed entity, the last change of each primitive layout: true if it was added, false if removed.
+   */
+  final Map<Object, Map<PrimitiveLayout, Boolean>> layoutChanges = new LinkedHashMap<>();
+
+  public CommandBuffer() {
+
+  }
+
+  /**
+   * @throws IllegalStateException if an entity with the same id was already recorded
+   */
+  public void addEntity(final Entity entity) {
+    Objects.requireNonNull(entity);
+    if (addedEntities.containsKey(entity.getId())) {
+      throw new IllegalStateException("Entity with id: " + entity.getId() + " already added.");
+    }
+    addedEntities.put(entity.getId(), entity);
+  }
+
+  public void removeEntity(final Object entityId) {
+    removedEntityIds.add(Objects.requireNonNull(entityId));
+  }
+
+  public void addComponent(final Object entityId, final Object component) {
+    Objects.requireNonNull(component);
+    getComponentChanges(entityId).put(component.getClass(), component);
+  }
+
+  public void removeComponent(final Object entityId, final Class<?> clazz) {
+    Objects.requireNonNull(clazz);
+    getComponentChanges(entityId).put(clazz, REMOVED);
+  }
+
+  public void addLayout(final Object entityId, final PrimitiveLayout layout) {
+    Objects.requireNonNull(layout);
+    getLayoutChanges(entityId).put(layout, true);
+  }
+
+  public void removeLayout(final Object entityId, final PrimitiveLayout layout) {
+    Objects.requireNonNull(layout);
+    getLayoutChanges(entityId).put(layout, false);
+  }
+
+  public boolean isEmpty() {
+    return addedEntities.isEmpty() && removedEntityIds.isEmpty() && componentChanges.isEmpty() && layoutChanges.isEmpty();
+  }
+
+  public void clear() {
+    addedEntities.clear();
+    removedEntityIds.clear();
+    componentChanges.clear();
+    layoutChanges.clear();
+  }
+
+  /**
+   * Appends all changes from other to this one, as if they were recorded after changes already recorded.
+   * Nothing is appended if an exception is thrown.
+   *
+   * @throws IllegalStateException if both added an entity with the same id
+   */
+  void append(final CommandBuffer other) {
+    for (final Object id : other.addedEntities.keySet()) {
+      if (addedEntities.containsKey(id)) {
+        throw new IllegalStateException("Entity with id: " + id + " already added.");
+      }
+    }
+    addedEntities.putAll(other.addedEntities);
+    removedEntityIds.addAll(other.removedEntityIds);
+    for (final Map.Entry<Object, Map<Class<?>, Object>> entry : other.componentChanges.entrySet()) {
+      getComponentChanges(entry.getKey()).putAll(entry.getValue());
+    }
+    for (final Map.Entry<Object, Map<PrimitiveLayout, Boolean>> entry : other.layoutChanges.entrySet()) {
+      getLayoutChanges(entry.getKey()).putAll(entry.getValue());
+    }
+  }
+
+  private Map<Class<?>, Object> getComponentChanges(final Object entityId) {
+    Objects.requireNonNull(entityId);
+    return componentChanges.computeIfAbsent(entityId, (key) -> new LinkedHashMap<>());
+  }
+
+  private Map<PrimitiveLayout, Boolean> getLayoutChanges(final Object entityId) {
+    Objects.requireNonNull(entityId);
+    return layoutChanges.computeIfAbsent(entityId, (key) -> new LinkedHashMap<>());
+  }
+
+}
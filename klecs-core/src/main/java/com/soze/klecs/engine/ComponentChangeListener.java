@@ -0,0 +1,23 @@
+package com.soze.klecs.engine;
+
+/**
+ * Notified by a {@link ComponentContainer} when components are added, removed or marked dirty, after the change was made.
+ */
+interface ComponentChangeListener {
+
+  /**
+   * Returns true if the listener wants to know about components of given class,
+   * otherwise the container does not look up removed components for it.
+   */
+  boolean isListening(Class<?> clazz);
+
+  void componentAdded(Object entityId, Object component);
+
+  void componentRemoved(Object entityId, Object component);
+
+  /**
+   * Called when a component is marked dirty, possibly by many threads at once.
+   */
+  void componentWritten(Object entityId, Class<?> clazz);
+
+}
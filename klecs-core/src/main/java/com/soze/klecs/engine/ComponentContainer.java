@@ -1,82 +1,387 @@
 package com.soze.klecs.engine;
 
+import com.soze.klecs.entity.EntityTemplate;
+import com.soze.klecs.entity.IntIdAllocator;
 import com.soze.klecs.node.Node;
 
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
 
 /**
  * A container of components for one engine.
  * The goal is to keep all components for all entities in one place.
  * This allows for efficiently getting components, nodes of components or entities by components.
+ * <p>
+ * Each entity which has components is assigned a dense slot, components themselves are kept
+ * in a {@link ComponentStorage} indexed by these slots.
+ * Entity ids of any type are mapped to slots through a hash map, unless the container was created
+ * with an {@link IntIdAllocator}, in which case the slot is read directly from the id.
  */
 public class ComponentContainer {
 
-  private final Map<Object, EntityComponentContainer> components = new HashMap<>();
-  private final Map<Object, Map<Node, EntityComponentContainer>> nodeCache = new HashMap<>();
+  private final ComponentStorage storage;
+  private final EntitySlots slots;
+  /**
+   * Classes of components of each entity, indexed by slot. Matching an entity against a node
+   * compares the signature with the node's mask.
+   */
+  private ComponentMask[] signatures = new ComponentMask[16];
+
+  /**
+   * Values of primitive layouts, indexed by layout id. Null for layouts not used by this container yet.
+   * Columns are read without locking, so the array is never modified, a copy is published instead.
+   */
+  private volatile LayoutColumns[] columnsByLayoutId = new LayoutColumns[0];
+
+  /**
+   * Nodes registered in the storage. Nodes can be registered from many threads while the engine
+   * runs work in parallel, so registration is guarded by this set. Equal nodes are registered once.
+   */
+  private final Set<Node> registeredNodes = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Changes recorded instead of being applied, on threads which run systems.
+   */
+  private final ThreadLocal<CommandBuffer> commandBuffer = new ThreadLocal<>();
+
+  /**
+   * Reused while playing back changes of one entity.
+   */
+  private final List<Object> addedComponents = new ArrayList<>();
+  private final List<Class<?>> removedClasses = new ArrayList<>();
+  private final List<Object> removedComponents = new ArrayList<>();
+
+  /**
+   * Notified about added, removed and dirty components, null if nobody listens.
+   */
+  private ComponentChangeListener changeListener = null;
+
+  /**
+   * Records ticks of changes for replication, null unless change tracking is enabled.
+   */
+  private ChangeTracker changeTracker = null;
 
   public ComponentContainer() {
+    this(new HashComponentStorage());
+  }
 
+  public ComponentContainer(final ComponentStorage storage) {
+    this.storage = Objects.requireNonNull(storage);
+    this.slots = new HashEntitySlots();
   }
 
+  /**
+   * Creates a container for entities with ids handed out by given allocator.
+   * Ids are released to the allocator when an entity's components are removed.
+   */
+  public ComponentContainer(final ComponentStorage storage, final IntIdAllocator idAllocator) {
+    this.storage = Objects.requireNonNull(storage);
+    this.slots = new IntIdEntitySlots(idAllocator);
+  }
+
+  /**
+   * Adds a component to an entity.
+   * While the engine is updating, the component is recorded in a {@link CommandBuffer} and added when all systems
+   * are finished, in which case this returns whether the entity did not have a component of the same class yet.
+   *
+   * @return true if there was no component with the same class as this one added already, false otherwise.
+   */
   public boolean addComponent(final Object entityId, final Object component) {
-    final EntityComponentContainer entityComponents = getEntityComponents(entityId);
-    return entityComponents.addComponent(component) == null;
+    Objects.requireNonNull(component);
+    final CommandBuffer buffer = commandBuffer.get();
+    if (buffer != null) {
+      buffer.addComponent(entityId, component);
+      return getComponent(entityId, component.getClass()) == null;
+    }
+    return addComponentNow(entityId, component);
+  }
+
+  private boolean addComponentNow(final Object entityId, final Object component) {
+    final int slot = getOrAcquireSlot(entityId);
+    final boolean added = storage.addComponent(slot, component) == null;
+    if (added) {
+      signatures[slot].set(ComponentTypeRegistry.getTypeId(component.getClass()));
+    }
+    if (changeTracker != null) {
+      changeTracker.componentChanged(entityId, component.getClass());
+    }
+    if (changeListener != null && changeListener.isListening(component.getClass())) {
+      changeListener.componentAdded(entityId, component);
+    }
+    return added;
   }
 
   public <T> T getComponent(final Object entityId, final Class<T> clazz) {
-    final EntityComponentContainer entityComponents = getEntityComponents(entityId);
-    return (T) entityComponents.getComponent(clazz);
+    Objects.requireNonNull(clazz);
+    final int slot = slots.getSlot(entityId);
+    return slot == -1 ? null : (T) storage.getComponent(slot, clazz);
   }
 
   public <T> T getComponentByParent(final Object entityId, final Class<T> clazz) {
-    final EntityComponentContainer entityComponents = getEntityComponents(entityId);
-    return (T) entityComponents.getComponentByParent(clazz);
+    Objects.requireNonNull(clazz);
+    final int slot = slots.getSlot(entityId);
+    return slot == -1 ? null : storage.getComponentByParent(slot, clazz);
   }
 
+  /**
+   * Returns components of given entity which belong to the node, including its any and optional components
+   * the entity has. If the entity does not match the node, returns an empty container.
+   * The returned container is created on every call, modifying it does not affect the entity.
+   */
   public EntityComponentContainer getNodeComponents(final Object entityId, final Node node) {
-    final EntityComponentContainer entityComponents = getEntityComponents(entityId);
+    final EntityComponentContainer components = new EntityComponentContainer();
+    if (!matches(entityId, node)) {
+      return components;
+    }
 
-    final Map<Node, EntityComponentContainer> cacheElement = nodeCache.computeIfAbsent(entityId, (key) -> new HashMap<>());
+    final int slot = slots.getSlot(entityId);
+    for (final Class<?> clazz : node.getComponentClasses()) {
+      components.addComponent(storage.getComponent(slot, clazz));
+    }
+    addPresentComponents(slot, node.getAnyClasses(), components);
+    addPresentComponents(slot, node.getOptionalClasses(), components);
+    return components;
+  }
 
-    final EntityComponentContainer components = cacheElement.computeIfAbsent(node, (key) -> {
-      EntityComponentContainer newComponents = new EntityComponentContainer();
+  private void addPresentComponents(final int slot, final Set<Class<?>> classes,
+                                    final EntityComponentContainer components) {
+    for (final Class<?> clazz : classes) {
+      final Object component = storage.getComponent(slot, clazz);
+      if (component != null) {
+        components.addComponent(component);
+      }
+    }
+  }
 
-      boolean hasAllNodeComponents = true;
-      for (Class<?> clazz : node.getComponentClasses()) {
-        final Optional<Object> component = Optional.ofNullable(entityComponents.getComponent(clazz));
-        if (!component.isPresent()) {
-          hasAllNodeComponents = false;
-          break;
-        }
-        newComponents.addComponent(component.get());
+  /**
+   * Returns true if given entity matches the node. This compares the entity's signature
+   * with the node's masks and does not allocate.
+   */
+  public boolean matches(final Object entityId, final Node node) {
+    Objects.requireNonNull(node);
+    final int slot = slots.getSlot(entityId);
+    return slot != -1 && node.matches(signatures[slot]);
+  }
+
+  /**
+   * Removes a component from an entity.
+   * While the engine is updating, the removal is recorded in a {@link CommandBuffer}
+   * and the component is removed when all systems are finished.
+   */
+  public void removeComponent(final Object entityId, final Class<?> clazz) {
+    Objects.requireNonNull(clazz);
+    final CommandBuffer buffer = commandBuffer.get();
+    if (buffer != null) {
+      buffer.removeComponent(entityId, clazz);
+      return;
+    }
+    removeComponentNow(entityId, clazz);
+  }
+
+  private void removeComponentNow(final Object entityId, final Class<?> clazz) {
+    final int slot = slots.getSlot(entityId);
+    if (slot == -1) {
+      return;
+    }
+    final Object removed = storage.removeComponent(slot, clazz);
+    if (removed != null) {
+      signatures[slot].clear(ComponentTypeRegistry.getTypeId(clazz));
+      if (changeTracker != null) {
+        changeTracker.componentRemoved(entityId, clazz);
+      }
+      if (changeListener != null && changeListener.isListening(clazz)) {
+        changeListener.componentRemoved(entityId, removed);
       }
+    }
+  }
 
-      if (!hasAllNodeComponents) {
-        newComponents = new EntityComponentContainer();
+  /**
+   * Gives an entity a primitive layout, with all values set to zero. Adding a layout the entity already has
+   * does nothing. While the engine is updating, the layout is added when all systems are finished.
+   */
+  public void addLayout(final Object entityId, final PrimitiveLayout layout) {
+    Objects.requireNonNull(layout);
+    final CommandBuffer buffer = commandBuffer.get();
+    if (buffer != null) {
+      buffer.addLayout(entityId, layout);
+      return;
+    }
+    getLayoutColumns(layout).addRow(getOrAcquireSlot(entityId));
+  }
+
+  /**
+   * Removes a primitive layout and its values from an entity.
+   * While the engine is updating, the layout is removed when all systems are finished.
+   */
+  public void removeLayout(final Object entityId, final PrimitiveLayout layout) {
+    Objects.requireNonNull(layout);
+    final CommandBuffer buffer = commandBuffer.get();
+    if (buffer != null) {
+      buffer.removeLayout(entityId, layout);
+      return;
+    }
+    removeLayoutNow(entityId, layout);
+  }
+
+  private void removeLayoutNow(final Object entityId, final PrimitiveLayout layout) {
+    final int slot = slots.getSlot(entityId);
+    final LayoutColumns columns = findColumns(layout);
+    if (slot != -1 && columns != null) {
+      columns.removeRow(slot);
+    }
+  }
+
+  public boolean hasLayout(final Object entityId, final PrimitiveLayout layout) {
+    final int slot = slots.getSlot(entityId);
+    final LayoutColumns columns = findColumns(layout);
+    return slot != -1 && columns != null && columns.getRow(slot) != -1;
+  }
+
+  /**
+   * Returns id of the entity with given slot, for example a slot returned by {@link LayoutColumns#getSlot(int)}.
+   */
+  public Object getEntityId(final int slot) {
+    return slots.getId(slot);
+  }
+
+  /**
+   * Returns values of given heap layout for all entities of this container.
+   *
+   * @throws IllegalArgumentException if the layout is off-heap
+   */
+  public PrimitiveColumns getColumns(final PrimitiveLayout layout) {
+    if (layout.isOffHeap()) {
+      throw new IllegalArgumentException(layout + " is off-heap, use getOffHeapColumns");
+    }
+    return (PrimitiveColumns) getLayoutColumns(layout);
+  }
+
+  /**
+   * Returns values of given off-heap layout for all entities of this container.
+   *
+   * @throws IllegalArgumentException if the layout is not off-heap
+   */
+  public OffHeapColumns getOffHeapColumns(final PrimitiveLayout layout) {
+    if (!layout.isOffHeap()) {
+      throw new IllegalArgumentException(layout + " is not off-heap, use getColumns");
+    }
+    return (OffHeapColumns) getLayoutColumns(layout);
+  }
+
+  /**
+   * Returns values of given layout for all entities of this container, wherever they are stored.
+   */
+  public LayoutColumns getLayoutColumns(final PrimitiveLayout layout) {
+    final LayoutColumns columns = findColumns(layout);
+    return columns != null ? columns : createColumns(layout);
+  }
+
+  /**
+   * @return values of given layout, null if this container did not use the layout yet
+   */
+  private LayoutColumns findColumns(final PrimitiveLayout layout) {
+    final int layoutId = layout.getId();
+    final LayoutColumns[] columns = columnsByLayoutId;
+    return layoutId < columns.length ? columns[layoutId] : null;
+  }
+
+  private synchronized LayoutColumns createColumns(final PrimitiveLayout layout) {
+    final int layoutId = layout.getId();
+    final LayoutColumns[] columns = columnsByLayoutId;
+    if (layoutId < columns.length && columns[layoutId] != null) {
+      return columns[layoutId];
+    }
+    final LayoutColumns[] copy = Arrays.copyOf(columns, Math.max(columns.length, layoutId + 1));
+    copy[layoutId] = layout.isOffHeap() ? new OffHeapColumns(layout) : new PrimitiveColumns(layout);
+    columnsByLayoutId = copy;
+    return copy[layoutId];
+  }
+
+  /**
+   * Frees memory of all off-heap layouts. Values of layouts can't be used afterwards.
+   */
+  public synchronized void dispose() {
+    for (final LayoutColumns columns : columnsByLayoutId) {
+      if (columns != null) {
+        columns.dispose();
       }
+    }
+    columnsByLayoutId = new LayoutColumns[0];
+  }
+
+  /**
+   * @throws IllegalStateException if the entity does not have the field's layout
+   */
+  public float getFloat(final Object entityId, final PrimitiveField field) {
+    final LayoutColumns columns = getExistingColumns(entityId, field.getLayout());
+    return columns.getFloat(getRow(columns, entityId), field);
+  }
 
-      return newComponents;
-    });
+  /**
+   * @throws IllegalStateException if the entity does not have the field's layout
+   */
+  public void setFloat(final Object entityId, final PrimitiveField field, final float value) {
+    final LayoutColumns columns = getExistingColumns(entityId, field.getLayout());
+    columns.setFloat(getRow(columns, entityId), field, value);
+  }
 
-    return components;
+  /**
+   * @throws IllegalStateException if the entity does not have the field's layout
+   */
+  public int getInt(final Object entityId, final PrimitiveField field) {
+    final LayoutColumns columns = getExistingColumns(entityId, field.getLayout());
+    return columns.getInt(getRow(columns, entityId), field);
   }
 
   /**
-   * Removes a component from an entity.
-   * TODO this method will only queue a component removal, to be applied on engine update.
+   * @throws IllegalStateException if the entity does not have the field's layout
    */
-  public void removeComponent(final Object entityId, final Class<?> clazz) {
-    final EntityComponentContainer entityComponents = getEntityComponents(entityId);
-    entityComponents.removeComponent(clazz);
-    nodeCache.remove(entityId);
+  public void setInt(final Object entityId, final PrimitiveField field, final int value) {
+    final LayoutColumns columns = getExistingColumns(entityId, field.getLayout());
+    columns.setInt(getRow(columns, entityId), field, value);
+  }
+
+  /**
+   * Returns values of given layout without creating them, as no entity can have a layout this container never used.
+   */
+  private LayoutColumns getExistingColumns(final Object entityId, final PrimitiveLayout layout) {
+    final LayoutColumns columns = findColumns(layout);
+    if (columns == null) {
+      throw new IllegalStateException("Entity with id: " + entityId + " does not have " + layout);
+    }
+    return columns;
+  }
+
+  private int getRow(final LayoutColumns columns, final Object entityId) {
+    final int slot = slots.getSlot(entityId);
+    final int row = slot == -1 ? -1 : columns.getRow(slot);
+    if (row == -1) {
+      throw new IllegalStateException("Entity with id: " + entityId + " does not have " + columns.getLayout());
+    }
+    return row;
   }
 
   /**
-   * Returns given entity's components. The container is created if it was absent.
+   * Returns a copy of given entity's components.
+   * Adding or removing components to/from the returned container does not affect the entity.
    */
   public EntityComponentContainer getEntityComponents(final Object entityId) {
-    return components.computeIfAbsent(entityId, (key) -> new EntityComponentContainer());
+    final EntityComponentContainer entityComponents = new EntityComponentContainer();
+    for (final Object component : getAllComponents(entityId)) {
+      entityComponents.addComponent(component);
+    }
+    return entityComponents;
+  }
+
+  /**
+   * Returns all components of given entity. The returned collection is a copy.
+   */
+  public Collection<Object> getAllComponents(final Object entityId) {
+    final int slot = slots.getSlot(entityId);
+    return slot == -1 ? new ArrayList<>() : storage.getAllComponents(slot);
   }
 
   /**
@@ -85,21 +390,337 @@ public class ComponentContainer {
    * @param entityId
    */
   protected void removeEntityComponents(final Object entityId) {
-    components.remove(entityId);
-    nodeCache.remove(entityId);
+    final int slot = slots.releaseSlot(entityId);
+    if (slot != -1) {
+      storage.removeEntity(slot);
+      signatures[slot].clearAll();
+      for (final LayoutColumns columns : columnsByLayoutId) {
+        if (columns != null) {
+          columns.removeRow(slot);
+        }
+      }
+    }
+  }
+
+  /**
+   * Registers a node in the index of node members. From now on, membership of this node is
+   * updated whenever components are added or removed, instead of being computed on every query.
+   * Nodes are registered automatically the first time they are queried, but registering them up front
+   * moves the initial scan of all entities out of the game loop. Every registered node makes adding and removing
+   * components of its classes a bit slower, so unregister nodes which are no longer queried.
+   */
+  public void registerNode(final Node node) {
+    Objects.requireNonNull(node);
+    if (registeredNodes.contains(node)) {
+      return;
+    }
+    synchronized (registeredNodes) {
+      if (!registeredNodes.contains(node)) {
+        storage.registerNode(node);
+        registeredNodes.add(node);
+      }
+    }
+  }
+
+  /**
+   * Stops indexing members of given node, or of the registered node equal to it.
+   * The next query of the node registers it again.
+   */
+  public void unregisterNode(final Node node) {
+    Objects.requireNonNull(node);
+    synchronized (registeredNodes) {
+      if (registeredNodes.remove(node)) {
+        storage.unregisterNode(node);
+      }
+    }
   }
 
   /**
    * Returns a list of entity ids which contains all components included in this node.
+   * The first query for a node registers it (see {@link #registerNode(Node)}),
+   * subsequent queries cost O(matching entities).
    */
   public List<?> getEntitiesByNode(final Node node) {
-    Objects.requireNonNull(node);
+    final List<Object> ids = new ArrayList<>();
+    forEachEntity(node, ids::add);
+    return ids;
+  }
+
+  /**
+   * Passes ids of all entities matching given node to the consumer.
+   * Components must not be added or removed by the consumer.
+   */
+  void forEachEntity(final Node node, final Consumer<Object> consumer) {
+    registerNode(node);
+    storage.forEachEntity(node, slot -> consumer.accept(slots.getId(slot)));
+  }
 
-    return components
-             .keySet()
-             .stream()
-             .filter(id -> !getNodeComponents(id, node).isEmpty())
-             .collect(Collectors.toList());
+  /**
+   * Passes slots of all entities matching given node to the consumer.
+   * Components must not be added or removed by the consumer.
+   */
+  void forEachSlot(final Node node, final IntConsumer consumer) {
+    registerNode(node);
+    storage.forEachEntity(node, consumer);
+  }
+
+  /**
+   * Creates a cursor over entities matching given node, registering the node if needed.
+   */
+  NodeCursor createCursor(final Node node) {
+    registerNode(node);
+    return storage.createCursor(node);
+  }
+
+  /**
+   * @return buffer recording changes on the current thread, null if changes are applied immediately
+   */
+  CommandBuffer getCommandBuffer() {
+    return commandBuffer.get();
+  }
+
+  /**
+   * Makes the current thread record changes into given buffer instead of applying them,
+   * until this method is called with null.
+   */
+  void setCommandBuffer(final CommandBuffer buffer) {
+    if (buffer == null) {
+      commandBuffer.remove();
+    } else {
+      commandBuffer.set(buffer);
+    }
+  }
+
+  /**
+   * Applies component and layout changes recorded in given buffer. All component changes of one entity
+   * are passed to the storage at once.
+   */
+  void applyComponentChanges(final CommandBuffer buffer) {
+    for (final Map.Entry<Object, Map<Class<?>, Object>> entry : buffer.componentChanges.entrySet()) {
+      final Object entityId = entry.getKey();
+      addedComponents.clear();
+      removedClasses.clear();
+      for (final Map.Entry<Class<?>, Object> change : entry.getValue().entrySet()) {
+        if (change.getValue() == CommandBuffer.REMOVED) {
+          removedClasses.add(change.getKey());
+        } else {
+          addedComponents.add(change.getValue());
+        }
+      }
+
+      final int slot = addedComponents.isEmpty() ? slots.getSlot(entityId) : getOrAcquireSlot(entityId);
+      if (slot != -1) {
+        if (changeListener != null) {
+          for (final Class<?> clazz : removedClasses) {
+            final Object removed = changeListener.isListening(clazz) ? storage.getComponent(slot, clazz) : null;
+            if (removed != null) {
+              removedComponents.add(removed);
+            }
+          }
+        }
+        storage.changeComponents(slot, addedComponents, removedClasses);
+        final ComponentMask signature = signatures[slot];
+        for (final Class<?> clazz : removedClasses) {
+          signature.clear(ComponentTypeRegistry.getTypeId(clazz));
+        }
+        for (final Object component : addedComponents) {
+          signature.set(ComponentTypeRegistry.getTypeId(component.getClass()));
+        }
+        if (changeTracker != null) {
+          trackChanges(entityId);
+        }
+        if (changeListener != null) {
+          notifyChangeListener(entityId);
+        }
+      }
+    }
+    addedComponents.clear();
+    removedClasses.clear();
+
+    for (final Map.Entry<Object, Map<PrimitiveLayout, Boolean>> entry : buffer.layoutChanges.entrySet()) {
+      for (final Map.Entry<PrimitiveLayout, Boolean> change : entry.getValue().entrySet()) {
+        if (change.getValue()) {
+          getLayoutColumns(change.getKey()).addRow(getOrAcquireSlot(entry.getKey()));
+        } else {
+          removeLayoutNow(entry.getKey(), change.getKey());
+        }
+      }
+    }
+  }
+
+  /**
+   * Gives entities without components their first components. Components are created column by column,
+   * the function of a column is called with the index of each entity. Then each entity gets all of its
+   * components in one change, so a storage which moves entities between layouts moves each of them once.
+   * The change tracker and the change listener are notified like when the components are added one by one.
+   */
+  void spawnComponents(final Object[] entityIds, final IntFunction<?>[] columns) {
+    final Object[][] components = new Object[columns.length][];
+    for (int column = 0; column < columns.length; column++) {
+      final Object[] values = new Object[entityIds.length];
+      for (int i = 0; i < entityIds.length; i++) {
+        values[i] = Objects.requireNonNull(columns[column].apply(i));
+      }
+      components[column] = values;
+    }
+
+    final int[] typeIds = new int[columns.length];
+    final Class<?>[] classes = new Class<?>[columns.length];
+    for (int i = 0; i < entityIds.length; i++) {
+      final int slot = getOrAcquireSlot(entityIds[i]);
+      final ComponentMask signature = signatures[slot];
+      addedComponents.clear();
+      for (int column = 0; column < columns.length; column++) {
+        final Object component = components[column][i];
+        //columns usually hold components of one class, so the type id is looked up once per column
+        if (component.getClass() != classes[column]) {
+          classes[column] = component.getClass();
+          typeIds[column] = ComponentTypeRegistry.getTypeId(classes[column]);
+        }
+        addedComponents.add(component);
+        signature.set(typeIds[column]);
+      }
+      applySpawnedComponents(entityIds[i], slot);
+    }
+    addedComponents.clear();
+  }
+
+  /**
+   * Gives entities without components their first components, components[i] holds all components of
+   * the entity entityIds[i]. Like {@link #spawnComponents(Object[], IntFunction[])}, each entity gets
+   * its components in one change, but entities can have different sets of components.
+   */
+  void spawnComponents(final Object[] entityIds, final Object[][] components) {
+    for (int i = 0; i < entityIds.length; i++) {
+      final int slot = getOrAcquireSlot(entityIds[i]);
+      final ComponentMask signature = signatures[slot];
+      addedComponents.clear();
+      for (final Object component : components[i]) {
+        addedComponents.add(Objects.requireNonNull(component));
+        signature.set(ComponentTypeRegistry.getTypeId(component.getClass()));
+      }
+      applySpawnedComponents(entityIds[i], slot);
+    }
+    addedComponents.clear();
+  }
+
+  /**
+   * Gives entities without components the components of a template, like {@link #spawnComponents(Object[], IntFunction[])}.
+   * Each entity gets the template's signature at once, instead of it being built from classes of the components.
+   */
+  void spawnComponents(final Object[] entityIds, final EntityTemplate template) {
+    final Object[][] components = new Object[entityIds.length][];
+    for (int i = 0; i < entityIds.length; i++) {
+      final Object[] entityComponents = new Object[template.size()];
+      for (int component = 0; component < entityComponents.length; component++) {
+        entityComponents[component] = template.createComponent(component);
+      }
+      components[i] = entityComponents;
+    }
+
+    final ComponentMask templateSignature = template.getSignature();
+    for (int i = 0; i < entityIds.length; i++) {
+      final int slot = getOrAcquireSlot(entityIds[i]);
+      signatures[slot].setAll(templateSignature);
+      addedComponents.clear();
+      Collections.addAll(addedComponents, components[i]);
+      applySpawnedComponents(entityIds[i], slot);
+    }
+    addedComponents.clear();
+  }
+
+  private void applySpawnedComponents(final Object entityId, final int slot) {
+    storage.changeComponents(slot, addedComponents, removedClasses);
+    if (changeTracker != null) {
+      trackChanges(entityId);
+    }
+    if (changeListener != null) {
+      notifyChangeListener(entityId);
+    }
+  }
+
+  private void notifyChangeListener(final Object entityId) {
+    for (final Object component : removedComponents) {
+      changeListener.componentRemoved(entityId, component);
+    }
+    removedComponents.clear();
+    for (final Object component : addedComponents) {
+      if (changeListener.isListening(component.getClass())) {
+        changeListener.componentAdded(entityId, component);
+      }
+    }
+  }
+
+  private void trackChanges(final Object entityId) {
+    for (final Class<?> clazz : removedClasses) {
+      changeTracker.componentRemoved(entityId, clazz);
+    }
+    for (final Object component : addedComponents) {
+      changeTracker.componentChanged(entityId, component.getClass());
+    }
+  }
+
+  /**
+   * Marks a component of the entity as written in the current tick, so that it is replicated
+   * and reported as changed by reactive queries. Does nothing if the entity does not have a component of given class.
+   *
+   * @see ChangeTracker
+   * @see ReactiveQuery
+   */
+  public void markDirty(final Object entityId, final Class<?> clazz) {
+    Objects.requireNonNull(clazz);
+    final ComponentChangeListener listener = changeListener;
+    final boolean notifyListener = listener != null && listener.isListening(clazz);
+    if ((changeTracker == null && !notifyListener) || getComponent(entityId, clazz) == null) {
+      return;
+    }
+    if (changeTracker != null) {
+      changeTracker.componentChanged(entityId, clazz);
+    }
+    if (notifyListener) {
+      listener.componentWritten(entityId, clazz);
+    }
+  }
+
+  /**
+   * Returns the tracker of changes, null if change tracking is not enabled.
+   */
+  public ChangeTracker getChangeTracker() {
+    return changeTracker;
+  }
+
+  void setChangeTracker(final ChangeTracker changeTracker) {
+    this.changeTracker = changeTracker;
+  }
+
+  void setChangeListener(final ComponentChangeListener changeListener) {
+    this.changeListener = changeListener;
+  }
+
+  /**
+   * @return slot of given entity, -1 if it has none
+   */
+  int getSlot(final Object entityId) {
+    return slots.getSlot(entityId);
+  }
+
+  /**
+   * Returns slot of given entity, assigning it one if it has none.
+   */
+  int getOrAcquireSlot(final Object entityId) {
+    Objects.requireNonNull(entityId);
+    int slot = slots.getSlot(entityId);
+    if (slot == -1) {
+      slot = slots.acquireSlot(entityId);
+      storage.addEntity(slot);
+      if (slot >= signatures.length) {
+        signatures = Arrays.copyOf(signatures, Math.max(slot + 1, signatures.length * 2));
+      }
+      if (signatures[slot] == null) {
+        signatures[slot] = new ComponentMask();
+      }
+    }
+    return slot;
   }
 
 }
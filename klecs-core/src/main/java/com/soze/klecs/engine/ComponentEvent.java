@@ -0,0 +1,25 @@
+package com.soze.klecs.engine;
+
+import com.soze.klecs.entity.Entity;
+
+import java.util.Objects;
+
+/**
+ * Event about a component of an entity which is added to an engine.
+ *
+ * @see Engine#addComponentEventListener
+ */
+public class ComponentEvent extends EntityEvent {
+
+  private final Object component;
+
+  public ComponentEvent(final Entity entity, final Object component) {
+    super(entity);
+    this.component = Objects.requireNonNull(component);
+  }
+
+  public Object getComponent() {
+    return component;
+  }
+
+}
@@ -0,0 +1,130 @@
+package com.soze.klecs.engine;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * A set of component classes, stored as bits indexed by type ids from {@link ComponentTypeRegistry}.
+ * Each entity has a mask of classes of its components (its signature), and each {@link com.soze.klecs.node.Node}
+ * compiles its classes to a mask once, so checking whether an entity matches a node costs
+ * one AND per 64 component classes and does not allocate.
+ * <p>
+ * Masks can only be modified by the engine.
+ */
+public final class ComponentMask {
+
+  private static final long[] NO_WORDS = new long[0];
+
+  private long[] words = NO_WORDS;
+
+  ComponentMask() {
+
+  }
+
+  /**
+   * Creates a mask of given classes, assigning them type ids if needed.
+   */
+  public static ComponentMask of(final Collection<Class<?>> classes) {
+    final ComponentMask mask = new ComponentMask();
+    for (final Class<?> clazz : classes) {
+      mask.set(ComponentTypeRegistry.getTypeId(clazz));
+    }
+    return mask;
+  }
+
+  public boolean get(final int typeId) {
+    final int word = typeId >>> 6;
+    return word < words.length && (words[word] & (1L << typeId)) != 0;
+  }
+
+  /**
+   * Returns true if this mask has all bits of other mask set.
+   */
+  public boolean containsAll(final ComponentMask other) {
+    final long[] otherWords = other.words;
+    for (int i = 0; i < otherWords.length; i++) {
+      final long word = i < words.length ? words[i] : 0L;
+      if ((otherWords[i] & ~word) != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns true if this mask and other mask have at least one bit set in common.
+   */
+  public boolean intersects(final ComponentMask other) {
+    final long[] otherWords = other.words;
+    final int length = Math.min(words.length, otherWords.length);
+    for (int i = 0; i < length; i++) {
+      if ((words[i] & otherWords[i]) != 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the lowest type id set in both masks, -1 if the masks have no type id in common.
+   */
+  public int firstCommon(final ComponentMask other) {
+    final long[] otherWords = other.words;
+    final int length = Math.min(words.length, otherWords.length);
+    for (int i = 0; i < length; i++) {
+      final long common = words[i] & otherWords[i];
+      if (common != 0) {
+        return (i << 6) + Long.numberOfTrailingZeros(common);
+      }
+    }
+    return -1;
+  }
+
+  public boolean isEmpty() {
+    for (final long word : words) {
+      if (word != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  ComponentMask copy() {
+    final ComponentMask copy = new ComponentMask();
+    copy.words = words.length == 0 ? NO_WORDS : words.clone();
+    return copy;
+  }
+
+  void set(final int typeId) {
+    final int word = typeId >>> 6;
+    if (word >= words.length) {
+      words = Arrays.copyOf(words, word + 1);
+    }
+    words[word] |= 1L << typeId;
+  }
+
+  /**
+   * Sets all bits of other mask in this mask.
+   */
+  void setAll(final ComponentMask other) {
+    final long[] otherWords = other.words;
+    if (otherWords.length > words.length) {
+      words = Arrays.copyOf(words, otherWords.length);
+    }
+    for (int i = 0; i < otherWords.length; i++) {
+      words[i] |= otherWords[i];
+    }
+  }
+
+  void clear(final int typeId) {
+    final int word = typeId >>> 6;
+    if (word < words.length) {
+      words[word] &= ~(1L << typeId);
+    }
+  }
+
+  void clearAll() {
+    Arrays.fill(words, 0L);
+  }
+
+}
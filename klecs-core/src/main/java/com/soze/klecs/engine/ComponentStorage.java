@@ -0,0 +1,95 @@
+package com.soze.klecs.engine;
+
+import com.soze.klecs.node.Node;
+
+import java.util.Collection;
+import java.util.function.IntConsumer;
+
+/**
+ * Storage backend of a {@link ComponentContainer}.
+ * Entities are identified by slots, small non-negative integers assigned by the ComponentContainer.
+ * A slot is added with {@link #addEntity(int)} before any component is added to it
+ * and is not used again until {@link #removeEntity(int)} was called.
+ * <p>
+ * Implementations are responsible for answering node queries, so each of them
+ * can index node members in a way which suits its layout.
+ *
+ * @see HashComponentStorage
+ * @see ArchetypeComponentStorage
+ */
+public interface ComponentStorage {
+
+  void addEntity(int slot);
+
+  /**
+   * Removes the entity and all of its components.
+   */
+  void removeEntity(int slot);
+
+  /**
+   * Adds a component to the entity, replacing a component of the same class.
+   *
+   * @return previous component with the same class, null if there was none
+   */
+  Object addComponent(int slot, Object component);
+
+  /**
+   * @return removed component, null if the entity did not have a component of given class
+   */
+  Object removeComponent(int slot, Class<?> clazz);
+
+  /**
+   * Removes components of given classes from the entity, then adds given components, replacing components
+   * of the same class. Implementations which move entities between layouts override this to move the entity once.
+   */
+  default void changeComponents(final int slot, final Collection<Object> added, final Collection<Class<?>> removed) {
+    for (final Class<?> clazz : removed) {
+      removeComponent(slot, clazz);
+    }
+    for (final Object component : added) {
+      addComponent(slot, component);
+    }
+  }
+
+  /**
+   * @return component with exactly given class, null if the entity does not have it
+   */
+  Object getComponent(int slot, Class<?> clazz);
+
+  /**
+   * @return component which is an instance of given class, null if the entity does not have one
+   */
+  <T> T getComponentByParent(int slot, Class<T> clazz);
+
+  boolean hasComponent(int slot, Class<?> clazz);
+
+  /**
+   * Returns all components of the entity. The returned collection is a copy.
+   */
+  Collection<Object> getAllComponents(int slot);
+
+  /**
+   * Starts tracking entities matching given node. Registering a node twice has no effect.
+   * Registration of a node may happen while other threads query nodes registered before.
+   */
+  void registerNode(Node node);
+
+  /**
+   * Stops tracking entities matching given node. Unregistering a node which is not registered has no effect.
+   * Cursors created for the node must not be used afterwards.
+   */
+  void unregisterNode(Node node);
+
+  /**
+   * Passes slots of all entities matching given node to the consumer.
+   * The node has to be registered. Components must not be added or removed during this call.
+   */
+  void forEachEntity(Node node, IntConsumer consumer);
+
+  /**
+   * Creates a cursor over entities matching given node. The node has to be registered.
+   * The cursor reflects changes to the node's members made after it was created.
+   */
+  NodeCursor createCursor(Node node);
+
+}
@@ -0,0 +1,131 @@
+package com.soze.klecs.engine;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Assigns each component class a small, dense type id, used as an index into arrays of components
+ * and as a bit index in {@link ComponentMask}. Type ids are global, so masks of nodes can be computed once,
+ * independently of any engine. A class keeps its type id for the lifetime of the JVM.
+ * <p>
+ * Type ids are cached in a {@link ClassValue}, so looking up a type id of a class does not hash or lock.
+ * For each class used as a parent in lookups by parent, the registry also keeps a mask of type ids
+ * of its subclasses, so the assignability of each (class, parent) pair is reflected on only once.
+ */
+public final class ComponentTypeRegistry {
+
+  private static final ClassValue<Integer> TYPE_IDS = new ClassValue<Integer>() {
+    @Override
+    protected Integer computeValue(final Class<?> type) {
+      return register(type);
+    }
+  };
+
+  private static final ClassValue<SubtypeMask> SUBTYPES = new ClassValue<SubtypeMask>() {
+    @Override
+    protected SubtypeMask computeValue(final Class<?> type) {
+      return new SubtypeMask(type);
+    }
+  };
+
+  /**
+   * Type ids assigned so far. ClassValue may compute a value more than once, so this map decides which id wins.
+   */
+  private static final Map<Class<?>, Integer> ASSIGNED_TYPE_IDS = new HashMap<>();
+  private static Class<?>[] classes = new Class<?>[64];
+  private static volatile int typeCount = 0;
+
+  private ComponentTypeRegistry() {
+
+  }
+
+  /**
+   * Returns type id of given class, assigning it the next free id if it has none.
+   */
+  public static int getTypeId(final Class<?> clazz) {
+    Objects.requireNonNull(clazz);
+    return TYPE_IDS.get(clazz);
+  }
+
+  /**
+   * Returns class with given type id.
+   */
+  public static synchronized Class<?> getType(final int typeId) {
+    if (typeId < 0 || typeId >= typeCount) {
+      throw new IllegalArgumentException("Type id " + typeId + " was not assigned.");
+    }
+    return classes[typeId];
+  }
+
+  /**
+   * Returns the number of type ids assigned so far, all type ids are lower than this.
+   */
+  public static int getTypeCount() {
+    return typeCount;
+  }
+
+  /**
+   * Returns a mask of type ids of all registered classes which are assignable to given parent class,
+   * including the parent itself if it is registered. The returned mask must not be modified.
+   */
+  public static ComponentMask getSubtypeMask(final Class<?> parent) {
+    Objects.requireNonNull(parent);
+    return SUBTYPES.get(parent).get();
+  }
+
+  private static synchronized int register(final Class<?> clazz) {
+    Integer typeId = ASSIGNED_TYPE_IDS.get(clazz);
+    if (typeId == null) {
+      typeId = typeCount;
+      if (typeId == classes.length) {
+        classes = Arrays.copyOf(classes, typeId * 2);
+      }
+      classes[typeId] = clazz;
+      ASSIGNED_TYPE_IDS.put(clazz, typeId);
+      typeCount = typeId + 1;
+    }
+    return typeId;
+  }
+
+  /**
+   * Type ids of subclasses of one class. The mask is extended with types registered since it was last read,
+   * a new mask is published each time, so readers never see a mask being modified.
+   */
+  private static final class SubtypeMask {
+
+    private final Class<?> parent;
+    private volatile ComponentMask mask = new ComponentMask();
+    private volatile int checkedTypeCount = 0;
+
+    private SubtypeMask(final Class<?> parent) {
+      this.parent = parent;
+    }
+
+    private ComponentMask get() {
+      if (checkedTypeCount < typeCount) {
+        update();
+      }
+      return mask;
+    }
+
+    private void update() {
+      synchronized (ComponentTypeRegistry.class) {
+        if (checkedTypeCount == typeCount) {
+          return;
+        }
+        final ComponentMask updated = mask.copy();
+        for (int typeId = checkedTypeCount; typeId < typeCount; typeId++) {
+          if (parent.isAssignableFrom(classes[typeId])) {
+            updated.set(typeId);
+          }
+        }
+        mask = updated;
+        checkedTypeCount = typeCount;
+      }
+    }
+
+  }
+
+}
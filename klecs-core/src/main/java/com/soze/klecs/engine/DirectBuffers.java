@@ -0,0 +1,70 @@
+package com.soze.klecs.engine;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+/**
+ * Frees memory of direct buffers without waiting for the garbage collector.
+ * Java does not offer a public way to do it, so this uses the unsupported API of the running JVM
+ * (Unsafe.invokeCleaner on Java 9+, the buffer's Cleaner on Java 8). If neither is available,
+ * memory is freed when the buffer is garbage collected.
+ */
+public final class DirectBuffers {
+
+  private static final Freer FREER = createFreer();
+
+  private DirectBuffers() {
+
+  }
+
+  /**
+   * Frees memory of given direct buffer, or unmaps a mapped buffer. The buffer must not be used afterwards.
+   */
+  public static void free(final ByteBuffer buffer) {
+    if (buffer != null && buffer.isDirect()) {
+      FREER.free(buffer);
+    }
+  }
+
+  private interface Freer {
+    void free(ByteBuffer buffer);
+  }
+
+  private static Freer createFreer() {
+    try {
+      final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      final Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+      final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      final Object unsafe = theUnsafe.get(null);
+      return (buffer) -> invoke(invokeCleaner, unsafe, buffer);
+    } catch (final ReflectiveOperationException | RuntimeException e) {
+      //Java 8
+    }
+
+    try {
+      final Method cleanerMethod = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+      final Method cleanMethod = Class.forName("sun.misc.Cleaner").getMethod("clean");
+      return (buffer) -> {
+        final Object cleaner = invoke(cleanerMethod, buffer);
+        if (cleaner != null) {
+          invoke(cleanMethod, cleaner);
+        }
+      };
+    } catch (final ReflectiveOperationException | RuntimeException e) {
+      return (buffer) -> {
+      };
+    }
+  }
+
+  private static Object invoke(final Method method, final Object target, final Object... args) {
+    try {
+      return method.invoke(target, args);
+    } catch (final ReflectiveOperationException e) {
+      //memory will be freed by the garbage collector
+      return null;
+    }
+  }
+
+}
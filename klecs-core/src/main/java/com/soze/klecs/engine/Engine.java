@@ -2,57 +2,161 @@ package com.soze.klecs.engine;
 
 import com.soze.klecs.entity.Entity;
 import com.soze.klecs.entity.EntityFactory;
+import com.soze.klecs.entity.EntityTemplate;
+import com.soze.klecs.entity.IntIdAllocator;
+import com.soze.klecs.metrics.EngineMetrics;
+import com.soze.klecs.metrics.RecordingMetrics;
 import com.soze.klecs.node.Node;
 import com.soze.klecs.system.EntitySystem;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
+import java.util.function.IntFunction;
 import java.util.function.Supplier;
-import java.util.stream.Collectors;
 
 /**
  * Represents an ECS engine, which handles updates to systems and stores entities.
  * <p>
- * This class is not thread-safe.
+ * This class is not thread-safe. The only exception are systems updated in parallel (see {@link #setSystemPool}),
+ * which may add and remove entities concurrently.
  */
 public class Engine {
 
-  private final AtomicLong defaultId = new AtomicLong(1L);
-  private final ComponentContainer componentContainer = new ComponentContainer();
+  private final ComponentContainer componentContainer;
   private final EntityFactory entityFactory;
   private final List<EntitySystem> systems = new ArrayList<>();
 
+  private final SystemSchedule schedule = new SystemSchedule();
+
+  /**
+   * Entities already added to the engine, indexed by their slot in the component container.
+   */
+  private Entity[] entitiesBySlot = new Entity[16];
+
+  /**
+   * Slots of entities already added to the engine.
+   */
+  private final SlotSet entitySlots = new SlotSet();
+
   /**
-   * Entities already added to the engine.
+   * Entities and components waiting to be added or removed, played back after updating has finished.
    */
-  private final Map<Object, Entity> entities = new HashMap<>();
+  private final CommandBuffer commandBuffer = new CommandBuffer();
 
   /**
-   * Entities waiting to be added to the engine.
+   * Changes made by each of the systems updated in parallel during the current update.
    */
-  private final Map<Object, Entity> addEntityQueue = new HashMap<>();
+  private final List<CommandBuffer> systemChanges = new ArrayList<>();
 
   /**
-   * Entities waiting to be removed from the engine.
+   * Updates systems in parallel, null if systems are updated sequentially.
    */
-  private final Set<Object> removeEntityQueue = new HashSet<>();
+  private ParallelSystemRunner systemRunner = null;
 
-  private final List<Consumer<EntityEvent>> entityEventListeners = new ArrayList<>();
+  private final List<EntityListener> entityEventListeners = new ArrayList<>();
+  private final List<BatchListener> batchListeners = new ArrayList<>();
+  private final Map<Class<?>, List<Consumer<ComponentEvent>>> componentEventListeners = new HashMap<>();
+  private final List<ReactiveQuery> reactiveQueries = new ArrayList<>();
+
+  /**
+   * Reactive queries whose node contains a given component class.
+   */
+  private final Map<Class<?>, List<ReactiveQuery>> reactiveQueriesByClass = new HashMap<>();
+
+  /**
+   * One view per node. Views can be created by systems updated in parallel.
+   */
+  private final Map<Node, NodeView> nodeViews = new ConcurrentHashMap<>();
+
+  /**
+   * Minimum number of entities processed by one task of {@link #parallelForEach}.
+   */
+  private static final int MIN_PARALLEL_CHUNK_SIZE = 256;
 
   private boolean updating = false;
 
-  private boolean metrics = false;
+  private EngineMetrics metrics = EngineMetrics.NONE;
+
+  private float interpolationAlpha = 1f;
+
+  private final Collection<Entity> allEntitiesView = new AbstractCollection<Entity>() {
+    @Override
+    public Iterator<Entity> iterator() {
+      return new Iterator<Entity>() {
+        private int index = 0;
+
+        @Override
+        public boolean hasNext() {
+          return index < entitySlots.size();
+        }
+
+        @Override
+        public Entity next() {
+          if (!hasNext()) {
+            throw new NoSuchElementException();
+          }
+          return entitiesBySlot[entitySlots.get(index++)];
+        }
+      };
+    }
+
+    @Override
+    public int size() {
+      return entitySlots.size();
+    }
+  };
 
   public Engine() {
-    this.entityFactory = new EntityFactory(this, componentContainer, () -> defaultId.getAndAdd(1));
+    this(new HashComponentStorage());
   }
 
   public Engine(final Supplier<Object> idSupplier) {
+    this(idSupplier, new HashComponentStorage());
+  }
+
+  /**
+   * Creates an engine which keeps components in given storage.
+   *
+   * @see ArchetypeComponentStorage
+   */
+  public Engine(final ComponentStorage componentStorage) {
+    this.componentContainer = new ComponentContainer(componentStorage);
+    this.entityFactory = new EntityFactory(this, componentContainer);
+  }
+
+  public Engine(final Supplier<Object> idSupplier, final ComponentStorage componentStorage) {
+    this.componentContainer = new ComponentContainer(componentStorage);
     this.entityFactory = new EntityFactory(this, componentContainer, idSupplier);
   }
 
+  /**
+   * Creates an engine whose entity ids are handed out by given allocator.
+   * Ids are dense and reused after entities are removed, and finding an entity or its components
+   * by id is an array access instead of a hash lookup.
+   * Entities can only be created by this engine's {@link EntityFactory}, which reserves ids given to it
+   * in the allocator, and a stale id of a removed entity is never resolved to the entity which reused it.
+   */
+  public Engine(final IntIdAllocator idAllocator) {
+    this(idAllocator, new HashComponentStorage());
+  }
+
+  public Engine(final IntIdAllocator idAllocator, final ComponentStorage componentStorage) {
+    this.componentContainer = new ComponentContainer(componentStorage, idAllocator);
+    this.entityFactory = new EntityFactory(this, componentContainer, idAllocator);
+  }
+
+  /**
+   * Returns the container of components of this engine's entities, which also holds values of primitive layouts.
+   */
+  public ComponentContainer getComponentContainer() {
+    return componentContainer;
+  }
+
   /**
    * Returns an EntityFactory for this engine. This method always returns the same instance
    * of the factory.
@@ -63,11 +167,46 @@ public class Engine {
 
   public void addSystem(final EntitySystem system) {
     Objects.requireNonNull(system);
+    schedule.add(system);
     systems.add(system);
   }
 
+  /**
+   * Enables or disables recording of metrics.
+   *
+   * @deprecated use {@link #setMetrics(EngineMetrics)}, true sets a new {@link RecordingMetrics}
+   */
+  @Deprecated
   public void setMetrics(boolean metrics) {
-    this.metrics = metrics;
+    setMetrics(metrics ? new RecordingMetrics() : EngineMetrics.NONE);
+  }
+
+  /**
+   * Sets metrics which receive measurements of this engine, {@link EngineMetrics#NONE} by default.
+   */
+  public void setMetrics(final EngineMetrics metrics) {
+    this.metrics = Objects.requireNonNull(metrics);
+  }
+
+  public EngineMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Sets a pool on which non-rendering systems are updated. Systems whose declared component accesses
+   * do not conflict are updated concurrently, conflicting systems are updated in the order they were added.
+   * All systems finish before queued entities are added and removed.
+   * Entities and components added or removed by a system are queued separately for each system and applied
+   * in the order systems were added, so the outcome of an update does not depend on thread scheduling.
+   * Pass null to update systems sequentially on the calling thread, which is the default.
+   *
+   * @see EntitySystem#getComponentAccess()
+   */
+  public void setSystemPool(final ForkJoinPool pool) {
+    if (updating) {
+      throw new IllegalStateException("Don't change the system pool when updating the engine");
+    }
+    this.systemRunner = pool == null ? null : new ParallelSystemRunner(pool);
   }
 
   /**
@@ -88,7 +227,13 @@ public class Engine {
    */
   public void removeSystem(final Class<? extends EntitySystem> systemClass) {
     Objects.requireNonNull(systemClass);
-    systems.removeIf(system -> system.getClass().equals(systemClass));
+    systems.removeIf(system -> {
+      if (system.getClass().equals(systemClass)) {
+        schedule.remove(system);
+        return true;
+      }
+      return false;
+    });
   }
 
   public List<EntitySystem> getSystems() {
@@ -96,29 +241,159 @@ public class Engine {
   }
 
   /**
-   * Adds an entity to this system. If the engine is updating, the entity is added after updating has finished.
-   * Otherwise it will added immediately.
+   * Adds an entity to this system. If the engine is updating, the entity is recorded in the engine's
+   * {@link CommandBuffer} and added after updating has finished. Otherwise it will added immediately.
    *
    * @throws IllegalStateException if entity with given id is already added to this system
    *                               (already added or waiting to be added)
    */
   public void addEntity(final Entity entity) {
-    if (entities.containsKey(entity.getId()) || addEntityQueue.containsKey(entity.getId())) {
+    if (getAddedEntity(entity.getId()) != null || isQueuedForAdding(entity.getId())) {
       throw new IllegalStateException("Entity with id: " + entity.getId() + " already added.");
     }
 
-    if (!updating) {
-      entities.put(entity.getId(), entity);
-      final AddedEntityEvent event = new AddedEntityEvent(entity);
-      entityEventListeners.forEach(listener -> listener.accept(event));
+    final CommandBuffer buffer = getRecordingBuffer();
+    if (buffer != null) {
+      buffer.addEntity(entity);
     } else {
-      addEntityQueue.put(entity.getId(), entity);
+      addEntityNow(entity);
     }
     entity.setRemoved(false);
   }
 
+  private void addEntityNow(final Entity entity) {
+    final int slot = componentContainer.getOrAcquireSlot(entity.getId());
+    if (slot >= entitiesBySlot.length) {
+      entitiesBySlot = Arrays.copyOf(entitiesBySlot, Math.max(slot + 1, entitiesBySlot.length * 2));
+    }
+    entitiesBySlot[slot] = entity;
+    entitySlots.add(slot);
+    final ChangeTracker changeTracker = componentContainer.getChangeTracker();
+    if (changeTracker != null) {
+      changeTracker.entityAdded(entity.getId());
+    }
+    if (!entityEventListeners.isEmpty() || !batchListeners.isEmpty()) {
+      fireEntityEvent(entity, true);
+    }
+    for (int i = 0; i < reactiveQueries.size(); i++) {
+      final ReactiveQuery query = reactiveQueries.get(i);
+      if (componentContainer.matches(entity.getId(), query.getNode())) {
+        query.entityMatches(entity);
+      }
+    }
+  }
+
+  /**
+   * Creates given number of entities and adds them to the engine. Each function creates components of one class,
+   * it is called with the index of each spawned entity. Ids of the entities are allocated in one block,
+   * and all components of an entity are added in one change.
+   * Batch listeners are notified once, after all entities were added, unless the engine is updating,
+   * in which case the entities are added like with {@link #addEntity(Entity)}.
+   *
+   * @return spawned entities
+   */
+  public List<Entity> spawn(final int count, final IntFunction<?>... components) {
+    Objects.requireNonNull(components);
+    final List<Entity> entities = entityFactory.createEntities(count);
+    if (getRecordingBuffer() != null) {
+      for (int i = 0; i < count; i++) {
+        final Entity entity = entities.get(i);
+        for (final IntFunction<?> component : components) {
+          entity.addComponent(component.apply(i));
+        }
+        addEntity(entity);
+      }
+      return entities;
+    }
+
+    componentContainer.spawnComponents(getSpawnedIds(entities), components);
+    addSpawnedEntities(entities);
+    return entities;
+  }
+
+  /**
+   * @throws IllegalStateException if any of the entities is already added
+   */
+  private Object[] getSpawnedIds(final List<Entity> entities) {
+    final Object[] ids = new Object[entities.size()];
+    for (int i = 0; i < ids.length; i++) {
+      ids[i] = entities.get(i).getId();
+      if (getAddedEntity(ids[i]) != null) {
+        throw new IllegalStateException("Entity with id: " + ids[i] + " already added.");
+      }
+    }
+    return ids;
+  }
+
+  /**
+   * Adds entities, giving each of them its components in one change, like {@link #spawn(int, IntFunction[])}.
+   * Components of entities.get(i) are in components.get(i), and the entities must not have components yet.
+   * Batch listeners are notified once, after all entities were added, unless the engine is updating,
+   * in which case the entities are added like with {@link #addEntity(Entity)}.
+   *
+   * @throws IllegalStateException if any of the entities is already added, or an id is given twice,
+   * in which case none is added
+   */
+  public void addEntities(final List<Entity> entities, final List<Object[]> components) {
+    addEntities(entities, components, entity -> { });
+  }
+
+  /**
+   * Adds entities like {@link #addEntities(List, List)}. The initializer is called for each entity
+   * after none of the ids was found to be added, before any entity is added, for example to set
+   * values of primitive layouts, so listeners see the entities with them.
+   *
+   * @throws IllegalStateException if any of the entities is already added, or an id is given twice,
+   * in which case none is added and the initializer is not called
+   */
+  public void addEntities(final List<Entity> entities, final List<Object[]> components,
+                          final Consumer<Entity> initializer) {
+    Objects.requireNonNull(initializer);
+    if (entities.size() != components.size()) {
+      throw new IllegalArgumentException("Got " + entities.size() + " entities, but components of "
+        + components.size());
+    }
+    final Object[] ids = new Object[entities.size()];
+    final Set<Object> uniqueIds = new HashSet<>(ids.length * 2);
+    for (int i = 0; i < ids.length; i++) {
+      ids[i] = entities.get(i).getId();
+      if (getAddedEntity(ids[i]) != null || isQueuedForAdding(ids[i])) {
+        throw new IllegalStateException("Entity with id: " + ids[i] + " already added.");
+      }
+      if (!uniqueIds.add(ids[i])) {
+        throw new IllegalStateException("Entity with id: " + ids[i] + " is added twice.");
+      }
+    }
+    if (getRecordingBuffer() != null) {
+      for (int i = 0; i < ids.length; i++) {
+        final Entity entity = entities.get(i);
+        for (final Object component : components.get(i)) {
+          entity.addComponent(component);
+        }
+        initializer.accept(entity);
+        addEntity(entity);
+      }
+      return;
+    }
+    for (final Entity entity : entities) {
+      initializer.accept(entity);
+    }
+    componentContainer.spawnComponents(ids, components.toArray(new Object[0][]));
+    addSpawnedEntities(entities);
+  }
+
+  private void addSpawnedEntities(final List<Entity> entities) {
+    for (final Entity entity : entities) {
+      addEntityNow(entity);
+      entity.setRemoved(false);
+    }
+    if (!batchListeners.isEmpty()) {
+      deliverBatches();
+    }
+  }
+
   public Optional<Entity> getEntityById(final Object id) {
-    return Optional.ofNullable(entities.get(id));
+    return Optional.ofNullable(getAddedEntity(id));
   }
 
   /**
@@ -129,31 +404,109 @@ public class Engine {
    * @throws IllegalStateException if entity with given id is not in the engine
    */
   public void removeEntity(final Object id) {
-    if (!entities.containsKey(id)) {
+    final Entity entity = getAddedEntity(id);
+    if (entity == null) {
       throw new IllegalStateException("Entity with id: " + id + " not added to this engine.");
     }
 
-    if (!updating) {
-      final Entity entity = getEntityById(id).get();
-      final RemovedEntityEvent entityEvent = new RemovedEntityEvent(entity);
-      entityEventListeners.forEach(listener -> listener.accept(entityEvent));
-      entities.remove(id);
-      componentContainer.removeEntityComponents(id);
+    final CommandBuffer buffer = getRecordingBuffer();
+    if (buffer != null) {
       entity.setRemoved(true);
+      buffer.removeEntity(id);
     } else {
-      final Entity entity = getEntityById(id).get();
+      if (!entityEventListeners.isEmpty() || !batchListeners.isEmpty()) {
+        fireEntityEvent(entity, false);
+      }
+      for (int i = 0; i < reactiveQueries.size(); i++) {
+        reactiveQueries.get(i).entityUnmatched(entity);
+      }
+      final ChangeTracker changeTracker = componentContainer.getChangeTracker();
+      if (changeTracker != null) {
+        changeTracker.entityRemoved(id);
+      }
+      final int slot = componentContainer.getSlot(id);
+      entitiesBySlot[slot] = null;
+      entitySlots.remove(slot);
+      componentContainer.removeEntityComponents(id);
       entity.setRemoved(true);
-      removeEntityQueue.add(id);
     }
   }
 
+  /**
+   * Creates given number of entities from a template and adds them to the engine, see {@link #spawn(int, IntFunction[])}.
+   * Each entity gets the template's precomputed signature at once.
+   */
+  public List<Entity> spawn(final int count, final EntityTemplate template) {
+    Objects.requireNonNull(template);
+    final List<Entity> entities = entityFactory.createEntities(count);
+    if (getRecordingBuffer() != null) {
+      for (final Entity entity : entities) {
+        for (int i = 0; i < template.size(); i++) {
+          entity.addComponent(template.createComponent(i));
+        }
+        addEntity(entity);
+      }
+      return entities;
+    }
+
+    componentContainer.spawnComponents(getSpawnedIds(entities), template);
+    addSpawnedEntities(entities);
+    return entities;
+  }
+
+  /**
+   * Removes entities with given ids. Batch listeners are notified once, after all entities were removed,
+   * unless the engine is updating, in which case the entities are removed like with {@link #removeEntity(Object)}.
+   *
+   * @throws IllegalStateException if any of the entities is not in the engine, or an id is given twice,
+   *                               in which case none is removed
+   */
+  public void removeEntities(final Collection<?> ids) {
+    final Set<Object> uniqueIds = new HashSet<>(ids.size() * 2);
+    for (final Object id : ids) {
+      if (getAddedEntity(id) == null) {
+        throw new IllegalStateException("Entity with id: " + id + " not added to this engine.");
+      }
+      if (!uniqueIds.add(id)) {
+        throw new IllegalStateException("Entity with id: " + id + " is removed twice.");
+      }
+    }
+    for (final Object id : ids) {
+      removeEntity(id);
+    }
+    if (getRecordingBuffer() == null && !batchListeners.isEmpty()) {
+      deliverBatches();
+    }
+  }
+
+  /**
+   * Drops an entity which was created, but will not be added to this engine, with all of its components.
+   * With an {@link IntIdAllocator}, this releases its id, which otherwise stays allocated.
+   *
+   * @throws IllegalStateException if the entity is added to the engine, or the engine is updating
+   */
+  public void discardEntity(final Entity entity) {
+    if (updating) {
+      throw new IllegalStateException("Don't discard entities when updating the engine");
+    }
+    if (getAddedEntity(entity.getId()) != null) {
+      throw new IllegalStateException("Entity with id: " + entity.getId() + " is added, remove it instead.");
+    }
+    componentContainer.removeEntityComponents(entity.getId());
+    entity.setRemoved(true);
+  }
+
   /**
    * Returns all entities added to the engine.
    * This does not include entities waiting to be added.
    * The returned List can be modified, because it is a copy.
    */
   public List<Entity> getAllEntities() {
-    return new ArrayList<>(entities.values());
+    final List<Entity> result = new ArrayList<>(entitySlots.size());
+    for (int i = 0; i < entitySlots.size(); i++) {
+      result.add(entitiesBySlot[entitySlots.get(i)]);
+    }
+    return result;
   }
 
   /**
@@ -161,39 +514,524 @@ public class Engine {
    * This does not include entities waiting to be added.
    */
   public Collection<Entity> getAllEntitiesCollection() {
-    return Collections.unmodifiableCollection(entities.values());
+    return allEntitiesView;
   }
 
+  /**
+   * Returns all entities added to the engine which match given node.
+   * Node membership is indexed, so this costs O(matching entities).
+   * The returned List can be modified, because it is a copy.
+   */
   public List<Entity> getEntitiesByNode(final Node node) {
-    final List<Object> ids = (List<Object>) componentContainer.getEntitiesByNode(node);
+    final long startTime = metrics.isEnabled() ? System.nanoTime() : 0;
+    final List<Entity> result = new ArrayList<>();
 
-    return ids
-             .stream()
-             .map(entities::get)
-             //this filter is a temporary workaround for entities which got components added but are not yet added to the engine
-             .filter(Objects::nonNull)
-             .collect(Collectors.toList());
+    componentContainer.forEachSlot(node, slot -> {
+      //entities which got components added, but are not yet added to the engine are not returned
+      if (entitySlots.contains(slot)) {
+        result.add(entitiesBySlot[slot]);
+      }
+    });
+    if (metrics.isEnabled()) {
+      metrics.nodeQueried(node, result.size(), System.nanoTime() - startTime);
+    }
+    return result;
   }
 
-  public void addEntityEventListener(final Consumer<EntityEvent> listener) {
-    Objects.requireNonNull(listener);
+  /**
+   * Returns a view of entities matching given node. This method always returns the same instance
+   * for the same node, so the view can be obtained once and iterated over every tick without allocating.
+   * The view must not be iterated over by two threads at once.
+   */
+  public NodeView getNodeView(final Node node) {
+    Objects.requireNonNull(node);
+    final NodeView view = nodeViews.get(node);
+    return view != null ? view : nodeViews.computeIfAbsent(node, this::createNodeView);
+  }
+
+  private NodeView createNodeView(final Node node) {
+    return new NodeView(this, node, componentContainer.createCursor(node));
+  }
+
+  /**
+   * Returns the view of given node, or a new view if another thread is iterating over it,
+   * for example a system updated in parallel.
+   */
+  private NodeView reserveNodeView(final Node node) {
+    final NodeView view = getNodeView(node);
+    return view.reserve() ? view : createNodeView(node);
+  }
+
+  /**
+   * Passes each entity matching given node to the consumer, splitting the entities into chunks processed
+   * concurrently on the system pool (or the common pool, if systems are updated sequentially).
+   * The consumer must be safe to call concurrently for different entities.
+   * <p>
+   * Entities and components added or removed by the consumer are recorded separately for each chunk.
+   * After all chunks are finished, they are applied in the order of chunks, as if they were made
+   * on the calling thread: added and removed entities are queued if the engine is updating.
+   *
+   * @throws IllegalStateException if two chunks added the same entity
+   */
+  public void parallelForEach(final Node node, final Consumer<Entity> consumer) {
+    Objects.requireNonNull(consumer);
+    final List<Entity> matching = getEntitiesByNode(node);
+    if (matching.isEmpty()) {
+      return;
+    }
+
+    final ForkJoinPool pool = systemRunner != null ? systemRunner.getPool() : ForkJoinPool.commonPool();
+    final int tasksPerThread = 4;
+    final int targetChunkCount = pool.getParallelism() * tasksPerThread;
+    final int chunkSize = Math.max(MIN_PARALLEL_CHUNK_SIZE, (matching.size() + targetChunkCount - 1) / targetChunkCount);
+    final CommandBuffer[] chunkChanges = new CommandBuffer[(matching.size() + chunkSize - 1) / chunkSize];
+
+    final ChunkTask task = new ChunkTask(matching, consumer, chunkSize, chunkChanges, 0, chunkChanges.length);
+    if (ForkJoinTask.getPool() == pool) {
+      task.invoke();
+    } else {
+      pool.invoke(task);
+    }
+
+    final CommandBuffer merged = new CommandBuffer();
+    for (final CommandBuffer changes : chunkChanges) {
+      merged.append(changes);
+    }
+    playback(merged);
+  }
+
+  /**
+   * Plays back changes recorded in given buffer and clears it. If the engine is updating,
+   * the changes are instead appended to the engine's own buffer, played back after updating has finished.
+   *
+   * @throws IllegalStateException if the buffer adds an entity which is already added, or removes an entity
+   *                               which is not added to this engine
+   */
+  public void playback(final CommandBuffer buffer) {
+    Objects.requireNonNull(buffer);
+    final CommandBuffer recordingBuffer = getRecordingBuffer();
+    if (recordingBuffer != null) {
+      recordingBuffer.append(buffer);
+      buffer.clear();
+      return;
+    }
+
+    if (metrics.isEnabled()) {
+      metrics.commandsPlayedBack(
+        buffer.addedEntities.size(),
+        buffer.removedEntityIds.size(),
+        buffer.componentChanges.size() + buffer.layoutChanges.size()
+      );
+    }
+    final List<Entity> entitiesToAdd = new ArrayList<>(buffer.addedEntities.values());
+    final List<Object> entityIdsToRemove = new ArrayList<>(buffer.removedEntityIds);
+    try {
+      componentContainer.applyComponentChanges(buffer);
+    } finally {
+      buffer.clear();
+    }
+    for (final Entity entity : entitiesToAdd) {
+      addEntity(entity);
+    }
+    for (final Object entityId : entityIdsToRemove) {
+      removeEntity(entityId);
+    }
+  }
+
+  /**
+   * Processes a range of chunks of entities, splitting it in halves until there is one chunk left.
+   */
+  private final class ChunkTask extends RecursiveAction {
+
+    private final List<Entity> entities;
+    private final Consumer<Entity> consumer;
+    private final int chunkSize;
+    private final CommandBuffer[] chunkChanges;
+    private final int firstChunk;
+    private final int endChunk;
+
+    private ChunkTask(final List<Entity> entities, final Consumer<Entity> consumer, final int chunkSize,
+                      final CommandBuffer[] chunkChanges, final int firstChunk, final int endChunk) {
+      this.entities = entities;
+      this.consumer = consumer;
+      this.chunkSize = chunkSize;
+      this.chunkChanges = chunkChanges;
+      this.firstChunk = firstChunk;
+      this.endChunk = endChunk;
+    }
+
+    @Override
+    protected void compute() {
+      if (endChunk - firstChunk > 1) {
+        final int middle = (firstChunk + endChunk) >>> 1;
+        invokeAll(
+          new ChunkTask(entities, consumer, chunkSize, chunkChanges, firstChunk, middle),
+          new ChunkTask(entities, consumer, chunkSize, chunkChanges, middle, endChunk)
+        );
+        return;
+      }
+
+      final CommandBuffer changes = new CommandBuffer();
+      chunkChanges[firstChunk] = changes;
+      //a worker may run a chunk while waiting for its own work, which records changes elsewhere
+      final CommandBuffer previousChanges = componentContainer.getCommandBuffer();
+      componentContainer.setCommandBuffer(changes);
+      try {
+        final int end = Math.min(entities.size(), (firstChunk + 1) * chunkSize);
+        for (int i = firstChunk * chunkSize; i < end; i++) {
+          consumer.accept(entities.get(i));
+        }
+      } finally {
+        componentContainer.setCommandBuffer(previousChanges);
+      }
+    }
+
+  }
+
+  /**
+   * Passes each entity matching given node to the consumer, without allocating.
+   * Components must not be added or removed by the consumer.
+   * Systems updated in parallel can iterate over the same node at once, each of them but the first
+   * iterates over a new view.
+   */
+  public void forEach(final Node node, final Consumer<Entity> consumer) {
+    Objects.requireNonNull(consumer);
+    reserveNodeView(node).forEach(consumer);
+  }
+
+  /**
+   * Passes each entity matching given node, with its component, to the consumer, without allocating.
+   * Components must not be added or removed by the consumer.
+   */
+  public <A> void forEach(final Node node, final Class<A> a, final NodeView.Consumer1<A> consumer) {
+    Objects.requireNonNull(consumer);
+    reserveNodeView(node).forEach(a, consumer);
+  }
+
+  public <A, B> void forEach(final Node node, final Class<A> a, final Class<B> b, final NodeView.Consumer2<A, B> consumer) {
+    Objects.requireNonNull(consumer);
+    reserveNodeView(node).forEach(a, b, consumer);
+  }
+
+  public <A, B, C> void forEach(final Node node, final Class<A> a, final Class<B> b, final Class<C> c,
+                                final NodeView.Consumer3<A, B, C> consumer) {
+    Objects.requireNonNull(consumer);
+    reserveNodeView(node).forEach(a, b, c, consumer);
+  }
+
+  /**
+   * Registers a node, so that entities matching it are indexed from now on.
+   *
+   * @see ComponentContainer#registerNode(Node)
+   */
+  public void registerNode(final Node node) {
+    componentContainer.registerNode(node);
+  }
+
+  /**
+   * Stops indexing members of a node which is no longer queried. Views of the node obtained before
+   * must not be used afterwards.
+   *
+   * @see ComponentContainer#unregisterNode(Node)
+   */
+  public void unregisterNode(final Node node) {
     if (updating) {
-      throw new IllegalStateException("Don't add a listener when updating the engine");
+      throw new IllegalStateException("Don't unregister nodes when updating the engine");
     }
-    this.entityEventListeners.add(listener);
+    nodeViews.remove(node);
+    componentContainer.unregisterNode(node);
+  }
+
+  public void addEntityEventListener(final Consumer<EntityEvent> listener) {
+    addEntityEventListener(null, listener);
   }
 
+  /**
+   * Adds a listener which is notified when an entity matching given node is added to or removed from the engine.
+   * Entities are matched when they are added, and before their components are removed when they are removed.
+   * A null node matches all entities.
+   */
+  public void addEntityEventListener(final Node node, final Consumer<EntityEvent> listener) {
+    Objects.requireNonNull(listener);
+    checkNotUpdating();
+    this.entityEventListeners.add(new EntityListener(node, listener));
+  }
+
+  /**
+   * Removes the listener, including listeners added with a node.
+   */
   public void removeEntityEventListener(final Consumer<EntityEvent> listener) {
     Objects.requireNonNull(listener);
+    checkNotUpdating();
+    this.entityEventListeners.removeIf(entityListener -> entityListener.listener == listener);
+  }
+
+  /**
+   * Adds a listener which is notified once per update, after all changes recorded during the update were applied,
+   * with all entities matching given node which were added or removed since the previous notification.
+   * This includes entities added or removed between updates. Entities spawned or removed in bulk
+   * between updates are delivered right away, see {@link #spawn}. A null node matches all entities.
+   * The listener is not called when no entities were added or removed.
+   * <p>
+   * The batch passed to the listener is reused, so it should not be kept after the listener returns.
+   */
+  public void addEntityBatchListener(final Node node, final Consumer<EntityEventBatch> listener) {
+    Objects.requireNonNull(listener);
+    checkNotUpdating();
+    batchListeners.add(new BatchListener(node, listener));
+  }
+
+  public void removeEntityBatchListener(final Consumer<EntityEventBatch> listener) {
+    Objects.requireNonNull(listener);
+    checkNotUpdating();
+    batchListeners.removeIf(batchListener -> batchListener.listener == listener);
+  }
+
+  /**
+   * Adds a listener which is notified when a component with exactly given class is added to, replaced in
+   * or removed from an entity which is added to this engine. Components of entities being added or removed
+   * don't cause these events, see {@link #addEntityEventListener}.
+   * While the engine is updating, events are sent when the recorded changes are applied.
+   */
+  public void addComponentEventListener(final Class<?> componentClass, final Consumer<ComponentEvent> listener) {
+    Objects.requireNonNull(componentClass);
+    Objects.requireNonNull(listener);
+    checkNotUpdating();
+    componentEventListeners.computeIfAbsent(componentClass, (key) -> new ArrayList<>()).add(listener);
+    updateChangeListener();
+  }
+
+  public void removeComponentEventListener(final Class<?> componentClass, final Consumer<ComponentEvent> listener) {
+    Objects.requireNonNull(componentClass);
+    Objects.requireNonNull(listener);
+    checkNotUpdating();
+    final List<Consumer<ComponentEvent>> listeners = componentEventListeners.get(componentClass);
+    if (listeners != null && listeners.remove(listener) && listeners.isEmpty()) {
+      componentEventListeners.remove(componentClass);
+    }
+    updateChangeListener();
+  }
+
+  /**
+   * Creates a query which collects entities that start matching given node, stop matching it,
+   * or have one of its components replaced or marked dirty, until the query is cleared.
+   * Entities which already match the node are collected as added.
+   *
+   * @see ReactiveQuery
+   */
+  public ReactiveQuery createReactiveQuery(final Node node) {
+    checkNotUpdating();
+    final ReactiveQuery query = new ReactiveQuery(node);
+    for (final Object id : componentContainer.getEntitiesByNode(node)) {
+      final Entity entity = getAddedEntity(id);
+      if (entity != null) {
+        query.entityMatches(entity);
+      }
+    }
+    reactiveQueries.add(query);
+    for (final Class<?> clazz : getReactiveClasses(node)) {
+      reactiveQueriesByClass.computeIfAbsent(clazz, (key) -> new ArrayList<>()).add(query);
+    }
+    updateChangeListener();
+    return query;
+  }
+
+  /**
+   * Stops collecting changes for the query.
+   */
+  public void removeReactiveQuery(final ReactiveQuery query) {
+    Objects.requireNonNull(query);
+    checkNotUpdating();
+    if (!reactiveQueries.remove(query)) {
+      return;
+    }
+    for (final Class<?> clazz : getReactiveClasses(query.getNode())) {
+      final List<ReactiveQuery> queries = reactiveQueriesByClass.get(clazz);
+      if (queries.remove(query) && queries.isEmpty()) {
+        reactiveQueriesByClass.remove(clazz);
+      }
+    }
+    updateChangeListener();
+  }
+
+  /**
+   * Classes whose changes a reactive query of the node reacts to.
+   */
+  private static Set<Class<?>> getReactiveClasses(final Node node) {
+    final Set<Class<?>> classes = node.getMatchedClasses();
+    classes.addAll(node.getOptionalClasses());
+    return classes;
+  }
+
+  /**
+   * The container notifies the engine about component changes only while somebody listens to them.
+   */
+  private void updateChangeListener() {
+    final boolean listening = !componentEventListeners.isEmpty() || !reactiveQueriesByClass.isEmpty();
+    componentContainer.setChangeListener(listening ? componentChangeListener : null);
+  }
+
+  private void checkNotUpdating() {
     if (updating) {
-      throw new IllegalStateException("Don't remove a listener when updating the engine");
+      throw new IllegalStateException("Don't change listeners when updating the engine");
+    }
+  }
+
+  /**
+   * Notifies listeners interested in the entity. When an entity is removed, this is called before
+   * its components are removed.
+   */
+  private void fireEntityEvent(final Entity entity, final boolean added) {
+    EntityEvent event = null;
+    for (int i = 0; i < entityEventListeners.size(); i++) {
+      final EntityListener entityListener = entityEventListeners.get(i);
+      if (entityListener.matches(entity)) {
+        if (event == null) {
+          event = added ? new AddedEntityEvent(entity) : new RemovedEntityEvent(entity);
+        }
+        entityListener.listener.accept(event);
+      }
+    }
+    for (int i = 0; i < batchListeners.size(); i++) {
+      final BatchListener batchListener = batchListeners.get(i);
+      if (batchListener.node == null || componentContainer.matches(entity.getId(), batchListener.node)) {
+        if (added) {
+          batchListener.pending.entityAdded(entity);
+        } else {
+          batchListener.pending.entityRemoved(entity);
+        }
+      }
+    }
+  }
+
+  /**
+   * Passes batches of added and removed entities to batch listeners. Listeners may add and remove entities,
+   * these changes end up in the next batch.
+   */
+  private void deliverBatches() {
+    for (int i = 0; i < batchListeners.size(); i++) {
+      final BatchListener batchListener = batchListeners.get(i);
+      if (batchListener.pending.isEmpty()) {
+        continue;
+      }
+      final EntityEventBatch batch = batchListener.pending;
+      batchListener.pending = batchListener.delivered;
+      batchListener.delivered = batch;
+      try {
+        batchListener.listener.accept(batch);
+      } finally {
+        batch.clear();
+      }
+    }
+  }
+
+  private final ComponentChangeListener componentChangeListener = new ComponentChangeListener() {
+    @Override
+    public boolean isListening(final Class<?> clazz) {
+      return componentEventListeners.containsKey(clazz) || reactiveQueriesByClass.containsKey(clazz);
+    }
+
+    @Override
+    public void componentAdded(final Object entityId, final Object component) {
+      final Entity entity = getAddedEntity(entityId);
+      if (entity == null) {
+        return;
+      }
+      updateReactiveQueries(entity, component.getClass());
+      fireComponentEvent(entity, component, true);
+    }
+
+    @Override
+    public void componentRemoved(final Object entityId, final Object component) {
+      final Entity entity = getAddedEntity(entityId);
+      if (entity == null) {
+        return;
+      }
+      updateReactiveQueries(entity, component.getClass());
+      fireComponentEvent(entity, component, false);
     }
-    this.entityEventListeners.remove(listener);
+
+    /**
+     * A component of the class was added or removed, so the entity may have started or stopped matching
+     * nodes which include or exclude the class, or one of their components changed.
+     */
+    private void updateReactiveQueries(final Entity entity, final Class<?> clazz) {
+      final List<ReactiveQuery> queries = reactiveQueriesByClass.get(clazz);
+      if (queries == null) {
+        return;
+      }
+      for (int i = 0; i < queries.size(); i++) {
+        final ReactiveQuery query = queries.get(i);
+        if (componentContainer.matches(entity.getId(), query.getNode())) {
+          query.entityMatches(entity);
+        } else {
+          query.entityUnmatched(entity);
+        }
+      }
+    }
+
+    @Override
+    public void componentWritten(final Object entityId, final Class<?> clazz) {
+      final Entity entity = getAddedEntity(entityId);
+      final List<ReactiveQuery> queries = reactiveQueriesByClass.get(clazz);
+      if (entity == null || queries == null) {
+        return;
+      }
+      for (int i = 0; i < queries.size(); i++) {
+        queries.get(i).componentChanged(entity);
+      }
+    }
+
+    private void fireComponentEvent(final Entity entity, final Object component, final boolean added) {
+      final List<Consumer<ComponentEvent>> listeners = componentEventListeners.get(component.getClass());
+      if (listeners == null) {
+        return;
+      }
+      final ComponentEvent event = added ? new AddedComponentEvent(entity, component) : new RemovedComponentEvent(entity, component);
+      for (int i = 0; i < listeners.size(); i++) {
+        listeners.get(i).accept(event);
+      }
+    }
+  };
+
+  private final class EntityListener {
+
+    private final Node node;
+    private final Consumer<EntityEvent> listener;
+
+    private EntityListener(final Node node, final Consumer<EntityEvent> listener) {
+      this.node = node;
+      this.listener = listener;
+    }
+
+    private boolean matches(final Entity entity) {
+      return node == null || componentContainer.matches(entity.getId(), node);
+    }
+
+  }
+
+  private static final class BatchListener {
+
+    private final Node node;
+    private final Consumer<EntityEventBatch> listener;
+
+    /**
+     * Collects events until the next delivery, while the other batch is being delivered.
+     */
+    private EntityEventBatch pending = new EntityEventBatch();
+    private EntityEventBatch delivered = new EntityEventBatch();
+
+    private BatchListener(final Node node, final Consumer<EntityEventBatch> listener) {
+      this.node = node;
+      this.listener = listener;
+    }
+
   }
 
   /**
-   * Calls shouldUpdate on all systems and for those which return true,
-   * calls the update method.
+   * Calls shouldUpdate on all non-rendering systems and for those which return true,
+   * calls the update method. Systems with an update interval are only asked when their interval has passed,
+   * see {@link EntitySystem#getUpdateInterval()}.
    *
    * @param delta time in seconds since the last update
    */
@@ -203,24 +1041,25 @@ public class Engine {
     }
 
     updating = true;
-    final long t0 = System.nanoTime();
+    final long startTime = metrics.isEnabled() ? System.nanoTime() : 0;
 
     try {
       //1. update all non-rendering systems
-      for (EntitySystem system : systems) {
-        if (!system.isRenderer() && system.shouldUpdate(delta)) {
-          final long systemStartTime = System.nanoTime();
-          system.update(delta);
-          if (metrics) {
-            System.out.println("Took " + ((System.nanoTime() - systemStartTime) / 1e9) + " s to update " + system.getClass());
+      schedule.advance(delta);
+      if (systemRunner != null) {
+        updateSystemsInParallel(delta);
+      } else {
+        componentContainer.setCommandBuffer(commandBuffer);
+        try {
+          for (EntitySystem system : systems) {
+            if (schedule.isDue(system, delta)) {
+              updateSystem(system, schedule.getDelta(system, delta));
+            }
           }
+        } finally {
+          componentContainer.setCommandBuffer(null);
         }
       }
-
-      if (metrics) {
-        System.out.println("Took " + ((System.nanoTime() - t0) / 1e9) + " s to update " + systems.size() + " non-rendering systems.");
-      }
-
     } catch (Exception e) {
       e.printStackTrace(); // don't know what to do here?
       throw e;
@@ -228,50 +1067,178 @@ public class Engine {
       updating = false;
     }
 
-    //2. add all entities in the queue
-    final List<Entity> entitiesToAdd = new ArrayList<>(addEntityQueue.values());
-    addEntityQueue.clear();
-    for (final Entity entity : entitiesToAdd) {
-      addEntity(entity);
+    //2. add and remove all recorded components and entities
+    playback(commandBuffer);
+    if (!batchListeners.isEmpty()) {
+      deliverBatches();
     }
 
-    //3. remove all entities in the queue
-    final List<Object> entityIdsToRemove = new ArrayList<>(removeEntityQueue);
-    removeEntityQueue.clear();
-    for (final Object entityId : entityIdsToRemove) {
-      removeEntity(entityId);
+    if (metrics.isEnabled()) {
+      metrics.updateFinished(System.nanoTime() - startTime, entitySlots.size());
+    }
+  }
+
+  private void updateSystem(final EntitySystem system, final float delta) {
+    if (!metrics.isEnabled()) {
+      system.update(delta);
+      return;
+    }
+    final long systemStartTime = System.nanoTime();
+    system.update(delta);
+    metrics.systemUpdated(system, System.nanoTime() - systemStartTime);
+  }
+
+  /**
+   * Updates systems which should update on the system pool, each with its own queue of changes.
+   * When all of them are finished, their changes are appended to the engine's buffer in the order systems were added.
+   */
+  private void updateSystemsInParallel(final float delta) {
+    final List<EntitySystem> dueSystems = new ArrayList<>();
+    for (final EntitySystem system : systems) {
+      if (schedule.isDue(system, delta)) {
+        dueSystems.add(system);
+      }
+    }
+    while (systemChanges.size() < dueSystems.size()) {
+      systemChanges.add(new CommandBuffer());
+    }
+
+    try {
+      systemRunner.run(dueSystems, index -> {
+        componentContainer.setCommandBuffer(systemChanges.get(index));
+        try {
+          final EntitySystem system = dueSystems.get(index);
+          updateSystem(system, schedule.getDelta(system, delta));
+        } finally {
+          componentContainer.setCommandBuffer(null);
+        }
+      });
+    } finally {
+      IllegalStateException duplicate = null;
+      for (int i = 0; i < dueSystems.size(); i++) {
+        final CommandBuffer changes = systemChanges.get(i);
+        try {
+          commandBuffer.append(changes);
+        } catch (final IllegalStateException e) {
+          duplicate = duplicate == null ? e : duplicate;
+        }
+        changes.clear();
+      }
+      if (duplicate != null) {
+        throw duplicate;
+      }
     }
   }
 
   public void render(final float delta) {
+    render(delta, 1f);
+  }
+
+  /**
+   * Updates all rendering systems. Alpha is the fraction of a simulation step which passed since the last update,
+   * render systems can read it with {@link #getInterpolationAlpha()} to interpolate between the last two states.
+   *
+   * @see com.soze.klecs.loop.EngineRunner
+   */
+  public void render(final float delta, final float alpha) {
     if (updating) {
       throw new IllegalStateException("Engine is already updating");
     }
 
     updating = true;
-    final long t0 = System.nanoTime();
+    interpolationAlpha = alpha;
+    final long startTime = metrics.isEnabled() ? System.nanoTime() : 0;
 
+    componentContainer.setCommandBuffer(commandBuffer);
     try {
       //update all rendering systems
       for (EntitySystem system : systems) {
         if (system.isRenderer() && system.shouldUpdate(delta)) {
-          final long systemStartTime = System.nanoTime();
-          system.update(delta);
-          if (metrics) {
-            System.out.println("Took " + ((System.nanoTime() - systemStartTime) / 1e9) + " s to update " + system.getClass());
-          }
+          updateSystem(system, delta);
         }
       }
-
-      if (metrics) {
-        System.out.println("Took " + ((System.nanoTime() - t0) / 1e9) + " s to update " + systems.size() + " rendering systems.");
-      }
     } catch (final Exception e) {
       e.printStackTrace();
       throw e;
     } finally {
+      componentContainer.setCommandBuffer(null);
       updating = false;
     }
+
+    playback(commandBuffer);
+
+    if (metrics.isEnabled()) {
+      metrics.renderFinished(System.nanoTime() - startTime);
+    }
+  }
+
+  /**
+   * Starts recording which entities and components change in which tick, for replication.
+   * Entities already in the engine are recorded as added in the current tick.
+   * Calling this again returns the same tracker.
+   *
+   * @see com.soze.klecs.replication.ReplicationServer
+   */
+  public ChangeTracker enableChangeTracking() {
+    if (updating) {
+      throw new IllegalStateException("Don't enable change tracking when updating the engine");
+    }
+    ChangeTracker changeTracker = componentContainer.getChangeTracker();
+    if (changeTracker == null) {
+      changeTracker = new ChangeTracker();
+      for (final Entity entity : allEntitiesView) {
+        changeTracker.entityAdded(entity.getId());
+      }
+      componentContainer.setChangeTracker(changeTracker);
+    }
+    return changeTracker;
+  }
+
+  /**
+   * Returns the alpha passed to the current or last call of {@link #render(float, float)}, 1 by default.
+   */
+  public float getInterpolationAlpha() {
+    return interpolationAlpha;
+  }
+
+  /**
+   * Frees memory held outside of the heap by this engine, see {@link OffHeapColumns}.
+   * The engine should not be used afterwards.
+   */
+  public void dispose() {
+    if (updating) {
+      throw new IllegalStateException("Don't dispose the engine when updating it");
+    }
+    componentContainer.dispose();
+  }
+
+  private boolean isQueuedForAdding(final Object id) {
+    final CommandBuffer buffer = componentContainer.getCommandBuffer();
+    return commandBuffer.addedEntities.containsKey(id) || (buffer != null && buffer.addedEntities.containsKey(id));
+  }
+
+  /**
+   * @return buffer into which changes made on the current thread are recorded, null if they are applied immediately
+   */
+  private CommandBuffer getRecordingBuffer() {
+    final CommandBuffer buffer = componentContainer.getCommandBuffer();
+    return buffer != null || !updating ? buffer : commandBuffer;
+  }
+
+  boolean isAddedSlot(final int slot) {
+    return entitySlots.contains(slot);
+  }
+
+  Entity getEntityBySlot(final int slot) {
+    return entitiesBySlot[slot];
+  }
+
+  /**
+   * @return entity with given id if it was added to this engine, null otherwise
+   */
+  private Entity getAddedEntity(final Object id) {
+    final int slot = componentContainer.getSlot(id);
+    return slot != -1 && entitySlots.contains(slot) ? entitiesBySlot[slot] : null;
   }
 
 }
@@ -4,10 +4,17 @@ import java.util.*;
 
 /**
  * Container for all components for a given entity.
+ * Components are kept in an array indexed by type ids from {@link ComponentTypeRegistry},
+ * so getting a component by its class is an array access. The array is as long as the highest
+ * type id of the entity's components, which is small as long as the number of component classes is.
  */
 public class EntityComponentContainer {
 
-  private final Map<Class<?>, Object> components = new HashMap<>();
+  private static final Object[] NO_COMPONENTS = new Object[0];
+
+  private Object[] components = NO_COMPONENTS;
+  private final ComponentMask signature = new ComponentMask();
+  private int count = 0;
 
   public EntityComponentContainer() {
 
@@ -15,47 +22,78 @@ public class EntityComponentContainer {
 
   /**
    * @return previous component if present, null otherwise
-   * @see Map#put
    */
   public Object addComponent(final Object component) {
     Objects.requireNonNull(component);
-    return components.put(component.getClass(), component);
+    final int typeId = ComponentTypeRegistry.getTypeId(component.getClass());
+    if (typeId >= components.length) {
+      components = Arrays.copyOf(components, Math.max(typeId + 1, components.length * 2));
+    }
+    final Object previous = components[typeId];
+    components[typeId] = component;
+    if (previous == null) {
+      signature.set(typeId);
+      count++;
+    }
+    return previous;
   }
 
   public Object getComponent(final Class<?> clazz) {
     Objects.requireNonNull(clazz);
-    return components.get(clazz);
+    final int typeId = ComponentTypeRegistry.getTypeId(clazz);
+    return typeId < components.length ? components[typeId] : null;
   }
 
+  /**
+   * Returns a component which is an instance of given class, null if there is none.
+   * If more than one component is an instance of given class, which one is returned is undefined.
+   */
   public <T> T getComponentByParent(final Class<T> clazz) {
     Objects.requireNonNull(clazz);
-    for (final Map.Entry<Class<?>, Object> classObjectEntry : components.entrySet()) {
-      Class<?> key = classObjectEntry.getKey();
-      if(clazz.isAssignableFrom(key)) {
-        return (T) classObjectEntry.getValue();
-      }
-    }
-    return null;
+    final int typeId = signature.firstCommon(ComponentTypeRegistry.getSubtypeMask(clazz));
+    return typeId == -1 ? null : (T) components[typeId];
   }
 
   public void removeComponent(final Class<?> clazz) {
     Objects.requireNonNull(clazz);
-    components.remove(clazz);
+    final int typeId = ComponentTypeRegistry.getTypeId(clazz);
+    if (typeId < components.length && components[typeId] != null) {
+      components[typeId] = null;
+      signature.clear(typeId);
+      count--;
+    }
   }
 
   public boolean hasComponent(final Class<?> clazz) {
-    return components.containsKey(clazz);
+    return getComponent(clazz) != null;
   }
 
   public int componentCount() {
-    return components.size();
+    return count;
   }
 
   public boolean isEmpty() {
-    return components.isEmpty();
+    return count == 0;
   }
 
+  /**
+   * Returns all components. The returned collection is a copy.
+   */
   public Collection<Object> getAllComponents() {
-    return components.values();
+    final List<Object> result = new ArrayList<>(count);
+    for (final Object component : components) {
+      if (component != null) {
+        result.add(component);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns classes of all components, as a mask of their type ids. The returned mask must not be modified.
+   */
+  public ComponentMask getSignature() {
+    return signature;
   }
+
 }
@@ -0,0 +1,53 @@
+package com.soze.klecs.engine;
+
+import com.soze.klecs.entity.Entity;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Entities added to and removed from an engine since the batch was last delivered, in the order
+ * they were added and removed. Removed entities no longer have their components.
+ * <p>
+ * Batches are reused, so the lists are only valid during the call of the listener.
+ *
+ * @see Engine#addEntityBatchListener
+ */
+public final class EntityEventBatch {
+
+  private final List<Entity> addedEntities = new ArrayList<>();
+  private final List<Entity> removedEntities = new ArrayList<>();
+  private final List<Entity> addedEntitiesView = Collections.unmodifiableList(addedEntities);
+  private final List<Entity> removedEntitiesView = Collections.unmodifiableList(removedEntities);
+
+  EntityEventBatch() {
+
+  }
+
+  public List<Entity> getAddedEntities() {
+    return addedEntitiesView;
+  }
+
+  public List<Entity> getRemovedEntities() {
+    return removedEntitiesView;
+  }
+
+  public boolean isEmpty() {
+    return addedEntities.isEmpty() && removedEntities.isEmpty();
+  }
+
+  void entityAdded(final Entity entity) {
+    addedEntities.add(entity);
+  }
+
+  void entityRemoved(final Entity entity) {
+    removedEntities.add(entity);
+  }
+
+  void clear() {
+    addedEntities.clear();
+    removedEntities.clear();
+  }
+
+}
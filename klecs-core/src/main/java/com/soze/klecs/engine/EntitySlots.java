@@ -0,0 +1,30 @@
+package com.soze.klecs.engine;
+
+/**
+ * Assigns entity ids dense slots, which {@link ComponentStorage} implementations and the {@link Engine}
+ * use as array indices.
+ */
+interface EntitySlots {
+
+  /**
+   * @return slot of given id, -1 if it has no slot
+   */
+  int getSlot(Object id);
+
+  /**
+   * Assigns a slot to an id which does not have one yet.
+   *
+   * @throws IllegalStateException if the id cannot be assigned a slot
+   */
+  int acquireSlot(Object id);
+
+  /**
+   * Frees the slot of given id, so it can be reused.
+   *
+   * @return the freed slot, -1 if the id had no slot
+   */
+  int releaseSlot(Object id);
+
+  Object getId(int slot);
+
+}
@@ -0,0 +1,149 @@
+package com.soze.klecs.engine;
+
+import com.soze.klecs.node.Node;
+
+import java.util.*;
+import java.util.function.IntConsumer;
+
+/**
+ * Default storage, which keeps components of each entity in its own {@link EntityComponentContainer}.
+ * Adding and removing components is cheap, node members are tracked by a {@link NodeIndex}.
+ */
+public class HashComponentStorage implements ComponentStorage {
+
+  private EntityComponentContainer[] components = new EntityComponentContainer[16];
+  private final NodeIndex nodeIndex = new NodeIndex();
+
+  public HashComponentStorage() {
+
+  }
+
+  @Override
+  public void addEntity(final int slot) {
+    if (slot >= components.length) {
+      components = Arrays.copyOf(components, Math.max(slot + 1, components.length * 2));
+    }
+    components[slot] = new EntityComponentContainer();
+    nodeIndex.entityAdded(slot);
+  }
+
+  @Override
+  public void removeEntity(final int slot) {
+    final EntityComponentContainer entityComponents = components[slot];
+    if (entityComponents != null) {
+      nodeIndex.entityRemoved(slot, entityComponents);
+      components[slot] = null;
+    }
+  }
+
+  @Override
+  public Object addComponent(final int slot, final Object component) {
+    final EntityComponentContainer entityComponents = components[slot];
+    final Object previous = entityComponents.addComponent(component);
+    if (previous == null) {
+      nodeIndex.componentAdded(slot, component.getClass(), entityComponents);
+    }
+    return previous;
+  }
+
+  @Override
+  public Object removeComponent(final int slot, final Class<?> clazz) {
+    final EntityComponentContainer entityComponents = components[slot];
+    final Object removed = entityComponents.getComponent(clazz);
+    if (removed != null) {
+      entityComponents.removeComponent(clazz);
+      nodeIndex.componentRemoved(slot, clazz, entityComponents);
+    }
+    return removed;
+  }
+
+  @Override
+  public Object getComponent(final int slot, final Class<?> clazz) {
+    return components[slot].getComponent(clazz);
+  }
+
+  @Override
+  public <T> T getComponentByParent(final int slot, final Class<T> clazz) {
+    return components[slot].getComponentByParent(clazz);
+  }
+
+  @Override
+  public boolean hasComponent(final int slot, final Class<?> clazz) {
+    return components[slot].hasComponent(clazz);
+  }
+
+  @Override
+  public Collection<Object> getAllComponents(final int slot) {
+    return components[slot].getAllComponents();
+  }
+
+  @Override
+  public void registerNode(final Node node) {
+    Objects.requireNonNull(node);
+    if (nodeIndex.isRegistered(node)) {
+      return;
+    }
+
+    final SlotSet matchingSlots = new SlotSet();
+    for (int slot = 0; slot < components.length; slot++) {
+      final EntityComponentContainer entityComponents = components[slot];
+      if (entityComponents != null && NodeIndex.matches(entityComponents, node)) {
+        matchingSlots.add(slot);
+      }
+    }
+    nodeIndex.register(node, matchingSlots);
+  }
+
+  @Override
+  public void unregisterNode(final Node node) {
+    nodeIndex.unregister(Objects.requireNonNull(node));
+  }
+
+  @Override
+  public void forEachEntity(final Node node, final IntConsumer consumer) {
+    final SlotSet members = nodeIndex.getMembers(node);
+    for (int i = 0; i < members.size(); i++) {
+      consumer.accept(members.get(i));
+    }
+  }
+
+  @Override
+  public NodeCursor createCursor(final Node node) {
+    return new HashNodeCursor(nodeIndex.getMembers(node));
+  }
+
+  private final class HashNodeCursor implements NodeCursor {
+
+    private final SlotSet members;
+    private int index = -1;
+
+    private HashNodeCursor(final SlotSet members) {
+      this.members = Objects.requireNonNull(members);
+    }
+
+    @Override
+    public void reset() {
+      index = -1;
+    }
+
+    @Override
+    public boolean next() {
+      if (index < members.size()) {
+        index++;
+      }
+      return index < members.size();
+    }
+
+    @Override
+    public int getSlot() {
+      return members.get(index);
+    }
+
+    @Override
+    public Object getComponent(final Class<?> clazz) {
+      return components[members.get(index)].getComponent(clazz);
+    }
+
+  }
+
+}
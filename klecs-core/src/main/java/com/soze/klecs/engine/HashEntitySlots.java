@@ -0,0 +1,55 @@
+package com.soze.klecs.engine;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Assigns dense slots to entity ids of any type, by keeping them in a map.
+ * Slots of removed entities are reused, so the slot space stays as compact as the number of live entities.
+ */
+class HashEntitySlots implements EntitySlots {
+
+  private final Map<Object, Integer> slotsById = new HashMap<>();
+  private Object[] idsBySlot = new Object[16];
+  private int[] freeSlots = new int[16];
+  private int freeSlotCount = 0;
+  private int nextSlot = 0;
+
+  @Override
+  public int getSlot(final Object id) {
+    final Integer slot = slotsById.get(id);
+    return slot == null ? -1 : slot;
+  }
+
+  @Override
+  public int acquireSlot(final Object id) {
+    final int slot = freeSlotCount > 0 ? freeSlots[--freeSlotCount] : nextSlot++;
+    if (slot >= idsBySlot.length) {
+      idsBySlot = Arrays.copyOf(idsBySlot, idsBySlot.length * 2);
+    }
+    idsBySlot[slot] = id;
+    slotsById.put(id, slot);
+    return slot;
+  }
+
+  @Override
+  public int releaseSlot(final Object id) {
+    final Integer slot = slotsById.remove(id);
+    if (slot == null) {
+      return -1;
+    }
+    idsBySlot[slot] = null;
+    if (freeSlotCount == freeSlots.length) {
+      freeSlots = Arrays.copyOf(freeSlots, freeSlots.length * 2);
+    }
+    freeSlots[freeSlotCount++] = slot;
+    return slot;
+  }
+
+  @Override
+  public Object getId(final int slot) {
+    return idsBySlot[slot];
+  }
+
+}
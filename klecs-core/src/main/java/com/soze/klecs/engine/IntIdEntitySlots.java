@@ -0,0 +1,78 @@
+package com.soze.klecs.engine;
+
+import com.soze.klecs.entity.IntIdAllocator;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Slots for ids handed out by an {@link IntIdAllocator}. The slot of an id is its index,
+ * so finding a slot is an array access instead of a hash lookup.
+ * Releasing a slot releases the id, so stale ids never resolve to the entity which reused the slot.
+ * Ids are kept as primitive longs, they are only boxed when returned from {@link #getId(int)}.
+ */
+class IntIdEntitySlots implements EntitySlots {
+
+  private final IntIdAllocator idAllocator;
+
+  /**
+   * Ids which currently hold each slot, 0 if the slot is free. No allocated id is 0, as its generation is never 0.
+   */
+  private long[] idsBySlot = new long[16];
+
+  IntIdEntitySlots(final IntIdAllocator idAllocator) {
+    this.idAllocator = Objects.requireNonNull(idAllocator);
+  }
+
+  @Override
+  public int getSlot(final Object id) {
+    if (!(id instanceof Long)) {
+      return -1;
+    }
+    final long value = (Long) id;
+    final int slot = IntIdAllocator.indexOf(value);
+    if (slot < 0 || slot >= idsBySlot.length) {
+      return -1;
+    }
+    return value != 0 && idsBySlot[slot] == value ? slot : -1;
+  }
+
+  @Override
+  public int acquireSlot(final Object id) {
+    if (!(id instanceof Long) || !idAllocator.isAlive((Long) id)) {
+      throw new IllegalStateException("Id: " + id + " was not allocated by this engine or its entity was removed.");
+    }
+    final long value = (Long) id;
+    final int slot = IntIdAllocator.indexOf(value);
+    if (slot >= idsBySlot.length) {
+      idsBySlot = Arrays.copyOf(idsBySlot, Math.max(slot + 1, idsBySlot.length * 2));
+    }
+    idsBySlot[slot] = value;
+    return slot;
+  }
+
+  /**
+   * Frees the slot of given id and releases the id. An id which is alive, but never got a slot,
+   * is released as well, so entities which were created but never used don't keep their index.
+   */
+  @Override
+  public int releaseSlot(final Object id) {
+    final int slot = getSlot(id);
+    if (slot == -1) {
+      if (id instanceof Long && idAllocator.isAlive((Long) id)) {
+        idAllocator.release((Long) id);
+      }
+      return -1;
+    }
+    idAllocator.release(idsBySlot[slot]);
+    idsBySlot[slot] = 0;
+    return slot;
+  }
+
+  @Override
+  public Object getId(final int slot) {
+    final long id = idsBySlot[slot];
+    return id == 0 ? null : id;
+  }
+
+}
@@ -0,0 +1,146 @@
+package com.soze.klecs.engine;
+
+import java.util.Arrays;
+
+/**
+ * Values of one {@link PrimitiveLayout} for all entities of one container which have it.
+ * Rows are dense: entities which have the layout occupy rows 0 to {@link #size()} - 1
+ * and removing an entity moves the last row in its place.
+ * <p>
+ * Values can be written from many threads, as long as each row is written by one thread
+ * and no entity is added or removed meanwhile.
+ *
+ * @see PrimitiveColumns
+ * @see OffHeapColumns
+ */
+public abstract class LayoutColumns {
+
+  private final PrimitiveLayout layout;
+  private int[] slots = new int[16];
+
+  /**
+   * Row of each entity slot, -1 if the entity does not have this layout.
+   */
+  private int[] rowsBySlot = new int[0];
+  private int size = 0;
+
+  LayoutColumns(final PrimitiveLayout layout) {
+    layout.markUsed();
+    this.layout = layout;
+  }
+
+  public PrimitiveLayout getLayout() {
+    return layout;
+  }
+
+  /**
+   * Returns the number of entities which have this layout.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns entity slot of given row.
+   */
+  public int getSlot(final int row) {
+    return slots[row];
+  }
+
+  /**
+   * Returns row of the entity with given slot, -1 if the entity does not have this layout.
+   */
+  public int getRow(final int slot) {
+    return slot < rowsBySlot.length ? rowsBySlot[slot] : -1;
+  }
+
+  public abstract float getFloat(int row, PrimitiveField field);
+
+  public abstract void setFloat(int row, PrimitiveField field, float value);
+
+  public abstract int getInt(int row, PrimitiveField field);
+
+  public abstract void setInt(int row, PrimitiveField field, int value);
+
+  /**
+   * Adds a row with all values set to zero for given slot, if the slot does not have one.
+   *
+   * @return row of the slot
+   */
+  int addRow(final int slot) {
+    final int existing = getRow(slot);
+    if (existing != -1) {
+      return existing;
+    }
+    if (slot >= rowsBySlot.length) {
+      final int oldLength = rowsBySlot.length;
+      rowsBySlot = Arrays.copyOf(rowsBySlot, Math.max(slot + 1, oldLength * 2));
+      Arrays.fill(rowsBySlot, oldLength, rowsBySlot.length, -1);
+    }
+    if (size == slots.length) {
+      slots = Arrays.copyOf(slots, size * 2);
+    }
+    ensureCapacity(size + 1);
+    final int row = size++;
+    slots[row] = slot;
+    rowsBySlot[slot] = row;
+    return row;
+  }
+
+  /**
+   * Removes row of given slot, moving the last row in its place.
+   */
+  void removeRow(final int slot) {
+    final int row = getRow(slot);
+    if (row == -1) {
+      return;
+    }
+    final int last = --size;
+    if (row != last) {
+      final int movedSlot = slots[last];
+      slots[row] = movedSlot;
+      rowsBySlot[movedSlot] = row;
+      moveRow(last, row);
+    }
+    clearRow(last);
+    rowsBySlot[slot] = -1;
+    rowRemoved(size);
+  }
+
+  /**
+   * Makes room for values of given number of rows.
+   */
+  abstract void ensureCapacity(int rows);
+
+  /**
+   * Copies values of one row to another.
+   */
+  abstract void moveRow(int from, int to);
+
+  /**
+   * Sets all values of a row to zero.
+   */
+  abstract void clearRow(int row);
+
+  /**
+   * Called after a row was removed, with the new number of rows.
+   */
+  void rowRemoved(final int size) {
+
+  }
+
+  /**
+   * Releases memory held by these columns. The columns can't be used afterwards.
+   */
+  void dispose() {
+
+  }
+
+  final int checkField(final PrimitiveField field, final PrimitiveField.Type type) {
+    if (field.getLayout() != layout) {
+      throw new IllegalArgumentException("Field " + field + " does not belong to " + layout);
+    }
+    return field.checkType(type);
+  }
+
+}
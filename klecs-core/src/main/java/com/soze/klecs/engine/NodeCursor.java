@@ -0,0 +1,32 @@
+package com.soze.klecs.engine;
+
+/**
+ * A reusable cursor over entities matching one node, created by a {@link ComponentStorage}.
+ * Moving the cursor and reading components does not allocate.
+ * Components must not be added or removed while the cursor is used.
+ */
+public interface NodeCursor {
+
+  /**
+   * Moves the cursor before the first entity.
+   */
+  void reset();
+
+  /**
+   * Moves the cursor to the next entity.
+   *
+   * @return false if there are no more entities
+   */
+  boolean next();
+
+  /**
+   * @return slot of the current entity
+   */
+  int getSlot();
+
+  /**
+   * @return component of the current entity with exactly given class, null if the entity does not have it
+   */
+  Object getComponent(Class<?> clazz);
+
+}
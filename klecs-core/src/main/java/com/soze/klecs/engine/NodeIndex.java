@@ -0,0 +1,128 @@
+package com.soze.klecs.engine;
+
+import com.soze.klecs.node.Node;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps, for every registered node, the slots of entities which match the node.
+ * The index is updated by {@link HashComponentStorage} whenever a component is added or removed,
+ * so querying a node costs O(matching entities) instead of a scan over all entities,
+ * also for nodes with any and excluded classes.
+ * <p>
+ * Equal nodes share their members.
+ */
+class NodeIndex {
+
+  /**
+   * Entity slots matching each registered node.
+   * Nodes can be registered while other threads query members of other nodes.
+   */
+  private final Map<Node, SlotSet> members = new ConcurrentHashMap<>();
+
+  /**
+   * Registered nodes whose matching depends on a given component class.
+   */
+  private final Map<Class<?>, List<Node>> nodesByClass = new HashMap<>();
+
+  /**
+   * Registered nodes which match entities without components, these are only excluding classes, if any.
+   */
+  private final List<Node> emptyNodes = new ArrayList<>();
+
+  boolean isRegistered(final Node node) {
+    return members.containsKey(node);
+  }
+
+  /**
+   * Registers a node, with slots of entities which currently match it.
+   */
+  void register(final Node node, final SlotSet matchingSlots) {
+    Objects.requireNonNull(node);
+    if (isRegistered(node)) {
+      return;
+    }
+    members.put(node, matchingSlots);
+    if (node.getComponentClasses().isEmpty() && node.getAnyClasses().isEmpty()) {
+      emptyNodes.add(node);
+    }
+    for (final Class<?> clazz : node.getMatchedClasses()) {
+      nodesByClass.computeIfAbsent(clazz, (key) -> new ArrayList<>()).add(node);
+    }
+  }
+
+  /**
+   * Stops tracking members of given node. Does nothing if the node is not registered.
+   */
+  void unregister(final Node node) {
+    if (members.remove(node) == null) {
+      return;
+    }
+    emptyNodes.remove(node);
+    for (final Class<?> clazz : node.getMatchedClasses()) {
+      final List<Node> nodes = nodesByClass.get(clazz);
+      if (nodes.remove(node) && nodes.isEmpty()) {
+        nodesByClass.remove(clazz);
+      }
+    }
+  }
+
+  /**
+   * Returns slots of entities matching given node. The node has to be registered.
+   */
+  SlotSet getMembers(final Node node) {
+    return members.get(node);
+  }
+
+  void entityAdded(final int slot) {
+    for (final Node node : emptyNodes) {
+      members.get(node).add(slot);
+    }
+  }
+
+  void componentAdded(final int slot, final Class<?> clazz, final EntityComponentContainer components) {
+    final List<Node> nodes = nodesByClass.get(clazz);
+    if (nodes == null) {
+      return;
+    }
+    updateMembers(slot, nodes, components);
+  }
+
+  void componentRemoved(final int slot, final Class<?> clazz, final EntityComponentContainer components) {
+    final List<Node> nodes = nodesByClass.get(clazz);
+    if (nodes == null) {
+      return;
+    }
+    updateMembers(slot, nodes, components);
+  }
+
+  private void updateMembers(final int slot, final List<Node> nodes, final EntityComponentContainer components) {
+    for (final Node node : nodes) {
+      if (matches(components, node)) {
+        members.get(node).add(slot);
+      } else {
+        members.get(node).remove(slot);
+      }
+    }
+  }
+
+  void entityRemoved(final int slot, final EntityComponentContainer components) {
+    for (final Node node : emptyNodes) {
+      members.get(node).remove(slot);
+    }
+    for (final Object component : components.getAllComponents()) {
+      final List<Node> nodes = nodesByClass.get(component.getClass());
+      if (nodes != null) {
+        for (final Node node : nodes) {
+          members.get(node).remove(slot);
+        }
+      }
+    }
+  }
+
+  static boolean matches(final EntityComponentContainer components, final Node node) {
+    return node.matches(components.getSignature());
+  }
+
+}
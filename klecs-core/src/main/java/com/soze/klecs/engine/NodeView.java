@@ -0,0 +1,167 @@
+package com.soze.klecs.engine;
+
+import com.soze.klecs.entity.Entity;
+import com.soze.klecs.node.Node;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * A reusable view of entities in an engine which match a node.
+ * Each engine has one view per node, obtained with {@link Engine#getNodeView(Node)}.
+ * Iterating over a view does not allocate, so it can be used every tick without creating garbage.
+ * <pre>
+ * view.reset();
+ * while (view.next()) {
+ *   Position position = view.getComponent(Position.class);
+ * }
+ * </pre>
+ * Components must not be added or removed while iterating, and a view must not be iterated over
+ * from inside an iteration over the same view. A view is not thread-safe, but {@link Engine#forEach(Node, Consumer)}
+ * iterates over a separate view when another thread is iterating over the engine's view of the node.
+ */
+public class NodeView {
+
+  private final Engine engine;
+  private final Node node;
+  private final NodeCursor cursor;
+
+  /**
+   * Thread which iterates over this view with one of the forEach methods, null if there is none.
+   */
+  private final AtomicReference<Thread> owner = new AtomicReference<>();
+  private boolean iterating = false;
+
+  NodeView(final Engine engine, final Node node, final NodeCursor cursor) {
+    this.engine = Objects.requireNonNull(engine);
+    this.node = Objects.requireNonNull(node);
+    this.cursor = Objects.requireNonNull(cursor);
+  }
+
+  public Node getNode() {
+    return node;
+  }
+
+  /**
+   * Moves the view before the first entity.
+   */
+  public void reset() {
+    cursor.reset();
+  }
+
+  /**
+   * Moves the view to the next entity. Entities which are not yet added to the engine are skipped.
+   *
+   * @return false if there are no more entities
+   */
+  public boolean next() {
+    while (cursor.next()) {
+      if (engine.isAddedSlot(cursor.getSlot())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return the current entity
+   */
+  public Entity getEntity() {
+    return engine.getEntityBySlot(cursor.getSlot());
+  }
+
+  /**
+   * @return component of the current entity with exactly given class
+   */
+  public <T> T getComponent(final Class<T> clazz) {
+    return (T) cursor.getComponent(clazz);
+  }
+
+  public void forEach(final Consumer<Entity> consumer) {
+    Objects.requireNonNull(consumer);
+    begin();
+    try {
+      while (next()) {
+        consumer.accept(getEntity());
+      }
+    } finally {
+      end();
+    }
+  }
+
+  public <A> void forEach(final Class<A> a, final Consumer1<A> consumer) {
+    Objects.requireNonNull(consumer);
+    begin();
+    try {
+      while (next()) {
+        consumer.accept(getEntity(), getComponent(a));
+      }
+    } finally {
+      end();
+    }
+  }
+
+  public <A, B> void forEach(final Class<A> a, final Class<B> b, final Consumer2<A, B> consumer) {
+    Objects.requireNonNull(consumer);
+    begin();
+    try {
+      while (next()) {
+        consumer.accept(getEntity(), getComponent(a), getComponent(b));
+      }
+    } finally {
+      end();
+    }
+  }
+
+  public <A, B, C> void forEach(final Class<A> a, final Class<B> b, final Class<C> c, final Consumer3<A, B, C> consumer) {
+    Objects.requireNonNull(consumer);
+    begin();
+    try {
+      while (next()) {
+        consumer.accept(getEntity(), getComponent(a), getComponent(b), getComponent(c));
+      }
+    } finally {
+      end();
+    }
+  }
+
+  /**
+   * Reserves this view for iteration on the current thread.
+   *
+   * @return false if another thread is iterating over this view
+   */
+  boolean reserve() {
+    final Thread current = Thread.currentThread();
+    return owner.compareAndSet(null, current) || owner.get() == current;
+  }
+
+  private void begin() {
+    if (!reserve() || iterating) {
+      throw new IllegalStateException("Already iterating over this view");
+    }
+    iterating = true;
+    cursor.reset();
+  }
+
+  private void end() {
+    iterating = false;
+    owner.set(null);
+  }
+
+  @FunctionalInterface
+  public interface Consumer1<A> {
+    void accept(Entity entity, A a);
+  }
+
+  @FunctionalInterface
+  public interface Consumer2<A, B> {
+    void accept(Entity entity, A a, B b);
+  }
+
+  @FunctionalInterface
+  public interface Consumer3<A, B, C> {
+    void accept(Entity entity, A a, B b, C c);
+  }
+
+}
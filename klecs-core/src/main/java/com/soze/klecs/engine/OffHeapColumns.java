@@ -0,0 +1,219 @@
+package com.soze.klecs.engine;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Values of one {@link PrimitiveLayout}, kept outside of the heap in pages of direct {@link ByteBuffer}s.
+ * Each row is one record of 4 bytes per field, so millions of records are a few hundred pages,
+ * which the garbage collector does not have to scan.
+ * <p>
+ * A page is freed when rows are removed and the number of rows falls a whole page below its start, so adding and
+ * removing rows around a page boundary does not allocate and free a page every time. All pages are freed when
+ * the container is disposed (see {@link Engine#dispose()}). Values are read and written by row, or through
+ * a {@link Record}, a reusable flyweight pointing at one row. A record which points at a freed page throws
+ * an exception instead of touching freed memory.
+ */
+public final class OffHeapColumns extends LayoutColumns {
+
+  /**
+   * Size of one page in bytes.
+   */
+  static final int PAGE_SIZE = 64 * 1024;
+
+  private static final int FIELD_SIZE = 4;
+
+  private final int recordSize;
+  private final int recordsPerPage;
+
+  /**
+   * Offset of each field in a record, float fields first, then int fields.
+   */
+  private final int[] floatOffsets;
+  private final int[] intOffsets;
+
+  private ByteBuffer[] pages = new ByteBuffer[0];
+  private int pageCount = 0;
+
+  /**
+   * Incremented whenever pages are freed, records moved before that have to be moved again.
+   */
+  private int generation = 0;
+
+  OffHeapColumns(final PrimitiveLayout layout) {
+    super(layout);
+    this.recordSize = Math.max(1, layout.getFloatCount() + layout.getIntCount()) * FIELD_SIZE;
+    this.recordsPerPage = Math.max(1, PAGE_SIZE / recordSize);
+    this.floatOffsets = new int[layout.getFloatCount()];
+    this.intOffsets = new int[layout.getIntCount()];
+    for (int i = 0; i < floatOffsets.length; i++) {
+      floatOffsets[i] = i * FIELD_SIZE;
+    }
+    for (int i = 0; i < intOffsets.length; i++) {
+      intOffsets[i] = (floatOffsets.length + i) * FIELD_SIZE;
+    }
+  }
+
+  @Override
+  public float getFloat(final int row, final PrimitiveField field) {
+    final int offset = floatOffsets[checkField(field, PrimitiveField.Type.FLOAT)];
+    return getPage(row).getFloat(getPosition(row) + offset);
+  }
+
+  @Override
+  public void setFloat(final int row, final PrimitiveField field, final float value) {
+    final int offset = floatOffsets[checkField(field, PrimitiveField.Type.FLOAT)];
+    getPage(row).putFloat(getPosition(row) + offset, value);
+  }
+
+  @Override
+  public int getInt(final int row, final PrimitiveField field) {
+    final int offset = intOffsets[checkField(field, PrimitiveField.Type.INT)];
+    return getPage(row).getInt(getPosition(row) + offset);
+  }
+
+  @Override
+  public void setInt(final int row, final PrimitiveField field, final int value) {
+    final int offset = intOffsets[checkField(field, PrimitiveField.Type.INT)];
+    getPage(row).putInt(getPosition(row) + offset, value);
+  }
+
+  /**
+   * Creates a flyweight to read and write values of rows. One record can be reused for all rows,
+   * but not by many threads at once.
+   */
+  public Record createRecord() {
+    return new Record();
+  }
+
+  /**
+   * Returns the number of allocated pages.
+   */
+  public int getPageCount() {
+    return pageCount;
+  }
+
+  @Override
+  void ensureCapacity(final int rows) {
+    while (pageCount * recordsPerPage < rows) {
+      if (pageCount == pages.length) {
+        pages = Arrays.copyOf(pages, Math.max(4, pageCount * 2));
+      }
+      //direct buffers are zeroed when allocated
+      pages[pageCount++] = ByteBuffer.allocateDirect(recordsPerPage * recordSize).order(ByteOrder.nativeOrder());
+    }
+  }
+
+  @Override
+  void moveRow(final int from, final int to) {
+    final ByteBuffer source = getPage(from);
+    final ByteBuffer target = getPage(to);
+    final int sourcePosition = getPosition(from);
+    final int targetPosition = getPosition(to);
+    for (int offset = 0; offset < recordSize; offset += FIELD_SIZE) {
+      target.putInt(targetPosition + offset, source.getInt(sourcePosition + offset));
+    }
+  }
+
+  @Override
+  void clearRow(final int row) {
+    final ByteBuffer page = getPage(row);
+    final int position = getPosition(row);
+    for (int offset = 0; offset < recordSize; offset += FIELD_SIZE) {
+      page.putInt(position + offset, 0);
+    }
+  }
+
+  @Override
+  void rowRemoved(final int size) {
+    //keep the first page and one empty page after the last row, to not allocate and free pages over and over
+    while (pageCount > 1 && (pageCount - 2) * recordsPerPage >= size) {
+      generation++;
+      DirectBuffers.free(pages[--pageCount]);
+      pages[pageCount] = null;
+    }
+  }
+
+  @Override
+  void dispose() {
+    generation++;
+    for (int i = 0; i < pageCount; i++) {
+      DirectBuffers.free(pages[i]);
+      pages[i] = null;
+    }
+    pageCount = 0;
+  }
+
+  private ByteBuffer getPage(final int row) {
+    return pages[row / recordsPerPage];
+  }
+
+  private int getPosition(final int row) {
+    return (row % recordsPerPage) * recordSize;
+  }
+
+  /**
+   * A view of one row. Moving the record to another row does not allocate.
+   */
+  public final class Record {
+
+    private ByteBuffer page;
+    private int position;
+    private int row = -1;
+    private int pageGeneration = -1;
+
+    private Record() {
+
+    }
+
+    /**
+     * Points this record at given row.
+     *
+     * @return this record
+     */
+    public Record moveTo(final int row) {
+      if (row < 0 || row >= size()) {
+        throw new IndexOutOfBoundsException("Row " + row + " out of " + size());
+      }
+      this.row = row;
+      this.page = getPage(row);
+      this.position = getPosition(row);
+      this.pageGeneration = generation;
+      return this;
+    }
+
+    public int getRow() {
+      return row;
+    }
+
+    public float getFloat(final PrimitiveField field) {
+      return getValidPage().getFloat(position + floatOffsets[checkField(field, PrimitiveField.Type.FLOAT)]);
+    }
+
+    public void setFloat(final PrimitiveField field, final float value) {
+      getValidPage().putFloat(position + floatOffsets[checkField(field, PrimitiveField.Type.FLOAT)], value);
+    }
+
+    public int getInt(final PrimitiveField field) {
+      return getValidPage().getInt(position + intOffsets[checkField(field, PrimitiveField.Type.INT)]);
+    }
+
+    public void setInt(final PrimitiveField field, final int value) {
+      getValidPage().putInt(position + intOffsets[checkField(field, PrimitiveField.Type.INT)], value);
+    }
+
+    /**
+     * Returns the page of the row, unless pages were freed since the record was moved to it.
+     */
+    private ByteBuffer getValidPage() {
+      if (pageGeneration != generation) {
+        throw new IllegalStateException("Pages were freed since the record was moved to row " + row
+          + ", move it again.");
+      }
+      return page;
+    }
+
+  }
+
+}
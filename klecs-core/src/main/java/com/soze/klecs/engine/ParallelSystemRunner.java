@@ -0,0 +1,174 @@
+package com.soze.klecs.engine;
+
+import com.soze.klecs.system.ComponentAccess;
+import com.soze.klecs.system.EntitySystem;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntConsumer;
+
+/**
+ * Updates systems on a ForkJoinPool. Systems whose {@link ComponentAccess} conflict are updated one after another,
+ * in the order they are given, all other systems can be updated concurrently.
+ * The dependency graph is rebuilt only when the list of systems changes.
+ */
+final class ParallelSystemRunner {
+
+  private final ForkJoinPool pool;
+
+  private List<EntitySystem> graphSystems = new ArrayList<>();
+
+  /**
+   * For each system, the number of earlier systems it conflicts with.
+   */
+  private int[] dependencyCounts = new int[0];
+
+  /**
+   * For each system, later systems which conflict with it.
+   */
+  private int[][] dependents = new int[0][];
+
+  ParallelSystemRunner(final ForkJoinPool pool) {
+    this.pool = Objects.requireNonNull(pool);
+  }
+
+  ForkJoinPool getPool() {
+    return pool;
+  }
+
+  /**
+   * Updates all systems and returns after all of them are finished.
+   * If any system throws an exception, systems which did not start yet are skipped
+   * and the first exception is rethrown. A system which the pool refuses to run fails with
+   * a {@link RejectedExecutionException}.
+   * <p>
+   * This may be called from a worker of the pool, for example when engines are updated on the same pool
+   * as their systems. The pool is then told that the worker blocks, so it can start another worker
+   * to update the systems.
+   *
+   * @param updateSystem updates a system with given index
+   */
+  void run(final List<EntitySystem> systems, final IntConsumer updateSystem) {
+    if (!graphSystems.equals(systems)) {
+      buildGraph(systems);
+    }
+
+    final Update update = new Update(updateSystem);
+    for (int i = 0; i < systems.size(); i++) {
+      if (dependencyCounts[i] == 0) {
+        update.dispatch(i);
+      }
+    }
+
+    try {
+      ForkJoinPool.managedBlock(update);
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for systems to update", e);
+    }
+
+    final Throwable t = update.failure.get();
+    if (t instanceof RuntimeException) {
+      throw (RuntimeException) t;
+    }
+    if (t instanceof Error) {
+      throw (Error) t;
+    }
+    if (t != null) {
+      throw new IllegalStateException(t);
+    }
+  }
+
+  /**
+   * State of one run of all systems. Blocks the caller until every system is finished or skipped.
+   */
+  private final class Update implements ForkJoinPool.ManagedBlocker {
+
+    private final IntConsumer updateSystem;
+    private final AtomicIntegerArray remainingDependencies = new AtomicIntegerArray(dependencyCounts);
+    private final CountDownLatch finished = new CountDownLatch(dependencyCounts.length);
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    private Update(final IntConsumer updateSystem) {
+      this.updateSystem = updateSystem;
+    }
+
+    private void dispatch(final int index) {
+      try {
+        pool.execute(() -> update(index));
+      } catch (final RejectedExecutionException e) {
+        failure.compareAndSet(null, e);
+        complete(index);
+      }
+    }
+
+    private void update(final int index) {
+      try {
+        if (failure.get() == null) {
+          updateSystem.accept(index);
+        }
+      } catch (final Throwable t) {
+        failure.compareAndSet(null, t);
+      } finally {
+        complete(index);
+      }
+    }
+
+    /**
+     * Counts the system as finished, then dispatches systems which were only waiting for it.
+     */
+    private void complete(final int index) {
+      finished.countDown();
+      for (final int dependent : dependents[index]) {
+        if (remainingDependencies.decrementAndGet(dependent) == 0) {
+          dispatch(dependent);
+        }
+      }
+    }
+
+    @Override
+    public boolean block() throws InterruptedException {
+      finished.await();
+      return true;
+    }
+
+    @Override
+    public boolean isReleasable() {
+      return finished.getCount() == 0;
+    }
+
+  }
+
+  private void buildGraph(final List<EntitySystem> systems) {
+    final int count = systems.size();
+    final ComponentAccess[] accesses = new ComponentAccess[count];
+    for (int i = 0; i < count; i++) {
+      accesses[i] = Objects.requireNonNull(systems.get(i).getComponentAccess());
+    }
+
+    dependencyCounts = new int[count];
+    final List<List<Integer>> dependentLists = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      dependentLists.add(new ArrayList<>());
+      for (int j = 0; j < i; j++) {
+        if (accesses[j].conflictsWith(accesses[i])) {
+          dependencyCounts[i]++;
+          dependentLists.get(j).add(i);
+        }
+      }
+    }
+
+    dependents = new int[count][];
+    for (int i = 0; i < count; i++) {
+      dependents[i] = dependentLists.get(i).stream().mapToInt(Integer::intValue).toArray();
+    }
+    graphSystems = new ArrayList<>(systems);
+  }
+
+}
@@ -0,0 +1,99 @@
+package com.soze.klecs.engine;
+
+import java.util.Arrays;
+
+/**
+ * Values of one {@link PrimitiveLayout}, kept on the heap with one primitive array per field.
+ * A system can loop over whole columns:
+ *
+ * <pre>{@code
+ * float[] x = columns.getFloatColumn(X);
+ * float[] dx = columns.getFloatColumn(DX);
+ * for (int row = 0; row < columns.size(); row++) {
+ *   x[row] += dx[row] * delta;
+ * }
+ * }</pre>
+ *
+ * Column arrays are replaced when they grow, so get them again after entities were added.
+ */
+public final class PrimitiveColumns extends LayoutColumns {
+
+  private final float[][] floats;
+  private final int[][] ints;
+  private int capacity = 16;
+
+  PrimitiveColumns(final PrimitiveLayout layout) {
+    super(layout);
+    this.floats = new float[layout.getFloatCount()][capacity];
+    this.ints = new int[layout.getIntCount()][capacity];
+  }
+
+  @Override
+  public float getFloat(final int row, final PrimitiveField field) {
+    return floats[checkField(field, PrimitiveField.Type.FLOAT)][row];
+  }
+
+  @Override
+  public void setFloat(final int row, final PrimitiveField field, final float value) {
+    floats[checkField(field, PrimitiveField.Type.FLOAT)][row] = value;
+  }
+
+  @Override
+  public int getInt(final int row, final PrimitiveField field) {
+    return ints[checkField(field, PrimitiveField.Type.INT)][row];
+  }
+
+  @Override
+  public void setInt(final int row, final PrimitiveField field, final int value) {
+    ints[checkField(field, PrimitiveField.Type.INT)][row] = value;
+  }
+
+  /**
+   * Returns values of given field, indexed by row. Only first {@link #size()} values are used.
+   */
+  public float[] getFloatColumn(final PrimitiveField field) {
+    return floats[checkField(field, PrimitiveField.Type.FLOAT)];
+  }
+
+  /**
+   * Returns values of given field, indexed by row. Only first {@link #size()} values are used.
+   */
+  public int[] getIntColumn(final PrimitiveField field) {
+    return ints[checkField(field, PrimitiveField.Type.INT)];
+  }
+
+  @Override
+  void ensureCapacity(final int rows) {
+    if (rows <= capacity) {
+      return;
+    }
+    capacity = Math.max(rows, capacity * 2);
+    for (int i = 0; i < floats.length; i++) {
+      floats[i] = Arrays.copyOf(floats[i], capacity);
+    }
+    for (int i = 0; i < ints.length; i++) {
+      ints[i] = Arrays.copyOf(ints[i], capacity);
+    }
+  }
+
+  @Override
+  void moveRow(final int from, final int to) {
+    for (final float[] column : floats) {
+      column[to] = column[from];
+    }
+    for (final int[] column : ints) {
+      column[to] = column[from];
+    }
+  }
+
+  @Override
+  void clearRow(final int row) {
+    for (final float[] column : floats) {
+      column[row] = 0f;
+    }
+    for (final int[] column : ints) {
+      column[row] = 0;
+    }
+  }
+
+}
@@ -0,0 +1,60 @@
+package com.soze.klecs.engine;
+
+/**
+ * A primitive field of a {@link PrimitiveLayout}. Fields are handles used to read and write values,
+ * see {@link PrimitiveColumns}.
+ */
+public final class PrimitiveField {
+
+  public enum Type {
+    FLOAT, INT
+  }
+
+  private final PrimitiveLayout layout;
+  private final String name;
+  private final Type type;
+
+  /**
+   * Index of this field among fields of the same type in its layout.
+   */
+  private final int index;
+
+  PrimitiveField(final PrimitiveLayout layout, final String name, final Type type, final int index) {
+    this.layout = layout;
+    this.name = name;
+    this.type = type;
+    this.index = index;
+  }
+
+  public PrimitiveLayout getLayout() {
+    return layout;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  int getIndex() {
+    return index;
+  }
+
+  /**
+   * @throws IllegalArgumentException if this field does not have given type
+   */
+  int checkType(final Type expected) {
+    if (type != expected) {
+      throw new IllegalArgumentException("Field " + name + " of " + layout + " is " + type + ", not " + expected);
+    }
+    return index;
+  }
+
+  @Override
+  public String toString() {
+    return layout.getName() + "." + name;
+  }
+
+}
@@ -0,0 +1,118 @@
+package com.soze.klecs.engine;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Schema of a component made only of primitive fields, for example a position with float x and y.
+ * Instead of being kept as objects, values of such components are stored by the {@link ComponentContainer}
+ * in {@link PrimitiveColumns}, one primitive array per field, which costs no object headers or pointers
+ * and lets loops over one field be vectorized.
+ * <p>
+ * Values of layouts created with {@link #offHeap(String)} are kept outside of the heap, in {@link OffHeapColumns}.
+ * <p>
+ * Fields are declared before the layout is used by any container, afterwards the layout can't be changed.
+ * Layouts are compared by reference, so declare each of them once, for example as a constant.
+ *
+ * <pre>{@code
+ * PrimitiveLayout movable = new PrimitiveLayout("Movable");
+ * PrimitiveField x = movable.addFloat("x");
+ * PrimitiveField dx = movable.addFloat("dx");
+ * }</pre>
+ */
+public final class PrimitiveLayout {
+
+  private static final AtomicInteger NEXT_ID = new AtomicInteger();
+
+  /**
+   * Unique, dense id of this layout, so containers can find columns of a layout in an array.
+   */
+  private final int id = NEXT_ID.getAndIncrement();
+  private final String name;
+  private final boolean offHeap;
+  private final List<PrimitiveField> fields = new ArrayList<>();
+  private int floatCount = 0;
+  private int intCount = 0;
+  private volatile boolean used = false;
+
+  public PrimitiveLayout(final String name) {
+    this(name, false);
+  }
+
+  private PrimitiveLayout(final String name, final boolean offHeap) {
+    this.name = Objects.requireNonNull(name);
+    this.offHeap = offHeap;
+  }
+
+  /**
+   * Creates a layout whose values are kept in direct memory, outside of the heap.
+   */
+  public static PrimitiveLayout offHeap(final String name) {
+    return new PrimitiveLayout(name, true);
+  }
+
+  public PrimitiveField addFloat(final String name) {
+    return addField(name, PrimitiveField.Type.FLOAT);
+  }
+
+  public PrimitiveField addInt(final String name) {
+    return addField(name, PrimitiveField.Type.INT);
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public boolean isOffHeap() {
+    return offHeap;
+  }
+
+  /**
+   * Returns an unmodifiable list of fields, in the order they were added.
+   */
+  public List<PrimitiveField> getFields() {
+    return Collections.unmodifiableList(fields);
+  }
+
+  public synchronized int getFloatCount() {
+    return floatCount;
+  }
+
+  public synchronized int getIntCount() {
+    return intCount;
+  }
+
+  int getId() {
+    return id;
+  }
+
+  /**
+   * Prevents further changes, called when a container starts storing values of this layout.
+   */
+  void markUsed() {
+    used = true;
+  }
+
+  private synchronized PrimitiveField addField(final String fieldName, final PrimitiveField.Type type) {
+    Objects.requireNonNull(fieldName);
+    if (used) {
+      throw new IllegalStateException("Layout " + name + " is already used, fields can't be added to it.");
+    }
+    for (final PrimitiveField field : fields) {
+      if (field.getName().equals(fieldName)) {
+        throw new IllegalArgumentException("Layout " + name + " already has a field " + fieldName);
+      }
+    }
+    //the index is taken only after the field is accepted, so rejected fields don't leave gaps in the columns
+    final int index = type == PrimitiveField.Type.FLOAT ? floatCount++ : intCount++;
+    final PrimitiveField field = new PrimitiveField(this, fieldName, type, index);
+    fields.add(field);
+    return field;
+  }
+
+  @Override
+  public String toString() {
+    return "PrimitiveLayout{" + name + "}";
+  }
+
+}
@@ -0,0 +1,123 @@
+package com.soze.klecs.engine;
+
+import com.soze.klecs.entity.Entity;
+import com.soze.klecs.node.Node;
+
+import java.util.*;
+
+/**
+ * Collects entities which started matching a node, stopped matching it, or had a component of the node changed,
+ * since the query was last cleared. A system which reacts to changes reads these sets and clears the query,
+ * doing work proportional to the number of changes instead of scanning all entities of the node.
+ * <p>
+ * A component is changed when it is replaced by another component of the same class, or marked dirty with
+ * {@link ComponentContainer#markDirty(Object, Class)}, as writes to fields of components are not noticed.
+ * Changes made while the engine is updating are collected when they are applied, after all systems have finished,
+ * except for components marked dirty, which are collected right away.
+ * <p>
+ * The sets describe the net effect since the last clear: an entity which started and stopped matching is in
+ * neither set, and an entity which stopped and started matching again is reported as changed.
+ *
+ * <pre>{@code
+ * ReactiveQuery colliders = engine.createReactiveQuery(Node.of(Collider.class));
+ * ...
+ * for (Entity entity : colliders.getAdded()) {
+ *   physics.createBody(entity);
+ * }
+ * colliders.clear();
+ * }</pre>
+ *
+ * @see Engine#createReactiveQuery(Node)
+ */
+public final class ReactiveQuery {
+
+  private final Node node;
+
+  /**
+   * Ids of entities which currently match the node.
+   */
+  private final Set<Object> members = new HashSet<>();
+
+  private final Set<Entity> added = new LinkedHashSet<>();
+  private final Set<Entity> removed = new LinkedHashSet<>();
+  private final Set<Entity> changed = new LinkedHashSet<>();
+
+  ReactiveQuery(final Node node) {
+    this.node = Objects.requireNonNull(node);
+  }
+
+  public Node getNode() {
+    return node;
+  }
+
+  /**
+   * Returns an unmodifiable view of entities which started matching the node, in the order they started.
+   */
+  public synchronized Set<Entity> getAdded() {
+    return Collections.unmodifiableSet(added);
+  }
+
+  /**
+   * Returns an unmodifiable view of entities which stopped matching the node, because they were removed
+   * from the engine or lost one of its components.
+   */
+  public synchronized Set<Entity> getRemoved() {
+    return Collections.unmodifiableSet(removed);
+  }
+
+  /**
+   * Returns an unmodifiable view of entities which matched the node before and still match it,
+   * and had one of the node's components replaced or marked dirty.
+   */
+  public synchronized Set<Entity> getChanged() {
+    return Collections.unmodifiableSet(changed);
+  }
+
+  public synchronized boolean hasChanges() {
+    return !added.isEmpty() || !removed.isEmpty() || !changed.isEmpty();
+  }
+
+  /**
+   * Forgets collected entities, the next changes are collected from now on.
+   */
+  public synchronized void clear() {
+    added.clear();
+    removed.clear();
+    changed.clear();
+  }
+
+  /**
+   * Called when the entity matches the node after it was added to the engine or one of the node's components
+   * was added or replaced.
+   */
+  synchronized void entityMatches(final Entity entity) {
+    if (!members.add(entity.getId())) {
+      componentChanged(entity);
+    } else if (removed.remove(entity)) {
+      changed.add(entity);
+    } else {
+      added.add(entity);
+    }
+  }
+
+  /**
+   * Called when the entity may have stopped matching the node, because it was removed
+   * or lost one of the node's components.
+   */
+  synchronized void entityUnmatched(final Entity entity) {
+    if (!members.remove(entity.getId())) {
+      return;
+    }
+    changed.remove(entity);
+    if (!added.remove(entity)) {
+      removed.add(entity);
+    }
+  }
+
+  synchronized void componentChanged(final Entity entity) {
+    if (members.contains(entity.getId()) && !added.contains(entity)) {
+      changed.add(entity);
+    }
+  }
+
+}
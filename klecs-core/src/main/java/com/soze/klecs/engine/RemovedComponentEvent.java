@@ -0,0 +1,11 @@
+package com.soze.klecs.engine;
+
+import com.soze.klecs.entity.Entity;
+
+public class RemovedComponentEvent extends ComponentEvent {
+
+  public RemovedComponentEvent(final Entity entity, final Object component) {
+    super(entity, component);
+  }
+
+}
@@ -0,0 +1,62 @@
+package com.soze.klecs.engine;
+
+import java.util.Arrays;
+
+/**
+ * A set of entity slots, kept as a dense array so it can be iterated over without allocating.
+ * Removal moves the last slot into the place of the removed one, so the order of slots is not stable.
+ */
+final class SlotSet {
+
+  private int[] slots = new int[16];
+
+  /**
+   * Position of each slot in the slots array, plus one. Zero means the slot is absent.
+   */
+  private int[] positions = new int[16];
+
+  private int size = 0;
+
+  boolean add(final int slot) {
+    if (contains(slot)) {
+      return false;
+    }
+    if (slot >= positions.length) {
+      positions = Arrays.copyOf(positions, Math.max(slot + 1, positions.length * 2));
+    }
+    if (size == slots.length) {
+      slots = Arrays.copyOf(slots, size * 2);
+    }
+    slots[size++] = slot;
+    positions[slot] = size;
+    return true;
+  }
+
+  boolean remove(final int slot) {
+    if (!contains(slot)) {
+      return false;
+    }
+    final int position = positions[slot] - 1;
+    final int last = slots[--size];
+    slots[position] = last;
+    positions[last] = position + 1;
+    positions[slot] = 0;
+    return true;
+  }
+
+  boolean contains(final int slot) {
+    return slot < positions.length && positions[slot] != 0;
+  }
+
+  int size() {
+    return size;
+  }
+
+  /**
+   * Returns a slot at given position, 0 <= index < size.
+   */
+  int get(final int index) {
+    return slots[index];
+  }
+
+}
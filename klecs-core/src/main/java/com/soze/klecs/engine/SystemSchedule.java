@@ -0,0 +1,118 @@
+package com.soze.klecs.engine;
+
+import com.soze.klecs.system.EntitySystem;
+
+import java.util.*;
+
+/**
+ * Decides which non-rendering systems are due in an update.
+ * Systems without an update interval are due when their {@link EntitySystem#shouldUpdate(float)} returns true.
+ * Systems with an interval are kept in a queue ordered by the time of their next update,
+ * so an update only looks at the systems which are due.
+ * <p>
+ * Interval systems start at different phases of their interval, so systems which run rarely,
+ * but take long, don't all update in the same tick.
+ */
+class SystemSchedule {
+
+  /**
+   * Fraction of an interval by which each added interval system is shifted relative to the previous one.
+   */
+  private static final double PHASE_INCREMENT = 0.6180339887;
+
+  private final Map<EntitySystem, IntervalSystem> intervalSystems = new IdentityHashMap<>();
+  private final PriorityQueue<IntervalSystem> queue = new PriorityQueue<>(
+    Comparator.comparingDouble(system -> system.nextUpdateTime)
+  );
+  private final List<IntervalSystem> dueSystems = new ArrayList<>();
+
+  /**
+   * Sum of deltas of all updates, in seconds.
+   */
+  private double time = 0;
+  private int addedIntervalSystems = 0;
+
+  void add(final EntitySystem system) {
+    final float interval = system.getUpdateInterval();
+    if (interval < 0) {
+      throw new IllegalArgumentException("Update interval cannot be negative, was " + interval + " for " + system);
+    }
+    if (interval == 0 || system.isRenderer() || intervalSystems.containsKey(system)) {
+      return;
+    }
+    final double phase = (addedIntervalSystems++ * PHASE_INCREMENT) % 1;
+    final IntervalSystem intervalSystem = new IntervalSystem(interval, time, time + phase * interval);
+    intervalSystems.put(system, intervalSystem);
+    queue.add(intervalSystem);
+  }
+
+  void remove(final EntitySystem system) {
+    final IntervalSystem intervalSystem = intervalSystems.remove(system);
+    if (intervalSystem != null) {
+      queue.remove(intervalSystem);
+    }
+  }
+
+  /**
+   * Advances time by delta and marks interval systems whose next update time has passed as due.
+   */
+  void advance(final float delta) {
+    for (final IntervalSystem system : dueSystems) {
+      system.due = false;
+    }
+    dueSystems.clear();
+    time += delta;
+    while (!queue.isEmpty() && queue.peek().nextUpdateTime <= time) {
+      final IntervalSystem system = queue.poll();
+      system.due = true;
+      system.delta = (float) (time - system.lastUpdateTime);
+      system.lastUpdateTime = time;
+      system.nextUpdateTime += system.interval;
+      //skip updates which were missed, instead of updating in each of the following ticks
+      if (system.nextUpdateTime <= time) {
+        system.nextUpdateTime = time + system.interval;
+      }
+      dueSystems.add(system);
+    }
+    queue.addAll(dueSystems);
+  }
+
+  /**
+   * Returns true if given system should update in the current update.
+   */
+  boolean isDue(final EntitySystem system, final float delta) {
+    if (system.isRenderer()) {
+      return false;
+    }
+    final IntervalSystem intervalSystem = intervalSystems.get(system);
+    if (intervalSystem == null) {
+      return system.shouldUpdate(delta);
+    }
+    return intervalSystem.due && system.shouldUpdate(intervalSystem.delta);
+  }
+
+  /**
+   * Returns the delta given system should update with, which for interval systems is the time since their last update.
+   */
+  float getDelta(final EntitySystem system, final float delta) {
+    final IntervalSystem intervalSystem = intervalSystems.get(system);
+    return intervalSystem == null ? delta : intervalSystem.delta;
+  }
+
+  private static class IntervalSystem {
+
+    private final float interval;
+    private double lastUpdateTime;
+    private double nextUpdateTime;
+    private boolean due = false;
+    private float delta = 0;
+
+    private IntervalSystem(final float interval, final double lastUpdateTime, final double nextUpdateTime) {
+      this.interval = interval;
+      this.lastUpdateTime = lastUpdateTime;
+      this.nextUpdateTime = nextUpdateTime;
+    }
+
+  }
+
+}
@@ -2,9 +2,12 @@ package com.soze.klecs.entity;
 
 import com.soze.klecs.engine.ComponentContainer;
 import com.soze.klecs.engine.Engine;
+import com.soze.klecs.engine.PrimitiveField;
+import com.soze.klecs.engine.PrimitiveLayout;
 import com.soze.klecs.node.Node;
 
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -35,6 +38,7 @@ public class Entity {
 
   /**
    * Adds a component to this entity. This can be any object.
+   * If the engine is updating, the component is added after all systems are finished, see {@link com.soze.klecs.engine.CommandBuffer}.
    *
    * @return true if there was no component with the same class as this one added already, false otherwise.
    * @see ComponentContainer#addComponent(Object, Object)
@@ -76,8 +80,7 @@ public class Entity {
   public <T> List<T> getAllComponents(Class<T> clazz) {
     Objects.requireNonNull(clazz);
 
-    return componentContainer.getEntityComponents(this.id)
-             .getAllComponents()
+    return componentContainer.getAllComponents(this.id)
              .stream()
              .map(clazz::cast)
              .collect(Collectors.toList());
@@ -85,31 +88,113 @@ public class Entity {
 
   /**
    * Given a node, returns all components which belong to this node.
-   * Nodes are immutable, and so return value of this method can be cached.
-   * Reference equality will be used to determine if components are present in cache,
-   * so use the same instance of Node for all queries.
    * If this entity does not contain at least one of the components specified
    * in the Node, this will return an empty collection.
    * Modifications of returned collections will not affect the underlying
    * data structures, they are copies.
    *
+   * To iterate over components of many entities without allocating, use {@link Engine#getNodeView(Node)}.
+   *
    * @see ComponentContainer#getNodeComponents(Object, Node)
    */
   public <T> Collection<T> getNodeComponents(final Node node, final Class<T> clazz) {
     Objects.requireNonNull(node);
-    return componentContainer
-             .getNodeComponents(id, node)
-             .getAllComponents()
-             .stream()
-             .map(clazz::cast)
-             .collect(Collectors.toCollection(ArrayList::new));
+    final Collection<Object> components = componentContainer.getNodeComponents(id, node).getAllComponents();
+    final List<T> result = new ArrayList<>(components.size());
+    for (final Object component : components) {
+      result.add(clazz.cast(component));
+    }
+    return result;
+  }
+
+  /**
+   * Returns true if this entity matches given node.
+   *
+   * @see ComponentContainer#matches(Object, Node)
+   */
+  public boolean matches(final Node node) {
+    Objects.requireNonNull(node);
+    return componentContainer.matches(id, node);
   }
 
+  /**
+   * Removes a component with given class from this entity.
+   * If the engine is updating, the component is removed after all systems are finished.
+   *
+   * @see ComponentContainer#removeComponent(Object, Class)
+   */
   public void removeComponent(final Class<?> clazz) {
     Objects.requireNonNull(clazz);
     componentContainer.removeComponent(id, clazz);
   }
 
+  /**
+   * Marks a component of this entity as written, so that the write is replicated.
+   *
+   * @see ComponentContainer#markDirty(Object, Class)
+   */
+  public void markDirty(final Class<?> clazz) {
+    componentContainer.markDirty(id, clazz);
+  }
+
+  /**
+   * Passes the component with given class to the consumer and marks it as written.
+   * Does nothing if the entity does not have such component.
+   */
+  public <T> void modify(final Class<T> clazz, final Consumer<T> modification) {
+    Objects.requireNonNull(modification);
+    final T component = getComponent(clazz);
+    if (component != null) {
+      modification.accept(component);
+      markDirty(clazz);
+    }
+  }
+
+  /**
+   * Gives this entity a primitive layout, with all values set to zero.
+   *
+   * @see ComponentContainer#addLayout(Object, PrimitiveLayout)
+   */
+  public void addLayout(final PrimitiveLayout layout) {
+    componentContainer.addLayout(id, layout);
+  }
+
+  public void removeLayout(final PrimitiveLayout layout) {
+    componentContainer.removeLayout(id, layout);
+  }
+
+  public boolean hasLayout(final PrimitiveLayout layout) {
+    return componentContainer.hasLayout(id, layout);
+  }
+
+  /**
+   * @throws IllegalStateException if this entity does not have the field's layout
+   */
+  public float getFloat(final PrimitiveField field) {
+    return componentContainer.getFloat(id, field);
+  }
+
+  /**
+   * @throws IllegalStateException if this entity does not have the field's layout
+   */
+  public void setFloat(final PrimitiveField field, final float value) {
+    componentContainer.setFloat(id, field, value);
+  }
+
+  /**
+   * @throws IllegalStateException if this entity does not have the field's layout
+   */
+  public int getInt(final PrimitiveField field) {
+    return componentContainer.getInt(id, field);
+  }
+
+  /**
+   * @throws IllegalStateException if this entity does not have the field's layout
+   */
+  public void setInt(final PrimitiveField field, final int value) {
+    componentContainer.setInt(id, field, value);
+  }
+
   public boolean isRemoved() {
     return removed;
   }
@@ -3,6 +3,8 @@ package com.soze.klecs.entity;
 import com.soze.klecs.engine.ComponentContainer;
 import com.soze.klecs.engine.Engine;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Supplier;
@@ -28,26 +30,104 @@ public class EntityFactory {
    */
   private final ComponentContainer componentContainer;
 
+  /**
+   * Allocates ids of entities created in bulk, null if ids come from the supplier.
+   */
+  private final IntIdAllocator idAllocator;
+
+  /**
+   * Next id handed out by a factory with default ids, null if ids come from elsewhere.
+   */
+  private final AtomicLong nextId;
+
+  /**
+   * Creates a factory which hands out increasing long ids, starting at 1.
+   */
+  public EntityFactory(final Engine engine, final ComponentContainer componentContainer) {
+    this.engine = Objects.requireNonNull(engine);
+    this.componentContainer = Objects.requireNonNull(componentContainer);
+    this.nextId = new AtomicLong(1L);
+    this.idSupplier = () -> nextId.getAndAdd(1);
+    this.idAllocator = null;
+  }
+
   public EntityFactory(final Engine engine, final ComponentContainer componentContainer, final Supplier<Object> idSupplier) {
     this.engine = Objects.requireNonNull(engine);
     this.componentContainer = Objects.requireNonNull(componentContainer);
     this.idSupplier = Objects.requireNonNull(idSupplier);
+    this.idAllocator = null;
+    this.nextId = null;
+  }
+
+  public EntityFactory(final Engine engine, final ComponentContainer componentContainer, final IntIdAllocator idAllocator) {
+    this.engine = Objects.requireNonNull(engine);
+    this.componentContainer = Objects.requireNonNull(componentContainer);
+    this.idAllocator = Objects.requireNonNull(idAllocator);
+    this.idSupplier = idAllocator::allocate;
+    this.nextId = null;
   }
 
   /**
    * This method will create an {@link Entity} and return it to you.
    * You need to manually insert this entity to the engine.
+   * An entity which won't be added should be passed to {@link Engine#discardEntity(Entity)},
+   * otherwise its id is never reused.
    */
   public Entity createEntity() {
     return createEntity(idSupplier.get());
   }
 
+  /**
+   * Creates an entity with components of given template. The entity is not added to the engine yet.
+   */
+  public Entity createEntity(final EntityTemplate template) {
+    final Entity entity = createEntity();
+    for (int i = 0; i < template.size(); i++) {
+      entity.addComponent(template.createComponent(i));
+    }
+    return entity;
+  }
+
+  /**
+   * Creates given number of entities, which are not added to the engine yet.
+   * With an {@link IntIdAllocator}, their ids are allocated in one block.
+   */
+  public List<Entity> createEntities(final int count) {
+    final List<Entity> entities = new ArrayList<>(count);
+    if (idAllocator != null) {
+      for (final long id : idAllocator.allocate(count)) {
+        entities.add(new Entity(id, componentContainer));
+      }
+    } else {
+      for (int i = 0; i < count; i++) {
+        entities.add(createEntity());
+      }
+    }
+    return entities;
+  }
+
   /**
    * Creates an Entity with given id. This Entity is not
    * added to the engine yet.
+   * <p>
+   * An id which was not handed out by this factory, for example one restored from a snapshot,
+   * is reserved so that it is never handed out to another entity: default ids continue after it,
+   * and an {@link IntIdAllocator} marks it as alive, see {@link IntIdAllocator#reserve(long)}.
+   * If the ids come from a custom supplier, the supplier must not hand out the id.
+   *
+   * @throws IllegalArgumentException if the engine uses an {@link IntIdAllocator}, which could not have allocated the id
+   * @throws IllegalStateException if the engine uses an {@link IntIdAllocator} and the index of the id
+   * belongs to another id
    */
   public Entity createEntity(final Object id) {
     Objects.requireNonNull(id);
+    if (id instanceof Long) {
+      if (idAllocator != null && !idAllocator.isAlive((Long) id)) {
+        idAllocator.reserve((Long) id);
+      } else if (nextId != null) {
+        nextId.accumulateAndGet((Long) id + 1, Math::max);
+      }
+    }
     return new Entity(id, componentContainer);
   }
 
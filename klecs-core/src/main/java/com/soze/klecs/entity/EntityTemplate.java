@@ -0,0 +1,169 @@
+package com.soze.klecs.entity;
+
+import com.soze.klecs.engine.ComponentMask;
+import com.soze.klecs.engine.Engine;
+import com.soze.klecs.node.Node;
+
+import java.util.*;
+import java.util.function.UnaryOperator;
+
+/**
+ * Components of a kind of entity, like a projectile or a tree, from which many entities are created.
+ * Each entity created from a template gets its own copy of a component, made by a copy function,
+ * or shares the template's instance of the component, if the component is immutable.
+ * <p>
+ * The signature of a template is computed once. {@link Engine#spawn(int, EntityTemplate)} gives it to each
+ * spawned entity as a whole, and whether the template's entities will match a node is known without creating
+ * any of them. Templates are immutable, adding a component returns a new template.
+ *
+ * <pre>
+ * EntityTemplate projectile = EntityTemplate.empty()
+ *   .withCopy(Position.class, Position::new)
+ *   .with(new Position(0, 0))
+ *   .with(new Velocity(1, 0), Velocity::copy)
+ *   .withShared(new Sprite("projectile.png"));
+ * engine.spawn(1000, projectile);
+ * </pre>
+ *
+ * @see EntityFactory#createEntity(EntityTemplate)
+ * @see Engine#spawn(int, EntityTemplate)
+ */
+public final class EntityTemplate {
+
+  private static final EntityTemplate EMPTY = new EntityTemplate(
+    new Object[0], new UnaryOperator<?>[0], Collections.emptyMap()
+  );
+
+  private final Object[] components;
+
+  /**
+   * Copy function of each component, null for shared components.
+   */
+  private final UnaryOperator<?>[] copies;
+
+  /**
+   * Copy functions of component classes, used by {@link #with(Object)}. Unmodifiable, templates made from
+   * this one share it.
+   */
+  private final Map<Class<?>, UnaryOperator<?>> copiesByClass;
+
+  private final Set<Class<?>> componentClasses;
+  private final ComponentMask signature;
+
+  private EntityTemplate(final Object[] components, final UnaryOperator<?>[] copies,
+                         final Map<Class<?>, UnaryOperator<?>> copiesByClass) {
+    this.components = components;
+    this.copies = copies;
+    this.copiesByClass = copiesByClass;
+    final Set<Class<?>> classes = new LinkedHashSet<>();
+    for (final Object component : components) {
+      classes.add(component.getClass());
+    }
+    this.componentClasses = Collections.unmodifiableSet(classes);
+    this.signature = ComponentMask.of(classes);
+  }
+
+  public static EntityTemplate empty() {
+    return EMPTY;
+  }
+
+  /**
+   * Returns a template which copies components of given class, added with {@link #with(Object)}
+   * to it or to templates made from it, with given function. Giving a class a function again replaces it.
+   * Components already in the template are not affected.
+   */
+  public <T> EntityTemplate withCopy(final Class<T> clazz, final UnaryOperator<T> copy) {
+    final Map<Class<?>, UnaryOperator<?>> copies = new HashMap<>(copiesByClass);
+    copies.put(Objects.requireNonNull(clazz), Objects.requireNonNull(copy));
+    return new EntityTemplate(components, this.copies, Collections.unmodifiableMap(copies));
+  }
+
+  /**
+   * Returns a template with given component, copied for each entity by the function this template has
+   * for the component's class.
+   *
+   * @throws IllegalArgumentException if this template has no copy function for the component's class
+   * @see #withCopy(Class, UnaryOperator)
+   */
+  public EntityTemplate with(final Object component) {
+    Objects.requireNonNull(component);
+    final UnaryOperator<?> copy = copiesByClass.get(component.getClass());
+    if (copy == null) {
+      throw new IllegalArgumentException("No copy function for " + component.getClass());
+    }
+    return withComponent(component, copy);
+  }
+
+  /**
+   * Returns a template with given component, copied for each entity by given function.
+   * A component of the same class already in the template is replaced.
+   */
+  public <T> EntityTemplate with(final T component, final UnaryOperator<T> copy) {
+    Objects.requireNonNull(component);
+    return withComponent(component, Objects.requireNonNull(copy));
+  }
+
+  /**
+   * Returns a template with given component, whose one instance is given to all entities.
+   * Only share components which are never modified.
+   */
+  public EntityTemplate withShared(final Object component) {
+    Objects.requireNonNull(component);
+    return withComponent(component, null);
+  }
+
+  private EntityTemplate withComponent(final Object component, final UnaryOperator<?> copy) {
+    int index = components.length;
+    for (int i = 0; i < components.length; i++) {
+      if (components[i].getClass() == component.getClass()) {
+        index = i;
+      }
+    }
+    final int length = Math.max(components.length, index + 1);
+    final Object[] newComponents = Arrays.copyOf(components, length);
+    final UnaryOperator<?>[] newCopies = Arrays.copyOf(copies, length);
+    newComponents[index] = component;
+    newCopies[index] = copy;
+    return new EntityTemplate(newComponents, newCopies, copiesByClass);
+  }
+
+  /**
+   * Returns the number of components of this template.
+   */
+  public int size() {
+    return components.length;
+  }
+
+  /**
+   * Creates the component with given index for a new entity, which is a copy of the template's component
+   * or the template's component itself, if it is shared.
+   */
+  @SuppressWarnings("unchecked")
+  public Object createComponent(final int index) {
+    final UnaryOperator<Object> copy = (UnaryOperator<Object>) copies[index];
+    return copy == null ? components[index] : Objects.requireNonNull(copy.apply(components[index]));
+  }
+
+  public boolean isShared(final int index) {
+    return copies[index] == null;
+  }
+
+  public Set<Class<?>> getComponentClasses() {
+    return componentClasses;
+  }
+
+  /**
+   * Returns the mask of the template's component classes, which spawned entities get as their signature.
+   */
+  public ComponentMask getSignature() {
+    return signature;
+  }
+
+  /**
+   * Returns true if entities created from this template match given node.
+   */
+  public boolean matches(final Node node) {
+    return node.matches(signature);
+  }
+
+}
@@ -0,0 +1,165 @@
+package com.soze.klecs.entity;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Hands out dense entity ids, reusing ids of removed entities.
+ * <p>
+ * An id is a long, whose lower 32 bits are an index and upper 32 bits are a generation of that index.
+ * Indices are dense, so they can be used directly as array indices. Each time an id is released,
+ * the generation of its index is incremented, so a stale reference to a removed entity never
+ * matches the entity which reused its index.
+ * <p>
+ * This class is thread-safe, as systems updated in parallel and chunks of
+ * {@link com.soze.klecs.engine.Engine#parallelForEach} can create entities at the same time.
+ * Allocation takes a lock, which is uncontended when only one thread creates entities.
+ */
+public class IntIdAllocator {
+
+  private int[] generations = new int[16];
+  private final BitSet alive = new BitSet();
+  private int[] freeIndices = new int[16];
+  private int freeIndexCount = 0;
+  private int nextIndex = 0;
+
+  public IntIdAllocator() {
+
+  }
+
+  public synchronized long allocate() {
+    final int index;
+    if (freeIndexCount > 0) {
+      index = freeIndices[--freeIndexCount];
+    } else {
+      index = nextIndex++;
+      if (index == generations.length) {
+        generations = Arrays.copyOf(generations, index * 2);
+      }
+      generations[index] = 1;
+    }
+    alive.set(index);
+    return toId(index, generations[index]);
+  }
+
+  /**
+   * Allocates given number of ids at once. Released indices are reused first, the rest of the ids
+   * get consecutive new indices.
+   */
+  public synchronized long[] allocate(final int count) {
+    if (count < 0) {
+      throw new IllegalArgumentException("Count cannot be negative, was " + count);
+    }
+    final long[] ids = new long[count];
+    final int reused = Math.min(count, freeIndexCount);
+    for (int i = 0; i < reused; i++) {
+      final int index = freeIndices[--freeIndexCount];
+      alive.set(index);
+      ids[i] = toId(index, generations[index]);
+    }
+    final int newIndices = count - reused;
+    if (nextIndex + newIndices > generations.length) {
+      generations = Arrays.copyOf(generations, Math.max(nextIndex + newIndices, generations.length * 2));
+    }
+    Arrays.fill(generations, nextIndex, nextIndex + newIndices, 1);
+    alive.set(nextIndex, nextIndex + newIndices);
+    for (int i = reused; i < count; i++) {
+      ids[i] = toId(nextIndex++, 1);
+    }
+    return ids;
+  }
+
+  /**
+   * Marks an id which was allocated elsewhere as alive, for example an id restored from a snapshot,
+   * so that its index is not handed out again until the id is released. Indices skipped to reach
+   * the id's index are free, so they are reused like released indices.
+   *
+   * @throws IllegalArgumentException if the id could not have been allocated
+   * @throws IllegalStateException if the index of the id is alive, or its generation is older than the index's
+   */
+  public synchronized void reserve(final long id) {
+    final int index = indexOf(id);
+    final int generation = generationOf(id);
+    if (index < 0 || generation < 1) {
+      throw new IllegalArgumentException("Id " + id + " could not have been allocated.");
+    }
+    if (index < nextIndex) {
+      if (alive.get(index)) {
+        throw new IllegalStateException("Index of id " + id + " is alive.");
+      }
+      if (generation < generations[index]) {
+        throw new IllegalStateException("Id " + id + " is stale.");
+      }
+      //the index is free, as it is not alive
+      int free = freeIndexCount - 1;
+      while (freeIndices[free] != index) {
+        free--;
+      }
+      System.arraycopy(freeIndices, free + 1, freeIndices, free, freeIndexCount - free - 1);
+      freeIndexCount--;
+    } else {
+      if (index >= generations.length) {
+        generations = Arrays.copyOf(generations, Math.max(index + 1, generations.length * 2));
+      }
+      final int skipped = index - nextIndex;
+      if (freeIndexCount + skipped > freeIndices.length) {
+        freeIndices = Arrays.copyOf(freeIndices, Math.max(freeIndexCount + skipped, freeIndices.length * 2));
+      }
+      //skipped indices are pushed in reverse, so the lowest of them is reused first
+      for (int skippedIndex = index - 1; skippedIndex >= nextIndex; skippedIndex--) {
+        generations[skippedIndex] = 1;
+        freeIndices[freeIndexCount++] = skippedIndex;
+      }
+      nextIndex = index + 1;
+    }
+    generations[index] = generation;
+    alive.set(index);
+  }
+
+  /**
+   * Releases an id, so that its index can be reused.
+   *
+   * @throws IllegalStateException if the id is not alive
+   */
+  public synchronized void release(final long id) {
+    if (!isAlive(id)) {
+      throw new IllegalStateException("Id " + id + " is not alive.");
+    }
+    final int index = indexOf(id);
+    alive.clear(index);
+    //generation 0 is never used, so no id is ever equal to 0
+    generations[index] = generations[index] == Integer.MAX_VALUE ? 1 : generations[index] + 1;
+    if (freeIndexCount == freeIndices.length) {
+      freeIndices = Arrays.copyOf(freeIndices, freeIndexCount * 2);
+    }
+    freeIndices[freeIndexCount++] = index;
+  }
+
+  /**
+   * Returns true if the id was allocated and not released since.
+   */
+  public synchronized boolean isAlive(final long id) {
+    final int index = indexOf(id);
+    return index >= 0 && index < nextIndex && alive.get(index) && generations[index] == generationOf(id);
+  }
+
+  /**
+   * Returns the number of indices handed out so far, all indices are lower than this.
+   */
+  public synchronized int getCapacity() {
+    return nextIndex;
+  }
+
+  public static int indexOf(final long id) {
+    return (int) id;
+  }
+
+  public static int generationOf(final long id) {
+    return (int) (id >>> 32);
+  }
+
+  private static long toId(final int index, final int generation) {
+    return ((long) generation << 32) | (index & 0xFFFFFFFFL);
+  }
+
+}
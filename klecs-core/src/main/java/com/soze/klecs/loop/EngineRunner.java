@@ -0,0 +1,225 @@
+package com.soze.klecs.loop;
+
+import com.soze.klecs.engine.Engine;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/**
+ * Drives an {@link Engine} with a fixed simulation step.
+ * Time which passed since the last frame is added to an accumulator, and {@link Engine#update(float)}
+ * is called with the step length as long as the accumulator holds a whole step.
+ * Rendering systems are updated with {@link Engine#render(float, float)} at most at the render rate,
+ * with an alpha telling how far the simulation is between its last and next step.
+ * <p>
+ * When updates take longer than the steps they simulate, the runner performs at most
+ * {@link #setMaxSubsteps(int) maxSubsteps} updates per frame and drops the rest of the backlog,
+ * so a slow tick does not make every following frame slower.
+ * <pre>
+ * EngineRunner runner = new EngineRunner(engine, 60);
+ * runner.setRenderRate(0);
+ * new Thread(runner).start();
+ * ...
+ * runner.stop();
+ * </pre>
+ */
+public class EngineRunner implements Runnable {
+
+  private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  private final Engine engine;
+  private final long stepNanos;
+  private final float stepSeconds;
+
+  private int maxSubsteps = 5;
+  private long renderIntervalNanos;
+  private WaitStrategy waitStrategy = WaitStrategy.parking();
+  private LongSupplier clock = System::nanoTime;
+
+  private long accumulator = 0;
+  private long previousFrameTime;
+  private long lastRenderTime;
+  private long nextRenderTime;
+  private boolean started = false;
+
+  private long updates = 0;
+  private long renders = 0;
+  private long droppedSteps = 0;
+
+  private final AtomicBoolean running = new AtomicBoolean(false);
+
+  /**
+   * Set by {@link #stop()}, also before the runner started running, and cleared when {@link #run()} returns.
+   */
+  private volatile boolean stopRequested = false;
+  private volatile Thread thread;
+
+  /**
+   * Creates a runner which updates the engine given number of times per second.
+   * Rendering systems are updated as often as the simulation, use {@link #setRenderRate(float)} to change it.
+   */
+  public EngineRunner(final Engine engine, final float updatesPerSecond) {
+    if (updatesPerSecond <= 0) {
+      throw new IllegalArgumentException("Updates per second have to be positive, was " + updatesPerSecond);
+    }
+    this.engine = Objects.requireNonNull(engine);
+    this.stepNanos = (long) (NANOS_PER_SECOND / updatesPerSecond);
+    this.stepSeconds = stepNanos / (float) NANOS_PER_SECOND;
+    this.renderIntervalNanos = stepNanos;
+  }
+
+  /**
+   * Sets the maximum number of updates performed in one frame, 5 by default.
+   */
+  public void setMaxSubsteps(final int maxSubsteps) {
+    if (maxSubsteps < 1) {
+      throw new IllegalArgumentException("Max substeps have to be at least 1, was " + maxSubsteps);
+    }
+    this.maxSubsteps = maxSubsteps;
+  }
+
+  /**
+   * Sets how many times per second rendering systems are updated. 0 means they are updated every frame,
+   * without waiting between frames, which keeps a core busy.
+   */
+  public void setRenderRate(final float rendersPerSecond) {
+    if (rendersPerSecond < 0) {
+      throw new IllegalArgumentException("Renders per second cannot be negative, was " + rendersPerSecond);
+    }
+    this.renderIntervalNanos = rendersPerSecond == 0 ? 0 : (long) (NANOS_PER_SECOND / rendersPerSecond);
+  }
+
+  public void setWaitStrategy(final WaitStrategy waitStrategy) {
+    this.waitStrategy = Objects.requireNonNull(waitStrategy);
+  }
+
+  /**
+   * Source of time in nanoseconds, {@link System#nanoTime()} by default.
+   */
+  void setClock(final LongSupplier clock) {
+    this.clock = Objects.requireNonNull(clock);
+  }
+
+  /**
+   * Runs frames until {@link #stop()} is called or the thread is interrupted.
+   * If the runner was stopped before it started running, this returns right away.
+   *
+   * @throws IllegalStateException if the runner is already running on another thread
+   */
+  @Override
+  public void run() {
+    if (!running.compareAndSet(false, true)) {
+      throw new IllegalStateException("Runner is already running");
+    }
+    final Thread current = Thread.currentThread();
+    thread = current;
+    try {
+      while (!stopRequested && !current.isInterrupted()) {
+        final long now = clock.getAsLong();
+        frame(now);
+        waitStrategy.waitUntil(getNextFrameTime(now), clock);
+      }
+    } finally {
+      thread = null;
+      stopRequested = false;
+      running.set(false);
+    }
+  }
+
+  /**
+   * Makes the runner return from {@link #run()} after the current frame. If the runner is not running yet,
+   * its next run returns right away.
+   */
+  public void stop() {
+    stopRequested = true;
+    final Thread thread = this.thread;
+    if (thread != null) {
+      LockSupport.unpark(thread);
+    }
+  }
+
+  public boolean isRunning() {
+    return running.get();
+  }
+
+  /**
+   * Advances the simulation to given time, then renders if a render is due.
+   * The first frame only starts the clock.
+   */
+  void frame(final long now) {
+    if (!started) {
+      started = true;
+      previousFrameTime = now;
+      lastRenderTime = now;
+      nextRenderTime = now + renderIntervalNanos;
+      return;
+    }
+    accumulator += now - previousFrameTime;
+    previousFrameTime = now;
+
+    int substeps = 0;
+    while (accumulator >= stepNanos && substeps < maxSubsteps) {
+      engine.update(stepSeconds);
+      accumulator -= stepNanos;
+      substeps++;
+      updates++;
+    }
+    if (accumulator >= stepNanos) {
+      droppedSteps += accumulator / stepNanos;
+      accumulator %= stepNanos;
+    }
+
+    if (now - nextRenderTime >= 0) {
+      engine.render((now - lastRenderTime) / (float) NANOS_PER_SECOND, getAlpha());
+      renders++;
+      lastRenderTime = now;
+      nextRenderTime += renderIntervalNanos;
+      //don't try to catch up on renders which were missed
+      if (now - nextRenderTime >= 0) {
+        nextRenderTime = now + renderIntervalNanos;
+      }
+    }
+  }
+
+  /**
+   * Returns the time at which the next update or render is due.
+   */
+  long getNextFrameTime(final long now) {
+    final long nextUpdateTime = now + stepNanos - accumulator;
+    return nextRenderTime - nextUpdateTime < 0 ? nextRenderTime : nextUpdateTime;
+  }
+
+  Engine getEngine() {
+    return engine;
+  }
+
+  long getStepNanos() {
+    return stepNanos;
+  }
+
+  /**
+   * Fraction of a step which is in the accumulator, between 0 and 1.
+   */
+  public float getAlpha() {
+    return accumulator / (float) stepNanos;
+  }
+
+  public long getUpdates() {
+    return updates;
+  }
+
+  public long getRenders() {
+    return renders;
+  }
+
+  /**
+   * Returns how many steps were not simulated, because frames would need more than max substeps to catch up.
+   */
+  public long getDroppedSteps() {
+    return droppedSteps;
+  }
+
+}
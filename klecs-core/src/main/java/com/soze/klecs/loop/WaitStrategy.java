@@ -0,0 +1,88 @@
+package com.soze.klecs.loop;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/**
+ * Decides how a thread waits until the next frame of an {@link EngineRunner}.
+ * Strategies may return early, for example when the thread is unparked or interrupted,
+ * the runner then checks whether it should continue and waits again.
+ */
+public interface WaitStrategy {
+
+  /**
+   * Time before a deadline which {@link #parking()} spends yielding instead of parking,
+   * because the scheduler may wake a parked thread later than requested.
+   */
+  long DEFAULT_SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+  /**
+   * Time before a deadline which {@link #sleeping()} does not sleep through,
+   * because sleeps are rounded up to the resolution of the system timer.
+   */
+  long DEFAULT_SLEEP_MARGIN_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+
+  /**
+   * Waits until the clock reaches given deadline.
+   *
+   * @param deadline time in nanoseconds, as returned by the clock
+   */
+  void waitUntil(long deadline, LongSupplier clock);
+
+  /**
+   * Parks the thread until shortly before the deadline, then yields until the deadline.
+   * This has low jitter while leaving the core free for most of the wait.
+   */
+  static WaitStrategy parking() {
+    return parking(DEFAULT_SPIN_NANOS);
+  }
+
+  static WaitStrategy parking(final long spinNanos) {
+    return (deadline, clock) -> {
+      long remaining = deadline - clock.getAsLong();
+      while (remaining > spinNanos) {
+        LockSupport.parkNanos(remaining - spinNanos);
+        if (Thread.currentThread().isInterrupted()) {
+          return;
+        }
+        remaining = deadline - clock.getAsLong();
+      }
+      yieldUntil(deadline, clock);
+    };
+  }
+
+  /**
+   * Sleeps in whole milliseconds until shortly before the deadline, then parks until the deadline.
+   * Suits systems where parking for short times is not precise either, at the cost of slightly higher jitter.
+   */
+  static WaitStrategy sleeping() {
+    final WaitStrategy parking = parking();
+    return (deadline, clock) -> {
+      final long remaining = deadline - clock.getAsLong() - DEFAULT_SLEEP_MARGIN_NANOS;
+      if (remaining > 0) {
+        try {
+          Thread.sleep(TimeUnit.NANOSECONDS.toMillis(remaining));
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+      parking.waitUntil(deadline, clock);
+    };
+  }
+
+  /**
+   * Yields until the deadline. Gives the lowest jitter, but keeps a core busy.
+   */
+  static WaitStrategy yielding() {
+    return WaitStrategy::yieldUntil;
+  }
+
+  static void yieldUntil(final long deadline, final LongSupplier clock) {
+    while (deadline - clock.getAsLong() > 0 && !Thread.currentThread().isInterrupted()) {
+      Thread.yield();
+    }
+  }
+
+}
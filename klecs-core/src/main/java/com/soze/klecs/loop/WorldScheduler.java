@@ -0,0 +1,223 @@
+package com.soze.klecs.loop;
+
+import com.soze.klecs.engine.Engine;
+import com.soze.klecs.metrics.Histogram;
+import com.soze.klecs.metrics.HistogramSnapshot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs many engines, for example one per game room, on a shared pool of threads.
+ * Each room is driven by its own {@link EngineRunner}, with its own step. Instead of waiting between frames,
+ * a room schedules its next frame on the executor and gives its thread back to the pool,
+ * so the number of threads depends on the number of cores, not on the number of rooms.
+ * All threads take due frames from one queue, so busy rooms are spread across all of them.
+ * Frames of one room never run concurrently.
+ * <p>
+ * Rooms added one after another start at different phases of their step, so their frames don't all
+ * become due at the same moment.
+ */
+public class WorldScheduler {
+
+  /**
+   * Fraction of a step by which each added room is shifted relative to the previous one.
+   */
+  private static final double PHASE_INCREMENT = 0.6180339887;
+
+  private final ScheduledExecutorService executor;
+  private final boolean ownsExecutor;
+  private final List<Room> rooms = new CopyOnWriteArrayList<>();
+  private final AtomicInteger addedRooms = new AtomicInteger();
+
+  /**
+   * Creates a scheduler with given number of daemon threads.
+   */
+  public WorldScheduler(final int threads) {
+    this(Executors.newScheduledThreadPool(threads, new WorldThreadFactory()), true);
+  }
+
+  /**
+   * Creates a scheduler which runs rooms on given executor. The executor is not shut down by {@link #shutdown()}.
+   */
+  public WorldScheduler(final ScheduledExecutorService executor) {
+    this(executor, false);
+  }
+
+  private WorldScheduler(final ScheduledExecutorService executor, final boolean ownsExecutor) {
+    this.executor = Objects.requireNonNull(executor);
+    this.ownsExecutor = ownsExecutor;
+  }
+
+  /**
+   * Starts updating given engine given number of times per second.
+   */
+  public Room addRoom(final String name, final Engine engine, final float updatesPerSecond) {
+    return addRoom(name, new EngineRunner(engine, updatesPerSecond));
+  }
+
+  /**
+   * Starts running frames of given runner. The runner must not be run by anything else.
+   */
+  public Room addRoom(final String name, final EngineRunner runner) {
+    final Room room = new Room(name, runner);
+    rooms.add(room);
+    final double phase = (addedRooms.getAndIncrement() * PHASE_INCREMENT) % 1;
+    room.schedule(System.nanoTime() + (long) (phase * runner.getStepNanos()));
+    return room;
+  }
+
+  /**
+   * Stops running frames of given room. A frame which is already running is finished.
+   */
+  public void removeRoom(final Room room) {
+    if (rooms.remove(room)) {
+      room.cancel();
+    }
+  }
+
+  public List<Room> getRooms() {
+    return new ArrayList<>(rooms);
+  }
+
+  /**
+   * Removes all rooms and, if the scheduler created its executor, shuts the executor down.
+   */
+  public void shutdown() {
+    for (final Room room : rooms) {
+      removeRoom(room);
+    }
+    if (ownsExecutor) {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * A runner scheduled by a {@link WorldScheduler}, with statistics of its frames.
+   */
+  public final class Room {
+
+    private final String name;
+    private final EngineRunner runner;
+    private final Histogram frameTimes = new Histogram();
+    private final Histogram lateness = new Histogram();
+    private final AtomicLong overruns = new AtomicLong();
+
+    private volatile boolean cancelled = false;
+    private volatile ScheduledFuture<?> future;
+    private volatile Throwable failure;
+
+    private long scheduledTime;
+
+    private Room(final String name, final EngineRunner runner) {
+      this.name = Objects.requireNonNull(name);
+      this.runner = Objects.requireNonNull(runner);
+    }
+
+    private void schedule(final long time) {
+      scheduledTime = time;
+      future = executor.schedule(this::runFrame, time - System.nanoTime(), TimeUnit.NANOSECONDS);
+      if (cancelled) {
+        future.cancel(false);
+      }
+    }
+
+    private void runFrame() {
+      if (cancelled) {
+        return;
+      }
+      final long startTime = System.nanoTime();
+      lateness.record(Math.max(0, startTime - scheduledTime));
+      try {
+        runner.frame(startTime);
+      } catch (final Throwable e) {
+        failure = e;
+        removeRoom(this);
+        return;
+      }
+      final long endTime = System.nanoTime();
+      frameTimes.record(endTime - startTime);
+      if (endTime - startTime > runner.getStepNanos()) {
+        overruns.incrementAndGet();
+      }
+      schedule(runner.getNextFrameTime(startTime));
+    }
+
+    private void cancel() {
+      cancelled = true;
+      final ScheduledFuture<?> future = this.future;
+      if (future != null) {
+        future.cancel(false);
+      }
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public Engine getEngine() {
+      return runner.getEngine();
+    }
+
+    public EngineRunner getRunner() {
+      return runner;
+    }
+
+    /**
+     * Returns durations of frames of this room, in nanoseconds.
+     */
+    public HistogramSnapshot getFrameTimes() {
+      return frameTimes.snapshot();
+    }
+
+    /**
+     * Returns how late frames of this room started, in nanoseconds.
+     * High lateness means the pool has too few threads for its rooms.
+     */
+    public HistogramSnapshot getLateness() {
+      return lateness.snapshot();
+    }
+
+    /**
+     * Returns the number of frames which took longer than one step of this room.
+     */
+    public long getOverruns() {
+      return overruns.get();
+    }
+
+    /**
+     * Returns the exception thrown by a frame of this room, which stopped the room, or null.
+     */
+    public Throwable getFailure() {
+      return failure;
+    }
+
+    public boolean isRunning() {
+      return !cancelled;
+    }
+
+    @Override
+    public String toString() {
+      return "Room{" + "name='" + name + '\'' + ", overruns=" + getOverruns() + ", frameTimes=" + getFrameTimes() + '}';
+    }
+
+  }
+
+  private static class WorldThreadFactory implements ThreadFactory {
+
+    private final AtomicInteger count = new AtomicInteger();
+
+    @Override
+    public Thread newThread(final Runnable runnable) {
+      final Thread thread = new Thread(runnable, "klecs-world-" + count.getAndIncrement());
+      thread.setDaemon(true);
+      return thread;
+    }
+
+  }
+
+}
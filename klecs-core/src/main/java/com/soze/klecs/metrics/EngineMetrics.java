@@ -0,0 +1,83 @@
+package com.soze.klecs.metrics;
+
+import com.soze.klecs.node.Node;
+import com.soze.klecs.system.EntitySystem;
+
+/**
+ * Receives measurements of an {@link com.soze.klecs.engine.Engine}. All times are in nanoseconds.
+ * <p>
+ * The engine measures time only if {@link #isEnabled()} returns true, so with {@link #NONE},
+ * the default, metrics cost one check per measured call.
+ * Systems may be updated in parallel, so implementations have to be thread-safe.
+ *
+ * @see RecordingMetrics
+ */
+public interface EngineMetrics {
+
+  /**
+   * Metrics which ignore all measurements.
+   */
+  EngineMetrics NONE = new EngineMetrics() {
+    @Override
+    public boolean isEnabled() {
+      return false;
+    }
+
+    @Override
+    public void systemUpdated(final EntitySystem system, final long nanos) {
+
+    }
+
+    @Override
+    public void updateFinished(final long nanos, final int entityCount) {
+
+    }
+
+    @Override
+    public void renderFinished(final long nanos) {
+
+    }
+
+    @Override
+    public void commandsPlayedBack(final int addedEntities, final int removedEntities, final int changedEntities) {
+
+    }
+
+    @Override
+    public void nodeQueried(final Node node, final int matchingEntities, final long nanos) {
+
+    }
+  };
+
+  default boolean isEnabled() {
+    return true;
+  }
+
+  /**
+   * Called after a system (rendering or not) was updated.
+   */
+  void systemUpdated(EntitySystem system, long nanos);
+
+  /**
+   * Called at the end of {@link com.soze.klecs.engine.Engine#update(float)}, with the time of the whole update,
+   * including playing back recorded changes, and the number of entities afterwards.
+   */
+  void updateFinished(long nanos, int entityCount);
+
+  /**
+   * Called at the end of {@link com.soze.klecs.engine.Engine#render(float)}.
+   */
+  void renderFinished(long nanos);
+
+  /**
+   * Called before changes recorded during an update or render are played back, with the number of entities
+   * waiting to be added and removed, and the number of entities whose components or layouts changed.
+   */
+  void commandsPlayedBack(int addedEntities, int removedEntities, int changedEntities);
+
+  /**
+   * Called after entities of a node were queried with {@link com.soze.klecs.engine.Engine#getEntitiesByNode(Node)}.
+   */
+  void nodeQueried(Node node, int matchingEntities, long nanos);
+
+}
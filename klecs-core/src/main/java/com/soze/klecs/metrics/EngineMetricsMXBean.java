@@ -0,0 +1,15 @@
+package com.soze.klecs.metrics;
+
+/**
+ * Management interface of {@link RecordingMetrics}, to read metrics of a running engine over JMX.
+ */
+public interface EngineMetricsMXBean {
+
+  MetricsSnapshot getSnapshot();
+
+  /**
+   * Removes all recorded measurements.
+   */
+  void reset();
+
+}
@@ -0,0 +1,119 @@
+package com.soze.klecs.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe histogram of non-negative long values, with log-linear buckets in the style of HdrHistogram.
+ * Values lower than 64 are counted exactly, larger values fall into buckets 1/32 of a power of two wide,
+ * so reported percentiles are within about 3% of the real values. Recording does not allocate.
+ */
+public final class Histogram {
+
+  private static final int SUB_BUCKET_BITS = 6;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  private static final int HALF_SUB_BUCKET_COUNT = SUB_BUCKET_COUNT / 2;
+  private static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (64 - SUB_BUCKET_BITS) * HALF_SUB_BUCKET_COUNT;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+  private final AtomicLong totalCount = new AtomicLong();
+  private final AtomicLong sum = new AtomicLong();
+  private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+  private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+  public Histogram() {
+
+  }
+
+  /**
+   * @throws IllegalArgumentException if the value is negative
+   */
+  public void record(final long value) {
+    if (value < 0) {
+      throw new IllegalArgumentException("Value cannot be negative: " + value);
+    }
+    counts.incrementAndGet(bucketIndex(value));
+    totalCount.incrementAndGet();
+    sum.addAndGet(value);
+    min.accumulateAndGet(value, Math::min);
+    max.accumulateAndGet(value, Math::max);
+  }
+
+  public long getCount() {
+    return totalCount.get();
+  }
+
+  /**
+   * Returns the smallest value v such that given percentage of recorded values is not larger than v,
+   * rounded up to the end of v's bucket. Returns 0 if nothing was recorded.
+   *
+   * @param percentile between 0 and 100
+   */
+  public long getValueAtPercentile(final double percentile) {
+    final long count = totalCount.get();
+    if (count == 0) {
+      return 0;
+    }
+    final long target = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * count));
+    long seen = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      seen += counts.get(i);
+      if (seen >= target) {
+        return Math.min(highestValueInBucket(i), max.get());
+      }
+    }
+    return max.get();
+  }
+
+  public HistogramSnapshot snapshot() {
+    final long count = totalCount.get();
+    if (count == 0) {
+      return new HistogramSnapshot(0, 0, 0, 0, 0, 0, 0, 0);
+    }
+    return new HistogramSnapshot(
+      count,
+      min.get(),
+      max.get(),
+      (double) sum.get() / count,
+      getValueAtPercentile(50),
+      getValueAtPercentile(90),
+      getValueAtPercentile(99),
+      getValueAtPercentile(99.9)
+    );
+  }
+
+  /**
+   * Removes all recorded values. Values recorded concurrently with reset may be partially lost.
+   */
+  public void reset() {
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      counts.set(i, 0);
+    }
+    totalCount.set(0);
+    sum.set(0);
+    min.set(Long.MAX_VALUE);
+    max.set(Long.MIN_VALUE);
+  }
+
+  static int bucketIndex(final long value) {
+    if (value < SUB_BUCKET_COUNT) {
+      return (int) value;
+    }
+    final int highestBit = 63 - Long.numberOfLeadingZeros(value);
+    final int shift = highestBit - SUB_BUCKET_BITS + 1;
+    final int subBucket = (int) (value >>> shift);
+    return SUB_BUCKET_COUNT + (shift - 1) * HALF_SUB_BUCKET_COUNT + (subBucket - HALF_SUB_BUCKET_COUNT);
+  }
+
+  static long highestValueInBucket(final int index) {
+    if (index < SUB_BUCKET_COUNT) {
+      return index;
+    }
+    final int bucket = index - SUB_BUCKET_COUNT;
+    final int shift = bucket / HALF_SUB_BUCKET_COUNT + 1;
+    final long subBucket = bucket % HALF_SUB_BUCKET_COUNT + HALF_SUB_BUCKET_COUNT;
+    final long highest = ((subBucket + 1) << shift) - 1;
+    return highest < 0 ? Long.MAX_VALUE : highest;
+  }
+
+}
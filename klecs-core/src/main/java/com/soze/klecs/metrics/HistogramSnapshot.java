@@ -0,0 +1,75 @@
+package com.soze.klecs.metrics;
+
+/**
+ * Summary of a {@link Histogram} at one point in time.
+ */
+public final class HistogramSnapshot {
+
+  private final long count;
+  private final long min;
+  private final long max;
+  private final double mean;
+  private final long p50;
+  private final long p90;
+  private final long p99;
+  private final long p999;
+
+  HistogramSnapshot(final long count, final long min, final long max, final double mean,
+                    final long p50, final long p90, final long p99, final long p999) {
+    this.count = count;
+    this.min = min;
+    this.max = max;
+    this.mean = mean;
+    this.p50 = p50;
+    this.p90 = p90;
+    this.p99 = p99;
+    this.p999 = p999;
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  public long getMin() {
+    return min;
+  }
+
+  public long getMax() {
+    return max;
+  }
+
+  public double getMean() {
+    return mean;
+  }
+
+  public long getP50() {
+    return p50;
+  }
+
+  public long getP90() {
+    return p90;
+  }
+
+  public long getP99() {
+    return p99;
+  }
+
+  public long getP999() {
+    return p999;
+  }
+
+  @Override
+  public String toString() {
+    return "HistogramSnapshot{" +
+             "count=" + count +
+             ", min=" + min +
+             ", max=" + max +
+             ", mean=" + mean +
+             ", p50=" + p50 +
+             ", p90=" + p90 +
+             ", p99=" + p99 +
+             ", p999=" + p999 +
+             '}';
+  }
+
+}
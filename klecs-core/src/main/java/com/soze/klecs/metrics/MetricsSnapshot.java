@@ -0,0 +1,114 @@
+package com.soze.klecs.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Measurements of {@link RecordingMetrics} at one point in time. Times are in nanoseconds.
+ */
+public final class MetricsSnapshot {
+
+  private final Map<String, HistogramSnapshot> systemUpdateTimes;
+  private final HistogramSnapshot updateTimes;
+  private final HistogramSnapshot renderTimes;
+  private final HistogramSnapshot nodeQueryTimes;
+  private final Map<String, HistogramSnapshot> nodeQueryTimesByNode;
+  private final Map<String, HistogramSnapshot> matchingEntitiesByNode;
+  private final HistogramSnapshot addedEntities;
+  private final HistogramSnapshot removedEntities;
+  private final HistogramSnapshot changedEntities;
+  private final int entityCount;
+
+  MetricsSnapshot(final Map<String, HistogramSnapshot> systemUpdateTimes,
+                  final HistogramSnapshot updateTimes,
+                  final HistogramSnapshot renderTimes,
+                  final HistogramSnapshot nodeQueryTimes,
+                  final Map<String, HistogramSnapshot> nodeQueryTimesByNode,
+                  final Map<String, HistogramSnapshot> matchingEntitiesByNode,
+                  final HistogramSnapshot addedEntities,
+                  final HistogramSnapshot removedEntities,
+                  final HistogramSnapshot changedEntities,
+                  final int entityCount) {
+    this.systemUpdateTimes = Collections.unmodifiableMap(systemUpdateTimes);
+    this.updateTimes = updateTimes;
+    this.renderTimes = renderTimes;
+    this.nodeQueryTimes = nodeQueryTimes;
+    this.nodeQueryTimesByNode = Collections.unmodifiableMap(nodeQueryTimesByNode);
+    this.matchingEntitiesByNode = Collections.unmodifiableMap(matchingEntitiesByNode);
+    this.addedEntities = addedEntities;
+    this.removedEntities = removedEntities;
+    this.changedEntities = changedEntities;
+    this.entityCount = entityCount;
+  }
+
+  /**
+   * Returns update times of each system, by name of the system's class.
+   */
+  public Map<String, HistogramSnapshot> getSystemUpdateTimes() {
+    return systemUpdateTimes;
+  }
+
+  /**
+   * Returns times of whole engine updates.
+   */
+  public HistogramSnapshot getUpdateTimes() {
+    return updateTimes;
+  }
+
+  /**
+   * Returns times of whole engine renders.
+   */
+  public HistogramSnapshot getRenderTimes() {
+    return renderTimes;
+  }
+
+  /**
+   * Returns times of node queries, its count is the number of queries.
+   */
+  public HistogramSnapshot getNodeQueryTimes() {
+    return nodeQueryTimes;
+  }
+
+  /**
+   * Returns times of node queries of each node, by {@link com.soze.klecs.node.Node#toString()}.
+   */
+  public Map<String, HistogramSnapshot> getNodeQueryTimesByNode() {
+    return nodeQueryTimesByNode;
+  }
+
+  /**
+   * Returns the number of entities matching each queried node, each time it was queried.
+   */
+  public Map<String, HistogramSnapshot> getMatchingEntitiesByNode() {
+    return matchingEntitiesByNode;
+  }
+
+  /**
+   * Returns the number of entities waiting to be added, each time recorded changes were played back.
+   */
+  public HistogramSnapshot getAddedEntities() {
+    return addedEntities;
+  }
+
+  /**
+   * Returns the number of entities waiting to be removed, each time recorded changes were played back.
+   */
+  public HistogramSnapshot getRemovedEntities() {
+    return removedEntities;
+  }
+
+  /**
+   * Returns the number of entities with changed components, each time recorded changes were played back.
+   */
+  public HistogramSnapshot getChangedEntities() {
+    return changedEntities;
+  }
+
+  /**
+   * Returns the number of entities after the last update.
+   */
+  public int getEntityCount() {
+    return entityCount;
+  }
+
+}
@@ -0,0 +1,147 @@
+package com.soze.klecs.metrics;
+
+import com.soze.klecs.node.Node;
+import com.soze.klecs.system.EntitySystem;
+
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Metrics which record all measurements in {@link Histogram}s. Current values can be read
+ * with {@link #getSnapshot()}, or over JMX after {@link #registerMBean(String)} was called.
+ *
+ * <pre>{@code
+ * RecordingMetrics metrics = new RecordingMetrics();
+ * engine.setMetrics(metrics);
+ * metrics.registerMBean("room-1");
+ * }</pre>
+ */
+public class RecordingMetrics implements EngineMetrics, EngineMetricsMXBean {
+
+  private final Map<Class<?>, Histogram> systemUpdateTimes = new ConcurrentHashMap<>();
+  private final Histogram updateTimes = new Histogram();
+  private final Histogram renderTimes = new Histogram();
+  private final Histogram nodeQueryTimes = new Histogram();
+  private final Map<Node, Histogram> nodeQueryTimesByNode = new ConcurrentHashMap<>();
+  private final Map<Node, Histogram> matchingEntitiesByNode = new ConcurrentHashMap<>();
+  private final Histogram addedEntities = new Histogram();
+  private final Histogram removedEntities = new Histogram();
+  private final Histogram changedEntities = new Histogram();
+  private volatile int entityCount = 0;
+
+  public RecordingMetrics() {
+
+  }
+
+  @Override
+  public void systemUpdated(final EntitySystem system, final long nanos) {
+    systemUpdateTimes.computeIfAbsent(system.getClass(), (key) -> new Histogram()).record(nanos);
+  }
+
+  @Override
+  public void updateFinished(final long nanos, final int entityCount) {
+    updateTimes.record(nanos);
+    this.entityCount = entityCount;
+  }
+
+  @Override
+  public void renderFinished(final long nanos) {
+    renderTimes.record(nanos);
+  }
+
+  @Override
+  public void commandsPlayedBack(final int addedEntities, final int removedEntities, final int changedEntities) {
+    this.addedEntities.record(addedEntities);
+    this.removedEntities.record(removedEntities);
+    this.changedEntities.record(changedEntities);
+  }
+
+  @Override
+  public void nodeQueried(final Node node, final int matchingEntities, final long nanos) {
+    nodeQueryTimes.record(nanos);
+    nodeQueryTimesByNode.computeIfAbsent(node, (key) -> new Histogram()).record(nanos);
+    matchingEntitiesByNode.computeIfAbsent(node, (key) -> new Histogram()).record(matchingEntities);
+  }
+
+  @Override
+  public MetricsSnapshot getSnapshot() {
+    final Map<String, HistogramSnapshot> systems = new TreeMap<>();
+    for (final Map.Entry<Class<?>, Histogram> entry : systemUpdateTimes.entrySet()) {
+      systems.put(entry.getKey().getName(), entry.getValue().snapshot());
+    }
+    return new MetricsSnapshot(
+      systems,
+      updateTimes.snapshot(),
+      renderTimes.snapshot(),
+      nodeQueryTimes.snapshot(),
+      snapshotByNode(nodeQueryTimesByNode),
+      snapshotByNode(matchingEntitiesByNode),
+      addedEntities.snapshot(),
+      removedEntities.snapshot(),
+      changedEntities.snapshot(),
+      entityCount
+    );
+  }
+
+  private static Map<String, HistogramSnapshot> snapshotByNode(final Map<Node, Histogram> histograms) {
+    final Map<String, HistogramSnapshot> snapshots = new TreeMap<>();
+    for (final Map.Entry<Node, Histogram> entry : histograms.entrySet()) {
+      snapshots.put(entry.getKey().toString(), entry.getValue().snapshot());
+    }
+    return snapshots;
+  }
+
+  @Override
+  public void reset() {
+    systemUpdateTimes.clear();
+    updateTimes.reset();
+    renderTimes.reset();
+    nodeQueryTimes.reset();
+    nodeQueryTimesByNode.clear();
+    matchingEntitiesByNode.clear();
+    addedEntities.reset();
+    removedEntities.reset();
+    changedEntities.reset();
+  }
+
+  /**
+   * Registers these metrics in the platform MBean server, under name
+   * {@code com.soze.klecs:type=EngineMetrics,name=<name>}.
+   *
+   * @return name under which the metrics were registered
+   * @throws IllegalStateException if the metrics could not be registered, for example because the name is taken
+   */
+  public ObjectName registerMBean(final String name) {
+    Objects.requireNonNull(name);
+    try {
+      final ObjectName objectName = createObjectName(name);
+      ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+      return objectName;
+    } catch (final JMException e) {
+      throw new IllegalStateException("Could not register metrics " + name, e);
+    }
+  }
+
+  /**
+   * Removes metrics registered with given name from the platform MBean server, if they are registered.
+   */
+  public void unregisterMBean(final String name) {
+    Objects.requireNonNull(name);
+    try {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(createObjectName(name));
+    } catch (final InstanceNotFoundException e) {
+      //not registered, nothing to do
+    } catch (final JMException e) {
+      throw new IllegalStateException("Could not unregister metrics " + name, e);
+    }
+  }
+
+  private static ObjectName createObjectName(final String name) throws MalformedObjectNameException {
+    return new ObjectName("com.soze.klecs:type=EngineMetrics,name=" + ObjectName.quote(name));
+  }
+
+}
@@ -1,11 +1,28 @@
 package com.soze.klecs.node;
 
+import com.soze.klecs.engine.ComponentMask;
+
 import java.util.*;
 
 /**
  * Node is a family of components.
  * The nodes are user defined groups of components.
  * They are not neccessary to have a working ECS, but they help modularize code.
+ * <p>
+ * An entity matches a node if it has all of the node's component classes, at least one of its any classes
+ * (if it has some), and none of its excluded classes. Optional classes don't affect matching,
+ * they only declare components which systems of the node read when the entity has them.
+ * All clauses are compiled to masks once, so matching an entity's signature costs a few ANDs per 64 classes.
+ * <p>
+ * Nodes with the same clauses are equal, so a node created for every query shares the index of node members
+ * with the other nodes equal to it. A node without component and any classes matches every entity
+ * which is not excluded, including entities without components.
+ * <pre>{@code
+ * Node visibleEnemies = Node.of(Position.class, Enemy.class)
+ *   .without(Hidden.class)
+ *   .withAny(Sprite.class, Model.class)
+ *   .withOptional(Velocity.class);
+ * }</pre>
  */
 public class Node {
   //TODO create a NodeNames enum, which will force users to use it and this will be passed to
@@ -16,9 +33,36 @@ public class Node {
    * This collection should be unmodifiable.
    */
   private final Set<Class<?>> componentClasses;
+  private final Set<Class<?>> anyClasses;
+  private final Set<Class<?>> excludedClasses;
+  private final Set<Class<?>> optionalClasses;
+
+  /**
+   * Component classes of this node compiled to a mask, to match entity signatures against.
+   */
+  private final ComponentMask mask;
+  private final ComponentMask anyMask;
+  private final ComponentMask excludedMask;
 
-  private Node(final Collection<Class<?>> componentClasses) {
+  private final int hashCode;
+
+  private Node(final Collection<Class<?>> componentClasses,
+               final Collection<Class<?>> anyClasses,
+               final Collection<Class<?>> excludedClasses,
+               final Collection<Class<?>> optionalClasses) {
     this.componentClasses = Collections.unmodifiableSet(new HashSet<>(componentClasses));
+    this.anyClasses = Collections.unmodifiableSet(new HashSet<>(anyClasses));
+    this.excludedClasses = Collections.unmodifiableSet(new HashSet<>(excludedClasses));
+    this.optionalClasses = Collections.unmodifiableSet(new HashSet<>(optionalClasses));
+    for (final Class<?> clazz : this.excludedClasses) {
+      if (this.componentClasses.contains(clazz) || this.anyClasses.contains(clazz)) {
+        throw new IllegalArgumentException("Node cannot both require and exclude " + clazz.getName());
+      }
+    }
+    this.mask = ComponentMask.of(this.componentClasses);
+    this.anyMask = ComponentMask.of(this.anyClasses);
+    this.excludedMask = ComponentMask.of(this.excludedClasses);
+    this.hashCode = Objects.hash(this.componentClasses, this.anyClasses, this.excludedClasses, this.optionalClasses);
   }
 
   /**
@@ -30,10 +74,127 @@ public class Node {
     return componentClasses;
   }
 
+  /**
+   * Returns an unmodifiable set of classes, of which a matching entity has at least one.
+   * Empty if the node has no any clause.
+   */
+  public Set<Class<?>> getAnyClasses() {
+    return anyClasses;
+  }
+
+  /**
+   * Returns an unmodifiable set of classes, which a matching entity does not have.
+   */
+  public Set<Class<?>> getExcludedClasses() {
+    return excludedClasses;
+  }
+
+  /**
+   * Returns an unmodifiable set of classes, which a matching entity may or may not have.
+   */
+  public Set<Class<?>> getOptionalClasses() {
+    return optionalClasses;
+  }
+
+  /**
+   * Returns classes which decide whether an entity matches this node: its component, any and excluded classes.
+   * Adding or removing a component of another class does not change whether an entity matches.
+   */
+  public Set<Class<?>> getMatchedClasses() {
+    final Set<Class<?>> classes = new HashSet<>(componentClasses);
+    classes.addAll(anyClasses);
+    classes.addAll(excludedClasses);
+    return classes;
+  }
+
+  public ComponentMask getMask() {
+    return mask;
+  }
+
+  /**
+   * Returns true if an entity with given signature matches this node.
+   */
+  public boolean matches(final ComponentMask signature) {
+    return signature.containsAll(mask)
+      && (anyClasses.isEmpty() || signature.intersects(anyMask))
+      && !signature.intersects(excludedMask);
+  }
+
+  /**
+   * Returns a node which also requires at least one of given classes. Classes of an existing any clause are kept,
+   * so a node has a single any clause.
+   */
+  public Node withAny(final Class<?>... classes) {
+    final Set<Class<?>> any = new HashSet<>(anyClasses);
+    any.addAll(checkNulls(Arrays.asList(classes)));
+    return new Node(componentClasses, any, excludedClasses, optionalClasses);
+  }
+
+  /**
+   * Returns a node which also excludes entities with any of given classes.
+   */
+  public Node without(final Class<?>... classes) {
+    final Set<Class<?>> excluded = new HashSet<>(excludedClasses);
+    excluded.addAll(checkNulls(Arrays.asList(classes)));
+    return new Node(componentClasses, anyClasses, excluded, optionalClasses);
+  }
+
+  /**
+   * Returns a node which also declares given classes as optional.
+   */
+  public Node withOptional(final Class<?>... classes) {
+    final Set<Class<?>> optional = new HashSet<>(optionalClasses);
+    optional.addAll(checkNulls(Arrays.asList(classes)));
+    return new Node(componentClasses, anyClasses, excludedClasses, optional);
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    final Node node = (Node) o;
+    return hashCode == node.hashCode
+      && componentClasses.equals(node.componentClasses)
+      && anyClasses.equals(node.anyClasses)
+      && excludedClasses.equals(node.excludedClasses)
+      && optionalClasses.equals(node.optionalClasses);
+  }
+
+  @Override
+  public int hashCode() {
+    return hashCode;
+  }
+
+  /**
+   * Returns names of the node's classes by clause, for example {@code Node[a.Position, a.Velocity] without [a.Hidden]}.
+   */
+  @Override
+  public String toString() {
+    final StringBuilder builder = new StringBuilder("Node").append(names(componentClasses));
+    if (!anyClasses.isEmpty()) {
+      builder.append(" any ").append(names(anyClasses));
+    }
+    if (!excludedClasses.isEmpty()) {
+      builder.append(" without ").append(names(excludedClasses));
+    }
+    if (!optionalClasses.isEmpty()) {
+      builder.append(" optional ").append(names(optionalClasses));
+    }
+    return builder.toString();
+  }
+
+  private static Set<String> names(final Set<Class<?>> classes) {
+    final Set<String> names = new TreeSet<>();
+    for (final Class<?> clazz : classes) {
+      names.add(clazz.getName());
+    }
+    return names;
+  }
+
   //STATIC METHODS
 
   public static Node of(Collection<Class<?>> classes) {
-    return new Node(checkNulls(classes));
+    return new Node(checkNulls(classes), Collections.emptySet(), Collections.emptySet(), Collections.emptySet());
   }
 
   public static Node of(Class<?>... classes) {
@@ -0,0 +1,389 @@
+package com.soze.klecs.persistence;
+
+import com.soze.klecs.engine.*;
+import com.soze.klecs.entity.Entity;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Keeps values of {@link PrimitiveLayout}s of an engine in memory-mapped files, one file per layout,
+ * so a persistent world can be checkpointed while it runs and restarted without loading it from scratch.
+ * <p>
+ * A checkpoint copies values of all registered layouts on the calling thread, which only costs a copy in memory,
+ * and writes the copy to the files on a background thread, so updates of the engine never wait for the disk.
+ * Only pages of a file whose contents differ from the previous checkpoint are written, so a world in which
+ * a few entities move costs a few pages per checkpoint, not a rewrite of all of its values.
+ * <p>
+ * Each file starts with a header page (magic number, version, state, number of float and int fields,
+ * number of rows), followed by rows of the layout: the entity id as a long and values of the fields,
+ * floats first, in the order of fields. A file is marked as being written until all pages of a checkpoint
+ * are written and forced to the disk, so a checkpoint interrupted by a crash is not loaded.
+ * Pages are written in place, so such a crash loses the previous checkpoint of the file as well,
+ * keep a copy of the directory if an older state has to survive it.
+ * <p>
+ * Only values of layouts are stored, components which are objects have to be saved by other means,
+ * for example a {@link com.soze.klecs.snapshot.SnapshotFormat}. Entity ids have to be longs,
+ * like the default ids of an engine or ids of an {@link com.soze.klecs.entity.IntIdAllocator}.
+ *
+ * <pre>
+ * MappedLayoutStore store = new MappedLayoutStore(directory);
+ * store.register(MOVABLE);
+ * store.load(engine);
+ * ...
+ * engine.update(delta);
+ * store.checkpoint(engine);
+ * </pre>
+ */
+public class MappedLayoutStore implements AutoCloseable {
+
+  static final int MAGIC = 0x4B4C4D50;
+  static final byte VERSION = 1;
+
+  /**
+   * Granularity in which files are compared and written.
+   */
+  static final int PAGE_SIZE = 4096;
+
+  /**
+   * Size of the header, rows start at the second page of a file.
+   */
+  static final int HEADER_SIZE = PAGE_SIZE;
+
+  static final int STATE_POSITION = 5;
+  static final byte STATE_CLEAN = 0;
+  static final byte STATE_WRITING = 1;
+
+  private static final int FLOAT_COUNT_POSITION = 6;
+  private static final int INT_COUNT_POSITION = 8;
+  private static final int ROWS_POSITION = 12;
+
+  private static final int ID_SIZE = 8;
+  private static final int FIELD_SIZE = 4;
+
+  private final Path directory;
+  private final Executor executor;
+  private final ExecutorService ownedExecutor;
+  private final Map<PrimitiveLayout, LayoutFile> files = new LinkedHashMap<>();
+
+  /**
+   * The last checkpoint, each checkpoint is written after the previous one has finished.
+   */
+  private CompletableFuture<Integer> lastCheckpoint = CompletableFuture.completedFuture(0);
+  private boolean closed = false;
+
+  /**
+   * Creates a store in given directory, which writes checkpoints on its own daemon thread.
+   */
+  public MappedLayoutStore(final Path directory) {
+    this(directory, null, Executors.newSingleThreadExecutor(runnable -> {
+      final Thread thread = new Thread(runnable, "klecs-checkpoint");
+      thread.setDaemon(true);
+      return thread;
+    }));
+  }
+
+  /**
+   * Creates a store in given directory, which writes checkpoints on given executor.
+   * The executor is not shut down by {@link #close()}.
+   */
+  public MappedLayoutStore(final Path directory, final Executor executor) {
+    this(directory, executor, null);
+  }
+
+  private MappedLayoutStore(final Path directory, final Executor executor, final ExecutorService ownedExecutor) {
+    this.directory = Objects.requireNonNull(directory);
+    this.ownedExecutor = ownedExecutor;
+    this.executor = ownedExecutor != null ? ownedExecutor : Objects.requireNonNull(executor);
+  }
+
+  /**
+   * Starts storing values of given layout, in a file named after the layout.
+   * If the file exists, it is kept as the previous checkpoint and can be loaded with {@link #load(Engine)}.
+   *
+   * @throws IllegalArgumentException if the layout or a layout with the same name is already registered
+   * @throws IllegalStateException    if the existing file is not a file of this layout
+   */
+  public void register(final PrimitiveLayout layout) throws IOException {
+    Objects.requireNonNull(layout);
+    checkOpen();
+    for (final PrimitiveLayout registered : files.keySet()) {
+      if (registered == layout || registered.getName().equals(layout.getName())) {
+        throw new IllegalArgumentException("Layout " + layout.getName() + " is already registered");
+      }
+    }
+    files.put(layout, new LayoutFile(layout, directory.resolve(layout.getName() + ".layout")));
+  }
+
+  /**
+   * Copies values of all registered layouts of the engine and writes them to the files in the background.
+   * Call it between updates of the engine, values written after this method returns are not part of the checkpoint.
+   *
+   * @return future completed with the number of pages written when the checkpoint is on the disk
+   * @throws IllegalArgumentException if an entity with a registered layout does not have a long id
+   */
+  public CompletableFuture<Integer> checkpoint(final Engine engine) {
+    checkOpen();
+    final ComponentContainer container = engine.getComponentContainer();
+    final List<ByteBuffer> values = new ArrayList<>(files.size());
+    for (final LayoutFile file : files.values()) {
+      values.add(file.capture(container));
+    }
+    final List<LayoutFile> targets = new ArrayList<>(files.values());
+    final CompletableFuture<Integer> checkpoint = lastCheckpoint
+      .handle((pages, e) -> null)
+      .thenApplyAsync(ignored -> {
+        int pages = 0;
+        for (int i = 0; i < targets.size(); i++) {
+          pages += targets.get(i).write(values.get(i));
+        }
+        return pages;
+      }, executor);
+    lastCheckpoint = checkpoint;
+    return checkpoint;
+  }
+
+  /**
+   * Adds values of the last checkpoint to the engine. Entities which are not in the engine yet are created
+   * with stored ids and added to it. The engine's factory reserves these ids, so it does not hand them out
+   * to new entities, see {@link com.soze.klecs.entity.EntityFactory#createEntity(Object)}.
+   * Call it before the engine is updated.
+   *
+   * @return number of loaded rows of all layouts
+   * @throws IllegalStateException if a checkpoint of a file was interrupted before it was completely written
+   */
+  public int load(final Engine engine) {
+    checkOpen();
+    awaitCheckpoints();
+    int rows = 0;
+    for (final LayoutFile file : files.values()) {
+      rows += file.load(engine);
+    }
+    return rows;
+  }
+
+  /**
+   * Waits for all started checkpoints, forces the files to the disk and unmaps them.
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    awaitCheckpoints();
+    if (ownedExecutor != null) {
+      ownedExecutor.shutdown();
+    }
+    for (final LayoutFile file : files.values()) {
+      file.close();
+    }
+  }
+
+  private void awaitCheckpoints() {
+    lastCheckpoint.handle((pages, e) -> null).join();
+  }
+
+  private void checkOpen() {
+    if (closed) {
+      throw new IllegalStateException("Store is closed");
+    }
+  }
+
+  /**
+   * The mapped file of one layout. Mapped memory is only accessed by one thread at a time:
+   * the thread writing checkpoints, or the thread loading the file after all checkpoints were written.
+   */
+  private static final class LayoutFile {
+
+    private final PrimitiveLayout layout;
+    private final List<PrimitiveField> floatFields = new ArrayList<>();
+    private final List<PrimitiveField> intFields = new ArrayList<>();
+    private final int recordSize;
+    private final FileChannel channel;
+    private MappedByteBuffer mapped;
+
+    private LayoutFile(final PrimitiveLayout layout, final Path path) throws IOException {
+      this.layout = layout;
+      for (final PrimitiveField field : layout.getFields()) {
+        (field.getType() == PrimitiveField.Type.FLOAT ? floatFields : intFields).add(field);
+      }
+      this.recordSize = ID_SIZE + (floatFields.size() + intFields.size()) * FIELD_SIZE;
+      this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      try {
+        final long size = channel.size();
+        mapped = map(Math.max(size, HEADER_SIZE));
+        if (size < HEADER_SIZE) {
+          mapped.putInt(0, MAGIC);
+          mapped.put(4, VERSION);
+          mapped.put(STATE_POSITION, STATE_CLEAN);
+          mapped.putShort(FLOAT_COUNT_POSITION, (short) floatFields.size());
+          mapped.putShort(INT_COUNT_POSITION, (short) intFields.size());
+          mapped.putInt(ROWS_POSITION, 0);
+        } else {
+          checkHeader();
+        }
+      } catch (final IOException | RuntimeException e) {
+        channel.close();
+        throw e;
+      }
+    }
+
+    private void checkHeader() {
+      if (mapped.getInt(0) != MAGIC) {
+        throw new IllegalStateException("Not a layout file of " + layout);
+      }
+      final byte version = mapped.get(4);
+      if (version != VERSION) {
+        throw new IllegalStateException("Unsupported layout file version " + version);
+      }
+      if (mapped.getShort(FLOAT_COUNT_POSITION) != floatFields.size() || mapped.getShort(INT_COUNT_POSITION) != intFields.size()) {
+        throw new IllegalStateException("Layout file has different fields than " + layout);
+      }
+    }
+
+    /**
+     * Copies ids and values of all rows of the layout, in the format of the file.
+     */
+    private ByteBuffer capture(final ComponentContainer container) {
+      final LayoutColumns columns = container.getLayoutColumns(layout);
+      final int rows = columns.size();
+      final ByteBuffer values = ByteBuffer.allocate(rows * recordSize).order(ByteOrder.LITTLE_ENDIAN);
+      for (int row = 0; row < rows; row++) {
+        final Object id = container.getEntityId(columns.getSlot(row));
+        //ids are loaded as longs, any other id would not find its entity again
+        if (!(id instanceof Long)) {
+          throw new IllegalArgumentException("Entity id " + id + " is not a long, it can't be stored");
+        }
+        values.putLong((Long) id);
+        for (final PrimitiveField field : floatFields) {
+          values.putFloat(columns.getFloat(row, field));
+        }
+        for (final PrimitiveField field : intFields) {
+          values.putInt(columns.getInt(row, field));
+        }
+      }
+      values.flip();
+      return values;
+    }
+
+    /**
+     * Writes pages of captured values which differ from the file.
+     *
+     * @return number of written pages
+     */
+    private int write(final ByteBuffer values) {
+      try {
+        final int length = values.remaining();
+        final int rows = length / recordSize;
+        if (mapped.capacity() < HEADER_SIZE + length) {
+          remap(HEADER_SIZE + length);
+        }
+        final BitSet dirtyPages = new BitSet();
+        for (int page = 0; page * PAGE_SIZE < length; page++) {
+          if (!isPageEqual(values, page)) {
+            dirtyPages.set(page);
+          }
+        }
+        if (dirtyPages.isEmpty() && mapped.getInt(ROWS_POSITION) == rows && mapped.get(STATE_POSITION) == STATE_CLEAN) {
+          return 0;
+        }
+
+        mapped.put(STATE_POSITION, STATE_WRITING);
+        mapped.force();
+        for (int page = dirtyPages.nextSetBit(0); page != -1; page = dirtyPages.nextSetBit(page + 1)) {
+          final int offset = page * PAGE_SIZE;
+          final ByteBuffer source = values.duplicate();
+          source.position(offset);
+          source.limit(Math.min(length, offset + PAGE_SIZE));
+          final ByteBuffer target = mapped.duplicate();
+          target.position(HEADER_SIZE + offset);
+          target.put(source);
+        }
+        mapped.putInt(ROWS_POSITION, rows);
+        mapped.put(STATE_POSITION, STATE_CLEAN);
+        mapped.force();
+        return dirtyPages.cardinality();
+      } catch (final IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    private boolean isPageEqual(final ByteBuffer values, final int page) {
+      final int start = page * PAGE_SIZE;
+      final int end = Math.min(values.limit(), start + PAGE_SIZE);
+      int index = start;
+      for (; index + 8 <= end; index += 8) {
+        if (values.getLong(index) != mapped.getLong(HEADER_SIZE + index)) {
+          return false;
+        }
+      }
+      for (; index < end; index++) {
+        if (values.get(index) != mapped.get(HEADER_SIZE + index)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private int load(final Engine engine) {
+      if (mapped.get(STATE_POSITION) != STATE_CLEAN) {
+        throw new IllegalStateException("Last checkpoint of " + layout + " was not completely written");
+      }
+      final ComponentContainer container = engine.getComponentContainer();
+      final int rows = mapped.getInt(ROWS_POSITION);
+      int position = HEADER_SIZE;
+      for (int row = 0; row < rows; row++) {
+        final Long id = mapped.getLong(position);
+        position += ID_SIZE;
+        if (!engine.getEntityById(id).isPresent()) {
+          final Entity entity = engine.getEntityFactory().createEntity(id);
+          engine.addEntity(entity);
+        }
+        container.addLayout(id, layout);
+        for (final PrimitiveField field : floatFields) {
+          container.setFloat(id, field, mapped.getFloat(position));
+          position += FIELD_SIZE;
+        }
+        for (final PrimitiveField field : intFields) {
+          container.setInt(id, field, mapped.getInt(position));
+          position += FIELD_SIZE;
+        }
+      }
+      return rows;
+    }
+
+    /**
+     * Maps a larger part of the file, growing it at least twice.
+     */
+    private void remap(final long size) throws IOException {
+      final long newSize = Math.max(size, mapped.capacity() * 2L);
+      final MappedByteBuffer old = mapped;
+      mapped = map((newSize + PAGE_SIZE - 1) / PAGE_SIZE * PAGE_SIZE);
+      DirectBuffers.free(old);
+    }
+
+    private MappedByteBuffer map(final long size) throws IOException {
+      final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+      buffer.order(ByteOrder.LITTLE_ENDIAN);
+      return buffer;
+    }
+
+    private void close() throws IOException {
+      mapped.force();
+      DirectBuffers.free(mapped);
+      mapped = null;
+      channel.close();
+    }
+
+  }
+
+}
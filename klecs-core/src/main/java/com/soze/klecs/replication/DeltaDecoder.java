@@ -0,0 +1,91 @@
+package com.soze.klecs.replication;
+
+import com.soze.klecs.engine.Engine;
+import com.soze.klecs.entity.Entity;
+import com.soze.klecs.snapshot.SnapshotFormat;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+/**
+ * Applies deltas written by a {@link DeltaEncoder} to an engine.
+ * Applying a delta twice, or a delta which overlaps with an already applied one, gives the same result,
+ * so a client can apply deltas computed from an older acknowledged tick.
+ */
+public class DeltaDecoder {
+
+  private final Engine engine;
+  private final SnapshotFormat format;
+
+  public DeltaDecoder(final Engine engine, final SnapshotFormat format) {
+    this.engine = Objects.requireNonNull(engine);
+    this.format = Objects.requireNonNull(format);
+  }
+
+  /**
+   * Applies the delta in the buffer.
+   *
+   * @return tick up to which the delta contains changes
+   * @throws IllegalStateException if the buffer does not contain a delta
+   */
+  public long apply(final ByteBuffer buffer) {
+    if (buffer.getInt() != DeltaEncoder.MAGIC) {
+      throw new IllegalStateException("Not a delta");
+    }
+    buffer.getLong();
+    final long until = buffer.getLong();
+    byte operation;
+    while ((operation = buffer.get()) != DeltaEncoder.END) {
+      final Object entityId = format.readId(buffer);
+      switch (operation) {
+        case DeltaEncoder.ENTITY_ADDED:
+          addEntity(entityId, buffer);
+          break;
+        case DeltaEncoder.ENTITY_REMOVED:
+          if (engine.getEntityById(entityId).isPresent()) {
+            engine.removeEntity(entityId);
+          }
+          break;
+        case DeltaEncoder.ENTITY_CHANGED:
+          changeEntity(entityId, buffer);
+          break;
+        default:
+          throw new IllegalStateException("Unknown operation " + operation);
+      }
+    }
+    return until;
+  }
+
+  private void addEntity(final Object entityId, final ByteBuffer buffer) {
+    if (engine.getEntityById(entityId).isPresent()) {
+      engine.removeEntity(entityId);
+    }
+    final Entity entity = engine.getEntityFactory().createEntity(entityId);
+    final int count = buffer.getShort();
+    for (int i = 0; i < count; i++) {
+      entity.addComponent(format.readComponent(buffer));
+    }
+    engine.addEntity(entity);
+  }
+
+  private void changeEntity(final Object entityId, final ByteBuffer buffer) {
+    final Entity entity = engine.getEntityById(entityId).orElse(null);
+    byte operation;
+    while ((operation = buffer.get()) != DeltaEncoder.END) {
+      if (operation == DeltaEncoder.COMPONENT_CHANGED) {
+        final Object component = format.readComponent(buffer);
+        if (entity != null) {
+          entity.addComponent(component);
+        }
+      } else if (operation == DeltaEncoder.COMPONENT_REMOVED) {
+        final Class<?> clazz = format.readComponentClass(buffer);
+        if (entity != null) {
+          entity.removeComponent(clazz);
+        }
+      } else {
+        throw new IllegalStateException("Unknown component operation " + operation);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,166 @@
+package com.soze.klecs.replication;
+
+import com.soze.klecs.engine.ChangeTracker;
+import com.soze.klecs.engine.ComponentContainer;
+import com.soze.klecs.engine.Engine;
+import com.soze.klecs.snapshot.SnapshotFormat;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+/**
+ * Encodes changes of an engine between two ticks of its {@link ChangeTracker}.
+ * <p>
+ * A delta starts with a magic number and the two ticks. It is followed by a record per entity, which is an operation,
+ * the entity id and data of the operation, and ends with {@link #END}. An added entity carries all of its components,
+ * a changed entity carries a list of changed components and removed component classes, ended by {@link #END}.
+ * Components, classes and ids are written by a {@link SnapshotFormat}, which needs an id codec.
+ * Primitive layouts are not replicated.
+ */
+public class DeltaEncoder {
+
+  static final int MAGIC = 0x4B4C4454;
+
+  static final byte END = 0;
+  static final byte ENTITY_ADDED = 1;
+  static final byte ENTITY_REMOVED = 2;
+  static final byte ENTITY_CHANGED = 3;
+  static final byte COMPONENT_CHANGED = 1;
+  static final byte COMPONENT_REMOVED = 2;
+
+  private final ComponentContainer container;
+  private final ChangeTracker changeTracker;
+  private final SnapshotFormat format;
+
+  public DeltaEncoder(final Engine engine, final SnapshotFormat format) {
+    this.container = engine.getComponentContainer();
+    this.changeTracker = engine.enableChangeTracking();
+    this.format = Objects.requireNonNull(format);
+  }
+
+  /**
+   * Writes changes made after tick since, up to and including tick until, to the buffer.
+   *
+   * @throws java.nio.BufferOverflowException if the changes don't fit in the buffer
+   */
+  public void encode(final long since, final long until, final ByteBuffer buffer) {
+    encode(since, until, buffer, Collections.emptyList(), Collections.emptyList(), null);
+  }
+
+  /**
+   * Writes changes for a client which only knows some of the entities. Entities which became relevant to the client
+   * are written whole, entities which stopped being relevant are written as removed, and changes made after tick since
+   * are written only for entities which were already relevant.
+   *
+   * @param relevant tells which entities the client knew at tick since, null if it knows all of them
+   * @throws java.nio.BufferOverflowException if the changes don't fit in the buffer
+   */
+  public void encode(final long since, final long until, final ByteBuffer buffer, final Collection<?> enteredIds,
+                     final Collection<?> leftIds, final Predicate<Object> relevant) {
+    buffer.putInt(MAGIC);
+    buffer.putLong(since);
+    buffer.putLong(until);
+    final Visitor visitor = new Visitor(buffer, relevant);
+    for (final Object entityId : leftIds) {
+      visitor.writeRemoved(entityId);
+    }
+    for (final Object entityId : enteredIds) {
+      visitor.writeAdded(entityId);
+    }
+    changeTracker.forEachChange(since, until, visitor);
+    visitor.endEntity();
+    buffer.put(END);
+  }
+
+  private final class Visitor implements ChangeTracker.ChangeVisitor {
+
+    private final ByteBuffer buffer;
+    private final Predicate<Object> relevant;
+
+    /**
+     * Entity whose changed components are being written, null if none.
+     */
+    private Object changedEntityId = null;
+
+    private Visitor(final ByteBuffer buffer, final Predicate<Object> relevant) {
+      this.buffer = buffer;
+      this.relevant = relevant;
+    }
+
+    @Override
+    public void entityAdded(final Object entityId) {
+      if (isRelevant(entityId)) {
+        writeAdded(entityId);
+      }
+    }
+
+    @Override
+    public void entityRemoved(final Object entityId) {
+      if (isRelevant(entityId)) {
+        writeRemoved(entityId);
+      }
+    }
+
+    @Override
+    public void componentChanged(final Object entityId, final Class<?> clazz) {
+      final Object component = container.getComponent(entityId, clazz);
+      if (component != null && isRelevant(entityId)) {
+        startEntity(entityId);
+        buffer.put(COMPONENT_CHANGED);
+        format.writeComponent(component, buffer);
+      }
+    }
+
+    @Override
+    public void componentRemoved(final Object entityId, final Class<?> clazz) {
+      if (isRelevant(entityId)) {
+        startEntity(entityId);
+        buffer.put(COMPONENT_REMOVED);
+        format.writeComponentClass(clazz, buffer);
+      }
+    }
+
+    private boolean isRelevant(final Object entityId) {
+      return relevant == null || relevant.test(entityId);
+    }
+
+    private void writeAdded(final Object entityId) {
+      endEntity();
+      buffer.put(ENTITY_ADDED);
+      format.writeId(entityId, buffer);
+      final Collection<Object> components = container.getAllComponents(entityId);
+      buffer.putShort((short) components.size());
+      for (final Object component : components) {
+        format.writeComponent(component, buffer);
+      }
+    }
+
+    private void writeRemoved(final Object entityId) {
+      endEntity();
+      buffer.put(ENTITY_REMOVED);
+      format.writeId(entityId, buffer);
+    }
+
+    private void startEntity(final Object entityId) {
+      if (entityId.equals(changedEntityId)) {
+        return;
+      }
+      endEntity();
+      buffer.put(ENTITY_CHANGED);
+      format.writeId(entityId, buffer);
+      changedEntityId = entityId;
+    }
+
+    private void endEntity() {
+      if (changedEntityId != null) {
+        buffer.put(END);
+        changedEntityId = null;
+      }
+    }
+
+  }
+
+}
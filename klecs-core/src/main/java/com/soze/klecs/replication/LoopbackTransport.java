@@ -0,0 +1,55 @@
+package com.soze.klecs.replication;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Connects a server and a client in the same process, for tests and local play.
+ * Messages sent by one end are received by the other end.
+ */
+public class LoopbackTransport {
+
+  private final Queue<ByteBuffer> toClient = new ConcurrentLinkedQueue<>();
+  private final Queue<ByteBuffer> toServer = new ConcurrentLinkedQueue<>();
+  private final Transport serverEnd = new End(toClient, toServer);
+  private final Transport clientEnd = new End(toServer, toClient);
+
+  public LoopbackTransport() {
+
+  }
+
+  public Transport getServerEnd() {
+    return serverEnd;
+  }
+
+  public Transport getClientEnd() {
+    return clientEnd;
+  }
+
+  private static final class End implements Transport {
+
+    private final Queue<ByteBuffer> outgoing;
+    private final Queue<ByteBuffer> incoming;
+
+    private End(final Queue<ByteBuffer> outgoing, final Queue<ByteBuffer> incoming) {
+      this.outgoing = outgoing;
+      this.incoming = incoming;
+    }
+
+    @Override
+    public void send(final ByteBuffer message) {
+      final ByteBuffer copy = ByteBuffer.allocate(message.remaining());
+      copy.put(message.duplicate());
+      copy.flip();
+      outgoing.add(copy);
+    }
+
+    @Override
+    public ByteBuffer receive() {
+      return incoming.poll();
+    }
+
+  }
+
+}
@@ -0,0 +1,58 @@
+package com.soze.klecs.replication;
+
+import com.soze.klecs.engine.Engine;
+import com.soze.klecs.snapshot.SnapshotFormat;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+/**
+ * Applies deltas received from a {@link ReplicationServer} to a client-side engine and acknowledges them.
+ * The client engine must not hand out ids with an {@link com.soze.klecs.entity.IntIdAllocator},
+ * because replicated entities keep the ids they have on the server.
+ */
+public class ReplicationClient {
+
+  private final DeltaDecoder decoder;
+  private final Transport transport;
+  private final ByteBuffer acknowledgement = ByteBuffer.allocate(Long.BYTES);
+  private long tick = 0;
+
+  public ReplicationClient(final Engine engine, final SnapshotFormat format, final Transport transport) {
+    this.decoder = new DeltaDecoder(engine, format);
+    this.transport = Objects.requireNonNull(transport);
+  }
+
+  /**
+   * Applies all received deltas, then acknowledges the latest applied tick.
+   * Deltas older than an already applied one are skipped.
+   *
+   * @return number of applied deltas
+   */
+  public int receive() {
+    int applied = 0;
+    ByteBuffer message;
+    while ((message = transport.receive()) != null) {
+      if (message.getLong(message.position() + Integer.BYTES + Long.BYTES) <= tick) {
+        continue;
+      }
+      tick = decoder.apply(message);
+      applied++;
+    }
+    if (applied > 0) {
+      acknowledgement.clear();
+      acknowledgement.putLong(tick);
+      acknowledgement.flip();
+      transport.send(acknowledgement);
+    }
+    return applied;
+  }
+
+  /**
+   * Returns the tick of the latest applied delta.
+   */
+  public long getTick() {
+    return tick;
+  }
+
+}
@@ -0,0 +1,176 @@
+package com.soze.klecs.replication;
+
+import com.soze.klecs.engine.ChangeTracker;
+import com.soze.klecs.engine.Engine;
+import com.soze.klecs.entity.Entity;
+import com.soze.klecs.snapshot.SnapshotFormat;
+import com.soze.klecs.spatial.AreaOfInterest;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Sends changes of an engine to clients. Each client gets the changes made since the last tick it acknowledged,
+ * so a client which misses a delta catches up with the next one. A new client first gets all entities.
+ * <p>
+ * A client with an {@link AreaOfInterest.Observer} only gets entities its observer sees: entities entering the view
+ * are sent whole, entities leaving it are sent as removed, and changes are sent only for entities in view,
+ * so the size of deltas depends on what the client sees, not on the size of the world.
+ * <p>
+ * Call {@link #replicate()} after each update of the engine.
+ */
+public class ReplicationServer {
+
+  private static final int INITIAL_BUFFER_SIZE = 16 * 1024;
+
+  private final ChangeTracker changeTracker;
+  private final DeltaEncoder encoder;
+  private final List<Client> clients = new ArrayList<>();
+  private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+
+  public ReplicationServer(final Engine engine, final SnapshotFormat format) {
+    this.changeTracker = engine.enableChangeTracking();
+    this.encoder = new DeltaEncoder(engine, format);
+  }
+
+  public Client addClient(final Transport transport) {
+    final Client client = new Client(Objects.requireNonNull(transport), null);
+    clients.add(client);
+    return client;
+  }
+
+  /**
+   * Adds a client which only gets entities seen by given observer.
+   */
+  public Client addClient(final Transport transport, final AreaOfInterest.Observer observer) {
+    final Client client = new Client(Objects.requireNonNull(transport), Objects.requireNonNull(observer));
+    clients.add(client);
+    return client;
+  }
+
+  public void removeClient(final Client client) {
+    clients.remove(client);
+  }
+
+  /**
+   * Reads acknowledgements of clients, ends the current tick of changes and sends each client
+   * a delta since its acknowledged tick. Removals acknowledged by all clients are then forgotten.
+   */
+  public void replicate() {
+    final long until = changeTracker.closeTick();
+    long oldestAcknowledged = until;
+    for (final Client client : clients) {
+      client.readAcknowledgements();
+      client.transport.send(encode(client, until));
+      oldestAcknowledged = Math.min(oldestAcknowledged, client.acknowledgedTick);
+    }
+    changeTracker.discardRemovalsUpTo(oldestAcknowledged);
+  }
+
+  private ByteBuffer encode(final Client client, final long until) {
+    final long since = client.acknowledgedTick;
+    final List<Object> enteredIds = new ArrayList<>();
+    final List<Object> leftIds = new ArrayList<>();
+    if (client.observer != null) {
+      client.updateInterest(until, enteredIds, leftIds);
+    }
+    while (true) {
+      buffer.clear();
+      try {
+        if (client.observer != null) {
+          encoder.encode(since, until, buffer, enteredIds, leftIds, client::isKnownSince);
+        } else {
+          encoder.encode(since, until, buffer);
+        }
+        buffer.flip();
+        return buffer;
+      } catch (final BufferOverflowException e) {
+        buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+      }
+    }
+  }
+
+  public static final class Client {
+
+    private final Transport transport;
+    private final AreaOfInterest.Observer observer;
+    private long acknowledgedTick = 0;
+
+    /**
+     * Ticks in which entities seen by the observer entered its view,
+     * and ticks in which entities not acknowledged as removed left it.
+     */
+    private final Map<Object, Long> enteredTicks = new HashMap<>();
+    private final Map<Object, Long> leftTicks = new HashMap<>();
+
+    private Client(final Transport transport, final AreaOfInterest.Observer observer) {
+      this.transport = transport;
+      this.observer = observer;
+    }
+
+    /**
+     * Compares entities seen by the observer with entities seen in previous ticks, and collects ids of entities
+     * whose entering or leaving the view the client has not acknowledged yet.
+     */
+    private void updateInterest(final long tick, final List<Object> enteredIds, final List<Object> leftIds) {
+      final Iterator<Map.Entry<Object, Long>> entered = enteredTicks.entrySet().iterator();
+      while (entered.hasNext()) {
+        final Map.Entry<Object, Long> entry = entered.next();
+        if (!observer.isVisible(entry.getKey())) {
+          leftTicks.put(entry.getKey(), tick);
+          entered.remove();
+        } else if (entry.getValue() > acknowledgedTick) {
+          enteredIds.add(entry.getKey());
+        }
+      }
+      for (final Entity entity : observer.getVisible()) {
+        if (!enteredTicks.containsKey(entity.getId())) {
+          enteredTicks.put(entity.getId(), tick);
+          leftTicks.remove(entity.getId());
+          enteredIds.add(entity.getId());
+        }
+      }
+      final Iterator<Map.Entry<Object, Long>> left = leftTicks.entrySet().iterator();
+      while (left.hasNext()) {
+        final Map.Entry<Object, Long> entry = left.next();
+        if (entry.getValue() <= acknowledgedTick) {
+          left.remove();
+        } else {
+          leftIds.add(entry.getKey());
+        }
+      }
+    }
+
+    /**
+     * Returns whether the client has acknowledged a tick in which the entity was in view.
+     */
+    private boolean isKnownSince(final Object entityId) {
+      final Long tick = enteredTicks.get(entityId);
+      return tick != null && tick <= acknowledgedTick;
+    }
+
+    private void readAcknowledgements() {
+      ByteBuffer message;
+      while ((message = transport.receive()) != null) {
+        acknowledgedTick = Math.max(acknowledgedTick, message.getLong());
+      }
+    }
+
+    /**
+     * Returns the last tick this client confirmed it applied.
+     */
+    public long getAcknowledgedTick() {
+      return acknowledgedTick;
+    }
+
+    /**
+     * Returns the observer whose view is sent to this client, null if the client gets all entities.
+     */
+    public AreaOfInterest.Observer getObserver() {
+      return observer;
+    }
+
+  }
+
+}
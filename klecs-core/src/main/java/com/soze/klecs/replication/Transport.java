@@ -0,0 +1,20 @@
+package com.soze.klecs.replication;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Delivers messages between a {@link ReplicationServer} and a {@link ReplicationClient}, in the order they were sent.
+ */
+public interface Transport {
+
+  /**
+   * Sends the remaining bytes of the message. The buffer can be reused after this method returns.
+   */
+  void send(ByteBuffer message);
+
+  /**
+   * Returns the next received message, or null if there is none.
+   */
+  ByteBuffer receive();
+
+}
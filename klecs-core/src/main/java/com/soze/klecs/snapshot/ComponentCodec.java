@@ -0,0 +1,62 @@
+package com.soze.klecs.snapshot;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes components of one class to a buffer and reads them back.
+ * A codec has to read exactly the bytes it wrote. When the buffer has too little space or too few bytes,
+ * the codec should let the buffer throw, the snapshot then retries with more space or more bytes.
+ *
+ * @see SnapshotFormat#register
+ */
+public interface ComponentCodec<T> {
+
+  ComponentCodec<Long> LONG = new ComponentCodec<Long>() {
+    @Override
+    public void write(final Long value, final ByteBuffer buffer) {
+      buffer.putLong(value);
+    }
+
+    @Override
+    public Long read(final ByteBuffer buffer) {
+      return buffer.getLong();
+    }
+  };
+
+  ComponentCodec<Integer> INTEGER = new ComponentCodec<Integer>() {
+    @Override
+    public void write(final Integer value, final ByteBuffer buffer) {
+      buffer.putInt(value);
+    }
+
+    @Override
+    public Integer read(final ByteBuffer buffer) {
+      return buffer.getInt();
+    }
+  };
+
+  /**
+   * Writes strings as their length in bytes followed by the bytes in UTF-8.
+   */
+  ComponentCodec<String> STRING = new ComponentCodec<String>() {
+    @Override
+    public void write(final String value, final ByteBuffer buffer) {
+      final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      buffer.putInt(bytes.length);
+      buffer.put(bytes);
+    }
+
+    @Override
+    public String read(final ByteBuffer buffer) {
+      final byte[] bytes = new byte[buffer.getInt()];
+      buffer.get(bytes);
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+  };
+
+  void write(T component, ByteBuffer buffer);
+
+  T read(ByteBuffer buffer);
+
+}
@@ -0,0 +1,568 @@
+package com.soze.klecs.snapshot;
+
+import com.soze.klecs.engine.ComponentContainer;
+import com.soze.klecs.engine.Engine;
+import com.soze.klecs.engine.PrimitiveField;
+import com.soze.klecs.engine.PrimitiveLayout;
+import com.soze.klecs.entity.Entity;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.*;
+
+/**
+ * Binary format of snapshots of all entities of an {@link Engine}, with their components and primitive layouts.
+ * Every component class and layout in a snapshot has to be registered with a numeric id, which is written
+ * instead of its name, so the same ids have to be registered on the side which reads the snapshot.
+ * <p>
+ * Entities are written and read one after another through a fixed buffer, so a snapshot of a large engine
+ * can be streamed to a channel without building it in memory first.
+ * <p>
+ * A snapshot starts with a header (magic number, version, flags, number of entities).
+ * Each entity is written as its id (if an id codec is set), the number of its components,
+ * the codec id and bytes of each component, the number of its layouts, and the layout id
+ * and values of each layout, floats first, in the order of fields.
+ *
+ * <pre>
+ * SnapshotFormat format = new SnapshotFormat();
+ * format.register(1, Position.class, new PositionCodec());
+ * format.registerLayout(2, MOVABLE);
+ * format.write(engine, channel);
+ * ...
+ * format.read(channel, newEngine);
+ * </pre>
+ */
+public class SnapshotFormat {
+
+  static final int MAGIC = 0x4B4C534E;
+  static final byte VERSION = 1;
+  private static final byte FLAG_IDS = 1;
+
+  private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+  private final Map<Class<?>, Registration> registrationsByClass = new HashMap<>();
+
+  /**
+   * Registrations indexed by codec id, so reading a component does not box its id for a map lookup.
+   */
+  private Registration[] registrationsById = new Registration[16];
+
+  private final Map<PrimitiveLayout, Integer> layoutIds = new LinkedHashMap<>();
+  private final Map<Integer, PrimitiveLayout> layoutsById = new HashMap<>();
+  private ComponentCodec<Object> idCodec = null;
+
+  public SnapshotFormat() {
+
+  }
+
+  /**
+   * Registers a codec for components of exactly given class, written with given id.
+   *
+   * @throws IllegalArgumentException if the class or id is already registered, or the id does not fit in a short
+   */
+  public <T> void register(final int codecId, final Class<T> clazz, final ComponentCodec<T> codec) {
+    Objects.requireNonNull(clazz);
+    Objects.requireNonNull(codec);
+    checkId(codecId);
+    if (registrationsByClass.containsKey(clazz)
+      || (codecId < registrationsById.length && registrationsById[codecId] != null)) {
+      throw new IllegalArgumentException("Codec id " + codecId + " or " + clazz + " is already registered");
+    }
+    final Registration registration = new Registration(codecId, clazz, codec);
+    registrationsByClass.put(clazz, registration);
+    if (codecId >= registrationsById.length) {
+      registrationsById = Arrays.copyOf(registrationsById, Math.max(codecId + 1, registrationsById.length * 2));
+    }
+    registrationsById[codecId] = registration;
+  }
+
+  /**
+   * Registers a layout, whose values are written with given id.
+   *
+   * @throws IllegalArgumentException if the layout or id is already registered, or the id does not fit in a short
+   */
+  public void registerLayout(final int layoutId, final PrimitiveLayout layout) {
+    Objects.requireNonNull(layout);
+    checkId(layoutId);
+    if (layoutIds.containsKey(layout) || layoutsById.containsKey(layoutId)) {
+      throw new IllegalArgumentException("Layout id " + layoutId + " or " + layout + " is already registered");
+    }
+    layoutIds.put(layout, layoutId);
+    layoutsById.put(layoutId, layout);
+  }
+
+  /**
+   * Sets a codec for entity ids. Without one, ids are not written and read entities get new ids
+   * from the engine's {@link com.soze.klecs.entity.EntityFactory}. With one, read ids are reserved
+   * by the factory, see {@link com.soze.klecs.entity.EntityFactory#createEntity(Object)}.
+   */
+  @SuppressWarnings("unchecked")
+  public void setIdCodec(final ComponentCodec<?> idCodec) {
+    this.idCodec = (ComponentCodec<Object>) idCodec;
+  }
+
+  /**
+   * Writes a snapshot of all entities of the engine to the channel.
+   *
+   * @throws IllegalArgumentException if an entity has a component without a registered codec
+   */
+  public void write(final Engine engine, final WritableByteChannel channel) throws IOException {
+    Objects.requireNonNull(channel);
+    final Writer writer = new Writer(ByteBuffer.allocate(DEFAULT_BUFFER_SIZE), channel);
+    writeEntities(engine, writer);
+    writer.flush();
+  }
+
+  /**
+   * Writes a snapshot of all entities of the engine to the buffer.
+   *
+   * @throws BufferOverflowException if the snapshot does not fit in the buffer
+   */
+  public void write(final Engine engine, final ByteBuffer buffer) {
+    try {
+      writeEntities(engine, new Writer(buffer, null));
+    } catch (final IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Reads a snapshot from the channel and adds its entities to the engine.
+   * The channel has to be blocking.
+   *
+   * If the snapshot can't be added, no entity is added and the engine is left as it was.
+   *
+   * @return added entities, in the order they were written
+   * @throws IllegalStateException if the snapshot is malformed, uses ids which are not registered,
+   * or has an entity whose id is already in the engine
+   */
+  public List<Entity> read(final ReadableByteChannel channel, final Engine engine) throws IOException {
+    Objects.requireNonNull(channel);
+    final ByteBuffer buffer = ByteBuffer.allocate(DEFAULT_BUFFER_SIZE);
+    buffer.flip();
+    return readEntities(new Reader(buffer, channel), engine);
+  }
+
+  /**
+   * Reads a snapshot from the buffer and adds its entities to the engine, see {@link #read(ReadableByteChannel, Engine)}.
+   *
+   * @return added entities, in the order they were written
+   */
+  public List<Entity> read(final ByteBuffer buffer, final Engine engine) {
+    try {
+      return readEntities(new Reader(buffer, null), engine);
+    } catch (final IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Writes the codec id of the component's class, followed by the component.
+   *
+   * @throws IllegalArgumentException if no codec is registered for the component's class
+   */
+  public void writeComponent(final Object component, final ByteBuffer buffer) {
+    final Registration registration = getRegistration(component.getClass());
+    buffer.putShort((short) registration.id);
+    registration.codec.write(component, buffer);
+  }
+
+  /**
+   * Reads a component written by {@link #writeComponent(Object, ByteBuffer)}.
+   *
+   * @throws IllegalStateException if no codec is registered with the id read from the buffer
+   */
+  public Object readComponent(final ByteBuffer buffer) {
+    return getRegistration(buffer.getShort()).codec.read(buffer);
+  }
+
+  /**
+   * Writes the codec id registered for given component class.
+   */
+  public void writeComponentClass(final Class<?> clazz, final ByteBuffer buffer) {
+    buffer.putShort((short) getRegistration(clazz).id);
+  }
+
+  /**
+   * Reads a component class written by {@link #writeComponentClass(Class, ByteBuffer)}.
+   */
+  public Class<?> readComponentClass(final ByteBuffer buffer) {
+    return getRegistration(buffer.getShort()).clazz;
+  }
+
+  /**
+   * Writes an entity id with the id codec.
+   *
+   * @throws IllegalStateException if no id codec is set
+   */
+  public void writeId(final Object id, final ByteBuffer buffer) {
+    getIdCodec().write(id, buffer);
+  }
+
+  public Object readId(final ByteBuffer buffer) {
+    return getIdCodec().read(buffer);
+  }
+
+  private ComponentCodec<Object> getIdCodec() {
+    if (idCodec == null) {
+      throw new IllegalStateException("No id codec is set");
+    }
+    return idCodec;
+  }
+
+  private Registration getRegistration(final Class<?> clazz) {
+    final Registration registration = registrationsByClass.get(clazz);
+    if (registration == null) {
+      throw new IllegalArgumentException("No codec registered for " + clazz);
+    }
+    return registration;
+  }
+
+  private Registration getRegistration(final int codecId) {
+    final Registration registration = codecId >= 0 && codecId < registrationsById.length
+      ? registrationsById[codecId]
+      : null;
+    if (registration == null) {
+      throw new IllegalStateException("No codec registered with id " + codecId);
+    }
+    return registration;
+  }
+
+  private void writeEntities(final Engine engine, final Writer writer) throws IOException {
+    final ComponentContainer container = engine.getComponentContainer();
+    final Collection<Entity> entities = engine.getAllEntitiesCollection();
+    writer.write(buffer -> {
+      buffer.putInt(MAGIC);
+      buffer.put(VERSION);
+      buffer.put(idCodec != null ? FLAG_IDS : 0);
+      buffer.putInt(entities.size());
+    });
+
+    final List<Registration> registrations = new ArrayList<>();
+    final List<Object> components = new ArrayList<>();
+    final List<PrimitiveLayout> layouts = new ArrayList<>();
+    for (final Entity entity : entities) {
+      components.clear();
+      registrations.clear();
+      for (final Object component : container.getAllComponents(entity.getId())) {
+        components.add(component);
+        registrations.add(getRegistration(component.getClass()));
+      }
+      layouts.clear();
+      for (final PrimitiveLayout layout : layoutIds.keySet()) {
+        if (container.hasLayout(entity.getId(), layout)) {
+          layouts.add(layout);
+        }
+      }
+
+      writer.write(buffer -> {
+        if (idCodec != null) {
+          idCodec.write(entity.getId(), buffer);
+        }
+        buffer.putShort((short) components.size());
+        for (int i = 0; i < components.size(); i++) {
+          final Registration registration = registrations.get(i);
+          buffer.putShort((short) registration.id);
+          registration.codec.write(components.get(i), buffer);
+        }
+        buffer.putShort((short) layouts.size());
+        for (final PrimitiveLayout layout : layouts) {
+          buffer.putShort((short) (int) layoutIds.get(layout));
+          writeLayout(container, entity.getId(), layout, buffer);
+        }
+      });
+    }
+  }
+
+  private static void writeLayout(final ComponentContainer container, final Object entityId,
+                                  final PrimitiveLayout layout, final ByteBuffer buffer) {
+    for (final PrimitiveField field : layout.getFields()) {
+      if (field.getType() == PrimitiveField.Type.FLOAT) {
+        buffer.putFloat(container.getFloat(entityId, field));
+      }
+    }
+    for (final PrimitiveField field : layout.getFields()) {
+      if (field.getType() == PrimitiveField.Type.INT) {
+        buffer.putInt(container.getInt(entityId, field));
+      }
+    }
+  }
+
+  private List<Entity> readEntities(final Reader reader, final Engine engine) throws IOException {
+    final int[] header = new int[2];
+    reader.read(buffer -> {
+      if (buffer.getInt() != MAGIC) {
+        throw new IllegalStateException("Not a snapshot");
+      }
+      final byte version = buffer.get();
+      if (version != VERSION) {
+        throw new IllegalStateException("Unsupported snapshot version " + version);
+      }
+      header[0] = buffer.get();
+      header[1] = buffer.getInt();
+    });
+    final boolean hasIds = (header[0] & FLAG_IDS) != 0;
+    if (hasIds && idCodec == null) {
+      throw new IllegalStateException("Snapshot contains entity ids, but no id codec is set");
+    }
+
+    final int count = header[1];
+    final List<Object[]> componentsByEntity = new ArrayList<>(count);
+    final List<Object> ids = new ArrayList<>(hasIds ? count : 0);
+    final List<LayoutValues> layoutsByEntity = new ArrayList<>();
+    final List<Object> components = new ArrayList<>();
+    final List<LayoutValues> layouts = new ArrayList<>();
+    final Object[] id = new Object[1];
+    //an entity is decoded completely before it is kept, so decoding can be retried with more bytes
+    final BufferAction readEntity = buffer -> {
+      components.clear();
+      layouts.clear();
+      id[0] = hasIds ? idCodec.read(buffer) : null;
+      final int componentCount = buffer.getShort();
+      for (int c = 0; c < componentCount; c++) {
+        components.add(readComponent(buffer));
+      }
+      final int layoutCount = buffer.getShort();
+      for (int l = 0; l < layoutCount; l++) {
+        final int layoutId = buffer.getShort();
+        final PrimitiveLayout layout = layoutsById.get(layoutId);
+        if (layout == null) {
+          throw new IllegalStateException("No layout registered with id " + layoutId);
+        }
+        final float[] floatValues = new float[layout.getFloatCount()];
+        for (int f = 0; f < floatValues.length; f++) {
+          floatValues[f] = buffer.getFloat();
+        }
+        final int[] intValues = new int[layout.getIntCount()];
+        for (int n = 0; n < intValues.length; n++) {
+          intValues[n] = buffer.getInt();
+        }
+        layouts.add(new LayoutValues(layout, floatValues, intValues));
+      }
+    };
+    for (int i = 0; i < count; i++) {
+      reader.read(readEntity);
+      if (hasIds) {
+        ids.add(id[0]);
+      }
+      componentsByEntity.add(components.toArray());
+      for (final LayoutValues layout : layouts) {
+        layout.entity = i;
+        layoutsByEntity.add(layout);
+      }
+    }
+
+    final List<Entity> entities;
+    if (hasIds) {
+      //ids are checked before any entity is created, so ids of live entities are not touched
+      final Set<Object> uniqueIds = new HashSet<>(count * 2);
+      for (final Object entityId : ids) {
+        if (engine.getEntityById(entityId).isPresent()) {
+          throw new IllegalStateException("Entity with id: " + entityId + " is already in the engine");
+        }
+        if (!uniqueIds.add(entityId)) {
+          throw new IllegalStateException("Entity with id: " + entityId + " is in the snapshot twice");
+        }
+      }
+      entities = new ArrayList<>(count);
+    } else {
+      entities = engine.getEntityFactory().createEntities(count);
+    }
+    try {
+      //the factory reserves restored ids, so it never hands them out to new entities
+      for (int i = entities.size(); i < count; i++) {
+        entities.add(engine.getEntityFactory().createEntity(ids.get(i)));
+      }
+      final Map<Entity, List<LayoutValues>> layoutsOfEntities = new IdentityHashMap<>();
+      for (final LayoutValues layout : layoutsByEntity) {
+        layoutsOfEntities.computeIfAbsent(entities.get(layout.entity), entity -> new ArrayList<>()).add(layout);
+      }
+      //all entities are added at once, each with all of its components in one change,
+      //layouts are set only after the engine accepted the ids
+      engine.addEntities(entities, componentsByEntity, entity -> {
+        for (final LayoutValues layout : layoutsOfEntities.getOrDefault(entity, Collections.emptyList())) {
+          readLayout(entity, layout.layout, layout.floats, layout.ints);
+        }
+      });
+    } catch (final RuntimeException e) {
+      discardEntities(engine, entities, e);
+      throw e;
+    }
+    return entities;
+  }
+
+  /**
+   * Discards entities which were created for a snapshot, but were not added, so their ids are released.
+   */
+  private static void discardEntities(final Engine engine, final List<Entity> entities, final RuntimeException cause) {
+    for (final Entity entity : entities) {
+      if (engine.getEntityById(entity.getId()).orElse(null) == entity) {
+        continue;
+      }
+      try {
+        engine.discardEntity(entity);
+      } catch (final RuntimeException e) {
+        cause.addSuppressed(e);
+      }
+    }
+  }
+
+  private static void readLayout(final Entity entity, final PrimitiveLayout layout, final float[] floats, final int[] ints) {
+    entity.addLayout(layout);
+    int floatIndex = 0;
+    int intIndex = 0;
+    for (final PrimitiveField field : layout.getFields()) {
+      if (field.getType() == PrimitiveField.Type.FLOAT) {
+        entity.setFloat(field, floats[floatIndex++]);
+      } else {
+        entity.setInt(field, ints[intIndex++]);
+      }
+    }
+  }
+
+  private static void checkId(final int id) {
+    if (id < 0 || id > Short.MAX_VALUE) {
+      throw new IllegalArgumentException("Id has to be between 0 and " + Short.MAX_VALUE + ", was " + id);
+    }
+  }
+
+  private static final class Registration {
+
+    private final int id;
+    private final Class<?> clazz;
+    private final ComponentCodec<Object> codec;
+
+    @SuppressWarnings("unchecked")
+    private Registration(final int id, final Class<?> clazz, final ComponentCodec<?> codec) {
+      this.id = id;
+      this.clazz = clazz;
+      this.codec = (ComponentCodec<Object>) codec;
+    }
+
+  }
+
+  /**
+   * Values of a layout of a read entity, which are set once the engine accepted the ids of the entities.
+   */
+  private static final class LayoutValues {
+
+    private final PrimitiveLayout layout;
+    private final float[] floats;
+    private final int[] ints;
+    private int entity;
+
+    private LayoutValues(final PrimitiveLayout layout, final float[] floats, final int[] ints) {
+      this.layout = layout;
+      this.floats = floats;
+      this.ints = ints;
+    }
+
+  }
+
+  private interface BufferAction {
+    void apply(ByteBuffer buffer);
+  }
+
+  /**
+   * Writes to a buffer, flushing it to the channel when an action does not fit.
+   * A failed action is retried from the start, in a flushed or larger buffer.
+   */
+  private static final class Writer {
+
+    private ByteBuffer buffer;
+    private final WritableByteChannel channel;
+
+    private Writer(final ByteBuffer buffer, final WritableByteChannel channel) {
+      this.buffer = buffer;
+      this.channel = channel;
+    }
+
+    private void write(final BufferAction action) throws IOException {
+      while (true) {
+        final int start = buffer.position();
+        try {
+          action.apply(buffer);
+          return;
+        } catch (final BufferOverflowException e) {
+          if (channel == null) {
+            throw e;
+          }
+          buffer.position(start);
+          if (start == 0) {
+            buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+          } else {
+            flush();
+          }
+        }
+      }
+    }
+
+    private void flush() throws IOException {
+      if (channel == null) {
+        return;
+      }
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      buffer.clear();
+    }
+
+  }
+
+  /**
+   * Reads from a buffer, filling it from the channel when an action runs out of bytes.
+   * A failed action is retried from the start, with more bytes in the buffer.
+   */
+  private static final class Reader {
+
+    private ByteBuffer buffer;
+    private final ReadableByteChannel channel;
+
+    private Reader(final ByteBuffer buffer, final ReadableByteChannel channel) {
+      this.buffer = buffer;
+      this.channel = channel;
+    }
+
+    private void read(final BufferAction action) throws IOException {
+      while (true) {
+        final int start = buffer.position();
+        try {
+          action.apply(buffer);
+          return;
+        } catch (final BufferUnderflowException e) {
+          if (channel == null) {
+            throw new IllegalStateException("Snapshot ended unexpectedly", e);
+          }
+          buffer.position(start);
+          fill();
+        }
+      }
+    }
+
+    private void fill() throws IOException {
+      buffer.compact();
+      if (!buffer.hasRemaining()) {
+        final ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+        buffer.flip();
+        larger.put(buffer);
+        buffer = larger;
+      }
+      final int read = channel.read(buffer);
+      buffer.flip();
+      if (read == -1) {
+        throw new IllegalStateException("Snapshot ended unexpectedly");
+      }
+      //the buffer has room, so only a non-blocking channel without available bytes reads nothing
+      if (read == 0) {
+        throw new IllegalStateException("Channel returned no bytes, snapshots have to be read from a blocking channel");
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,292 @@
+package com.soze.klecs.spatial;
+
+import com.soze.klecs.engine.Engine;
+import com.soze.klecs.engine.EntityEvent;
+import com.soze.klecs.engine.RemovedEntityEvent;
+import com.soze.klecs.entity.Entity;
+import com.soze.klecs.node.Node;
+import com.soze.klecs.system.EntitySystem;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Keeps track of entities each observer, for example a connected player, can see: entities of a {@link SpatialIndex}
+ * within a radius of the observer. Each refresh finds which entities entered the view of an observer, stayed in it,
+ * and left it, so a server only has to send a client what happens around its player.
+ * <p>
+ * A refresh costs O(entities in view) per observer, it queries only the cells around the observer and compares
+ * the result with the entities seen before. Entities removed from the engine leave all views right away.
+ * An observer can have an exit radius larger than its radius, so entities moving along the edge of its view
+ * don't enter and leave it in every tick.
+ * <p>
+ * Like the index, this is a system which refreshes itself when it is updated, add it after the index.
+ *
+ * <pre>{@code
+ * AreaOfInterest interest = new AreaOfInterest(index);
+ * engine.addSystem(index);
+ * engine.addSystem(interest);
+ * AreaOfInterest.Observer observer = interest.addObserver(100, 120);
+ * observer.follow(player);
+ * }</pre>
+ *
+ * @see com.soze.klecs.replication.ReplicationServer#addClient(com.soze.klecs.replication.Transport, Observer)
+ */
+public class AreaOfInterest implements EntitySystem {
+
+  private final SpatialIndex<?> index;
+  private final List<Observer> observers = new ArrayList<>();
+
+  private final Consumer<EntityEvent> removalListener = event -> {
+    if (event instanceof RemovedEntityEvent) {
+      for (int i = 0; i < observers.size(); i++) {
+        observers.get(i).entityRemoved(event.getEntity());
+      }
+    }
+  };
+
+  /**
+   * Creates an area of interest of entities of given index. Don't create it while the engine is updating.
+   */
+  public AreaOfInterest(final SpatialIndex<?> index) {
+    this.index = Objects.requireNonNull(index);
+    index.getEngine().addEntityEventListener(removalListener);
+  }
+
+  /**
+   * Adds an observer which sees entities within given radius.
+   */
+  public Observer addObserver(final float radius) {
+    return addObserver(radius, radius);
+  }
+
+  /**
+   * Adds an observer which starts seeing entities within given radius, and stops seeing them when they are
+   * farther away than the exit radius. Entities become visible in the next refresh.
+   */
+  public Observer addObserver(final float radius, final float exitRadius) {
+    if (!(radius >= 0) || exitRadius < radius) {
+      throw new IllegalArgumentException("Radius has to be positive and not larger than the exit radius, was "
+        + radius + " and " + exitRadius);
+    }
+    final Observer observer = new Observer(radius, exitRadius);
+    observers.add(observer);
+    return observer;
+  }
+
+  public void removeObserver(final Observer observer) {
+    observers.remove(observer);
+  }
+
+  public List<Observer> getObservers() {
+    return Collections.unmodifiableList(observers);
+  }
+
+  /**
+   * Refreshes views of all observers.
+   */
+  @Override
+  public void update(final float delta) {
+    refresh();
+  }
+
+  @Override
+  public Engine getEngine() {
+    return index.getEngine();
+  }
+
+  /**
+   * Finds entities which entered and left views of all observers since the last refresh.
+   */
+  public void refresh() {
+    for (int i = 0; i < observers.size(); i++) {
+      observers.get(i).refresh();
+    }
+  }
+
+  /**
+   * Stops following entities of the engine. Don't call it while the engine is updating.
+   * If this was added to the engine as a system, remove it as well.
+   */
+  public void dispose() {
+    index.getEngine().removeEntityEventListener(removalListener);
+    observers.clear();
+  }
+
+  /**
+   * View of one observer. Its center is either set with {@link #moveTo(float, float)},
+   * or follows an indexed entity, for example the player of a client.
+   */
+  public final class Observer {
+
+    private final float radius;
+    private final float exitRadius;
+    private float x = 0;
+    private float y = 0;
+    private Entity followed = null;
+    private Node filter = null;
+
+    /**
+     * Visible entities by id, with the number of the refresh in which they were last found in range.
+     */
+    private final Map<Object, Visibility> visible = new HashMap<>();
+    private final Collection<Entity> visibleView = new AbstractCollection<Entity>() {
+      @Override
+      public Iterator<Entity> iterator() {
+        final Iterator<Visibility> iterator = visible.values().iterator();
+        return new Iterator<Entity>() {
+          @Override
+          public boolean hasNext() {
+            return iterator.hasNext();
+          }
+
+          @Override
+          public Entity next() {
+            return iterator.next().entity;
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return visible.size();
+      }
+    };
+
+    private List<Entity> entered = new ArrayList<>();
+    private List<Entity> left = new ArrayList<>();
+
+    /**
+     * Entities removed from the engine since the last refresh, reported as left by the next refresh.
+     */
+    private List<Entity> removed = new ArrayList<>();
+    private int refreshes = 0;
+    private final SpatialIndex.RangeConsumer visitor = this::visit;
+
+    private Observer(final float radius, final float exitRadius) {
+      this.radius = radius;
+      this.exitRadius = exitRadius;
+    }
+
+    /**
+     * Moves the center of the view and stops following an entity.
+     */
+    public void moveTo(final float x, final float y) {
+      this.x = x;
+      this.y = y;
+      this.followed = null;
+    }
+
+    /**
+     * Makes the view follow given entity, from its position at the last refresh of the index.
+     * The view stays where it is while the entity is not indexed.
+     */
+    public void follow(final Entity entity) {
+      this.followed = Objects.requireNonNull(entity);
+    }
+
+    /**
+     * Limits the view to entities matching given node, null to see all entities.
+     */
+    public void setFilter(final Node filter) {
+      this.filter = filter;
+    }
+
+    public float getX() {
+      return x;
+    }
+
+    public float getY() {
+      return y;
+    }
+
+    public float getRadius() {
+      return radius;
+    }
+
+    public float getExitRadius() {
+      return exitRadius;
+    }
+
+    public boolean isVisible(final Object entityId) {
+      return visible.containsKey(entityId);
+    }
+
+    /**
+     * Returns an unmodifiable view of entities this observer currently sees.
+     */
+    public Collection<Entity> getVisible() {
+      return visibleView;
+    }
+
+    /**
+     * Returns entities which entered the view in the last refresh.
+     */
+    public List<Entity> getEntered() {
+      return Collections.unmodifiableList(entered);
+    }
+
+    /**
+     * Returns entities which left the view in the last refresh, or were removed from the engine before it.
+     */
+    public List<Entity> getLeft() {
+      return Collections.unmodifiableList(left);
+    }
+
+    private void refresh() {
+      if (followed != null) {
+        final int entry = index.getEntry(followed.getId());
+        if (entry != -1) {
+          x = index.getX(entry);
+          y = index.getY(entry);
+        }
+      }
+      entered.clear();
+      final List<Entity> previouslyRemoved = removed;
+      removed = left;
+      removed.clear();
+      left = previouslyRemoved;
+
+      refreshes++;
+      index.visitRange(x, y, exitRadius, filter, visitor);
+      final Iterator<Visibility> iterator = visible.values().iterator();
+      while (iterator.hasNext()) {
+        final Visibility visibility = iterator.next();
+        if (visibility.refresh != refreshes) {
+          left.add(visibility.entity);
+          iterator.remove();
+        }
+      }
+    }
+
+    private void visit(final Entity entity, final float distanceSquared) {
+      final Visibility visibility = visible.get(entity.getId());
+      if (visibility != null) {
+        visibility.refresh = refreshes;
+      } else if (distanceSquared <= radius * radius) {
+        visible.put(entity.getId(), new Visibility(entity, refreshes));
+        entered.add(entity);
+      }
+    }
+
+    private void entityRemoved(final Entity entity) {
+      if (visible.remove(entity.getId()) != null) {
+        removed.add(entity);
+      }
+    }
+
+  }
+
+  private static final class Visibility {
+
+    private final Entity entity;
+    private int refresh;
+
+    private Visibility(final Entity entity, final int refresh) {
+      this.entity = entity;
+      this.refresh = refresh;
+    }
+
+  }
+
+}
@@ -0,0 +1,484 @@
+package com.soze.klecs.spatial;
+
+import com.soze.klecs.engine.*;
+import com.soze.klecs.entity.Entity;
+import com.soze.klecs.node.Node;
+import com.soze.klecs.system.EntitySystem;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Index of entities of an engine by their position, a uniform grid of square cells, so finding entities
+ * near a point costs O(entities in nearby cells) instead of a scan over all entities.
+ * <p>
+ * Positions are read from components of one class, through given coordinate functions.
+ * Entities with such a component are indexed when they are added to the engine or given the component,
+ * and leave the index when they are removed or lose it. Components are usually changed in place, which the engine
+ * does not notice, so the index reads all positions again in {@link #refresh()}, moving only entities which
+ * crossed into another cell. The index is a system which refreshes itself when it is updated, add it to the engine
+ * before systems which query it. Queries use positions from the last refresh.
+ *
+ * <pre>{@code
+ * SpatialIndex<Position> index = new SpatialIndex<>(engine, Position.class, p -> p.x, p -> p.y, 16);
+ * engine.addSystem(index);
+ * List<Entity> enemies = index.getEntitiesInRange(x, y, 50, Node.of(Enemy.class));
+ * }</pre>
+ *
+ * Choose a cell size close to the typical query radius.
+ */
+public class SpatialIndex<T> implements EntitySystem {
+
+  /**
+   * Reads one coordinate of a position component.
+   */
+  @FunctionalInterface
+  public interface Coordinate<T> {
+    float get(T position);
+  }
+
+  interface RangeConsumer {
+    void accept(Entity entity, float distanceSquared);
+  }
+
+  private final Engine engine;
+  private final Class<T> positionClass;
+  private final Coordinate<T> xCoordinate;
+  private final Coordinate<T> yCoordinate;
+  private final float cellSize;
+
+  private final Map<Object, Integer> entriesById = new HashMap<>();
+  private final Map<Long, Cell> cells = new HashMap<>();
+
+  /**
+   * Indexed entities, with their position components and positions at the last refresh, indexed by entry.
+   * Removing an entry moves the last entry in its place.
+   */
+  private Entity[] entities = new Entity[16];
+  private Object[] components = new Object[16];
+  private float[] xs = new float[16];
+  private float[] ys = new float[16];
+  private long[] cellKeys = new long[16];
+
+  /**
+   * Position of each entry in the list of entries of its cell.
+   */
+  private int[] positionsInCell = new int[16];
+  private int size = 0;
+
+  /**
+   * Bounds of cell coordinates which were ever occupied, nearest neighbour searches stop outside of them.
+   */
+  private int minCellX = Integer.MAX_VALUE;
+  private int maxCellX = Integer.MIN_VALUE;
+  private int minCellY = Integer.MAX_VALUE;
+  private int maxCellY = Integer.MIN_VALUE;
+
+  private final Consumer<EntityEvent> entityListener = event -> {
+    if (event instanceof AddedEntityEvent) {
+      put(event.getEntity());
+    } else {
+      remove(event.getEntity().getId());
+    }
+  };
+
+  private final Consumer<ComponentEvent> componentListener = event -> {
+    if (event instanceof AddedComponentEvent) {
+      put(event.getEntity());
+    } else {
+      remove(event.getEntity().getId());
+    }
+  };
+
+  /**
+   * Creates an index of entities of the engine with a component of given class, and indexes entities
+   * which are already in the engine. Don't create it while the engine is updating.
+   *
+   * @param cellSize length of a side of a cell
+   */
+  public SpatialIndex(final Engine engine, final Class<T> positionClass, final Coordinate<T> xCoordinate,
+                      final Coordinate<T> yCoordinate, final float cellSize) {
+    if (!(cellSize > 0)) {
+      throw new IllegalArgumentException("Cell size has to be positive, was " + cellSize);
+    }
+    this.engine = Objects.requireNonNull(engine);
+    this.positionClass = Objects.requireNonNull(positionClass);
+    this.xCoordinate = Objects.requireNonNull(xCoordinate);
+    this.yCoordinate = Objects.requireNonNull(yCoordinate);
+    this.cellSize = cellSize;
+    final Node node = Node.of(positionClass);
+    engine.addEntityEventListener(node, entityListener);
+    engine.addComponentEventListener(positionClass, componentListener);
+    for (final Entity entity : engine.getEntitiesByNode(node)) {
+      put(entity);
+    }
+  }
+
+  /**
+   * Refreshes positions of all indexed entities.
+   */
+  @Override
+  public void update(final float delta) {
+    refresh();
+  }
+
+  @Override
+  public Engine getEngine() {
+    return engine;
+  }
+
+  /**
+   * Reads positions of all indexed entities again, and moves entities which left their cell to another one.
+   */
+  public void refresh() {
+    for (int entry = 0; entry < size; entry++) {
+      final T component = positionClass.cast(components[entry]);
+      final float x = xCoordinate.get(component);
+      final float y = yCoordinate.get(component);
+      xs[entry] = x;
+      ys[entry] = y;
+      final long cellKey = getCellKey(getCell(x), getCell(y));
+      if (cellKey != cellKeys[entry]) {
+        removeFromCell(entry);
+        addToCell(entry, cellKey);
+      }
+    }
+  }
+
+  /**
+   * Stops indexing entities of the engine. Don't call it while the engine is updating.
+   * If the index was added to the engine as a system, remove it as well.
+   */
+  public void dispose() {
+    engine.removeEntityEventListener(entityListener);
+    engine.removeComponentEventListener(positionClass, componentListener);
+    entriesById.clear();
+    cells.clear();
+    Arrays.fill(entities, 0, size, null);
+    Arrays.fill(components, 0, size, null);
+    size = 0;
+  }
+
+  /**
+   * Returns the entry of an indexed entity, -1 if the entity is not indexed.
+   * Entries change when entities are added or removed.
+   */
+  int getEntry(final Object entityId) {
+    final Integer entry = entriesById.get(entityId);
+    return entry == null ? -1 : entry;
+  }
+
+  /**
+   * Returns x of the entry at the last refresh.
+   */
+  float getX(final int entry) {
+    return xs[entry];
+  }
+
+  /**
+   * Returns y of the entry at the last refresh.
+   */
+  float getY(final int entry) {
+    return ys[entry];
+  }
+
+  /**
+   * Returns the number of indexed entities.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Passes all indexed entities within given distance of a point, which match given node, to the consumer.
+   * Outside of an update, the consumer must not add or remove entities or their position components.
+   *
+   * @param filter node entities have to match, null to pass all entities
+   */
+  public void forEachInRange(final float x, final float y, final float radius, final Node filter, final Consumer<Entity> consumer) {
+    Objects.requireNonNull(consumer);
+    visitRange(x, y, radius, filter, (entity, distanceSquared) -> consumer.accept(entity));
+  }
+
+  /**
+   * Passes all indexed entities within given distance of a point, which match given node,
+   * with their squared distances from the point, to the consumer.
+   */
+  void visitRange(final float x, final float y, final float radius, final Node filter, final RangeConsumer consumer) {
+    final float radiusSquared = radius * radius;
+    final int minX = getCell(x - radius);
+    final int maxX = getCell(x + radius);
+    final int minY = getCell(y - radius);
+    final int maxY = getCell(y + radius);
+    final ComponentContainer container = engine.getComponentContainer();
+
+    if ((long) (maxX - minX + 1) * (maxY - minY + 1) > cells.size()) {
+      //the range covers more cells than there are occupied ones
+      for (final Cell cell : cells.values()) {
+        visitCell(cell, x, y, radiusSquared, filter, container, consumer);
+      }
+      return;
+    }
+    for (int cellX = minX; cellX <= maxX; cellX++) {
+      for (int cellY = minY; cellY <= maxY; cellY++) {
+        final Cell cell = cells.get(getCellKey(cellX, cellY));
+        if (cell != null) {
+          visitCell(cell, x, y, radiusSquared, filter, container, consumer);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns all indexed entities within given distance of a point which match given node, in no particular order.
+   *
+   * @param filter node entities have to match, null to return all entities
+   */
+  public List<Entity> getEntitiesInRange(final float x, final float y, final float radius, final Node filter) {
+    final List<Entity> found = new ArrayList<>();
+    forEachInRange(x, y, radius, filter, found::add);
+    return found;
+  }
+
+  /**
+   * Returns at most given number of indexed entities nearest to a point which match given node, nearest first.
+   * Cells are searched in rings around the point, until no entity in the next ring can be nearer
+   * than the ones found.
+   *
+   * @param filter node entities have to match, null to return all entities
+   */
+  public List<Entity> getNearest(final float x, final float y, final int count, final Node filter) {
+    if (count <= 0 || size == 0) {
+      return new ArrayList<>();
+    }
+    final ComponentContainer container = engine.getComponentContainer();
+    final int[] nearest = new int[count];
+    final float[] distances = new float[count];
+    int found = 0;
+
+    final int centerX = getCell(x);
+    final int centerY = getCell(y);
+    //rings closer than the nearest occupied cell are empty
+    final int firstRing = Math.max(Math.max(minCellX - centerX, centerX - maxCellX), Math.max(minCellY - centerY, centerY - maxCellY));
+    for (int ring = Math.max(0, firstRing); ; ring++) {
+      if (centerX - ring < minCellX && centerX + ring > maxCellX && centerY - ring < minCellY && centerY + ring > maxCellY) {
+        break;
+      }
+      final int fromY = Math.max(centerY - ring, minCellY);
+      final int toY = Math.min(centerY + ring, maxCellY);
+      for (int cellX = Math.max(centerX - ring, minCellX); cellX <= Math.min(centerX + ring, maxCellX); cellX++) {
+        //cells inside of the ring were searched before, only visit its border
+        final boolean borderColumn = cellX == centerX - ring || cellX == centerX + ring;
+        for (int cellY = fromY; cellY <= toY; cellY++) {
+          if (!borderColumn && cellY != centerY - ring && cellY != centerY + ring) {
+            cellY = centerY + ring - 1;
+            continue;
+          }
+          found = visitNearest(cells.get(getCellKey(cellX, cellY)), x, y, filter, container, nearest, distances, found);
+        }
+      }
+      if (found == count) {
+        //entities outside of the searched square are at least this far away
+        final float reach = Math.min(
+          Math.min(x - (centerX - ring) * cellSize, (centerX + ring + 1) * cellSize - x),
+          Math.min(y - (centerY - ring) * cellSize, (centerY + ring + 1) * cellSize - y)
+        );
+        if (distances[count - 1] <= reach * reach) {
+          break;
+        }
+      }
+    }
+
+    final List<Entity> result = new ArrayList<>(found);
+    for (int i = 0; i < found; i++) {
+      result.add(entities[nearest[i]]);
+    }
+    return result;
+  }
+
+  /**
+   * Inserts entries of the cell nearer than the farthest found entry into the sorted array of nearest entries,
+   * dropping the farthest one if it is full.
+   *
+   * @return number of found entries
+   */
+  private int visitNearest(final Cell cell, final float x, final float y, final Node filter, final ComponentContainer container,
+                           final int[] nearest, final float[] distances, int found) {
+    if (cell == null) {
+      return found;
+    }
+    final int count = nearest.length;
+    for (int i = 0; i < cell.size; i++) {
+      final int entry = cell.entries[i];
+      final float distance = getDistanceSquared(entry, x, y);
+      if (found == count && distance >= distances[count - 1]) {
+        continue;
+      }
+      if (filter != null && !container.matches(entities[entry].getId(), filter)) {
+        continue;
+      }
+      int index = found < count ? found++ : count - 1;
+      while (index > 0 && distances[index - 1] > distance) {
+        nearest[index] = nearest[index - 1];
+        distances[index] = distances[index - 1];
+        index--;
+      }
+      nearest[index] = entry;
+      distances[index] = distance;
+    }
+    return found;
+  }
+
+  private void visitCell(final Cell cell, final float x, final float y, final float radiusSquared, final Node filter,
+                         final ComponentContainer container, final RangeConsumer consumer) {
+    for (int i = 0; i < cell.size; i++) {
+      final int entry = cell.entries[i];
+      final float distanceSquared = getDistanceSquared(entry, x, y);
+      if (distanceSquared <= radiusSquared && (filter == null || container.matches(entities[entry].getId(), filter))) {
+        consumer.accept(entities[entry], distanceSquared);
+      }
+    }
+  }
+
+  private float getDistanceSquared(final int entry, final float x, final float y) {
+    final float dx = xs[entry] - x;
+    final float dy = ys[entry] - y;
+    return dx * dx + dy * dy;
+  }
+
+  /**
+   * Indexes the entity, or updates its position component if it is already indexed.
+   */
+  private void put(final Entity entity) {
+    final Object component = entity.getComponent(positionClass);
+    if (component == null) {
+      return;
+    }
+    final T position = positionClass.cast(component);
+    final float x = xCoordinate.get(position);
+    final float y = yCoordinate.get(position);
+    final long cellKey = getCellKey(getCell(x), getCell(y));
+
+    final Integer existing = entriesById.get(entity.getId());
+    if (existing != null) {
+      components[existing] = component;
+      xs[existing] = x;
+      ys[existing] = y;
+      if (cellKey != cellKeys[existing]) {
+        removeFromCell(existing);
+        addToCell(existing, cellKey);
+      }
+      return;
+    }
+
+    if (size == entities.length) {
+      final int capacity = size * 2;
+      entities = Arrays.copyOf(entities, capacity);
+      components = Arrays.copyOf(components, capacity);
+      xs = Arrays.copyOf(xs, capacity);
+      ys = Arrays.copyOf(ys, capacity);
+      cellKeys = Arrays.copyOf(cellKeys, capacity);
+      positionsInCell = Arrays.copyOf(positionsInCell, capacity);
+    }
+    final int entry = size++;
+    entities[entry] = entity;
+    components[entry] = component;
+    xs[entry] = x;
+    ys[entry] = y;
+    entriesById.put(entity.getId(), entry);
+    addToCell(entry, cellKey);
+  }
+
+  private void remove(final Object id) {
+    final Integer removed = entriesById.remove(id);
+    if (removed == null) {
+      return;
+    }
+    final int entry = removed;
+    removeFromCell(entry);
+    final int last = --size;
+    if (entry != last) {
+      entities[entry] = entities[last];
+      components[entry] = components[last];
+      xs[entry] = xs[last];
+      ys[entry] = ys[last];
+      cellKeys[entry] = cellKeys[last];
+      positionsInCell[entry] = positionsInCell[last];
+      cells.get(cellKeys[entry]).entries[positionsInCell[entry]] = entry;
+      entriesById.put(entities[entry].getId(), entry);
+    }
+    entities[last] = null;
+    components[last] = null;
+  }
+
+  private void addToCell(final int entry, final long cellKey) {
+    Cell cell = cells.get(cellKey);
+    if (cell == null) {
+      cell = new Cell();
+      cells.put(cellKey, cell);
+      final int cellX = (int) (cellKey >> 32);
+      final int cellY = (int) cellKey;
+      minCellX = Math.min(minCellX, cellX);
+      maxCellX = Math.max(maxCellX, cellX);
+      minCellY = Math.min(minCellY, cellY);
+      maxCellY = Math.max(maxCellY, cellY);
+    }
+    cellKeys[entry] = cellKey;
+    positionsInCell[entry] = cell.add(entry);
+  }
+
+  private void removeFromCell(final int entry) {
+    final Cell cell = cells.get(cellKeys[entry]);
+    final int moved = cell.remove(positionsInCell[entry]);
+    if (moved != -1) {
+      positionsInCell[moved] = positionsInCell[entry];
+    }
+    if (cell.size == 0) {
+      cells.remove(cellKeys[entry]);
+    }
+  }
+
+  private int getCell(final float coordinate) {
+    return (int) Math.floor(coordinate / cellSize);
+  }
+
+  private static long getCellKey(final int cellX, final int cellY) {
+    return ((long) cellX << 32) | (cellY & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Entries of entities in one cell.
+   */
+  private static final class Cell {
+
+    private int[] entries = new int[4];
+    private int size = 0;
+
+    /**
+     * @return position of the entry in this cell
+     */
+    private int add(final int entry) {
+      if (size == entries.length) {
+        entries = Arrays.copyOf(entries, size * 2);
+      }
+      entries[size] = entry;
+      return size++;
+    }
+
+    /**
+     * Removes the entry at given position, moving the last entry in its place.
+     *
+     * @return the moved entry, -1 if no entry was moved
+     */
+    private int remove(final int position) {
+      final int last = --size;
+      if (position == last) {
+        return -1;
+      }
+      entries[position] = entries[last];
+      return entries[position];
+    }
+
+  }
+
+}
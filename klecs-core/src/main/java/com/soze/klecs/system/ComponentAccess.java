@@ -0,0 +1,115 @@
+package com.soze.klecs.system;
+
+import java.util.*;
+
+/**
+ * Describes which component classes a system reads and which it writes.
+ * Two systems whose accesses are compatible can be updated concurrently, see {@link #conflictsWith(ComponentAccess)}.
+ * <p>
+ * Declared accesses are about component data. Components added or removed by systems updated concurrently
+ * are applied after all systems are finished, in the order systems were added.
+ */
+public class ComponentAccess {
+
+  private static final ComponentAccess EXCLUSIVE = new ComponentAccess(Collections.emptySet(), Collections.emptySet(), true);
+  private static final ComponentAccess NONE = new ComponentAccess(Collections.emptySet(), Collections.emptySet(), false);
+
+  private final Set<Class<?>> reads;
+  private final Set<Class<?>> writes;
+
+  /**
+   * Exclusive access conflicts with every other access.
+   */
+  private final boolean exclusive;
+
+  private ComponentAccess(final Collection<Class<?>> reads, final Collection<Class<?>> writes, final boolean exclusive) {
+    this.reads = Collections.unmodifiableSet(new HashSet<>(reads));
+    this.writes = Collections.unmodifiableSet(new HashSet<>(writes));
+    this.exclusive = exclusive;
+  }
+
+  public Set<Class<?>> getReads() {
+    return reads;
+  }
+
+  public Set<Class<?>> getWrites() {
+    return writes;
+  }
+
+  public boolean isExclusive() {
+    return exclusive;
+  }
+
+  /**
+   * Two accesses conflict if either of them is exclusive, or one of them writes a component class
+   * the other one reads or writes.
+   */
+  public boolean conflictsWith(final ComponentAccess other) {
+    Objects.requireNonNull(other);
+    if (exclusive || other.exclusive) {
+      return true;
+    }
+    return intersects(writes, other.reads) || intersects(writes, other.writes) || intersects(reads, other.writes);
+  }
+
+  /**
+   * Returns an access which additionally reads given classes.
+   */
+  public ComponentAccess andReads(final Class<?>... classes) {
+    final Set<Class<?>> newReads = new HashSet<>(reads);
+    newReads.addAll(checkNulls(Arrays.asList(classes)));
+    return new ComponentAccess(newReads, writes, exclusive);
+  }
+
+  /**
+   * Returns an access which additionally writes given classes.
+   */
+  public ComponentAccess andWrites(final Class<?>... classes) {
+    final Set<Class<?>> newWrites = new HashSet<>(writes);
+    newWrites.addAll(checkNulls(Arrays.asList(classes)));
+    return new ComponentAccess(reads, newWrites, exclusive);
+  }
+
+  //STATIC METHODS
+
+  public static ComponentAccess of(final Collection<Class<?>> reads, final Collection<Class<?>> writes) {
+    return new ComponentAccess(checkNulls(reads), checkNulls(writes), false);
+  }
+
+  public static ComponentAccess reads(final Class<?>... classes) {
+    return NONE.andReads(classes);
+  }
+
+  public static ComponentAccess writes(final Class<?>... classes) {
+    return NONE.andWrites(classes);
+  }
+
+  /**
+   * Access of a system which does not touch any components.
+   */
+  public static ComponentAccess none() {
+    return NONE;
+  }
+
+  /**
+   * Access of a system which did not declare what it reads and writes, it is never updated concurrently.
+   */
+  public static ComponentAccess exclusive() {
+    return EXCLUSIVE;
+  }
+
+  private static boolean intersects(final Set<Class<?>> first, final Set<Class<?>> second) {
+    for (final Class<?> clazz : first) {
+      if (second.contains(clazz)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static Collection<Class<?>> checkNulls(final Collection<Class<?>> classes) {
+    classes.forEach(Objects::requireNonNull);
+    return classes;
+  }
+
+}
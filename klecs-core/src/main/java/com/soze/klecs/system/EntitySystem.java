@@ -17,6 +17,17 @@ public interface EntitySystem {
 
   public void update(float delta);
 
+  /**
+   * Time in seconds between updates of this system, 0 (the default) means it updates in every tick.
+   * The engine reads the interval when the system is added. A system with an interval is updated
+   * in the first tick after its interval has passed, with the time since its last update as delta.
+   * Systems with intervals start at different phases, so rare but expensive systems don't update in the same tick.
+   * Rendering systems ignore the interval.
+   */
+  public default float getUpdateInterval() {
+    return 0;
+  }
+
   /**
    * Engine this system is in. It's up to the user to
    * pass the Engine to classes which implement this interface.
@@ -29,6 +40,18 @@ public interface EntitySystem {
     return false;
   }
 
+  /**
+   * Component classes this system reads and writes. When the engine updates systems in parallel,
+   * systems with compatible accesses are updated concurrently, while systems with conflicting accesses
+   * are updated one after another, in the order they were added.
+   * By default, a system has exclusive access and is never updated concurrently with another system.
+   *
+   * @see Engine#setSystemPool
+   */
+  public default ComponentAccess getComponentAccess() {
+    return ComponentAccess.exclusive();
+  }
+
   //methods to implement
   //specify node/nodes
 
@@ -2,6 +2,7 @@ package com.soze.klecs.component;
 
 import com.soze.klecs.engine.ComponentContainer;
 import com.soze.klecs.engine.EntityComponentContainer;
+import com.soze.klecs.engine.HashComponentStorage;
 import com.soze.klecs.node.Node;
 import org.junit.Assert;
 import org.junit.Before;
@@ -162,4 +163,71 @@ public class ComponentContainerTest {
     Assert.assertTrue("A" == component || listComponent == component);
   }
 
-}
\ No newline at end of file
+  @Test
+  public void testGetEntitiesByNodeAfterAddingComponentToRegisteredNode() {
+    Node node = Node.of(String.class, Integer.class);
+    componentContainer.addComponent(1, "A");
+    assertEquals(0, componentContainer.getEntitiesByNode(node).size());
+
+    componentContainer.addComponent(1, 5);
+    assertEquals(Collections.singletonList(1), componentContainer.getEntitiesByNode(node));
+  }
+
+  @Test
+  public void testGetEntitiesByNodeAfterRemovingComponent() {
+    Node node = Node.of(String.class, Integer.class);
+    componentContainer.registerNode(node);
+    componentContainer.addComponent(1, "A");
+    componentContainer.addComponent(1, 5);
+    componentContainer.addComponent(2, "B");
+    componentContainer.addComponent(2, 6);
+    assertEquals(2, componentContainer.getEntitiesByNode(node).size());
+
+    componentContainer.removeComponent(1, Integer.class);
+    assertEquals(Collections.singletonList(2), componentContainer.getEntitiesByNode(node));
+  }
+
+  @Test
+  public void testMatchesNode() {
+    Node node = Node.of(String.class, Integer.class);
+    assertFalse(componentContainer.matches(1, node));
+
+    componentContainer.addComponent(1, "A");
+    assertFalse(componentContainer.matches(1, node));
+
+    componentContainer.addComponent(1, 5);
+    assertTrue(componentContainer.matches(1, node));
+
+    componentContainer.removeComponent(1, String.class);
+    assertFalse(componentContainer.matches(1, node));
+  }
+
+  @Test
+  public void testEqualNodesAreRegisteredOnce() {
+    final List<Node> registered = new ArrayList<>();
+    final ComponentContainer container = new ComponentContainer(new HashComponentStorage() {
+      @Override
+      public void registerNode(final Node node) {
+        registered.add(node);
+        super.registerNode(node);
+      }
+    });
+    container.addComponent(1, "A");
+    //a new node for every query
+    assertEquals(Collections.singletonList(1), container.getEntitiesByNode(Node.of(String.class)));
+    assertEquals(Collections.singletonList(1), container.getEntitiesByNode(Node.of(String.class)));
+    assertEquals(1, registered.size());
+
+    container.unregisterNode(Node.of(String.class));
+    container.addComponent(2, "B");
+    assertEquals(2, container.getEntitiesByNode(Node.of(String.class)).size());
+    assertEquals(2, registered.size());
+  }
+
+  @Test
+  public void testEmptyNodeMatchesEntityWithComponents() {
+    componentContainer.addComponent(1, "A");
+    assertTrue(componentContainer.matches(1, Node.of()));
+  }
+
+}
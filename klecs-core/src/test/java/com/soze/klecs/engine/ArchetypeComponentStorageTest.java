@@ -0,0 +1,142 @@
+package com.soze.klecs.engine;
+
+import com.soze.klecs.entity.Entity;
+import com.soze.klecs.node.Node;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class ArchetypeComponentStorageTest {
+
+  private ArchetypeComponentStorage storage;
+
+  @Before
+  public void setup() {
+    storage = new ArchetypeComponentStorage();
+  }
+
+  @Test
+  public void testAddComponent() {
+    storage.addEntity(0);
+    assertNull(storage.addComponent(0, "A"));
+    assertEquals("A", storage.getComponent(0, String.class));
+    assertTrue(storage.hasComponent(0, String.class));
+    assertFalse(storage.hasComponent(0, Integer.class));
+  }
+
+  @Test
+  public void testAddSameComponentClassTwice() {
+    storage.addEntity(0);
+    storage.addComponent(0, "A");
+    assertEquals("A", storage.addComponent(0, "B"));
+    assertEquals("B", storage.getComponent(0, String.class));
+  }
+
+  @Test
+  public void testEntitiesWithSameComponentClassesShareArchetype() {
+    storage.addEntity(0);
+    storage.addEntity(1);
+    storage.addComponent(0, "A");
+    storage.addComponent(0, 5);
+    storage.addComponent(1, 6);
+    storage.addComponent(1, "B");
+    //empty, {String}, {Integer}, {String, Integer}
+    assertEquals(4, storage.getArchetypeCount());
+  }
+
+  @Test
+  public void testRemoveComponentKeepsOtherComponents() {
+    storage.addEntity(0);
+    storage.addComponent(0, "A");
+    storage.addComponent(0, 5);
+    storage.addComponent(0, 5L);
+    assertEquals(5, storage.removeComponent(0, Integer.class));
+    assertNull(storage.getComponent(0, Integer.class));
+    assertEquals("A", storage.getComponent(0, String.class));
+    assertEquals(5L, storage.getComponent(0, Long.class));
+    assertNull(storage.removeComponent(0, Integer.class));
+  }
+
+  @Test
+  public void testRemovingEntityDoesNotAffectMovedEntity() {
+    for (int slot = 0; slot < 3; slot++) {
+      storage.addEntity(slot);
+      storage.addComponent(slot, "A" + slot);
+    }
+    storage.removeEntity(0);
+    assertEquals("A1", storage.getComponent(1, String.class));
+    assertEquals("A2", storage.getComponent(2, String.class));
+  }
+
+  @Test
+  public void testForEachEntityUnionOfMatchingArchetypes() {
+    final Node node = Node.of(String.class);
+    storage.registerNode(node);
+    storage.addEntity(0);
+    storage.addComponent(0, "A");
+    storage.addEntity(1);
+    storage.addComponent(1, "B");
+    storage.addComponent(1, 5);
+    storage.addEntity(2);
+    storage.addComponent(2, 5);
+
+    final Set<Integer> slots = new HashSet<>();
+    storage.forEachEntity(node, slots::add);
+    assertEquals(new HashSet<>(Arrays.asList(0, 1)), slots);
+
+    storage.removeComponent(1, String.class);
+    slots.clear();
+    storage.forEachEntity(node, slots::add);
+    assertEquals(Collections.singleton(0), slots);
+  }
+
+  @Test
+  public void testGetComponentByParent() {
+    storage.addEntity(0);
+    final List<Object> list = new ArrayList<>();
+    storage.addComponent(0, list);
+    assertSame(list, storage.getComponentByParent(0, List.class));
+    assertNull(storage.getComponentByParent(0, Set.class));
+  }
+
+  @Test
+  public void testEngineWithArchetypeStorage() {
+    final Engine engine = new Engine(new ArchetypeComponentStorage());
+    final Node node = Node.of(String.class, Integer.class);
+    final Entity entity = engine.getEntityFactory().createEntity();
+    entity.addComponent("A");
+    entity.addComponent(5);
+    engine.addEntity(entity);
+    engine.addEntity(engine.getEntityFactory().createEntity());
+
+    assertEquals(Collections.singletonList(entity), engine.getEntitiesByNode(node));
+    assertEquals(2, entity.getNodeComponents(node, Object.class).size());
+
+    entity.removeComponent(Integer.class);
+    assertTrue(engine.getEntitiesByNode(node).isEmpty());
+    assertTrue(entity.getNodeComponents(node, Object.class).isEmpty());
+  }
+
+  @Test
+  public void testNodeWithExcludedAndAnyClasses() {
+    final Engine engine = new Engine(new ArchetypeComponentStorage());
+    final Node node = Node.of(String.class).withAny(Integer.class, Long.class).without(Double.class);
+    final Entity entity = engine.getEntityFactory().createEntity();
+    entity.addComponent("A");
+    engine.addEntity(entity);
+    assertTrue(engine.getEntitiesByNode(node).isEmpty());
+
+    entity.addComponent(5L);
+    assertEquals(Collections.singletonList(entity), engine.getEntitiesByNode(node));
+    assertEquals(2, entity.getNodeComponents(node, Object.class).size());
+
+    entity.addComponent(1.0);
+    assertTrue(engine.getEntitiesByNode(node).isEmpty());
+    entity.removeComponent(Double.class);
+    assertEquals(Collections.singletonList(entity), engine.getEntitiesByNode(node));
+  }
+
+}
@@ -0,0 +1,158 @@
+package com.soze.klecs.engine;
+
+import com.soze.klecs.entity.Entity;
+import com.soze.klecs.node.Node;
+import com.soze.klecs.system.EntitySystem;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CommandBufferTest {
+
+  private Engine engine;
+
+  @Before
+  public void setup() {
+    engine = new Engine();
+  }
+
+  @Test
+  public void testComponentsAreAddedAfterUpdate() {
+    final Entity entity = engine.getEntityFactory().createEntity();
+    engine.addEntity(entity);
+    final List<Object> duringUpdate = new ArrayList<>();
+    engine.addSystem(new TestSystem(() -> {
+      entity.addComponent("component");
+      duringUpdate.add(entity.getComponent(String.class));
+    }));
+    engine.update(0);
+    assertNull(duringUpdate.get(0));
+    assertEquals("component", entity.getComponent(String.class));
+  }
+
+  @Test
+  public void testComponentsAreRemovedAfterUpdate() {
+    final Node node = Node.of(String.class);
+    final Entity entity = engine.getEntityFactory().createEntity();
+    entity.addComponent("component");
+    engine.addEntity(entity);
+    final List<Integer> duringUpdate = new ArrayList<>();
+    engine.addSystem(new TestSystem(() -> {
+      entity.removeComponent(String.class);
+      duringUpdate.add(engine.getEntitiesByNode(node).size());
+    }));
+    engine.update(0);
+    assertEquals(1, (int) duringUpdate.get(0));
+    assertEquals(0, engine.getEntitiesByNode(node).size());
+  }
+
+  @Test
+  public void testLastChangeOfComponentClassWins() {
+    final Entity entity = engine.getEntityFactory().createEntity();
+    entity.addComponent(1);
+    engine.addEntity(entity);
+    engine.addSystem(new TestSystem(() -> {
+      entity.removeComponent(Integer.class);
+      entity.addComponent(2);
+      entity.addComponent(3);
+      entity.addComponent("component");
+      entity.removeComponent(String.class);
+    }));
+    engine.update(0);
+    assertEquals(3, (int) entity.getComponent(Integer.class));
+    assertNull(entity.getComponent(String.class));
+  }
+
+  @Test
+  public void testComponentsOfEntityCreatedDuringUpdate() {
+    final Node node = Node.of(String.class, Integer.class);
+    engine.addSystem(new TestSystem(() -> {
+      final Entity entity = engine.getEntityFactory().createEntity();
+      entity.addComponent("component");
+      entity.addComponent(5);
+      engine.addEntity(entity);
+    }));
+    final List<Integer> componentsWhenAdded = new ArrayList<>();
+    engine.addEntityEventListener(event -> componentsWhenAdded.add(event.getEntity().getAllComponents(Object.class).size()));
+    engine.update(0);
+    assertEquals(1, engine.getEntitiesByNode(node).size());
+    assertEquals(2, (int) componentsWhenAdded.get(0));
+  }
+
+  @Test
+  public void testPlaybackWhenNotUpdating() {
+    final Entity entity = engine.getEntityFactory().createEntity();
+    final Entity other = engine.getEntityFactory().createEntity();
+    engine.addEntity(other);
+
+    final CommandBuffer buffer = new CommandBuffer();
+    buffer.addComponent(entity.getId(), "component");
+    buffer.addEntity(entity);
+    buffer.removeEntity(other.getId());
+    assertEquals(1, engine.getAllEntities().size());
+
+    engine.playback(buffer);
+    assertTrue(buffer.isEmpty());
+    assertEquals(entity, engine.getAllEntities().get(0));
+    assertEquals(1, engine.getAllEntities().size());
+    assertEquals("component", entity.getComponent(String.class));
+  }
+
+  @Test
+  public void testPlaybackWhileUpdatingIsDeferred() {
+    final Entity entity = engine.getEntityFactory().createEntity();
+    final List<Integer> duringUpdate = new ArrayList<>();
+    engine.addSystem(new TestSystem(() -> {
+      final CommandBuffer buffer = new CommandBuffer();
+      buffer.addEntity(entity);
+      engine.playback(buffer);
+      duringUpdate.add(engine.getAllEntities().size());
+    }));
+    engine.update(0);
+    assertEquals(0, (int) duringUpdate.get(0));
+    assertEquals(1, engine.getAllEntities().size());
+  }
+
+  @Test
+  public void testEntityMovesToFinalArchetypeOnce() {
+    final ArchetypeComponentStorage storage = new ArchetypeComponentStorage();
+    final Engine engine = new Engine(storage);
+    final Entity entity = engine.getEntityFactory().createEntity();
+    engine.addEntity(entity);
+    engine.addSystem(new TestSystem(() -> {
+      entity.addComponent("component");
+      entity.addComponent(5);
+      entity.addComponent(5L);
+    }));
+    engine.update(0);
+    //only the archetype without components and the final one
+    assertEquals(2, storage.getArchetypeCount());
+    assertEquals(5L, (long) entity.getComponent(Long.class));
+    assertEquals(1, engine.getEntitiesByNode(Node.of(String.class, Integer.class, Long.class)).size());
+  }
+
+  private static class TestSystem implements EntitySystem {
+
+    private final Runnable action;
+
+    private TestSystem(final Runnable action) {
+      this.action = action;
+    }
+
+    @Override
+    public void update(final float delta) {
+      action.run();
+    }
+
+    @Override
+    public Engine getEngine() {
+      return null;
+    }
+
+  }
+
+}
@@ -0,0 +1,77 @@
+package com.soze.klecs.engine;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class ComponentMaskTest {
+
+  @Test
+  public void testSetAndClear() {
+    final ComponentMask mask = new ComponentMask();
+    assertTrue(mask.isEmpty());
+    mask.set(3);
+    mask.set(130);
+    assertTrue(mask.get(3));
+    assertTrue(mask.get(130));
+    assertFalse(mask.get(4));
+    assertFalse(mask.get(1000));
+
+    mask.clear(130);
+    assertFalse(mask.get(130));
+    mask.clearAll();
+    assertTrue(mask.isEmpty());
+  }
+
+  @Test
+  public void testContainsAll() {
+    final ComponentMask signature = ComponentMask.of(Arrays.asList(String.class, Integer.class, Long.class));
+    assertTrue(signature.containsAll(ComponentMask.of(Arrays.asList(String.class, Long.class))));
+    assertTrue(signature.containsAll(ComponentMask.of(Collections.emptyList())));
+    assertFalse(signature.containsAll(ComponentMask.of(Arrays.asList(String.class, Double.class))));
+  }
+
+  @Test
+  public void testContainsAllWithDifferentLengths() {
+    final ComponentMask shortMask = new ComponentMask();
+    shortMask.set(1);
+    final ComponentMask longMask = new ComponentMask();
+    longMask.set(1);
+    longMask.set(200);
+
+    assertTrue(longMask.containsAll(shortMask));
+    assertFalse(shortMask.containsAll(longMask));
+    longMask.clear(200);
+    assertTrue(shortMask.containsAll(longMask));
+  }
+
+  @Test
+  public void testFirstCommon() {
+    final ComponentMask first = new ComponentMask();
+    first.set(5);
+    first.set(70);
+    final ComponentMask second = new ComponentMask();
+    second.set(70);
+    assertEquals(70, first.firstCommon(second));
+    second.clear(70);
+    second.set(6);
+    assertEquals(-1, first.firstCommon(second));
+  }
+
+  @Test
+  public void testIntersects() {
+    final ComponentMask first = new ComponentMask();
+    first.set(5);
+    first.set(130);
+    final ComponentMask second = new ComponentMask();
+    second.set(6);
+    assertFalse(first.intersects(second));
+    second.set(130);
+    assertTrue(first.intersects(second));
+    assertFalse(first.intersects(new ComponentMask()));
+  }
+
+}
@@ -0,0 +1,58 @@
+package com.soze.klecs.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ComponentTypeRegistryTest {
+
+  @Test
+  public void testTypeIdsAreStable() {
+    final int typeId = ComponentTypeRegistry.getTypeId(String.class);
+    assertEquals(typeId, ComponentTypeRegistry.getTypeId(String.class));
+    assertNotEquals(typeId, ComponentTypeRegistry.getTypeId(Integer.class));
+    assertTrue(typeId < ComponentTypeRegistry.getTypeCount());
+    assertEquals(String.class, ComponentTypeRegistry.getType(typeId));
+  }
+
+  @Test
+  public void testSubtypeMaskIncludesTypesRegisteredLater() {
+    //Square is not used anywhere else, so it is registered here for the first time
+    final ComponentMask before = ComponentTypeRegistry.getSubtypeMask(Shape.class);
+    final int squareTypeId = ComponentTypeRegistry.getTypeId(Square.class);
+    assertFalse(before.get(squareTypeId));
+
+    final int circleTypeId = ComponentTypeRegistry.getTypeId(Circle.class);
+    final ComponentMask after = ComponentTypeRegistry.getSubtypeMask(Shape.class);
+    assertTrue(after.get(squareTypeId));
+    assertTrue(after.get(circleTypeId));
+    assertFalse(after.get(ComponentTypeRegistry.getTypeId(String.class)));
+  }
+
+  @Test
+  public void testGetComponentByParent() {
+    final EntityComponentContainer components = new EntityComponentContainer();
+    final Circle circle = new Circle();
+    components.addComponent("component");
+    components.addComponent(circle);
+    assertSame(circle, components.getComponentByParent(Shape.class));
+    assertNull(components.getComponentByParent(Number.class));
+
+    components.removeComponent(Circle.class);
+    assertNull(components.getComponentByParent(Shape.class));
+    assertEquals(1, components.componentCount());
+  }
+
+  private interface Shape {
+
+  }
+
+  private static class Circle implements Shape {
+
+  }
+
+  private static class Square implements Shape {
+
+  }
+
+}
@@ -2,12 +2,16 @@ package com.soze.klecs.engine;
 
 import com.soze.klecs.entity.Entity;
 import com.soze.klecs.entity.EntityFactory;
+import com.soze.klecs.entity.IntIdAllocator;
 import com.soze.klecs.node.Node;
 import com.soze.klecs.system.EntitySystem;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.function.Supplier;
 
@@ -414,4 +418,171 @@ public class EngineTest {
     assertEquals(entity.getId(), entityEvents.get(0).getEntity().getId());
   }
 
-}
\ No newline at end of file
+  @Test
+  public void testGetEntitiesByNodeAfterRemovingEntity() {
+    final Node node = Node.of(String.class);
+    final Entity entity1 = engine.getEntityFactory().createEntity();
+    entity1.addComponent("A");
+    final Entity entity2 = engine.getEntityFactory().createEntity();
+    entity2.addComponent("B");
+    engine.addEntity(entity1);
+    engine.addEntity(entity2);
+    assertEquals(2, engine.getEntitiesByNode(node).size());
+
+    engine.removeEntity(entity1.getId());
+    assertEquals(1, engine.getEntitiesByNode(node).size());
+    assertEquals(entity2, engine.getEntitiesByNode(node).get(0));
+  }
+
+  @Test
+  public void testGetEntitiesByNodeDoesNotReturnEntitiesNotAddedToEngine() {
+    final Node node = Node.of(String.class);
+    engine.registerNode(node);
+    final Entity entity = engine.getEntityFactory().createEntity();
+    entity.addComponent("A");
+    assertEquals(0, engine.getEntitiesByNode(node).size());
+
+    engine.addEntity(entity);
+    assertEquals(1, engine.getEntitiesByNode(node).size());
+  }
+
+  @Test
+  public void testGetEntitiesByNodeWithExcludedClasses() {
+    final Node node = Node.of(String.class).without(Integer.class);
+    engine.registerNode(node);
+    final Entity entity = engine.getEntityFactory().createEntity();
+    entity.addComponent("A");
+    engine.addEntity(entity);
+    assertEquals(Collections.singletonList(entity), engine.getEntitiesByNode(node));
+
+    entity.addComponent(5);
+    assertTrue(engine.getEntitiesByNode(node).isEmpty());
+    entity.removeComponent(Integer.class);
+    assertEquals(Collections.singletonList(entity), engine.getEntitiesByNode(node));
+    engine.removeEntity(entity.getId());
+    assertTrue(engine.getEntitiesByNode(node).isEmpty());
+  }
+
+  @Test
+  public void testUnregisteredNodeIsIndexedAgainWhenQueried() {
+    final Entity entity = engine.getEntityFactory().createEntity();
+    entity.addComponent("A");
+    engine.addEntity(entity);
+    assertEquals(Collections.singletonList(entity), engine.getEntitiesByNode(Node.of(String.class)));
+
+    engine.unregisterNode(Node.of(String.class));
+    entity.removeComponent(String.class);
+    assertTrue(engine.getEntitiesByNode(Node.of(String.class)).isEmpty());
+    entity.addComponent("B");
+    assertEquals(Collections.singletonList(entity), engine.getEntitiesByNode(Node.of(String.class)));
+  }
+
+  /**
+   * Before nodes were indexed, a node without classes matched no entities.
+   */
+  @Test
+  public void testNodeWithoutClassesMatchesAllEntities() {
+    final Entity empty = engine.getEntityFactory().createEntity();
+    engine.addEntity(empty);
+    final Entity other = engine.getEntityFactory().createEntity();
+    other.addComponent(5);
+    engine.addEntity(other);
+    assertEquals(new HashSet<>(Arrays.asList(empty, other)), new HashSet<>(engine.getEntitiesByNode(Node.of())));
+  }
+
+  @Test
+  public void testNodeWithOnlyExcludedClassesMatchesEntitiesWithoutComponents() {
+    final Node node = Node.of().without(String.class);
+    final Entity empty = engine.getEntityFactory().createEntity();
+    engine.addEntity(empty);
+    final Entity other = engine.getEntityFactory().createEntity();
+    other.addComponent(5);
+    engine.addEntity(other);
+    final Entity excluded = engine.getEntityFactory().createEntity();
+    excluded.addComponent("A");
+    engine.addEntity(excluded);
+    assertEquals(new HashSet<>(Arrays.asList(empty, other)), new HashSet<>(engine.getEntitiesByNode(node)));
+
+    engine.removeEntity(other.getId());
+    assertEquals(Collections.singletonList(empty), engine.getEntitiesByNode(node));
+  }
+
+  @Test
+  public void testNodeComponentsIncludeOptionalComponents() {
+    final Node node = Node.of(String.class).withOptional(Integer.class, Long.class);
+    final Entity entity = engine.getEntityFactory().createEntity();
+    entity.addComponent("A");
+    entity.addComponent(5);
+    engine.addEntity(entity);
+    assertEquals(Collections.singletonList(entity), engine.getEntitiesByNode(node));
+    assertEquals(new HashSet<>(Arrays.asList("A", 5)), new HashSet<>(entity.getNodeComponents(node, Object.class)));
+  }
+
+  @Test
+  public void testIntIdsAreReusedAfterRemoval() {
+    final Engine engine = new Engine(new IntIdAllocator());
+    final Entity entity1 = engine.getEntityFactory().createEntity();
+    entity1.addComponent("A");
+    engine.addEntity(entity1);
+    engine.removeEntity(entity1.getId());
+
+    final Entity entity2 = engine.getEntityFactory().createEntity();
+    engine.addEntity(entity2);
+    assertEquals(IntIdAllocator.indexOf((Long) entity1.getId()), IntIdAllocator.indexOf((Long) entity2.getId()));
+    assertFalse(engine.getEntityById(entity1.getId()).isPresent());
+    assertEquals(entity2, engine.getEntityById(entity2.getId()).get());
+  }
+
+  @Test
+  public void testIntIdsOfDiscardedEntitiesAreReused() {
+    final IntIdAllocator allocator = new IntIdAllocator();
+    final Engine engine = new Engine(allocator);
+    final Entity empty = engine.getEntityFactory().createEntity();
+    final Entity withComponent = engine.getEntityFactory().createEntity();
+    withComponent.addComponent("A");
+    engine.discardEntity(empty);
+    engine.discardEntity(withComponent);
+    assertFalse(allocator.isAlive((Long) empty.getId()));
+    assertFalse(allocator.isAlive((Long) withComponent.getId()));
+
+    final Entity entity = engine.getEntityFactory().createEntity();
+    engine.addEntity(entity);
+    assertEquals(2, allocator.getCapacity());
+    assertTrue(engine.getEntitiesByNode(Node.of(String.class)).isEmpty());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testCannotDiscardAddedEntity() {
+    final Entity entity = engine.getEntityFactory().createEntity();
+    engine.addEntity(entity);
+    engine.discardEntity(entity);
+  }
+
+  @Test
+  public void testIntIdsStaleEntityDoesNotSeeComponentsOfNewEntity() {
+    final Engine engine = new Engine(new IntIdAllocator());
+    final Node node = Node.of(String.class);
+    final Entity entity1 = engine.getEntityFactory().createEntity();
+    entity1.addComponent("A");
+    engine.addEntity(entity1);
+    engine.removeEntity(entity1.getId());
+
+    final Entity entity2 = engine.getEntityFactory().createEntity();
+    entity2.addComponent("B");
+    engine.addEntity(entity2);
+    assertEquals(null, entity1.getComponent(String.class));
+    assertEquals("B", entity2.getComponent(String.class));
+    assertEquals(1, engine.getEntitiesByNode(node).size());
+    assertEquals(entity2, engine.getEntitiesByNode(node).get(0));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testIntIdsCannotAddComponentToStaleEntity() {
+    final Engine engine = new Engine(new IntIdAllocator());
+    final Entity entity = engine.getEntityFactory().createEntity();
+    engine.addEntity(entity);
+    engine.removeEntity(entity.getId());
+    entity.addComponent("A");
+  }
+
+}
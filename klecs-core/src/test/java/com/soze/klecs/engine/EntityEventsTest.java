@@ -0,0 +1,178 @@
+package com.soze.klecs.engine;
+
+import com.soze.klecs.entity.Entity;
+import com.soze.klecs.node.Node;
+import com.soze.klecs.system.EntitySystem;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.*;
+
+public class EntityEventsTest {
+
+  private Engine engine;
+
+  @Before
+  public void setup() {
+    engine = new Engine();
+  }
+
+  @Test
+  public void testNodeListenerOnlyGetsMatchingEntities() {
+    final List<EntityEvent> events = new ArrayList<>();
+    engine.addEntityEventListener(Node.of(String.class), events::add);
+    final Entity matching = createEntity("component");
+    final Entity other = createEntity(5);
+    engine.addEntity(matching);
+    engine.addEntity(other);
+    engine.removeEntity(other.getId());
+    engine.removeEntity(matching.getId());
+
+    assertEquals(2, events.size());
+    assertTrue(events.get(0) instanceof AddedEntityEvent);
+    assertTrue(events.get(1) instanceof RemovedEntityEvent);
+    assertEquals(matching, events.get(1).getEntity());
+  }
+
+  @Test
+  public void testRemoveNodeListener() {
+    final List<EntityEvent> events = new ArrayList<>();
+    final Consumer<EntityEvent> listener = events::add;
+    engine.addEntityEventListener(Node.of(String.class), listener);
+    engine.removeEntityEventListener(listener);
+    engine.addEntity(createEntity("component"));
+    assertTrue(events.isEmpty());
+  }
+
+  @Test
+  public void testComponentListener() {
+    final List<ComponentEvent> events = new ArrayList<>();
+    engine.addComponentEventListener(String.class, events::add);
+    final Entity entity = createEntity(5);
+    engine.addEntity(entity);
+    entity.addComponent("component");
+    entity.addComponent(6);
+    entity.removeComponent(String.class);
+
+    assertEquals(2, events.size());
+    assertTrue(events.get(0) instanceof AddedComponentEvent);
+    assertTrue(events.get(1) instanceof RemovedComponentEvent);
+    assertEquals("component", events.get(1).getComponent());
+    assertEquals(entity, events.get(1).getEntity());
+  }
+
+  @Test
+  public void testComponentListenerDuringUpdate() {
+    final List<ComponentEvent> events = new ArrayList<>();
+    engine.addComponentEventListener(String.class, events::add);
+    final Entity entity = createEntity("first");
+    engine.addEntity(entity);
+    final List<Integer> eventsDuringUpdate = new ArrayList<>();
+    engine.addSystem(new TestSystem(() -> {
+      entity.removeComponent(String.class);
+      entity.addComponent("second");
+      eventsDuringUpdate.add(events.size());
+    }));
+    engine.update(0);
+
+    assertEquals(0, (int) eventsDuringUpdate.get(0));
+    assertEquals(1, events.size());
+    assertEquals("second", events.get(0).getComponent());
+  }
+
+  @Test
+  public void testComponentsOfEntitiesNotInEngineDontCauseEvents() {
+    final List<ComponentEvent> events = new ArrayList<>();
+    engine.addComponentEventListener(String.class, events::add);
+    final Entity entity = createEntity("component");
+    entity.removeComponent(String.class);
+    assertTrue(events.isEmpty());
+  }
+
+  @Test
+  public void testBatchIsDeliveredOncePerUpdate() {
+    final List<Integer> added = new ArrayList<>();
+    final List<Integer> removed = new ArrayList<>();
+    engine.addEntityBatchListener(Node.of(String.class), batch -> {
+      added.add(batch.getAddedEntities().size());
+      removed.add(batch.getRemovedEntities().size());
+    });
+    final Entity toRemove = createEntity("removed");
+    engine.addEntity(toRemove);
+    engine.addSystem(new TestSystem(() -> {
+      for (int i = 0; i < 100; i++) {
+        engine.addEntity(createEntity("component"));
+        engine.addEntity(createEntity(i));
+      }
+      engine.removeEntity(toRemove.getId());
+    }));
+    engine.update(0);
+
+    assertEquals(1, added.size());
+    assertEquals(101, (int) added.get(0));
+    assertEquals(1, (int) removed.get(0));
+  }
+
+  @Test
+  public void testEmptyBatchIsNotDelivered() {
+    final List<EntityEventBatch> batches = new ArrayList<>();
+    engine.addEntityBatchListener(null, batches::add);
+    engine.update(0);
+    assertTrue(batches.isEmpty());
+  }
+
+  @Test
+  public void testEntitiesAddedByBatchListenerAreInNextBatch() {
+    final List<Integer> added = new ArrayList<>();
+    engine.addEntityBatchListener(null, batch -> {
+      added.add(batch.getAddedEntities().size());
+      if (added.size() == 1) {
+        engine.addEntity(createEntity("component"));
+        engine.addEntity(createEntity("component"));
+      }
+    });
+    engine.addEntity(createEntity("component"));
+    engine.update(0);
+    engine.update(0);
+    assertEquals(2, added.size());
+    assertEquals(1, (int) added.get(0));
+    assertEquals(2, (int) added.get(1));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testCannotAddListenerDuringUpdate() {
+    engine.addSystem(new TestSystem(() -> engine.addEntityBatchListener(null, batch -> {})));
+    engine.update(0);
+  }
+
+  private Entity createEntity(final Object component) {
+    final Entity entity = engine.getEntityFactory().createEntity();
+    entity.addComponent(component);
+    return entity;
+  }
+
+  private static class TestSystem implements EntitySystem {
+
+    private final Runnable action;
+
+    private TestSystem(final Runnable action) {
+      this.action = action;
+    }
+
+    @Override
+    public void update(final float delta) {
+      action.run();
+    }
+
+    @Override
+    public Engine getEngine() {
+      return null;
+    }
+
+  }
+
+}
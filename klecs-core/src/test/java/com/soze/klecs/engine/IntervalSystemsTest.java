@@ -0,0 +1,147 @@
+package com.soze.klecs.engine;
+
+import com.soze.klecs.system.ComponentAccess;
+import com.soze.klecs.system.EntitySystem;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class IntervalSystemsTest {
+
+  private static final float TICK = 0.01f;
+
+  private Engine engine;
+  private int tick;
+
+  @Before
+  public void setup() {
+    engine = new Engine();
+  }
+
+  @Test
+  public void testSystemUpdatesAtItsInterval() {
+    final TestSystem ai = new TestSystem(0.1f);
+    final TestSystem physics = new TestSystem(0);
+    engine.addSystem(ai);
+    engine.addSystem(physics);
+    update(100);
+    assertEquals(10, ai.deltas.size());
+    assertEquals(100, physics.deltas.size());
+  }
+
+  @Test
+  public void testDeltaIsTimeSinceLastUpdate() {
+    final TestSystem ai = new TestSystem(0.1f);
+    engine.addSystem(ai);
+    update(100);
+    for (int i = 1; i < ai.deltas.size(); i++) {
+      assertEquals(0.1f, ai.deltas.get(i), 0.0001f);
+    }
+  }
+
+  @Test
+  public void testSystemsWithSameIntervalAreSpreadAcrossTicks() {
+    final TestSystem first = new TestSystem(0.1f);
+    final TestSystem second = new TestSystem(0.1f);
+    final TestSystem third = new TestSystem(0.1f);
+    engine.addSystem(first);
+    engine.addSystem(second);
+    engine.addSystem(third);
+    update(100);
+    assertEquals(10, first.ticks.size());
+    for (final int tick : first.ticks) {
+      assertFalse(second.ticks.contains(tick));
+      assertFalse(third.ticks.contains(tick));
+    }
+    for (final int tick : second.ticks) {
+      assertFalse(third.ticks.contains(tick));
+    }
+  }
+
+  @Test
+  public void testMissedUpdatesAreSkipped() {
+    final TestSystem ai = new TestSystem(0.1f);
+    engine.addSystem(ai);
+    engine.update(1f);
+    engine.update(TICK);
+    assertEquals(1, ai.deltas.size());
+    assertEquals(1f, ai.deltas.get(0), 0.0001f);
+  }
+
+  @Test
+  public void testRemovedSystemIsNotUpdated() {
+    final TestSystem ai = new TestSystem(0.1f);
+    engine.addSystem(ai);
+    engine.removeSystem(TestSystem.class);
+    update(100);
+    assertTrue(ai.deltas.isEmpty());
+  }
+
+  @Test
+  public void testIntervalsWithParallelSystems() {
+    final ForkJoinPool pool = new ForkJoinPool(2);
+    try {
+      engine.setSystemPool(pool);
+      final TestSystem ai = new TestSystem(0.1f);
+      final TestSystem physics = new TestSystem(0);
+      engine.addSystem(ai);
+      engine.addSystem(physics);
+      update(100);
+      assertEquals(10, ai.deltas.size());
+      assertEquals(100, physics.deltas.size());
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNegativeInterval() {
+    engine.addSystem(new TestSystem(-1));
+  }
+
+  private void update(final int ticks) {
+    for (int i = 0; i < ticks; i++) {
+      tick = i;
+      engine.update(TICK);
+    }
+  }
+
+  private class TestSystem implements EntitySystem {
+
+    private final float interval;
+    private final List<Float> deltas = new ArrayList<>();
+    private final List<Integer> ticks = new ArrayList<>();
+
+    private TestSystem(final float interval) {
+      this.interval = interval;
+    }
+
+    @Override
+    public void update(final float delta) {
+      deltas.add(delta);
+      ticks.add(tick);
+    }
+
+    @Override
+    public float getUpdateInterval() {
+      return interval;
+    }
+
+    @Override
+    public Engine getEngine() {
+      return engine;
+    }
+
+    @Override
+    public ComponentAccess getComponentAccess() {
+      return ComponentAccess.none();
+    }
+
+  }
+
+}
@@ -0,0 +1,84 @@
+package com.soze.klecs.engine;
+
+import com.soze.klecs.entity.Entity;
+import com.soze.klecs.node.Node;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class NodeViewTest {
+
+  private final Node node = Node.of(String.class, Integer.class);
+
+  @Test
+  public void testIterateHashStorage() {
+    testIterate(new Engine());
+  }
+
+  @Test
+  public void testIterateArchetypeStorage() {
+    testIterate(new Engine(new ArchetypeComponentStorage()));
+  }
+
+  private void testIterate(final Engine engine) {
+    final Entity entity1 = createEntity(engine, "A", 1);
+    final Entity entity2 = createEntity(engine, "B", 2);
+    final Entity notMatching = engine.getEntityFactory().createEntity();
+    notMatching.addComponent("C");
+    engine.addEntity(notMatching);
+    //has components, but is not added to the engine
+    final Entity notAdded = engine.getEntityFactory().createEntity();
+    notAdded.addComponent("D");
+    notAdded.addComponent(4);
+
+    final Map<Entity, String> visited = new HashMap<>();
+    engine.forEach(node, String.class, Integer.class, (entity, string, integer) -> visited.put(entity, string + integer));
+    final Map<Entity, String> expected = new HashMap<>();
+    expected.put(entity1, "A1");
+    expected.put(entity2, "B2");
+    assertEquals(expected, visited);
+
+    final NodeView view = engine.getNodeView(node);
+    final List<Entity> entities = new ArrayList<>();
+    view.reset();
+    while (view.next()) {
+      entities.add(view.getEntity());
+      assertEquals(view.getEntity().getComponent(String.class), view.getComponent(String.class));
+    }
+    assertEquals(2, entities.size());
+  }
+
+  @Test
+  public void testViewIsReusedAndSeesNewEntities() {
+    final Engine engine = new Engine();
+    final NodeView view = engine.getNodeView(node);
+    assertSame(view, engine.getNodeView(node));
+
+    final List<Entity> entities = new ArrayList<>();
+    view.forEach(entities::add);
+    assertTrue(entities.isEmpty());
+
+    final Entity entity = createEntity(engine, "A", 1);
+    view.forEach(entities::add);
+    assertEquals(Collections.singletonList(entity), entities);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testNestedIterationOverSameView() {
+    final Engine engine = new Engine();
+    createEntity(engine, "A", 1);
+    engine.forEach(node, entity -> engine.forEach(node, other -> {
+    }));
+  }
+
+  private Entity createEntity(final Engine engine, final String string, final int integer) {
+    final Entity entity = engine.getEntityFactory().createEntity();
+    entity.addComponent(string);
+    entity.addComponent(integer);
+    engine.addEntity(entity);
+    return entity;
+  }
+
+}
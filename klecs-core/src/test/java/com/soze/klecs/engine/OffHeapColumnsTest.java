@@ -0,0 +1,142 @@
+package com.soze.klecs.engine;
+
+import com.soze.klecs.entity.Entity;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class OffHeapColumnsTest {
+
+  private static final PrimitiveLayout HEALTH = PrimitiveLayout.offHeap("Health");
+  private static final PrimitiveField CURRENT = HEALTH.addFloat("current");
+  private static final PrimitiveField MAX = HEALTH.addInt("max");
+
+  /**
+   * Records of the layout above in one page.
+   */
+  private static final int RECORDS_PER_PAGE = OffHeapColumns.PAGE_SIZE / 8;
+
+  private ComponentContainer componentContainer;
+
+  @Before
+  public void setup() {
+    componentContainer = new ComponentContainer();
+  }
+
+  @Test
+  public void testSetAndGetValues() {
+    final Engine engine = new Engine();
+    final Entity entity = engine.getEntityFactory().createEntity();
+    entity.addLayout(HEALTH);
+    entity.setFloat(CURRENT, 50.5f);
+    entity.setInt(MAX, 100);
+    assertEquals(50.5f, entity.getFloat(CURRENT), 0f);
+    assertEquals(100, entity.getInt(MAX));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testOffHeapLayoutHasNoHeapColumns() {
+    componentContainer.getColumns(HEALTH);
+  }
+
+  @Test
+  public void testValuesAreKeptWhenRowsMoveBetweenPages() {
+    final int entities = RECORDS_PER_PAGE * 2 + 10;
+    for (int id = 0; id < entities; id++) {
+      componentContainer.addLayout(id, HEALTH);
+      componentContainer.setInt(id, MAX, id);
+    }
+    //the last entity, on the third page, moves to the first row
+    componentContainer.removeLayout(0, HEALTH);
+    for (int id = 1; id < entities; id++) {
+      assertEquals(id, componentContainer.getInt(id, MAX));
+    }
+  }
+
+  @Test
+  public void testEmptyPagesAreFreed() {
+    final int entities = RECORDS_PER_PAGE * 3;
+    for (int id = 0; id < entities; id++) {
+      componentContainer.addLayout(id, HEALTH);
+    }
+    final OffHeapColumns columns = componentContainer.getOffHeapColumns(HEALTH);
+    assertEquals(3, columns.getPageCount());
+
+    for (int id = 0; id < entities; id++) {
+      componentContainer.removeEntityComponents(id);
+    }
+    assertEquals(0, columns.size());
+    assertEquals(1, columns.getPageCount());
+  }
+
+  @Test
+  public void testPageIsKeptWhenRowsCrossItsStart() {
+    final int entities = RECORDS_PER_PAGE * 2;
+    for (int id = 0; id < entities; id++) {
+      componentContainer.addLayout(id, HEALTH);
+    }
+    final OffHeapColumns columns = componentContainer.getOffHeapColumns(HEALTH);
+    for (int i = 0; i < 3; i++) {
+      componentContainer.addLayout(entities, HEALTH);
+      componentContainer.removeLayout(entities, HEALTH);
+      assertEquals(3, columns.getPageCount());
+    }
+    componentContainer.removeLayout(entities - 1, HEALTH);
+    assertEquals(3, columns.getPageCount());
+    for (int id = 0; id < RECORDS_PER_PAGE; id++) {
+      componentContainer.removeLayout(id, HEALTH);
+    }
+    assertEquals(2, columns.getPageCount());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testRecordOfFreedPageThrows() {
+    final Engine engine = new Engine();
+    final Entity entity = engine.getEntityFactory().createEntity();
+    entity.addLayout(HEALTH);
+    final OffHeapColumns.Record record = engine.getComponentContainer().getOffHeapColumns(HEALTH).createRecord();
+    record.moveTo(0);
+    engine.dispose();
+    record.getFloat(CURRENT);
+  }
+
+  @Test
+  public void testNewRowsAreZeroAfterPageIsReallocated() {
+    final int entities = RECORDS_PER_PAGE + 1;
+    for (int id = 0; id < entities; id++) {
+      componentContainer.addLayout(id, HEALTH);
+      componentContainer.setInt(id, MAX, 7);
+    }
+    componentContainer.removeLayout(entities - 1, HEALTH);
+    componentContainer.addLayout(entities, HEALTH);
+    assertEquals(0, componentContainer.getInt(entities, MAX));
+  }
+
+  @Test
+  public void testRecord() {
+    for (int id = 0; id < 10; id++) {
+      componentContainer.addLayout(id, HEALTH);
+    }
+    final OffHeapColumns columns = componentContainer.getOffHeapColumns(HEALTH);
+    final OffHeapColumns.Record record = columns.createRecord();
+    for (int row = 0; row < columns.size(); row++) {
+      record.moveTo(row).setFloat(CURRENT, row * 2f);
+    }
+    for (int id = 0; id < 10; id++) {
+      assertEquals(id * 2f, componentContainer.getFloat(id, CURRENT), 0f);
+    }
+  }
+
+  @Test
+  public void testDisposeFreesPages() {
+    final Engine engine = new Engine();
+    final Entity entity = engine.getEntityFactory().createEntity();
+    entity.addLayout(HEALTH);
+    final OffHeapColumns columns = engine.getComponentContainer().getOffHeapColumns(HEALTH);
+    assertEquals(1, columns.getPageCount());
+    engine.dispose();
+    assertEquals(0, columns.getPageCount());
+  }
+
+}
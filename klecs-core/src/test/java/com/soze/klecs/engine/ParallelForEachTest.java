@@ -0,0 +1,166 @@
+package com.soze.klecs.engine;
+
+import com.soze.klecs.entity.Entity;
+import com.soze.klecs.node.Node;
+import com.soze.klecs.system.ComponentAccess;
+import com.soze.klecs.system.EntitySystem;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class ParallelForEachTest {
+
+  private ForkJoinPool pool;
+  private Engine engine;
+  private Node node;
+
+  @Before
+  public void setup() {
+    pool = new ForkJoinPool(4);
+    engine = new Engine();
+    engine.setSystemPool(pool);
+    node = Node.of(String.class);
+  }
+
+  @After
+  public void tearDown() {
+    pool.shutdownNow();
+  }
+
+  @Test
+  public void testVisitsAllEntities() {
+    final List<Entity> entities = addEntities(5000);
+    final Set<Entity> visited = ConcurrentHashMap.newKeySet();
+    engine.parallelForEach(node, visited::add);
+    assertEquals(new HashSet<>(entities), visited);
+  }
+
+  @Test
+  public void testVisitsNothingWhenNoEntitiesMatch() {
+    addEntities(10);
+    final Set<Entity> visited = ConcurrentHashMap.newKeySet();
+    engine.parallelForEach(Node.of(Integer.class), visited::add);
+    assertTrue(visited.isEmpty());
+  }
+
+  @Test
+  public void testComponentChangesAreAppliedAfterIteration() {
+    final List<Entity> entities = addEntities(2000);
+    engine.parallelForEach(node, entity -> {
+      entity.addComponent(5);
+      entity.removeComponent(String.class);
+      //changes are not visible until all chunks are finished
+      assertNull(entity.getComponent(Integer.class));
+      assertNotNull(entity.getComponent(String.class));
+    });
+    for (final Entity entity : entities) {
+      assertEquals(5, (int) entity.getComponent(Integer.class));
+      assertNull(entity.getComponent(String.class));
+    }
+    assertEquals(0, engine.getEntitiesByNode(node).size());
+  }
+
+  @Test
+  public void testEntityChangesAreAppliedInOrderOfEntities() {
+    final List<Entity> entities = addEntities(2000);
+    final Map<Entity, Entity> children = new HashMap<>();
+    for (final Entity entity : entities) {
+      children.put(entity, engine.getEntityFactory().createEntity());
+    }
+    final List<Entity> added = new ArrayList<>();
+    engine.addEntityEventListener(event -> {
+      if (event instanceof AddedEntityEvent) {
+        added.add(event.getEntity());
+      }
+    });
+
+    final List<Entity> visitOrder = engine.getEntitiesByNode(node);
+    engine.parallelForEach(node, entity -> {
+      engine.addEntity(children.get(entity));
+      engine.removeEntity(entity.getId());
+    });
+
+    final List<Entity> expected = new ArrayList<>();
+    for (final Entity entity : visitOrder) {
+      expected.add(children.get(entity));
+    }
+    assertEquals(expected, added);
+    assertEquals(entities.size(), engine.getAllEntities().size());
+    for (final Entity entity : entities) {
+      assertNull(engine.getEntityById(entity.getId()).orElse(null));
+    }
+  }
+
+  @Test
+  public void testEntityChangesAreQueuedDuringUpdate() {
+    final List<Entity> entities = addEntities(1000);
+    final int[] entitiesDuringUpdate = new int[1];
+    engine.addSystem(new TestSystem(() -> {
+      engine.parallelForEach(node, entity -> engine.removeEntity(entity.getId()));
+      entitiesDuringUpdate[0] = engine.getAllEntities().size();
+    }));
+    engine.update(0);
+    assertEquals(entities.size(), entitiesDuringUpdate[0]);
+    assertEquals(0, engine.getAllEntities().size());
+  }
+
+  @Test
+  public void testWorksInsideParallelSystems() {
+    addEntities(1000);
+    engine.addSystem(new TestSystem(() -> engine.parallelForEach(node, entity -> entity.addComponent(1))));
+    engine.addSystem(new TestSystem(() -> engine.parallelForEach(node, entity -> entity.addComponent(1L))));
+    engine.update(0);
+    assertEquals(1000, engine.getEntitiesByNode(Node.of(String.class, Integer.class, Long.class)).size());
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void testExceptionIsRethrown() {
+    addEntities(1000);
+    engine.parallelForEach(node, entity -> {
+      throw new RuntimeException();
+    });
+  }
+
+  private List<Entity> addEntities(final int count) {
+    final List<Entity> entities = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      final Entity entity = engine.getEntityFactory().createEntity();
+      entity.addComponent("entity" + i);
+      engine.addEntity(entity);
+      entities.add(entity);
+    }
+    return entities;
+  }
+
+  private class TestSystem implements EntitySystem {
+
+    private final Runnable action;
+
+    private TestSystem(final Runnable action) {
+      this.action = action;
+    }
+
+    @Override
+    public void update(final float delta) {
+      action.run();
+    }
+
+    @Override
+    public Engine getEngine() {
+      return engine;
+    }
+
+    @Override
+    public ComponentAccess getComponentAccess() {
+      return ComponentAccess.none();
+    }
+
+  }
+
+}
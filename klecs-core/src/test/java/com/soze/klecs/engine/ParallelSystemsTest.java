@@ -0,0 +1,229 @@
+package com.soze.klecs.engine;
+
+import com.soze.klecs.entity.Entity;
+import com.soze.klecs.node.Node;
+import com.soze.klecs.system.ComponentAccess;
+import com.soze.klecs.system.EntitySystem;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ParallelSystemsTest {
+
+  private ForkJoinPool pool;
+  private Engine engine;
+
+  @Before
+  public void setup() {
+    pool = new ForkJoinPool(4);
+    engine = new Engine();
+    engine.setSystemPool(pool);
+  }
+
+  @After
+  public void tearDown() {
+    pool.shutdownNow();
+  }
+
+  @Test
+  public void testCompatibleSystemsRunConcurrently() {
+    //both systems have to reach the barrier at the same time, otherwise it times out
+    final CyclicBarrier barrier = new CyclicBarrier(2);
+    engine.addSystem(new TestSystem(ComponentAccess.writes(String.class), () -> await(barrier)));
+    engine.addSystem(new TestSystem(ComponentAccess.writes(Integer.class), () -> await(barrier)));
+    engine.update(0);
+  }
+
+  @Test
+  public void testConflictingSystemsRunInOrder() {
+    final List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+    for (int i = 0; i < 20; i++) {
+      final int index = i;
+      engine.addSystem(new TestSystem(ComponentAccess.writes(String.class), () -> order.add(index)));
+    }
+    engine.update(0);
+    for (int i = 0; i < 20; i++) {
+      assertEquals(i, (int) order.get(i));
+    }
+  }
+
+  @Test
+  public void testUndeclaredSystemsRunInOrder() {
+    final List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+    engine.addSystem(new TestSystem(ComponentAccess.exclusive(), () -> order.add(0)));
+    engine.addSystem(new TestSystem(ComponentAccess.none(), () -> order.add(1)));
+    engine.addSystem(new TestSystem(ComponentAccess.exclusive(), () -> order.add(2)));
+    engine.update(0);
+    assertEquals(Arrays.asList(0, 1, 2), order);
+  }
+
+  @Test
+  public void testAddedEntitiesAreQueuedInSystemOrder() {
+    final Entity[] entities = new Entity[8];
+    for (int i = 0; i < entities.length; i++) {
+      entities[i] = engine.getEntityFactory().createEntity();
+    }
+    for (int i = 0; i < entities.length; i++) {
+      final Entity entity = entities[i];
+      engine.addSystem(new TestSystem(ComponentAccess.none(), () -> engine.addEntity(entity)));
+    }
+    final List<Entity> added = new ArrayList<>();
+    engine.addEntityEventListener(event -> added.add(event.getEntity()));
+    engine.update(0);
+    assertEquals(Arrays.asList(entities), added);
+  }
+
+  @Test
+  public void testRemovedEntitiesAreRemovedAfterUpdate() {
+    final Entity entity = engine.getEntityFactory().createEntity();
+    engine.addEntity(entity);
+    engine.addSystem(new TestSystem(ComponentAccess.none(), () -> {
+      engine.removeEntity(entity.getId());
+      assertEquals(1, engine.getAllEntities().size());
+    }));
+    engine.update(0);
+    assertTrue(engine.getAllEntities().isEmpty());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testSameEntityAddedByTwoSystems() {
+    final Entity entity = engine.getEntityFactory().createEntity();
+    engine.addSystem(new TestSystem(ComponentAccess.none(), () -> engine.addEntity(entity)));
+    engine.addSystem(new TestSystem(ComponentAccess.none(), () -> engine.addEntity(entity)));
+    engine.update(0);
+  }
+
+  @Test
+  public void testSystemsIterateOverSameNodeConcurrently() {
+    final Node node = Node.of(String.class);
+    final Entity entity = engine.getEntityFactory().createEntity();
+    entity.addComponent("component");
+    engine.addEntity(entity);
+    final NodeView view = engine.getNodeView(node);
+    //both systems have to be inside an iteration over the node at the same time
+    final CyclicBarrier barrier = new CyclicBarrier(2);
+    final List<NodeView> views = Collections.synchronizedList(new ArrayList<>());
+    for (int i = 0; i < 2; i++) {
+      engine.addSystem(new TestSystem(ComponentAccess.reads(String.class), () -> {
+        views.add(engine.getNodeView(node));
+        engine.forEach(node, String.class, (iterated, component) -> await(barrier));
+      }));
+    }
+    engine.update(0);
+    assertEquals(Arrays.asList(view, view), views);
+  }
+
+  @Test
+  public void testExceptionIsRethrown() {
+    final RuntimeException exception = new RuntimeException("system failed");
+    final List<String> updates = new ArrayList<>();
+    engine.addSystem(new TestSystem(ComponentAccess.none(), () -> {
+      updates.add("UPDATE");
+      if (updates.size() == 1) {
+        throw exception;
+      }
+    }));
+    try {
+      engine.update(0);
+      fail();
+    } catch (final RuntimeException e) {
+      assertSame(exception, e);
+    }
+    //the engine can still be updated
+    engine.update(0);
+    assertEquals(2, updates.size());
+  }
+
+  @Test(timeout = 10000)
+  public void testUpdateOnWorkerOfSystemPool() throws Exception {
+    final ForkJoinPool singleWorker = new ForkJoinPool(1);
+    try {
+      final Engine engine = new Engine();
+      engine.setSystemPool(singleWorker);
+      final List<Integer> updates = Collections.synchronizedList(new ArrayList<>());
+      engine.addSystem(new TestSystem(ComponentAccess.none(), () -> updates.add(0)));
+      engine.addSystem(new TestSystem(ComponentAccess.none(), () -> updates.add(1)));
+      //the only worker waits for the systems, which have to be updated by another worker
+      singleWorker.submit(() -> engine.update(0)).get();
+      assertEquals(2, updates.size());
+    } finally {
+      singleWorker.shutdownNow();
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void testRejectedSystemFailsUpdate() {
+    //accepts the first system, the second one is dispatched by the worker which updated the first one
+    final AtomicInteger executed = new AtomicInteger();
+    final ForkJoinPool rejecting = new ForkJoinPool(2) {
+      @Override
+      public void execute(final Runnable task) {
+        if (executed.incrementAndGet() > 1) {
+          throw new RejectedExecutionException("shut down");
+        }
+        super.execute(task);
+      }
+    };
+    try {
+      engine.setSystemPool(rejecting);
+      final List<Integer> updates = Collections.synchronizedList(new ArrayList<>());
+      for (int i = 0; i < 3; i++) {
+        final int index = i;
+        engine.addSystem(new TestSystem(ComponentAccess.writes(String.class), () -> updates.add(index)));
+      }
+      try {
+        engine.update(0);
+        fail();
+      } catch (final RejectedExecutionException e) {
+        assertEquals(Collections.singletonList(0), updates);
+      }
+    } finally {
+      rejecting.shutdownNow();
+    }
+  }
+
+  private static void await(final CyclicBarrier barrier) {
+    try {
+      barrier.await(5, TimeUnit.SECONDS);
+    } catch (final Exception e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private class TestSystem implements EntitySystem {
+
+    private final ComponentAccess access;
+    private final Runnable action;
+
+    private TestSystem(final ComponentAccess access, final Runnable action) {
+      this.access = access;
+      this.action = action;
+    }
+
+    @Override
+    public void update(final float delta) {
+      action.run();
+    }
+
+    @Override
+    public Engine getEngine() {
+      return engine;
+    }
+
+    @Override
+    public ComponentAccess getComponentAccess() {
+      return access;
+    }
+
+  }
+
+}
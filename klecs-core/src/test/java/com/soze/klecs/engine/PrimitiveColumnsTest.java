@@ -0,0 +1,152 @@
+package com.soze.klecs.engine;
+
+import com.soze.klecs.entity.Entity;
+import com.soze.klecs.system.EntitySystem;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PrimitiveColumnsTest {
+
+  private static final PrimitiveLayout MOVABLE = new PrimitiveLayout("Movable");
+  private static final PrimitiveField X = MOVABLE.addFloat("x");
+  private static final PrimitiveField DX = MOVABLE.addFloat("dx");
+  private static final PrimitiveField STEPS = MOVABLE.addInt("steps");
+
+  private Engine engine;
+
+  @Before
+  public void setup() {
+    engine = new Engine();
+  }
+
+  @Test
+  public void testSetAndGetValues() {
+    final Entity entity = createEntity(5f, 1f);
+    entity.setInt(STEPS, 3);
+    assertTrue(entity.hasLayout(MOVABLE));
+    assertEquals(5f, entity.getFloat(X), 0f);
+    assertEquals(1f, entity.getFloat(DX), 0f);
+    assertEquals(3, entity.getInt(STEPS));
+  }
+
+  @Test
+  public void testNewLayoutValuesAreZero() {
+    final Entity entity = engine.getEntityFactory().createEntity();
+    entity.addLayout(MOVABLE);
+    assertEquals(0f, entity.getFloat(X), 0f);
+    assertEquals(0, entity.getInt(STEPS));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testGetValueWithoutLayout() {
+    final Entity entity = engine.getEntityFactory().createEntity();
+    entity.getFloat(X);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testGetValueOfWrongType() {
+    final Entity entity = createEntity(5f, 1f);
+    entity.getInt(X);
+  }
+
+  @Test
+  public void testRejectedFieldsAreNotCounted() {
+    final PrimitiveLayout layout = new PrimitiveLayout("Rejected");
+    layout.addFloat("a");
+    try {
+      layout.addFloat("a");
+      fail();
+    } catch (IllegalArgumentException e) {
+      //expected
+    }
+    engine.getComponentContainer().getColumns(layout);
+    try {
+      layout.addInt("b");
+      fail();
+    } catch (IllegalStateException e) {
+      //expected
+    }
+    assertEquals(1, layout.getFloatCount());
+    assertEquals(0, layout.getIntCount());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testLayoutCannotChangeAfterUse() {
+    final PrimitiveLayout layout = new PrimitiveLayout("Used");
+    layout.addFloat("a");
+    engine.getComponentContainer().getColumns(layout);
+    layout.addFloat("b");
+  }
+
+  @Test
+  public void testRemovingLayoutKeepsValuesOfOtherEntities() {
+    final Entity first = createEntity(1f, 0f);
+    final Entity second = createEntity(2f, 0f);
+    final Entity third = createEntity(3f, 0f);
+    first.removeLayout(MOVABLE);
+
+    final PrimitiveColumns columns = engine.getComponentContainer().getColumns(MOVABLE);
+    assertEquals(2, columns.size());
+    assertFalse(first.hasLayout(MOVABLE));
+    assertEquals(2f, second.getFloat(X), 0f);
+    assertEquals(3f, third.getFloat(X), 0f);
+  }
+
+  @Test
+  public void testRemovingEntityRemovesLayout() {
+    final Entity entity = createEntity(1f, 0f);
+    engine.addEntity(entity);
+    engine.removeEntity(entity.getId());
+    assertEquals(0, engine.getComponentContainer().getColumns(MOVABLE).size());
+  }
+
+  @Test
+  public void testLoopOverColumns() {
+    for (int i = 0; i < 100; i++) {
+      engine.addEntity(createEntity(i, 2f));
+    }
+    final PrimitiveColumns columns = engine.getComponentContainer().getColumns(MOVABLE);
+    final float[] x = columns.getFloatColumn(X);
+    final float[] dx = columns.getFloatColumn(DX);
+    for (int row = 0; row < columns.size(); row++) {
+      x[row] += dx[row];
+    }
+    //ids start at 1, each entity started at x = id - 1
+    for (final Entity entity : engine.getAllEntities()) {
+      assertEquals((long) entity.getId() + 1, entity.getFloat(X), 0f);
+    }
+  }
+
+  @Test
+  public void testLayoutIsAddedAfterUpdate() {
+    final Entity entity = engine.getEntityFactory().createEntity();
+    engine.addEntity(entity);
+    final boolean[] hasLayoutDuringUpdate = new boolean[1];
+    engine.addSystem(new EntitySystem() {
+      @Override
+      public void update(final float delta) {
+        entity.addLayout(MOVABLE);
+        hasLayoutDuringUpdate[0] = entity.hasLayout(MOVABLE);
+      }
+
+      @Override
+      public Engine getEngine() {
+        return engine;
+      }
+    });
+    engine.update(0);
+    assertFalse(hasLayoutDuringUpdate[0]);
+    assertTrue(entity.hasLayout(MOVABLE));
+  }
+
+  private Entity createEntity(final float x, final float dx) {
+    final Entity entity = engine.getEntityFactory().createEntity();
+    entity.addLayout(MOVABLE);
+    entity.setFloat(X, x);
+    entity.setFloat(DX, dx);
+    return entity;
+  }
+
+}
@@ -0,0 +1,175 @@
+package com.soze.klecs.engine;
+
+import com.soze.klecs.entity.Entity;
+import com.soze.klecs.node.Node;
+import com.soze.klecs.system.EntitySystem;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class ReactiveQueryTest {
+
+  private Engine engine;
+  private ReactiveQuery query;
+
+  @Before
+  public void setup() {
+    engine = new Engine();
+    query = engine.createReactiveQuery(Node.of(String.class, Integer.class));
+  }
+
+  @Test
+  public void testAddedEntity() {
+    final Entity entity = createEntity("component", 5);
+    engine.addEntity(entity);
+    engine.addEntity(createEntity("component"));
+    assertEquals(Collections.singleton(entity), query.getAdded());
+    assertTrue(query.getRemoved().isEmpty());
+    assertTrue(query.getChanged().isEmpty());
+  }
+
+  @Test
+  public void testAddedComponent() {
+    final Entity entity = createEntity("component");
+    engine.addEntity(entity);
+    assertFalse(query.hasChanges());
+    entity.addComponent(5);
+    assertEquals(Collections.singleton(entity), query.getAdded());
+  }
+
+  @Test
+  public void testRemovedEntity() {
+    final Entity entity = createEntity("component", 5);
+    engine.addEntity(entity);
+    query.clear();
+    engine.removeEntity(entity.getId());
+    assertEquals(Collections.singleton(entity), query.getRemoved());
+    assertTrue(query.getAdded().isEmpty());
+  }
+
+  @Test
+  public void testRemovedComponent() {
+    final Entity entity = createEntity("component", 5);
+    engine.addEntity(entity);
+    query.clear();
+    entity.removeComponent(Integer.class);
+    assertEquals(Collections.singleton(entity), query.getRemoved());
+    entity.removeComponent(String.class);
+    assertEquals(1, query.getRemoved().size());
+  }
+
+  @Test
+  public void testReplacedComponent() {
+    final Entity entity = createEntity("component", 5);
+    engine.addEntity(entity);
+    query.clear();
+    entity.addComponent(6);
+    assertEquals(Collections.singleton(entity), query.getChanged());
+    assertTrue(query.getAdded().isEmpty());
+    assertTrue(query.getRemoved().isEmpty());
+  }
+
+  @Test
+  public void testDirtyComponent() {
+    final Entity entity = createEntity("component", 5);
+    engine.addEntity(entity);
+    query.clear();
+    entity.markDirty(Double.class);
+    assertFalse(query.hasChanges());
+    entity.modify(String.class, component -> { });
+    assertEquals(Collections.singleton(entity), query.getChanged());
+  }
+
+  @Test
+  public void testNetChanges() {
+    final Entity added = createEntity("component", 5);
+    engine.addEntity(added);
+    added.addComponent(6);
+    assertEquals(Collections.singleton(added), query.getAdded());
+    assertTrue(query.getChanged().isEmpty());
+    engine.removeEntity(added.getId());
+    assertFalse(query.hasChanges());
+
+    final Entity readded = createEntity("component", 5);
+    engine.addEntity(readded);
+    query.clear();
+    readded.removeComponent(Integer.class);
+    readded.addComponent(7);
+    assertTrue(query.getRemoved().isEmpty());
+    assertEquals(Collections.singleton(readded), query.getChanged());
+  }
+
+  @Test
+  public void testExistingEntitiesAreAdded() {
+    final Entity entity = createEntity("component", 5);
+    engine.addEntity(entity);
+    final ReactiveQuery other = engine.createReactiveQuery(Node.of(Integer.class));
+    assertEquals(Collections.singleton(entity), other.getAdded());
+  }
+
+  @Test
+  public void testChangesDuringUpdateAreCollectedAfterIt() {
+    final Entity entity = createEntity("component");
+    engine.addEntity(entity);
+    final boolean[] addedDuringUpdate = {true};
+    engine.addSystem(new TestSystem(() -> {
+      entity.addComponent(5);
+      addedDuringUpdate[0] = query.hasChanges();
+    }));
+    engine.update(0);
+    assertFalse(addedDuringUpdate[0]);
+    assertEquals(Collections.singleton(entity), query.getAdded());
+  }
+
+  @Test
+  public void testExcludedComponent() {
+    final ReactiveQuery visible = engine.createReactiveQuery(Node.of(String.class).without(Integer.class));
+    final Entity entity = createEntity("component");
+    engine.addEntity(entity);
+    visible.clear();
+    entity.addComponent(5);
+    assertEquals(Collections.singleton(entity), visible.getRemoved());
+    visible.clear();
+    entity.removeComponent(Integer.class);
+    assertEquals(Collections.singleton(entity), visible.getAdded());
+  }
+
+  @Test
+  public void testRemovedQuery() {
+    engine.removeReactiveQuery(query);
+    engine.addEntity(createEntity("component", 5));
+    assertFalse(query.hasChanges());
+  }
+
+  private Entity createEntity(final Object... components) {
+    final Entity entity = engine.getEntityFactory().createEntity();
+    for (final Object component : components) {
+      entity.addComponent(component);
+    }
+    return entity;
+  }
+
+  private static class TestSystem implements EntitySystem {
+
+    private final Runnable action;
+
+    private TestSystem(final Runnable action) {
+      this.action = action;
+    }
+
+    @Override
+    public void update(final float delta) {
+      action.run();
+    }
+
+    @Override
+    public Engine getEngine() {
+      return null;
+    }
+
+  }
+
+}
@@ -0,0 +1,200 @@
+package com.soze.klecs.engine;
+
+import com.soze.klecs.entity.Entity;
+import com.soze.klecs.entity.IntIdAllocator;
+import com.soze.klecs.node.Node;
+import com.soze.klecs.system.EntitySystem;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SpawnTest {
+
+  private static final PrimitiveLayout MOVABLE = new PrimitiveLayout("Movable");
+
+  @Test
+  public void testSpawnAddsEntitiesWithComponents() {
+    final Engine engine = new Engine();
+    final List<Entity> entities = engine.spawn(1000, i -> "entity" + i, i -> i);
+    assertEquals(1000, engine.getAllEntities().size());
+    assertEquals(1000, engine.getEntitiesByNode(Node.of(String.class, Integer.class)).size());
+    assertEquals("entity5", entities.get(5).getComponent(String.class));
+    assertEquals(5, (int) entities.get(5).getComponent(Integer.class));
+    assertFalse(entities.get(5).isRemoved());
+  }
+
+  @Test
+  public void testSpawnWithIntIdAllocator() {
+    final Engine engine = new Engine(new IntIdAllocator());
+    final List<Entity> entities = engine.spawn(100, i -> "entity" + i);
+    assertEquals(entities.get(99), engine.getEntityById(entities.get(99).getId()).get());
+    assertEquals("entity99", entities.get(99).getComponent(String.class));
+  }
+
+  @Test
+  public void testSpawnWithArchetypeStorage() {
+    final ArchetypeComponentStorage storage = new ArchetypeComponentStorage();
+    final Engine engine = new Engine(storage);
+    engine.spawn(100, i -> "entity" + i, i -> i, i -> (long) i);
+    assertEquals(100, engine.getEntitiesByNode(Node.of(String.class, Integer.class, Long.class)).size());
+    //only the archetype without components and the final one
+    assertEquals(2, storage.getArchetypeCount());
+  }
+
+  @Test
+  public void testSpawnDeliversOneBatch() {
+    final Engine engine = new Engine();
+    final List<Integer> batches = new ArrayList<>();
+    engine.addEntityBatchListener(null, batch -> batches.add(batch.getAddedEntities().size()));
+    engine.spawn(500, i -> i);
+    assertEquals(Arrays.asList(500), batches);
+  }
+
+  @Test
+  public void testSpawnDuringUpdateIsDeferred() {
+    final Engine engine = new Engine();
+    final List<Integer> duringUpdate = new ArrayList<>();
+    engine.addSystem(new TestSystem(() -> {
+      engine.spawn(10, i -> i);
+      duringUpdate.add(engine.getAllEntities().size());
+    }));
+    engine.update(0);
+    assertEquals(0, (int) duringUpdate.get(0));
+    assertEquals(10, engine.getEntitiesByNode(Node.of(Integer.class)).size());
+  }
+
+  @Test
+  public void testRemoveEntities() {
+    final Engine engine = new Engine();
+    final List<Entity> entities = engine.spawn(100, i -> i);
+    final List<Integer> removed = new ArrayList<>();
+    engine.addEntityBatchListener(null, batch -> removed.add(batch.getRemovedEntities().size()));
+    final List<Object> ids = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      ids.add(entities.get(i).getId());
+    }
+    engine.removeEntities(ids);
+    assertEquals(50, engine.getAllEntities().size());
+    assertTrue(entities.get(0).isRemoved());
+    assertEquals(Arrays.asList(50), removed);
+  }
+
+  @Test
+  public void testRemoveEntitiesRemovesNothingWhenAnEntityIsMissing() {
+    final Engine engine = new Engine();
+    final List<Entity> entities = engine.spawn(10, i -> i);
+    try {
+      engine.removeEntities(Arrays.asList(entities.get(0).getId(), "missing"));
+      fail();
+    } catch (final IllegalStateException e) {
+      assertEquals(10, engine.getAllEntities().size());
+    }
+  }
+
+  @Test
+  public void testRemoveEntitiesRemovesNothingWhenAnIdIsDuplicated() {
+    final Engine engine = new Engine();
+    final List<Entity> entities = engine.spawn(10, i -> i);
+    try {
+      engine.removeEntities(Arrays.asList(entities.get(0).getId(), entities.get(1).getId(), entities.get(0).getId()));
+      fail();
+    } catch (final IllegalStateException e) {
+      assertEquals(10, engine.getAllEntities().size());
+    }
+  }
+
+  @Test
+  public void testAddEntities() {
+    final Engine engine = new Engine();
+    final List<Entity> entities = engine.getEntityFactory().createEntities(2);
+    final List<Boolean> initializedInBatch = new ArrayList<>();
+    engine.addEntityBatchListener(null, batch -> {
+      for (final Entity entity : batch.getAddedEntities()) {
+        initializedInBatch.add(entity.hasLayout(MOVABLE));
+      }
+    });
+    engine.addEntities(entities, Arrays.asList(new Object[]{"first", 1}, new Object[]{"second"}),
+      entity -> entity.addLayout(MOVABLE));
+    assertEquals(1, engine.getEntitiesByNode(Node.of(String.class, Integer.class)).size());
+    assertEquals("second", entities.get(1).getComponent(String.class));
+    assertEquals(Arrays.asList(true, true), initializedInBatch);
+  }
+
+  @Test
+  public void testAddEntitiesAddsNothingWhenAnEntityIsAdded() {
+    final Engine engine = new Engine();
+    final Entity added = engine.getEntityFactory().createEntity();
+    engine.addEntity(added);
+    final List<Entity> entities = Arrays.asList(engine.getEntityFactory().createEntity(), added);
+    final List<Entity> initialized = new ArrayList<>();
+    try {
+      engine.addEntities(entities, Arrays.asList(new Object[]{"first"}, new Object[]{"second"}), initialized::add);
+      fail();
+    } catch (final IllegalStateException e) {
+      assertEquals(1, engine.getAllEntities().size());
+      assertTrue(initialized.isEmpty());
+      assertTrue(added.getAllComponents(Object.class).isEmpty());
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testAddEntitiesRejectsDuplicatedId() {
+    final Engine engine = new Engine();
+    final Entity entity = engine.getEntityFactory().createEntity();
+    engine.addEntities(Arrays.asList(entity, entity), Arrays.asList(new Object[0], new Object[0]));
+  }
+
+  @Test
+  public void testSpawnNotifiesChangeListener() {
+    final Engine engine = new Engine();
+    final List<Object> added = new ArrayList<>();
+    engine.getComponentContainer().setChangeListener(new ComponentChangeListener() {
+      @Override
+      public boolean isListening(final Class<?> clazz) {
+        return clazz == String.class;
+      }
+
+      @Override
+      public void componentAdded(final Object entityId, final Object component) {
+        added.add(component);
+      }
+
+      @Override
+      public void componentRemoved(final Object entityId, final Object component) {
+
+      }
+
+      @Override
+      public void componentWritten(final Object entityId, final Class<?> clazz) {
+
+      }
+    });
+    engine.spawn(3, i -> "entity" + i, i -> i);
+    assertEquals(Arrays.asList("entity0", "entity1", "entity2"), added);
+  }
+
+  private static class TestSystem implements EntitySystem {
+
+    private final Runnable action;
+
+    private TestSystem(final Runnable action) {
+      this.action = action;
+    }
+
+    @Override
+    public void update(final float delta) {
+      action.run();
+    }
+
+    @Override
+    public Engine getEngine() {
+      return null;
+    }
+
+  }
+
+}
@@ -0,0 +1,113 @@
+package com.soze.klecs.entity;
+
+import com.soze.klecs.engine.Engine;
+import com.soze.klecs.node.Node;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class EntityTemplateTest {
+
+  @Test
+  public void testComponentsAreCopied() {
+    final Engine engine = new Engine();
+    final Position position = new Position(1, 2);
+    final EntityTemplate template = EntityTemplate.empty().with(position, Position::new);
+    final Entity first = engine.getEntityFactory().createEntity(template);
+    final Entity second = engine.getEntityFactory().createEntity(template);
+
+    assertNotSame(position, first.getComponent(Position.class));
+    assertNotSame(first.getComponent(Position.class), second.getComponent(Position.class));
+    assertEquals(2, first.getComponent(Position.class).y, 0);
+  }
+
+  @Test
+  public void testSharedComponentsAreNotCopied() {
+    final Engine engine = new Engine();
+    final EntityTemplate template = EntityTemplate.empty().withShared("sprite");
+    final List<Entity> entities = engine.spawn(10, template);
+    for (final Entity entity : entities) {
+      assertSame(template.createComponent(0), entity.getComponent(String.class));
+    }
+    assertTrue(template.isShared(0));
+  }
+
+  @Test
+  public void testCopyFunctionOfClass() {
+    final Position position = new Position(3, 4);
+    final EntityTemplate template = EntityTemplate.empty().withCopy(Position.class, Position::new).with(position);
+    final Object copy = template.createComponent(0);
+    assertNotSame(position, copy);
+    assertEquals(3, ((Position) copy).x, 0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMissingCopyFunction() {
+    EntityTemplate.empty().with(new Object());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testCopyFunctionsAreNotSharedBetweenTemplates() {
+    EntityTemplate.empty().withCopy(Position.class, Position::new);
+    EntityTemplate.empty().with(new Position(0, 0));
+  }
+
+  @Test
+  public void testTemplatesAreImmutable() {
+    final EntityTemplate template = EntityTemplate.empty().withShared("sprite");
+    final EntityTemplate withPosition = template.with(new Position(0, 0), Position::new);
+    assertEquals(1, template.size());
+    assertEquals(2, withPosition.size());
+  }
+
+  @Test
+  public void testComponentOfSameClassIsReplaced() {
+    final EntityTemplate template = EntityTemplate.empty().withShared("first").withShared("second");
+    assertEquals(1, template.size());
+    assertEquals("second", template.createComponent(0));
+  }
+
+  @Test
+  public void testMatchesNode() {
+    final EntityTemplate template = EntityTemplate.empty().withShared("sprite").with(new Position(0, 0), Position::new);
+    assertTrue(template.matches(Node.of(String.class, Position.class)));
+    assertFalse(template.matches(Node.of(String.class, Integer.class)));
+  }
+
+  @Test
+  public void testSpawnFromTemplate() {
+    final Engine engine = new Engine();
+    final EntityTemplate template = EntityTemplate.empty().withShared("sprite").with(new Position(0, 0), Position::new);
+    engine.spawn(100, template);
+    assertEquals(100, engine.getEntitiesByNode(Node.of(String.class, Position.class)).size());
+  }
+
+  @Test
+  public void testSpawnedEntitiesHaveTemplateSignature() {
+    final Engine engine = new Engine();
+    final EntityTemplate template = EntityTemplate.empty().withShared("sprite").with(new Position(0, 0), Position::new);
+    final Node node = Node.of(String.class, Position.class);
+    final Entity entity = engine.spawn(10, template).get(3);
+    assertTrue(engine.getComponentContainer().matches(entity.getId(), node));
+    entity.removeComponent(String.class);
+    assertFalse(engine.getComponentContainer().matches(entity.getId(), node));
+    assertTrue(engine.getComponentContainer().matches(entity.getId(), Node.of(Position.class)));
+  }
+
+  private static class Position {
+    private final float x;
+    private final float y;
+
+    private Position(final float x, final float y) {
+      this.x = x;
+      this.y = y;
+    }
+
+    private Position(final Position position) {
+      this(position.x, position.y);
+    }
+  }
+
+}
@@ -0,0 +1,147 @@
+package com.soze.klecs.entity;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+public class IntIdAllocatorTest {
+
+  private IntIdAllocator allocator;
+
+  @Before
+  public void setup() {
+    allocator = new IntIdAllocator();
+  }
+
+  @Test
+  public void testIndicesAreDense() {
+    for (int i = 0; i < 100; i++) {
+      assertEquals(i, IntIdAllocator.indexOf(allocator.allocate()));
+    }
+    assertEquals(100, allocator.getCapacity());
+  }
+
+  @Test
+  public void testReleasedIndexIsReused() {
+    final long first = allocator.allocate();
+    allocator.allocate();
+    allocator.release(first);
+    final long reused = allocator.allocate();
+    assertEquals(IntIdAllocator.indexOf(first), IntIdAllocator.indexOf(reused));
+    assertNotEquals(first, reused);
+    assertEquals(IntIdAllocator.generationOf(first) + 1, IntIdAllocator.generationOf(reused));
+    assertEquals(2, allocator.getCapacity());
+  }
+
+  @Test
+  public void testAllocateBlockReusesReleasedIndicesFirst() {
+    final long first = allocator.allocate();
+    allocator.allocate();
+    allocator.release(first);
+    final long[] ids = allocator.allocate(100);
+    assertEquals(IntIdAllocator.indexOf(first), IntIdAllocator.indexOf(ids[0]));
+    for (int i = 1; i < ids.length; i++) {
+      assertEquals(i + 1, IntIdAllocator.indexOf(ids[i]));
+    }
+    for (final long id : ids) {
+      assertTrue(allocator.isAlive(id));
+    }
+    assertEquals(101, allocator.getCapacity());
+  }
+
+  @Test
+  public void testStaleIdIsNotAlive() {
+    final long id = allocator.allocate();
+    assertTrue(allocator.isAlive(id));
+    allocator.release(id);
+    assertFalse(allocator.isAlive(id));
+    final long reused = allocator.allocate();
+    assertFalse(allocator.isAlive(id));
+    assertTrue(allocator.isAlive(reused));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testReleaseTwice() {
+    final long id = allocator.allocate();
+    allocator.release(id);
+    allocator.release(id);
+  }
+
+  @Test
+  public void testReserveSkipsIndices() {
+    final IntIdAllocator restored = new IntIdAllocator();
+    final long[] ids = allocator.allocate(5);
+    allocator.release(ids[3]);
+    final long reused = allocator.allocate();
+    restored.reserve(reused);
+    restored.reserve(ids[1]);
+    assertTrue(restored.isAlive(reused));
+    assertTrue(restored.isAlive(ids[1]));
+    assertEquals(4, restored.getCapacity());
+    final Set<Long> allocated = new HashSet<>();
+    for (int i = 0; i < 3; i++) {
+      allocated.add(restored.allocate());
+    }
+    assertFalse(allocated.contains(reused));
+    assertFalse(allocated.contains(ids[1]));
+    assertEquals(5, restored.getCapacity());
+  }
+
+  @Test
+  public void testReserveReleasedIndex() {
+    final long id = allocator.allocate();
+    allocator.allocate();
+    allocator.release(id);
+    final long newer = id + (1L << 32);
+    allocator.reserve(newer);
+    assertTrue(allocator.isAlive(newer));
+    assertEquals(IntIdAllocator.indexOf(id) + 2, IntIdAllocator.indexOf(allocator.allocate()));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testReserveAliveIndex() {
+    final long id = allocator.allocate();
+    allocator.reserve(id + (1L << 32));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testReserveStaleId() {
+    final long id = allocator.allocate();
+    allocator.release(id);
+    allocator.reserve(id);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testReserveIdWithoutGeneration() {
+    allocator.reserve(5L);
+  }
+
+  @Test
+  public void testIdIsNeverZero() {
+    assertNotEquals(0L, allocator.allocate());
+  }
+
+  @Test
+  public void testConcurrentAllocationsAreUnique() {
+    for (int i = 0; i < 1000; i++) {
+      allocator.release(allocator.allocate());
+    }
+    final Set<Long> ids = ConcurrentHashMap.newKeySet();
+    IntStream.range(0, 8).parallel().forEach(thread -> {
+      final Set<Long> local = new HashSet<>();
+      for (int i = 0; i < 10000; i++) {
+        local.add(allocator.allocate());
+      }
+      ids.addAll(local);
+    });
+    assertEquals(80000, ids.size());
+    assertEquals(80000, allocator.getCapacity());
+  }
+
+}
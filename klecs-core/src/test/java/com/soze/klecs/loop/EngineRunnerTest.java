@@ -0,0 +1,153 @@
+package com.soze.klecs.loop;
+
+import com.soze.klecs.engine.Engine;
+import com.soze.klecs.system.EntitySystem;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class EngineRunnerTest {
+
+  private static final long STEP = TimeUnit.MILLISECONDS.toNanos(10);
+
+  private Engine engine;
+  private EngineRunner runner;
+  private List<Float> updates;
+  private List<Float> renderAlphas;
+
+  @Before
+  public void setup() {
+    engine = new Engine();
+    runner = new EngineRunner(engine, 100);
+    updates = new ArrayList<>();
+    renderAlphas = new ArrayList<>();
+    engine.addSystem(new TestSystem(false, delta -> updates.add(delta)));
+    engine.addSystem(new TestSystem(true, delta -> renderAlphas.add(engine.getInterpolationAlpha())));
+  }
+
+  @Test
+  public void testUpdatesWithFixedStep() {
+    runner.frame(0);
+    runner.frame(STEP * 3 + STEP / 2);
+    assertEquals(3, updates.size());
+    assertEquals(0.01f, updates.get(0), 0.0001f);
+    assertEquals(0.5f, runner.getAlpha(), 0.0001f);
+  }
+
+  @Test
+  public void testAccumulatesShortFrames() {
+    runner.frame(0);
+    runner.frame(STEP / 2);
+    assertEquals(0, updates.size());
+    runner.frame(STEP);
+    assertEquals(1, updates.size());
+  }
+
+  @Test
+  public void testDropsStepsBeyondMaxSubsteps() {
+    runner.frame(0);
+    runner.setMaxSubsteps(2);
+    runner.frame(STEP * 10 + STEP / 4);
+    assertEquals(2, updates.size());
+    assertEquals(8, runner.getDroppedSteps());
+    assertEquals(0.25f, runner.getAlpha(), 0.0001f);
+  }
+
+  @Test
+  public void testRendersWithInterpolationAlpha() {
+    runner.frame(0);
+    runner.frame(STEP + STEP / 4);
+    assertEquals(1, renderAlphas.size());
+    assertEquals(0.25f, renderAlphas.get(0), 0.0001f);
+  }
+
+  @Test
+  public void testRenderRateIsCapped() {
+    runner.setRenderRate(50);
+    runner.frame(0);
+    for (int i = 1; i <= 10; i++) {
+      runner.frame(STEP * i);
+    }
+    assertEquals(10, runner.getUpdates());
+    assertEquals(5, runner.getRenders());
+  }
+
+  @Test
+  public void testUncappedRenderRate() {
+    runner.setRenderRate(0);
+    runner.frame(0);
+    for (int i = 1; i <= 10; i++) {
+      runner.frame(STEP * i / 4);
+    }
+    assertEquals(2, runner.getUpdates());
+    assertEquals(10, runner.getRenders());
+    assertEquals(STEP * 10 / 4, runner.getNextFrameTime(STEP * 10 / 4));
+  }
+
+  @Test
+  public void testNextFrameTimeIsNextStep() {
+    runner.frame(0);
+    runner.frame(STEP + STEP / 4);
+    assertEquals(STEP * 2, runner.getNextFrameTime(STEP + STEP / 4));
+  }
+
+  @Test
+  public void testRunsUntilStopped() throws Exception {
+    final EngineRunner runner = new EngineRunner(engine, 1000);
+    final Thread thread = new Thread(runner);
+    thread.start();
+    while (runner.getUpdates() < 5) {
+      Thread.sleep(1);
+    }
+    runner.stop();
+    thread.join(1000);
+    assertFalse(thread.isAlive());
+    assertFalse(runner.isRunning());
+  }
+
+  @Test
+  public void testStopBeforeRunIsNotLost() {
+    final EngineRunner runner = new EngineRunner(engine, 1000);
+    runner.stop();
+    runner.run();
+    assertFalse(runner.isRunning());
+    assertEquals(0, runner.getUpdates());
+  }
+
+  private static class TestSystem implements EntitySystem {
+
+    private final boolean renderer;
+    private final FloatConsumer action;
+
+    private TestSystem(final boolean renderer, final FloatConsumer action) {
+      this.renderer = renderer;
+      this.action = action;
+    }
+
+    @Override
+    public void update(final float delta) {
+      action.accept(delta);
+    }
+
+    @Override
+    public Engine getEngine() {
+      return null;
+    }
+
+    @Override
+    public boolean isRenderer() {
+      return renderer;
+    }
+
+  }
+
+  private interface FloatConsumer {
+    void accept(float value);
+  }
+
+}
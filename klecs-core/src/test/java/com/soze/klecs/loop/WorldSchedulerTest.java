@@ -0,0 +1,132 @@
+package com.soze.klecs.loop;
+
+import com.soze.klecs.engine.Engine;
+import com.soze.klecs.system.EntitySystem;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class WorldSchedulerTest {
+
+  private WorldScheduler scheduler;
+
+  @Before
+  public void setup() {
+    scheduler = new WorldScheduler(2);
+  }
+
+  @After
+  public void tearDown() {
+    scheduler.shutdown();
+  }
+
+  @Test
+  public void testRunsManyRoomsOnFewThreads() throws Exception {
+    final List<AtomicInteger> updates = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      final AtomicInteger count = new AtomicInteger();
+      updates.add(count);
+      scheduler.addRoom("room" + i, engineWith(count::incrementAndGet), 200);
+    }
+    awaitUpdates(updates, 10);
+    assertEquals(100, scheduler.getRooms().size());
+  }
+
+  @Test
+  public void testRoomsTickAtTheirOwnRate() throws Exception {
+    final AtomicInteger fast = new AtomicInteger();
+    final AtomicInteger slow = new AtomicInteger();
+    scheduler.addRoom("fast", engineWith(fast::incrementAndGet), 500);
+    scheduler.addRoom("slow", engineWith(slow::incrementAndGet), 5);
+    Thread.sleep(500);
+    assertTrue(fast.get() > slow.get() * 5);
+  }
+
+  @Test
+  public void testRemovedRoomStops() throws Exception {
+    final AtomicInteger count = new AtomicInteger();
+    final WorldScheduler.Room room = scheduler.addRoom("room", engineWith(count::incrementAndGet), 500);
+    awaitUpdates(Collections.singletonList(count), 5);
+    scheduler.removeRoom(room);
+    Thread.sleep(20);
+    final int updates = count.get();
+    Thread.sleep(50);
+    assertEquals(updates, count.get());
+    assertFalse(room.isRunning());
+    assertTrue(scheduler.getRooms().isEmpty());
+  }
+
+  @Test
+  public void testFailingRoomIsRemoved() throws Exception {
+    final RuntimeException exception = new RuntimeException("room failed");
+    final WorldScheduler.Room room = scheduler.addRoom("room", engineWith(() -> {
+      throw exception;
+    }), 500);
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (room.isRunning() && System.nanoTime() < deadline) {
+      Thread.sleep(1);
+    }
+    assertSame(exception, room.getFailure());
+    assertTrue(scheduler.getRooms().isEmpty());
+  }
+
+  @Test
+  public void testCountsOverruns() throws Exception {
+    final AtomicInteger count = new AtomicInteger();
+    final WorldScheduler.Room room = scheduler.addRoom("room", engineWith(() -> {
+      count.incrementAndGet();
+      sleep(5);
+    }), 1000);
+    awaitUpdates(Collections.singletonList(count), 3);
+    //one frame can run several updates, wait until a frame has finished
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (room.getOverruns() == 0 && System.nanoTime() < deadline) {
+      Thread.sleep(1);
+    }
+    assertTrue(room.getOverruns() > 0);
+    assertTrue(room.getFrameTimes().getMax() >= TimeUnit.MILLISECONDS.toNanos(5));
+  }
+
+  private static void awaitUpdates(final List<AtomicInteger> counts, final int updates) throws InterruptedException {
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    for (final AtomicInteger count : counts) {
+      while (count.get() < updates) {
+        assertTrue("room was not updated " + updates + " times", System.nanoTime() < deadline);
+        Thread.sleep(1);
+      }
+    }
+  }
+
+  private static void sleep(final long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static Engine engineWith(final Runnable action) {
+    final Engine engine = new Engine();
+    engine.addSystem(new EntitySystem() {
+      @Override
+      public void update(final float delta) {
+        action.run();
+      }
+
+      @Override
+      public Engine getEngine() {
+        return engine;
+      }
+    });
+    return engine;
+  }
+
+}
@@ -0,0 +1,56 @@
+package com.soze.klecs.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class HistogramTest {
+
+  @Test
+  public void testEmptyHistogram() {
+    final Histogram histogram = new Histogram();
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getValueAtPercentile(50));
+    assertEquals(0, histogram.snapshot().getMax());
+  }
+
+  @Test
+  public void testSmallValuesAreExact() {
+    final Histogram histogram = new Histogram();
+    for (int i = 1; i <= 10; i++) {
+      histogram.record(i);
+    }
+    assertEquals(10, histogram.getCount());
+    assertEquals(5, histogram.getValueAtPercentile(50));
+    assertEquals(10, histogram.getValueAtPercentile(100));
+    assertEquals(1, histogram.snapshot().getMin());
+    assertEquals(5.5, histogram.snapshot().getMean(), 0.0001);
+  }
+
+  @Test
+  public void testPercentilesAreWithinRelativeError() {
+    final Histogram histogram = new Histogram();
+    for (int i = 1; i <= 1_000_000; i++) {
+      histogram.record(i * 1000L);
+    }
+    assertWithinError(500_000_000L, histogram.getValueAtPercentile(50));
+    assertWithinError(990_000_000L, histogram.getValueAtPercentile(99));
+    assertWithinError(999_000_000L, histogram.getValueAtPercentile(99.9));
+    assertEquals(1_000_000_000L, histogram.snapshot().getMax());
+  }
+
+  @Test
+  public void testReset() {
+    final Histogram histogram = new Histogram();
+    histogram.record(100);
+    histogram.reset();
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.snapshot().getMax());
+  }
+
+  private static void assertWithinError(final long expected, final long actual) {
+    //6 sub bucket bits give buckets narrower than 1/32 of their values
+    assertTrue("expected " + expected + " but was " + actual, Math.abs(expected - actual) <= expected / 32);
+  }
+
+}
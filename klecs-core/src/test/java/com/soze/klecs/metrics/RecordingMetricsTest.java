@@ -0,0 +1,110 @@
+package com.soze.klecs.metrics;
+
+import com.soze.klecs.engine.Engine;
+import com.soze.klecs.entity.Entity;
+import com.soze.klecs.node.Node;
+import com.soze.klecs.system.EntitySystem;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+public class RecordingMetricsTest {
+
+  private Engine engine;
+  private RecordingMetrics metrics;
+
+  @Before
+  public void setup() {
+    engine = new Engine();
+    metrics = new RecordingMetrics();
+    engine.setMetrics(metrics);
+  }
+
+  @Test
+  public void testMetricsAreDisabledByDefault() {
+    assertFalse(new Engine().getMetrics().isEnabled());
+  }
+
+  @Test
+  public void testRecordsUpdates() {
+    engine.addSystem(new TestSystem(() -> {
+      final Entity entity = engine.getEntityFactory().createEntity();
+      entity.addComponent("component");
+      engine.addEntity(entity);
+    }));
+    engine.update(0);
+    engine.update(0);
+
+    final MetricsSnapshot snapshot = metrics.getSnapshot();
+    assertEquals(2, snapshot.getUpdateTimes().getCount());
+    assertEquals(2, snapshot.getSystemUpdateTimes().get(TestSystem.class.getName()).getCount());
+    assertEquals(2, snapshot.getEntityCount());
+    assertEquals(1, snapshot.getAddedEntities().getMax());
+  }
+
+  @Test
+  public void testRecordsNodeQueries() {
+    final Entity entity = engine.getEntityFactory().createEntity();
+    entity.addComponent("component");
+    engine.addEntity(entity);
+    engine.getEntitiesByNode(Node.of(String.class));
+    engine.getEntitiesByNode(Node.of(String.class));
+    engine.getEntitiesByNode(Node.of(Integer.class));
+    final MetricsSnapshot snapshot = metrics.getSnapshot();
+    assertEquals(3, snapshot.getNodeQueryTimes().getCount());
+
+    final String stringNode = Node.of(String.class).toString();
+    assertEquals(2, snapshot.getNodeQueryTimesByNode().get(stringNode).getCount());
+    assertEquals(1, snapshot.getMatchingEntitiesByNode().get(stringNode).getMax());
+    assertEquals(0, snapshot.getMatchingEntitiesByNode().get(Node.of(Integer.class).toString()).getMax());
+  }
+
+  @Test
+  public void testReset() {
+    engine.update(0);
+    metrics.reset();
+    assertEquals(0, metrics.getSnapshot().getUpdateTimes().getCount());
+  }
+
+  @Test
+  public void testSnapshotIsReadableThroughJmx() throws Exception {
+    engine.update(0);
+    final ObjectName name = metrics.registerMBean("test");
+    try {
+      final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      final CompositeData snapshot = (CompositeData) server.getAttribute(name, "Snapshot");
+      final CompositeData updateTimes = (CompositeData) snapshot.get("updateTimes");
+      assertEquals(1L, updateTimes.get("count"));
+    } finally {
+      metrics.unregisterMBean("test");
+    }
+    assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+  }
+
+  private static class TestSystem implements EntitySystem {
+
+    private final Runnable action;
+
+    private TestSystem(final Runnable action) {
+      this.action = action;
+    }
+
+    @Override
+    public void update(final float delta) {
+      action.run();
+    }
+
+    @Override
+    public Engine getEngine() {
+      return null;
+    }
+
+  }
+
+}
@@ -1,7 +1,9 @@
 package com.soze.klecs.node;
 
+import com.soze.klecs.engine.ComponentMask;
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -27,4 +29,58 @@ public class NodeTest {
     Node.of(classes);
   }
 
-}
\ No newline at end of file
+  @Test
+  public void testMatchesAllClasses() {
+    Node node = Node.of(String.class, Integer.class);
+    assertTrue(node.matches(signature(String.class, Integer.class, Long.class)));
+    assertFalse(node.matches(signature(String.class)));
+  }
+
+  @Test
+  public void testMatchesExcludedClasses() {
+    Node node = Node.of(String.class).without(Integer.class, Long.class);
+    assertTrue(node.matches(signature(String.class, Double.class)));
+    assertFalse(node.matches(signature(String.class, Long.class)));
+  }
+
+  @Test
+  public void testMatchesAnyClasses() {
+    Node node = Node.of(String.class).withAny(Integer.class, Long.class);
+    assertTrue(node.matches(signature(String.class, Long.class)));
+    assertTrue(node.matches(signature(String.class, Integer.class, Long.class)));
+    assertFalse(node.matches(signature(String.class, Double.class)));
+  }
+
+  @Test
+  public void testOptionalClassesDontAffectMatching() {
+    Node node = Node.of(String.class).withOptional(Integer.class);
+    assertTrue(node.matches(signature(String.class)));
+    assertTrue(node.matches(signature(String.class, Integer.class)));
+    assertEquals(new HashSet<>(Arrays.asList(String.class)), node.getMatchedClasses());
+  }
+
+  @Test
+  public void testNodeWithOnlyExcludedClassesMatchesEmptySignature() {
+    assertTrue(Node.of().without(String.class).matches(signature()));
+  }
+
+  @Test
+  public void testNodesWithSameClausesAreEqual() {
+    Node node = Node.of(String.class, Integer.class).without(Long.class).withOptional(Double.class);
+    Node equal = Node.of(Integer.class, String.class).without(Long.class).withOptional(Double.class);
+    assertEquals(node, equal);
+    assertEquals(node.hashCode(), equal.hashCode());
+    assertNotEquals(node, Node.of(String.class, Integer.class).without(Long.class));
+    assertNotEquals(Node.of(String.class), Node.of().withAny(String.class));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testCannotRequireAndExcludeClass() {
+    Node.of(String.class).without(String.class);
+  }
+
+  private static ComponentMask signature(Class<?>... classes) {
+    return ComponentMask.of(Arrays.asList(classes));
+  }
+
+}
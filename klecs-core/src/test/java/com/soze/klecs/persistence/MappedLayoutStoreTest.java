@@ -0,0 +1,217 @@
+package com.soze.klecs.persistence;
+
+import com.soze.klecs.engine.Engine;
+import com.soze.klecs.engine.PrimitiveField;
+import com.soze.klecs.engine.PrimitiveLayout;
+import com.soze.klecs.entity.Entity;
+import com.soze.klecs.entity.IntIdAllocator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class MappedLayoutStoreTest {
+
+  private static final PrimitiveLayout MOVABLE = new PrimitiveLayout("Movable");
+  private static final PrimitiveField X = MOVABLE.addFloat("x");
+  private static final PrimitiveField Y = MOVABLE.addFloat("y");
+  private static final PrimitiveField SPEED = MOVABLE.addInt("speed");
+
+  private static final PrimitiveLayout HEALTH = PrimitiveLayout.offHeap("Health");
+  private static final PrimitiveField CURRENT = HEALTH.addInt("current");
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Path directory;
+  private Engine engine;
+  private MappedLayoutStore store;
+
+  @Before
+  public void setup() throws IOException {
+    directory = folder.getRoot().toPath();
+    engine = new Engine();
+    store = createStore();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    store.close();
+    engine.dispose();
+  }
+
+  @Test
+  public void testLoadCheckpointIntoNewEngine() throws Exception {
+    final List<Entity> entities = addEntities(100);
+    store.checkpoint(engine).get();
+    store.close();
+
+    final Engine loaded = new Engine();
+    store = createStore();
+    assertEquals(200, store.load(loaded));
+    assertEquals(100, loaded.getAllEntities().size());
+    for (final Entity entity : entities) {
+      final Entity copy = loaded.getEntityById(entity.getId()).get();
+      assertEquals(entity.getFloat(X), copy.getFloat(X), 0f);
+      assertEquals(entity.getFloat(Y), copy.getFloat(Y), 0f);
+      assertEquals(entity.getInt(SPEED), copy.getInt(SPEED));
+      assertEquals(entity.getInt(CURRENT), copy.getInt(CURRENT));
+    }
+    loaded.dispose();
+  }
+
+  @Test
+  public void testLoadAddsValuesToExistingEntities() throws Exception {
+    final Entity entity = addEntities(1).get(0);
+    store.checkpoint(engine).get();
+
+    final Engine loaded = new Engine();
+    final Entity existing = loaded.getEntityFactory().createEntity(entity.getId());
+    existing.addComponent("component");
+    loaded.addEntity(existing);
+    store.load(loaded);
+    assertEquals(1, loaded.getAllEntities().size());
+    assertEquals("component", existing.getComponent(String.class));
+    assertEquals(entity.getInt(SPEED), existing.getInt(SPEED));
+  }
+
+  @Test
+  public void testLoadedIdsAreNotHandedOutAgain() throws Exception {
+    addEntities(10);
+    store.checkpoint(engine).get();
+
+    final Engine loaded = new Engine();
+    store.load(loaded);
+    final Entity created = loaded.getEntityFactory().createEntity();
+    loaded.addEntity(created);
+    assertEquals(11, loaded.getAllEntities().size());
+    assertFalse(created.hasLayout(MOVABLE));
+    loaded.dispose();
+  }
+
+  @Test
+  public void testLoadIntoEngineWithIntIds() throws Exception {
+    engine.dispose();
+    engine = new Engine(new IntIdAllocator());
+    final List<Entity> entities = addEntities(10);
+    engine.removeEntity(entities.get(3).getId());
+    store.checkpoint(engine).get();
+
+    final Engine loaded = new Engine(new IntIdAllocator());
+    store.load(loaded);
+    loaded.spawn(10, i -> "spawned" + i);
+    assertEquals(19, loaded.getAllEntities().size());
+    assertEquals(entities.get(9).getInt(SPEED), loaded.getEntityById(entities.get(9).getId()).get().getInt(SPEED));
+    loaded.dispose();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testIdsWhichAreNotLongsAreRejected() {
+    engine.dispose();
+    final AtomicInteger ids = new AtomicInteger();
+    engine = new Engine(ids::incrementAndGet);
+    addEntities(1);
+    store.checkpoint(engine);
+  }
+
+  @Test
+  public void testOnlyChangedPagesAreWritten() throws Exception {
+    final List<Entity> entities = addEntities(10000);
+    assertTrue(store.checkpoint(engine).get() > 10);
+    assertEquals(0, (int) store.checkpoint(engine).get());
+
+    entities.get(5000).setFloat(X, -1f);
+    assertEquals(1, (int) store.checkpoint(engine).get());
+  }
+
+  @Test
+  public void testCheckpointContainsValuesFromWhenItWasStarted() throws Exception {
+    final Entity entity = addEntities(1).get(0);
+    entity.setInt(SPEED, 5);
+    store.checkpoint(engine);
+    entity.setInt(SPEED, 10);
+    store.close();
+
+    final Engine loaded = new Engine();
+    store = createStore();
+    store.load(loaded);
+    assertEquals(5, loaded.getEntityById(entity.getId()).get().getInt(SPEED));
+  }
+
+  @Test
+  public void testRemovedEntitiesAreNotLoaded() throws Exception {
+    final List<Entity> entities = addEntities(10);
+    store.checkpoint(engine).get();
+    engine.removeEntity(entities.get(3).getId());
+    store.checkpoint(engine).get();
+
+    final Engine loaded = new Engine();
+    store.load(loaded);
+    assertEquals(9, loaded.getAllEntities().size());
+    assertFalse(loaded.getEntityById(entities.get(3).getId()).isPresent());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testInterruptedCheckpointIsNotLoaded() throws Exception {
+    addEntities(10);
+    store.checkpoint(engine).get();
+    store.close();
+    try (final RandomAccessFile file = new RandomAccessFile(directory.resolve("Movable.layout").toFile(), "rw")) {
+      file.seek(MappedLayoutStore.STATE_POSITION);
+      file.write(MappedLayoutStore.STATE_WRITING);
+    }
+
+    store = createStore();
+    store.load(new Engine());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testFileOfDifferentLayoutIsRejected() throws Exception {
+    addEntities(1);
+    store.checkpoint(engine).get();
+    final PrimitiveLayout other = new PrimitiveLayout("Movable");
+    other.addFloat("x");
+    try (final MappedLayoutStore otherStore = new MappedLayoutStore(directory)) {
+      otherStore.register(other);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testLayoutNamesAreUnique() throws IOException {
+    store.register(new PrimitiveLayout("Health"));
+  }
+
+  private MappedLayoutStore createStore() throws IOException {
+    final MappedLayoutStore store = new MappedLayoutStore(directory);
+    store.register(MOVABLE);
+    store.register(HEALTH);
+    return store;
+  }
+
+  private List<Entity> addEntities(final int count) {
+    final List<Entity> entities = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      final Entity entity = engine.getEntityFactory().createEntity();
+      entity.addLayout(MOVABLE);
+      entity.setFloat(X, i);
+      entity.setFloat(Y, i * 2);
+      entity.setInt(SPEED, i % 7);
+      entity.addLayout(HEALTH);
+      entity.setInt(CURRENT, 100 - i);
+      engine.addEntity(entity);
+      entities.add(entity);
+    }
+    return entities;
+  }
+
+}
@@ -0,0 +1,293 @@
+package com.soze.klecs.replication;
+
+import com.soze.klecs.engine.Engine;
+import com.soze.klecs.entity.Entity;
+import com.soze.klecs.entity.IntIdAllocator;
+import com.soze.klecs.snapshot.ComponentCodec;
+import com.soze.klecs.snapshot.SnapshotFormat;
+import com.soze.klecs.spatial.AreaOfInterest;
+import com.soze.klecs.spatial.SpatialIndex;
+import com.soze.klecs.system.EntitySystem;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ReplicationTest {
+
+  private Engine serverEngine;
+  private Engine clientEngine;
+  private ReplicationServer server;
+  private ReplicationClient client;
+  private ReplicationServer.Client serverClient;
+  private int lastDeltaSize;
+  private SnapshotFormat format;
+
+  @Before
+  public void setup() {
+    format = new SnapshotFormat();
+    format.register(1, String.class, ComponentCodec.STRING);
+    format.register(2, Position.class, new PositionCodec());
+    format.setIdCodec(ComponentCodec.LONG);
+
+    serverEngine = new Engine(new IntIdAllocator());
+    clientEngine = new Engine();
+    server = new ReplicationServer(serverEngine, format);
+    final LoopbackTransport transport = new LoopbackTransport();
+    final Transport serverEnd = transport.getServerEnd();
+    serverClient = server.addClient(new Transport() {
+      @Override
+      public void send(final ByteBuffer message) {
+        lastDeltaSize = message.remaining();
+        serverEnd.send(message);
+      }
+
+      @Override
+      public ByteBuffer receive() {
+        return serverEnd.receive();
+      }
+    });
+    client = new ReplicationClient(clientEngine, format, transport.getClientEnd());
+  }
+
+  @Test
+  public void testNewClientGetsAllEntities() {
+    serverEngine.spawn(100, i -> "entity" + i, i -> new Position(i, i));
+    replicate();
+    assertEquals(100, clientEngine.getAllEntities().size());
+    final Entity entity = serverEngine.getAllEntities().get(7);
+    final Entity replicated = clientEngine.getEntityById(entity.getId()).get();
+    assertEquals("entity7", replicated.getComponent(String.class));
+    assertEquals(7, replicated.getComponent(Position.class).x, 0);
+  }
+
+  @Test
+  public void testOnlyChangesAreSent() {
+    final List<Entity> entities = serverEngine.spawn(100, i -> "entity" + i, i -> new Position(i, i));
+    replicate();
+    final int fullSize = lastDeltaSize();
+
+    entities.get(3).modify(Position.class, position -> position.x = 50);
+    replicate();
+    assertTrue(lastDeltaSize() < fullSize / 10);
+    assertEquals(50, clientEngine.getEntityById(entities.get(3).getId()).get().getComponent(Position.class).x, 0);
+  }
+
+  @Test
+  public void testUnmarkedWritesAreNotSent() {
+    final List<Entity> entities = serverEngine.spawn(1, i -> new Position(i, i));
+    replicate();
+    entities.get(0).getComponent(Position.class).x = 50;
+    replicate();
+    assertEquals(0, clientEngine.getAllEntities().get(0).getComponent(Position.class).x, 0);
+  }
+
+  @Test
+  public void testRemovedEntitiesAndComponents() {
+    final List<Entity> entities = serverEngine.spawn(10, i -> "entity" + i, i -> new Position(i, i));
+    replicate();
+    serverEngine.removeEntity(entities.get(0).getId());
+    entities.get(1).removeComponent(String.class);
+    entities.get(2).addComponent("changed");
+    replicate();
+
+    assertEquals(9, clientEngine.getAllEntities().size());
+    assertFalse(clientEngine.getEntityById(entities.get(0).getId()).isPresent());
+    assertNull(clientEngine.getEntityById(entities.get(1).getId()).get().getComponent(String.class));
+    assertEquals("changed", clientEngine.getEntityById(entities.get(2).getId()).get().getComponent(String.class));
+  }
+
+  @Test
+  public void testChangesMadeDuringUpdate() {
+    final List<Entity> entities = serverEngine.spawn(10, i -> "entity" + i);
+    replicate();
+    serverEngine.addSystem(new EntitySystem() {
+      @Override
+      public void update(final float delta) {
+        entities.get(5).addComponent(new Position(5, 5));
+        serverEngine.removeEntity(entities.get(6).getId());
+      }
+
+      @Override
+      public Engine getEngine() {
+        return serverEngine;
+      }
+    });
+    serverEngine.update(0);
+    replicate();
+    assertEquals(9, clientEngine.getAllEntities().size());
+    assertNotNull(clientEngine.getEntityById(entities.get(5).getId()).get().getComponent(Position.class));
+  }
+
+  @Test
+  public void testClientCatchesUpAfterMissedDeltas() {
+    final List<Entity> entities = serverEngine.spawn(10, i -> "entity" + i);
+    server.replicate();
+    entities.get(0).addComponent("first");
+    server.replicate();
+    serverEngine.removeEntity(entities.get(1).getId());
+    server.replicate();
+    //every delta contains all changes since the client's last acknowledgement
+    client.receive();
+    assertEquals(9, clientEngine.getAllEntities().size());
+    assertEquals("first", clientEngine.getEntityById(entities.get(0).getId()).get().getComponent(String.class));
+  }
+
+  @Test
+  public void testAcknowledgementsAreTracked() {
+    serverEngine.spawn(1, i -> "entity");
+    replicate();
+    server.replicate();
+    assertEquals(client.getTick(), serverClient.getAcknowledgedTick());
+  }
+
+  @Test
+  public void testClientWithObserverGetsOnlyVisibleEntities() {
+    final List<Entity> entities = serverEngine.spawn(100, i -> "entity" + i, i -> new Position(i * 10, 0));
+    final InterestClient interestClient = new InterestClient(25);
+    interestClient.observer.moveTo(0, 0);
+    interestClient.replicate();
+    assertEquals(3, interestClient.engine.getAllEntities().size());
+    assertEquals("entity2", interestClient.engine.getEntityById(entities.get(2).getId()).get().getComponent(String.class));
+    assertFalse(interestClient.engine.getEntityById(entities.get(3).getId()).isPresent());
+  }
+
+  @Test
+  public void testEntitiesLeavingViewAreRemovedFromClient() {
+    final List<Entity> entities = serverEngine.spawn(100, i -> "entity" + i, i -> new Position(i * 10, 0));
+    final InterestClient interestClient = new InterestClient(25);
+    interestClient.observer.moveTo(0, 0);
+    interestClient.replicate();
+
+    interestClient.observer.moveTo(500, 0);
+    interestClient.replicate();
+    assertEquals(5, interestClient.engine.getAllEntities().size());
+    for (int i = 48; i <= 52; i++) {
+      assertTrue(interestClient.engine.getEntityById(entities.get(i).getId()).isPresent());
+    }
+  }
+
+  @Test
+  public void testOnlyChangesOfVisibleEntitiesAreSent() {
+    final List<Entity> entities = serverEngine.spawn(100, i -> "entity" + i, i -> new Position(i * 10, 0));
+    final InterestClient interestClient = new InterestClient(25);
+    interestClient.observer.moveTo(0, 0);
+    interestClient.replicate();
+
+    entities.get(50).modify(Position.class, position -> position.y = 1);
+    interestClient.replicate();
+    final int invisibleChangeSize = interestClient.lastDeltaSize;
+    entities.get(1).modify(Position.class, position -> position.y = 1);
+    interestClient.replicate();
+    assertTrue(interestClient.lastDeltaSize > invisibleChangeSize);
+    assertEquals(1, interestClient.engine.getEntityById(entities.get(1).getId()).get().getComponent(Position.class).y, 0);
+  }
+
+  @Test
+  public void testEnteredEntitiesAreResentUntilAcknowledged() {
+    final List<Entity> entities = serverEngine.spawn(100, i -> "entity" + i, i -> new Position(i * 10, 0));
+    final InterestClient interestClient = new InterestClient(25);
+    interestClient.observer.moveTo(0, 0);
+    interestClient.replicate();
+
+    interestClient.observer.moveTo(500, 0);
+    interestClient.interest.refresh();
+    server.replicate();
+    //the delta with entered entities is lost
+    interestClient.transport.getClientEnd().receive();
+
+    interestClient.replicate();
+    assertEquals(5, interestClient.engine.getAllEntities().size());
+    assertTrue(interestClient.engine.getEntityById(entities.get(50).getId()).isPresent());
+  }
+
+  @Test
+  public void testEntitiesRemovedFromServerLeaveView() {
+    final List<Entity> entities = serverEngine.spawn(10, i -> "entity" + i, i -> new Position(i, 0));
+    final InterestClient interestClient = new InterestClient(100);
+    interestClient.replicate();
+    serverEngine.removeEntity(entities.get(4).getId());
+    interestClient.replicate();
+    assertEquals(9, interestClient.engine.getAllEntities().size());
+  }
+
+  private void replicate() {
+    server.replicate();
+    client.receive();
+  }
+
+  private int lastDeltaSize() {
+    return lastDeltaSize;
+  }
+
+  /**
+   * A client which only sees entities around its observer.
+   */
+  private class InterestClient {
+
+    private final Engine engine = new Engine();
+    private final LoopbackTransport transport = new LoopbackTransport();
+    private final SpatialIndex<Position> index;
+    private final AreaOfInterest interest;
+    private final AreaOfInterest.Observer observer;
+    private final ReplicationClient client;
+    private int lastDeltaSize;
+
+    private InterestClient(final float radius) {
+      index = new SpatialIndex<>(serverEngine, Position.class, position -> position.x, position -> position.y, 50);
+      interest = new AreaOfInterest(index);
+      observer = interest.addObserver(radius);
+      final Transport serverEnd = transport.getServerEnd();
+      server.addClient(new Transport() {
+        @Override
+        public void send(final ByteBuffer message) {
+          lastDeltaSize = message.remaining();
+          serverEnd.send(message);
+        }
+
+        @Override
+        public ByteBuffer receive() {
+          return serverEnd.receive();
+        }
+      }, observer);
+      client = new ReplicationClient(engine, format, transport.getClientEnd());
+    }
+
+    private void replicate() {
+      index.refresh();
+      interest.refresh();
+      server.replicate();
+      client.receive();
+    }
+
+  }
+
+  private static class Position {
+    private float x;
+    private float y;
+
+    private Position(final float x, final float y) {
+      this.x = x;
+      this.y = y;
+    }
+  }
+
+  private static class PositionCodec implements ComponentCodec<Position> {
+
+    @Override
+    public void write(final Position component, final ByteBuffer buffer) {
+      buffer.putFloat(component.x);
+      buffer.putFloat(component.y);
+    }
+
+    @Override
+    public Position read(final ByteBuffer buffer) {
+      return new Position(buffer.getFloat(), buffer.getFloat());
+    }
+
+  }
+
+}
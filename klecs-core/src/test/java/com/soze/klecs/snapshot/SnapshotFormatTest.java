@@ -0,0 +1,295 @@
+package com.soze.klecs.snapshot;
+
+import com.soze.klecs.engine.Engine;
+import com.soze.klecs.engine.PrimitiveField;
+import com.soze.klecs.engine.PrimitiveLayout;
+import com.soze.klecs.entity.Entity;
+import com.soze.klecs.entity.IntIdAllocator;
+import com.soze.klecs.node.Node;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SnapshotFormatTest {
+
+  private static final PrimitiveLayout MOVABLE = new PrimitiveLayout("Movable");
+  private static final PrimitiveField X = MOVABLE.addFloat("x");
+  private static final PrimitiveField HEALTH = MOVABLE.addInt("health");
+  private static final PrimitiveField Y = MOVABLE.addFloat("y");
+
+  private SnapshotFormat format;
+
+  @Before
+  public void setup() {
+    format = new SnapshotFormat();
+    format.register(1, String.class, ComponentCodec.STRING);
+    format.register(2, Integer.class, ComponentCodec.INTEGER);
+    format.register(3, Position.class, new PositionCodec());
+    format.registerLayout(1, MOVABLE);
+  }
+
+  @Test
+  public void testRoundTripThroughBuffer() {
+    final Engine engine = new Engine();
+    final Entity entity = engine.getEntityFactory().createEntity();
+    entity.addComponent("name");
+    entity.addComponent(5);
+    entity.addComponent(new Position(1, 2));
+    engine.addEntity(entity);
+    engine.addEntity(engine.getEntityFactory().createEntity());
+
+    final ByteBuffer buffer = ByteBuffer.allocate(1024);
+    format.write(engine, buffer);
+    buffer.flip();
+    final Engine restored = new Engine();
+    final List<Entity> entities = format.read(buffer, restored);
+
+    assertEquals(2, entities.size());
+    assertEquals(2, restored.getAllEntities().size());
+    final Entity restoredEntity = entities.get(0);
+    assertEquals("name", restoredEntity.getComponent(String.class));
+    assertEquals(5, (int) restoredEntity.getComponent(Integer.class));
+    assertEquals(2, restoredEntity.getComponent(Position.class).y, 0);
+    assertTrue(entities.get(1).getAllComponents(Object.class).isEmpty());
+  }
+
+  @Test
+  public void testRoundTripThroughChannel() throws Exception {
+    final Engine engine = new Engine(new IntIdAllocator());
+    engine.spawn(20000, i -> "entity" + i, i -> new Position(i, -i));
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    format.write(engine, Channels.newChannel(out));
+
+    final Engine restored = new Engine(new IntIdAllocator());
+    format.read(Channels.newChannel(new ByteArrayInputStream(out.toByteArray())), restored);
+    final List<Entity> entities = restored.getEntitiesByNode(Node.of(String.class, Position.class));
+    assertEquals(20000, entities.size());
+    for (final Entity entity : entities) {
+      final int index = Integer.parseInt(entity.getComponent(String.class).substring("entity".length()));
+      assertEquals(index, entity.getComponent(Position.class).x, 0);
+    }
+  }
+
+  @Test
+  public void testEntitiesAreAddedInOneBatch() {
+    final Engine engine = new Engine();
+    engine.spawn(100, i -> "entity" + i, i -> new Position(i, -i));
+    final ByteBuffer buffer = ByteBuffer.allocate(4096);
+    format.write(engine, buffer);
+    buffer.flip();
+
+    final Engine restored = new Engine();
+    final List<Integer> batchSizes = new ArrayList<>();
+    restored.addEntityBatchListener(Node.of(String.class, Position.class),
+      batch -> batchSizes.add(batch.getAddedEntities().size()));
+    format.read(buffer, restored);
+    assertEquals(1, batchSizes.size());
+    assertEquals(100, (int) batchSizes.get(0));
+  }
+
+  @Test
+  public void testLayouts() {
+    final Engine engine = new Engine();
+    final Entity entity = engine.getEntityFactory().createEntity();
+    entity.addLayout(MOVABLE);
+    entity.setFloat(X, 1.5f);
+    entity.setFloat(Y, 2.5f);
+    entity.setInt(HEALTH, 100);
+    engine.addEntity(entity);
+
+    final ByteBuffer buffer = ByteBuffer.allocate(1024);
+    format.write(engine, buffer);
+    buffer.flip();
+    final Entity restored = format.read(buffer, new Engine()).get(0);
+    assertTrue(restored.hasLayout(MOVABLE));
+    assertEquals(1.5f, restored.getFloat(X), 0);
+    assertEquals(2.5f, restored.getFloat(Y), 0);
+    assertEquals(100, restored.getInt(HEALTH));
+  }
+
+  @Test
+  public void testIds() {
+    format.setIdCodec(ComponentCodec.LONG);
+    final Engine engine = new Engine();
+    final Entity entity = engine.getEntityFactory().createEntity(42L);
+    entity.addComponent("name");
+    engine.addEntity(entity);
+
+    final ByteBuffer buffer = ByteBuffer.allocate(1024);
+    format.write(engine, buffer);
+    buffer.flip();
+    final Engine restored = new Engine();
+    format.read(buffer, restored);
+    assertEquals("name", restored.getEntityById(42L).get().getComponent(String.class));
+  }
+
+  @Test
+  public void testRestoredIdsAreNotHandedOutAgain() {
+    format.setIdCodec(ComponentCodec.LONG);
+    final Engine engine = new Engine();
+    final Entity entity = engine.getEntityFactory().createEntity();
+    engine.addEntity(entity);
+    final ByteBuffer buffer = ByteBuffer.allocate(1024);
+    format.write(engine, buffer);
+    buffer.flip();
+
+    final Engine restored = new Engine();
+    format.read(buffer, restored);
+    final Entity created = restored.getEntityFactory().createEntity();
+    restored.addEntity(created);
+    assertNotEquals(entity.getId(), created.getId());
+    assertEquals(2, restored.getAllEntities().size());
+  }
+
+  @Test
+  public void testRestoredIntIdsAreNotHandedOutAgain() {
+    format.setIdCodec(ComponentCodec.LONG);
+    final Engine engine = new Engine(new IntIdAllocator());
+    final List<Entity> spawned = engine.spawn(10, i -> "entity" + i);
+    engine.removeEntity(spawned.get(3).getId());
+    final ByteBuffer buffer = ByteBuffer.allocate(1024);
+    format.write(engine, buffer);
+    buffer.flip();
+
+    final Engine restored = new Engine(new IntIdAllocator());
+    format.read(buffer, restored);
+    restored.spawn(10, i -> "spawned" + i);
+    assertEquals(19, restored.getAllEntities().size());
+    assertEquals("entity9", restored.getEntityById(spawned.get(9).getId()).get().getComponent(String.class));
+  }
+
+  @Test
+  public void testIdOfLiveEntity() {
+    format.setIdCodec(ComponentCodec.LONG);
+    final Engine engine = new Engine();
+    final Entity entity = engine.getEntityFactory().createEntity(42L);
+    entity.addLayout(MOVABLE);
+    entity.setFloat(X, 1.5f);
+    engine.addEntity(entity);
+    final ByteBuffer buffer = ByteBuffer.allocate(1024);
+    format.write(engine, buffer);
+    buffer.flip();
+
+    final Engine restored = new Engine();
+    final Entity live = restored.getEntityFactory().createEntity(42L);
+    live.addLayout(MOVABLE);
+    live.setFloat(X, 7f);
+    restored.addEntity(live);
+    try {
+      format.read(buffer, restored);
+      fail();
+    } catch (final IllegalStateException e) {
+      assertEquals(7f, live.getFloat(X), 0);
+      assertEquals(1, restored.getAllEntities().size());
+    }
+  }
+
+  @Test
+  public void testFailedReadReleasesIds() {
+    format.setIdCodec(ComponentCodec.LONG);
+    final Engine engine = new Engine(new IntIdAllocator());
+    final List<Entity> spawned = engine.spawn(2, i -> "entity" + i);
+    engine.removeEntity(spawned.get(0).getId());
+    final Entity reused = engine.getEntityFactory().createEntity();
+    engine.addEntity(reused);
+    final ByteBuffer buffer = ByteBuffer.allocate(1024);
+    format.write(engine, buffer);
+    buffer.flip();
+
+    //the restored engine already uses the index of the reused id
+    final IntIdAllocator allocator = new IntIdAllocator();
+    final Engine restored = new Engine(allocator);
+    restored.addEntity(restored.getEntityFactory().createEntity());
+    try {
+      format.read(buffer, restored);
+      fail();
+    } catch (final IllegalStateException e) {
+      assertFalse(allocator.isAlive((Long) spawned.get(1).getId()));
+      assertEquals(1, restored.getAllEntities().size());
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testComponentWithoutCodec() {
+    final Engine engine = new Engine();
+    final Entity entity = engine.getEntityFactory().createEntity();
+    entity.addComponent(5L);
+    engine.addEntity(entity);
+    format.write(engine, ByteBuffer.allocate(1024));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testNotASnapshot() {
+    format.read(ByteBuffer.allocate(64), new Engine());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testTruncatedSnapshot() {
+    final Engine engine = new Engine();
+    engine.spawn(10, i -> "entity" + i);
+    final ByteBuffer buffer = ByteBuffer.allocate(1024);
+    format.write(engine, buffer);
+    buffer.flip();
+    buffer.limit(buffer.limit() - 3);
+    format.read(buffer, new Engine());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testNonBlockingChannel() throws Exception {
+    format.read(new ReadableByteChannel() {
+      @Override
+      public int read(final ByteBuffer dst) {
+        return 0;
+      }
+
+      @Override
+      public boolean isOpen() {
+        return true;
+      }
+
+      @Override
+      public void close() {
+      }
+    }, new Engine());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testDuplicateCodecId() {
+    format.register(1, Long.class, ComponentCodec.LONG);
+  }
+
+  private static class Position {
+    private final float x;
+    private final float y;
+
+    private Position(final float x, final float y) {
+      this.x = x;
+      this.y = y;
+    }
+  }
+
+  private static class PositionCodec implements ComponentCodec<Position> {
+
+    @Override
+    public void write(final Position component, final ByteBuffer buffer) {
+      buffer.putFloat(component.x);
+      buffer.putFloat(component.y);
+    }
+
+    @Override
+    public Position read(final ByteBuffer buffer) {
+      return new Position(buffer.getFloat(), buffer.getFloat());
+    }
+
+  }
+
+}
@@ -0,0 +1,136 @@
+package com.soze.klecs.spatial;
+
+import com.soze.klecs.engine.Engine;
+import com.soze.klecs.entity.Entity;
+import com.soze.klecs.node.Node;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.junit.Assert.*;
+
+public class AreaOfInterestTest {
+
+  private Engine engine;
+  private SpatialIndex<Position> index;
+  private AreaOfInterest interest;
+
+  @Before
+  public void setup() {
+    engine = new Engine();
+    index = new SpatialIndex<>(engine, Position.class, position -> position.x, position -> position.y, 10);
+    interest = new AreaOfInterest(index);
+    engine.addSystem(index);
+    engine.addSystem(interest);
+  }
+
+  @Test
+  public void testEntitiesEnterView() {
+    final Entity near = addEntity(5, 0);
+    addEntity(50, 0);
+    final AreaOfInterest.Observer observer = interest.addObserver(10);
+    engine.update(0);
+    assertEquals(Collections.singletonList(near), observer.getEntered());
+    assertTrue(observer.getLeft().isEmpty());
+    assertTrue(observer.isVisible(near.getId()));
+    assertEquals(1, observer.getVisible().size());
+  }
+
+  @Test
+  public void testEntitiesStayingInViewAreNotReported() {
+    addEntity(5, 0);
+    final AreaOfInterest.Observer observer = interest.addObserver(10);
+    engine.update(0);
+    engine.update(0);
+    assertTrue(observer.getEntered().isEmpty());
+    assertTrue(observer.getLeft().isEmpty());
+    assertEquals(1, observer.getVisible().size());
+  }
+
+  @Test
+  public void testEntitiesLeaveViewWhenObserverMoves() {
+    final Entity first = addEntity(0, 0);
+    final Entity second = addEntity(100, 0);
+    final AreaOfInterest.Observer observer = interest.addObserver(10);
+    engine.update(0);
+    observer.moveTo(100, 0);
+    engine.update(0);
+    assertEquals(Collections.singletonList(second), observer.getEntered());
+    assertEquals(Collections.singletonList(first), observer.getLeft());
+  }
+
+  @Test
+  public void testEntitiesLeaveViewBeyondExitRadius() {
+    final Entity entity = addEntity(5, 0);
+    final AreaOfInterest.Observer observer = interest.addObserver(10, 20);
+    engine.update(0);
+    entity.getComponent(Position.class).x = 15;
+    engine.update(0);
+    assertTrue(observer.isVisible(entity.getId()));
+    entity.getComponent(Position.class).x = 25;
+    engine.update(0);
+    assertEquals(Collections.singletonList(entity), observer.getLeft());
+    //it has to come within the radius to enter again
+    entity.getComponent(Position.class).x = 15;
+    engine.update(0);
+    assertFalse(observer.isVisible(entity.getId()));
+  }
+
+  @Test
+  public void testRemovedEntitiesLeaveViewRightAway() {
+    final Entity entity = addEntity(0, 0);
+    final AreaOfInterest.Observer observer = interest.addObserver(10);
+    engine.update(0);
+    engine.removeEntity(entity.getId());
+    assertFalse(observer.isVisible(entity.getId()));
+    engine.update(0);
+    assertEquals(Collections.singletonList(entity), observer.getLeft());
+  }
+
+  @Test
+  public void testObserverFollowsEntity() {
+    final Entity player = addEntity(0, 0);
+    final Entity other = addEntity(100, 0);
+    final AreaOfInterest.Observer observer = interest.addObserver(10);
+    observer.follow(player);
+    engine.update(0);
+    assertEquals(Collections.singletonList(player), observer.getEntered());
+    player.getComponent(Position.class).x = 95;
+    //the index sees the new position in the next update
+    engine.update(0);
+    engine.update(0);
+    assertEquals(new HashSet<>(Arrays.asList(player, other)), new HashSet<>(observer.getVisible()));
+  }
+
+  @Test
+  public void testFilteredObserver() {
+    final Entity enemy = addEntity(0, 0);
+    enemy.addComponent("enemy");
+    addEntity(1, 1);
+    final AreaOfInterest.Observer observer = interest.addObserver(10);
+    observer.setFilter(Node.of(String.class));
+    engine.update(0);
+    assertEquals(Collections.singletonList(enemy), observer.getEntered());
+  }
+
+  private Entity addEntity(final float x, final float y) {
+    final Entity entity = engine.getEntityFactory().createEntity();
+    entity.addComponent(new Position(x, y));
+    engine.addEntity(entity);
+    return entity;
+  }
+
+  private static class Position {
+    float x;
+    float y;
+
+    Position(final float x, final float y) {
+      this.x = x;
+      this.y = y;
+    }
+  }
+
+}
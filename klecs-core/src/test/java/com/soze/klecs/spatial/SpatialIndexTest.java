@@ -0,0 +1,202 @@
+package com.soze.klecs.spatial;
+
+import com.soze.klecs.engine.Engine;
+import com.soze.klecs.entity.Entity;
+import com.soze.klecs.node.Node;
+import com.soze.klecs.system.EntitySystem;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class SpatialIndexTest {
+
+  private Engine engine;
+  private SpatialIndex<Position> index;
+
+  @Before
+  public void setup() {
+    engine = new Engine();
+    index = new SpatialIndex<>(engine, Position.class, position -> position.x, position -> position.y, 10);
+    engine.addSystem(index);
+  }
+
+  @Test
+  public void testEntitiesInRange() {
+    final Entity near = addEntity(5, 5);
+    final Entity onEdge = addEntity(8, 5);
+    final Entity far = addEntity(30, 5);
+    final Set<Entity> found = new HashSet<>(index.getEntitiesInRange(5, 5, 3, null));
+    assertEquals(new HashSet<>(Arrays.asList(near, onEdge)), found);
+    assertFalse(found.contains(far));
+  }
+
+  @Test
+  public void testRangeAcrossNegativeCells() {
+    final Entity entity = addEntity(-1, -1);
+    addEntity(-50, -50);
+    assertEquals(Collections.singletonList(entity), index.getEntitiesInRange(1, 1, 3, null));
+  }
+
+  @Test
+  public void testRangeIsFilteredByNode() {
+    final Entity enemy = addEntity(0, 0);
+    enemy.addComponent("enemy");
+    addEntity(1, 1);
+    assertEquals(Collections.singletonList(enemy), index.getEntitiesInRange(0, 0, 5, Node.of(String.class)));
+  }
+
+  @Test
+  public void testEntitiesAreIndexedWhenAddedAndRemoved() {
+    final Entity entity = addEntity(0, 0);
+    assertEquals(1, index.size());
+    engine.removeEntity(entity.getId());
+    assertEquals(0, index.size());
+    assertTrue(index.getEntitiesInRange(0, 0, 5, null).isEmpty());
+  }
+
+  @Test
+  public void testEntitiesAreIndexedWhenPositionIsAddedOrRemoved() {
+    final Entity entity = engine.getEntityFactory().createEntity();
+    engine.addEntity(entity);
+    assertEquals(0, index.size());
+    entity.addComponent(new Position(0, 0));
+    assertEquals(Collections.singletonList(entity), index.getEntitiesInRange(0, 0, 1, null));
+    entity.removeComponent(Position.class);
+    assertEquals(0, index.size());
+  }
+
+  @Test
+  public void testEntitiesWhichExistedBeforeAreIndexed() {
+    final Engine engine = new Engine();
+    final Entity entity = engine.getEntityFactory().createEntity();
+    entity.addComponent(new Position(3, 3));
+    engine.addEntity(entity);
+    final SpatialIndex<Position> index = new SpatialIndex<>(engine, Position.class, position -> position.x, position -> position.y, 10);
+    assertEquals(Collections.singletonList(entity), index.getEntitiesInRange(0, 0, 5, null));
+  }
+
+  @Test
+  public void testMovedEntitiesAreFoundAfterUpdate() {
+    final Entity entity = addEntity(0, 0);
+    engine.addSystem(new TestSystem(() -> entity.getComponent(Position.class).x = 100));
+    engine.update(0);
+    //the index refreshed before the entity moved
+    assertEquals(1, index.getEntitiesInRange(0, 0, 1, null).size());
+    engine.update(0);
+    assertTrue(index.getEntitiesInRange(0, 0, 1, null).isEmpty());
+    assertEquals(Collections.singletonList(entity), index.getEntitiesInRange(100, 0, 1, null));
+  }
+
+  @Test
+  public void testEntitiesRemovedDuringUpdateLeaveIndex() {
+    final Entity entity = addEntity(0, 0);
+    engine.addSystem(new TestSystem(() -> engine.removeEntity(entity.getId())));
+    engine.update(0);
+    assertEquals(0, index.size());
+  }
+
+  @Test
+  public void testNearestEntities() {
+    final Entity first = addEntity(1, 0);
+    final Entity second = addEntity(-3, 0);
+    final Entity third = addEntity(0, 25);
+    addEntity(100, 100);
+    assertEquals(Arrays.asList(first, second, third), index.getNearest(0, 0, 3, null));
+  }
+
+  @Test
+  public void testNearestEntitiesFromFarAway() {
+    final Entity entity = addEntity(0, 0);
+    assertEquals(Collections.singletonList(entity), index.getNearest(10000, -10000, 5, null));
+  }
+
+  @Test
+  public void testNearestEntitiesAreFilteredByNode() {
+    addEntity(1, 1);
+    final Entity enemy = addEntity(50, 50);
+    enemy.addComponent("enemy");
+    assertEquals(Collections.singletonList(enemy), index.getNearest(0, 0, 2, Node.of(String.class)));
+  }
+
+  @Test
+  public void testQueriesMatchLinearScan() {
+    final Random random = new Random(42);
+    final List<Entity> entities = new ArrayList<>();
+    for (int i = 0; i < 2000; i++) {
+      entities.add(addEntity(random.nextFloat() * 500 - 250, random.nextFloat() * 500 - 250));
+    }
+    for (int query = 0; query < 50; query++) {
+      final float x = random.nextFloat() * 600 - 300;
+      final float y = random.nextFloat() * 600 - 300;
+      final float radius = random.nextFloat() * 60;
+
+      final Set<Entity> expected = entities.stream()
+        .filter(entity -> getDistanceSquared(entity, x, y) <= radius * radius)
+        .collect(Collectors.toSet());
+      assertEquals(expected, new HashSet<>(index.getEntitiesInRange(x, y, radius, null)));
+
+      final List<Entity> nearest = entities.stream()
+        .sorted(Comparator.comparingDouble(entity -> getDistanceSquared(entity, x, y)))
+        .limit(7)
+        .collect(Collectors.toList());
+      assertEquals(nearest, index.getNearest(x, y, 7, null));
+    }
+  }
+
+  @Test
+  public void testDisposedIndexIgnoresEntities() {
+    addEntity(0, 0);
+    index.dispose();
+    addEntity(1, 1);
+    assertEquals(0, index.size());
+  }
+
+  private static float getDistanceSquared(final Entity entity, final float x, final float y) {
+    final Position position = entity.getComponent(Position.class);
+    final float dx = position.x - x;
+    final float dy = position.y - y;
+    return dx * dx + dy * dy;
+  }
+
+  private Entity addEntity(final float x, final float y) {
+    final Entity entity = engine.getEntityFactory().createEntity();
+    entity.addComponent(new Position(x, y));
+    engine.addEntity(entity);
+    return entity;
+  }
+
+  private static class Position {
+    float x;
+    float y;
+
+    Position(final float x, final float y) {
+      this.x = x;
+      this.y = y;
+    }
+  }
+
+  private static class TestSystem implements EntitySystem {
+
+    private final Runnable action;
+
+    private TestSystem(final Runnable action) {
+      this.action = action;
+    }
+
+    @Override
+    public void update(final float delta) {
+      action.run();
+    }
+
+    @Override
+    public Engine getEngine() {
+      return null;
+    }
+
+  }
+
+}
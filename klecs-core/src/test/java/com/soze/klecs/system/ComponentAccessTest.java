@@ -0,0 +1,39 @@
+package com.soze.klecs.system;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ComponentAccessTest {
+
+  @Test
+  public void testReadersDoNotConflict() {
+    assertFalse(ComponentAccess.reads(String.class).conflictsWith(ComponentAccess.reads(String.class)));
+  }
+
+  @Test
+  public void testWriterConflictsWithReader() {
+    assertTrue(ComponentAccess.writes(String.class).conflictsWith(ComponentAccess.reads(String.class)));
+    assertTrue(ComponentAccess.reads(String.class).conflictsWith(ComponentAccess.writes(String.class)));
+  }
+
+  @Test
+  public void testWritersOfDifferentClassesDoNotConflict() {
+    final ComponentAccess first = ComponentAccess.reads(Long.class).andWrites(String.class);
+    final ComponentAccess second = ComponentAccess.reads(Long.class).andWrites(Integer.class);
+    assertFalse(first.conflictsWith(second));
+  }
+
+  @Test
+  public void testExclusiveConflictsWithEverything() {
+    assertTrue(ComponentAccess.exclusive().conflictsWith(ComponentAccess.none()));
+    assertTrue(ComponentAccess.none().conflictsWith(ComponentAccess.exclusive()));
+  }
+
+  @Test(expected = NullPointerException.class)
+  public void testNullClass() {
+    ComponentAccess.reads(String.class, null);
+  }
+
+}